@@ -0,0 +1,192 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.action;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import etomica.api.IIntegrator;
+import etomica.exception.ConfigurationOverlapException;
+import etomica.nbr.list.NeighborListManager;
+import etomica.util.Checkpointable;
+
+/**
+ * Writes and restores checkpoints of a simulation, so that a job can be
+ * killed and resumed with the same trajectory it would have followed if it
+ * had not been stopped.  Each piece of state (a box, via BoxCheckpoint; the
+ * random number generator; neighbor list managers; integrators that
+ * implement Checkpointable, which are IntegratorMC and
+ * IntegratorVelocityVerlet; data accumulators; the ActivityIntegrate) is
+ * added with a key, and is written to its own section of a versioned binary
+ * file.  Unlike SimulationRestart,
+ * nothing is serialized; the simulation being restored is constructed and
+ * configured as the original was and the state is then read into it.
+ * <p>
+ * Pieces are restored in the order they were added, after every integrator
+ * that was added has been reset once (so that setup done by the first reset,
+ * such as the thermostat, doesn't disturb the restored state).  Boxes should
+ * be added first, followed by the neighbor list managers, the random number
+ * generator, the accumulators, the integrators and then the
+ * ActivityIntegrate.  IntegratorListenerActions with an interval other than
+ * 1 should also be added.
+ * <p>
+ * The checkpoint can be written from an IntegratorListenerAction, which
+ * should be the integrator's last listener so that the other listeners have
+ * finished with the step.  The file is written to a temporary file and then
+ * moved into place, so an existing checkpoint is not lost if the job is
+ * killed while writing.
+ */
+public class SimulationCheckpoint implements IAction {
+
+    public static final int MAGIC = 0x45434b50;
+    public static final int VERSION = 1;
+
+    public SimulationCheckpoint(String fileName) {
+        setFileName(fileName);
+        keys = new ArrayList<String>();
+        items = new ArrayList<Checkpointable>();
+    }
+
+    public void setFileName(String newFileName) {
+        fileName = newFileName;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Adds a piece of state to the checkpoint, with the given key.  A
+     * NeighborListManager has checkpointing turned on, so it should be added
+     * before the integrator is first reset.
+     */
+    public void add(String key, Checkpointable item) {
+        if (keys.contains(key)) {
+            throw new IllegalArgumentException("already have "+key);
+        }
+        if (item instanceof NeighborListManager) {
+            ((NeighborListManager)item).setCheckpointing(true);
+        }
+        keys.add(key);
+        items.add(item);
+    }
+
+    /**
+     * Writes the checkpoint.
+     */
+    public void actionPerformed() {
+        try {
+            write();
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void write() throws IOException {
+        File file = new File(fileName);
+        File tmpFile = new File(fileName+".tmp");
+        ByteArrayOutputStream section = new ByteArrayOutputStream();
+        DataOutputStream sectionOut = new DataOutputStream(section);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1<<16));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(items.size());
+            for (int i=0; i<items.size(); i++) {
+                section.reset();
+                items.get(i).writeCheckpoint(sectionOut);
+                sectionOut.flush();
+                out.writeUTF(keys.get(i));
+                out.writeInt(section.size());
+                section.writeTo(out);
+            }
+        }
+        finally {
+            out.close();
+        }
+        try {
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            // the file system can't do an atomic move
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Restores the simulation from the checkpoint file.  Every key added
+     * must be in the file, and every section of the file must have been
+     * added.
+     */
+    public void restore() throws IOException {
+        HashMap<String,byte[]> sections = new HashMap<String,byte[]>();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName), 1<<16));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new RuntimeException(fileName+" is not a checkpoint file");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new RuntimeException(fileName+" has version "+version+", but only version "+VERSION+" can be read");
+            }
+            int nSections = in.readInt();
+            for (int i=0; i<nSections; i++) {
+                String key = in.readUTF();
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                sections.put(key, bytes);
+            }
+        }
+        finally {
+            in.close();
+        }
+        if (sections.size() != keys.size()) {
+            throw new RuntimeException("checkpoint has "+sections.size()+" sections, but "+keys.size()+" were added");
+        }
+        for (int i=0; i<keys.size(); i++) {
+            if (!sections.containsKey(keys.get(i))) {
+                throw new RuntimeException("checkpoint has no "+keys.get(i));
+            }
+        }
+
+        for (int i=0; i<items.size(); i++) {
+            if (items.get(i) instanceof IIntegrator) {
+                try {
+                    ((IIntegrator)items.get(i)).reset();
+                }
+                catch (ConfigurationOverlapException e) {
+                    // the configuration is about to be replaced
+                }
+            }
+        }
+
+        for (int i=0; i<items.size(); i++) {
+            byte[] bytes = sections.get(keys.get(i));
+            ByteArrayInputStream section = new ByteArrayInputStream(bytes);
+            items.get(i).readCheckpoint(new DataInputStream(section));
+            if (section.available() != 0) {
+                throw new RuntimeException(keys.get(i)+" read only "+(bytes.length-section.available())+" of "+bytes.length+" bytes");
+            }
+        }
+    }
+
+    protected String fileName;
+    protected final List<String> keys;
+    protected final List<Checkpointable> items;
+}
@@ -0,0 +1,318 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.action;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.Deflater;
+
+import etomica.api.IAtom;
+import etomica.api.IAtomKinetic;
+import etomica.api.IAtomList;
+import etomica.api.IBox;
+import etomica.api.IVector;
+import etomica.api.IVectorMutable;
+import etomica.space.ISpace;
+
+/**
+ * Appends a box's configuration to a trajectory file each time the action
+ * is performed (typically from an IntegratorListenerAction).  Each frame
+ * holds the box dimensions and the leaf atom positions (and optionally
+ * velocities) as fixed-layout binary doubles or, with setUseFloat, floats.
+ * Frames can also be compressed (with Deflater).  The file can be read, a
+ * frame at a time in any order, by ConfigurationTrajectoryBinary.
+ * <p>
+ * The file starts with a header
+ * <pre>
+ *   int MAGIC, int VERSION, int flags, int D, int number of atoms
+ * </pre>
+ * followed by the frames, each as an int giving its length in bytes and the
+ * (possibly compressed) frame.  close() appends an index, the offset of each
+ * frame as a long, followed by
+ * <pre>
+ *   long offset of the index, int number of frames, int INDEX_MAGIC
+ * </pre>
+ * A file that wasn't closed can still be read; the reader then finds the
+ * frames by walking through them.
+ */
+public class WriteTrajectoryBinary implements IAction {
+
+    public static final int MAGIC = 0x45545251;
+    public static final int INDEX_MAGIC = 0x45494458;
+    public static final int VERSION = 1;
+    public static final int FLAG_FLOAT = 1;
+    public static final int FLAG_COMPRESSED = 2;
+    public static final int FLAG_VELOCITIES = 4;
+    public static final int HEADER_SIZE = 20;
+
+    public WriteTrajectoryBinary(ISpace space) {
+        writePosition = space.makeVector();
+        setDoApplyPBC(true);
+        offsets = new long[16];
+    }
+
+    /**
+     * Sets the file to write to.  If the file exists, it is overwritten.
+     */
+    public void setFileName(String newFileName) {
+        if (channel != null) {
+            throw new IllegalStateException("can't change the file while it is being written");
+        }
+        fileName = newFileName;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Sets the box whose atom coordinates get written to the file.
+     */
+    public void setBox(IBox newBox) {
+        box = newBox;
+    }
+
+    /**
+     * Returns the box whose atom coordinates get written to the file.
+     */
+    public IBox getBox() {
+        return box;
+    }
+
+    /**
+     * Directs the writer to apply periodic boundary conditions or not (true 
+     * by default).
+     */
+    public void setDoApplyPBC(boolean newDoApplyPBC) {
+        doApplyPBC = newDoApplyPBC;
+    }
+
+    /**
+     * Returns true if PBC are applied to coordinates written to the file.
+     */
+    public boolean getDoApplyPBC() {
+        return doApplyPBC;
+    }
+
+    /**
+     * Directs the writer to store coordinates as floats (halving the size
+     * of the file) rather than doubles.  Must be set before the first frame
+     * is written.
+     */
+    public void setUseFloat(boolean newUseFloat) {
+        checkNotStarted();
+        useFloat = newUseFloat;
+    }
+
+    public boolean isUseFloat() {
+        return useFloat;
+    }
+
+    /**
+     * Directs the writer to compress each frame.  Must be set before the
+     * first frame is written.
+     */
+    public void setCompressed(boolean newCompressed) {
+        checkNotStarted();
+        compressed = newCompressed;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Directs the writer to store atom velocities (the atoms must be
+     * IAtomKinetic) as well as positions.  Must be set before the first
+     * frame is written.
+     */
+    public void setWriteVelocities(boolean newWriteVelocities) {
+        checkNotStarted();
+        writeVelocities = newWriteVelocities;
+    }
+
+    public boolean isWriteVelocities() {
+        return writeVelocities;
+    }
+
+    protected void checkNotStarted() {
+        if (channel != null) {
+            throw new IllegalStateException("can't change the format after writing has started");
+        }
+    }
+
+    /**
+     * Returns the number of frames written so far.
+     */
+    public int getFrameCount() {
+        return nFrames;
+    }
+
+    /**
+     * Appends the current configuration to the file, opening the file (and
+     * writing the header) for the first frame.
+     */
+    public void actionPerformed() {
+        IAtomList leafList = box.getLeafList();
+        int nLeaf = leafList.getAtomCount();
+        int dim = writePosition.getD();
+        try {
+            if (channel == null) {
+                open(dim, nLeaf);
+            }
+            else if (nLeaf != nAtoms) {
+                throw new IllegalStateException("number of atoms changed from "+nAtoms+" to "+nLeaf);
+            }
+            frame.clear();
+            IVector boxSize = box.getBoundary().getBoxSize();
+            for (int j=0; j<dim; j++) {
+                put(boxSize.getX(j));
+            }
+            for (int iLeaf=0; iLeaf<nLeaf; iLeaf++) {
+                IAtom a = leafList.getAtom(iLeaf);
+                writePosition.E(a.getPosition());
+                if (doApplyPBC) {
+                    IVector shift = box.getBoundary().centralImage(writePosition);
+                    if (!shift.isZero()) {
+                        writePosition.PE(shift);
+                    }
+                }
+                for (int j=0; j<dim; j++) {
+                    put(writePosition.getX(j));
+                }
+            }
+            if (writeVelocities) {
+                for (int iLeaf=0; iLeaf<nLeaf; iLeaf++) {
+                    IVector v = ((IAtomKinetic)leafList.getAtom(iLeaf)).getVelocity();
+                    for (int j=0; j<dim; j++) {
+                        put(v.getX(j));
+                    }
+                }
+            }
+            frame.flip();
+            ByteBuffer record = frame;
+            if (compressed) {
+                deflater.reset();
+                deflater.setInput(frame.array(), 0, frame.limit());
+                deflater.finish();
+                int len = 0;
+                while (!deflater.finished()) {
+                    if (len == compressedFrame.length) {
+                        byte[] newCompressed = new byte[2*compressedFrame.length];
+                        System.arraycopy(compressedFrame, 0, newCompressed, 0, len);
+                        compressedFrame = newCompressed;
+                    }
+                    len += deflater.deflate(compressedFrame, len, compressedFrame.length-len);
+                }
+                record = ByteBuffer.wrap(compressedFrame, 0, len);
+            }
+            if (nFrames == offsets.length) {
+                long[] newOffsets = new long[2*offsets.length];
+                System.arraycopy(offsets, 0, newOffsets, 0, nFrames);
+                offsets = newOffsets;
+            }
+            offsets[nFrames] = position;
+            lengthBuffer.clear();
+            lengthBuffer.putInt(record.remaining());
+            lengthBuffer.flip();
+            position += 4 + record.remaining();
+            write(lengthBuffer);
+            write(record);
+            nFrames++;
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected void put(double x) {
+        if (useFloat) {
+            frame.putFloat((float)x);
+        }
+        else {
+            frame.putDouble(x);
+        }
+    }
+
+    protected void open(int dim, int nLeaf) throws IOException {
+        if (fileName == null) {
+            throw new IllegalStateException("must call setFileName before actionPerformed");
+        }
+        nAtoms = nLeaf;
+        int frameSize = (useFloat ? 4 : 8) * dim * (1 + (writeVelocities ? 2 : 1) * nLeaf);
+        frame = ByteBuffer.allocate(frameSize);
+        if (compressed) {
+            deflater = new Deflater(Deflater.BEST_SPEED);
+            compressedFrame = new byte[frameSize/2 + 64];
+        }
+        lengthBuffer = ByteBuffer.allocate(4);
+        fos = new FileOutputStream(fileName);
+        channel = fos.getChannel();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt((useFloat ? FLAG_FLOAT : 0) | (compressed ? FLAG_COMPRESSED : 0) | (writeVelocities ? FLAG_VELOCITIES : 0));
+        header.putInt(dim);
+        header.putInt(nLeaf);
+        header.flip();
+        write(header);
+        position = HEADER_SIZE;
+        nFrames = 0;
+    }
+
+    protected void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Writes the frame index and closes the file.  Performing the action
+     * again starts a new file.
+     */
+    public void close() {
+        if (channel == null) return;
+        try {
+            ByteBuffer index = ByteBuffer.allocate(8*nFrames + 16);
+            for (int i=0; i<nFrames; i++) {
+                index.putLong(offsets[i]);
+            }
+            index.putLong(position);
+            index.putInt(nFrames);
+            index.putInt(INDEX_MAGIC);
+            index.flip();
+            write(index);
+            channel.close();
+            fos.close();
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        finally {
+            channel = null;
+            fos = null;
+            if (deflater != null) {
+                deflater.end();
+                deflater = null;
+            }
+        }
+    }
+
+    protected String fileName;
+    protected IBox box;
+    protected boolean doApplyPBC;
+    protected boolean useFloat, compressed, writeVelocities;
+    protected final IVectorMutable writePosition;
+    protected FileOutputStream fos;
+    protected FileChannel channel;
+    protected ByteBuffer frame, lengthBuffer;
+    protected Deflater deflater;
+    protected byte[] compressedFrame;
+    protected long position;
+    protected long[] offsets;
+    protected int nFrames, nAtoms;
+}
@@ -4,15 +4,20 @@
 
 package etomica.action.activity;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import etomica.action.Activity;
 import etomica.api.IIntegrator;
 import etomica.exception.ConfigurationOverlapException;
+import etomica.util.Checkpointable;
 import etomica.util.Debug;
 
 /**
  * Activity that repeatedly invokes an Integrator's doStep method.
  */
-public class ActivityIntegrate extends Activity {
+public class ActivityIntegrate extends Activity implements Checkpointable {
 
     /**
 	 * Constructs activity to generate configurations with
@@ -39,16 +44,25 @@ public class ActivityIntegrate extends Activity {
      * not be called directly, but instead is called by the instance's actionPerformed method.
      */
     protected void run() {
-        try {
-            integrator.reset();
+        long firstStep = 0;
+        if (resumeStep > -1) {
+            // continue from a checkpoint; the integrator was restored and
+            // must not be reset
+            firstStep = resumeStep;
+            resumeStep = -1;
         }
-        catch (ConfigurationOverlapException e) {
-            if (!ignoreOverlap) {
-                throw e;
+        else {
+            try {
+                integrator.reset();
+            }
+            catch (ConfigurationOverlapException e) {
+                if (!ignoreOverlap) {
+                    throw e;
+                }
             }
+            integrator.resetStepCount();
         }
-        integrator.resetStepCount();
-        for (stepCount = 0; stepCount < maxSteps; stepCount++) {
+        for (stepCount = firstStep; stepCount < maxSteps; stepCount++) {
             if (Debug.ON) {
                 if (stepCount == Debug.START) Debug.DEBUG_NOW = true;
                 if (stepCount == Debug.STOP) break;
@@ -105,6 +119,23 @@ public class ActivityIntegrate extends Activity {
     public long getCurrentStep() {
         return stepCount;
     }
+
+    /**
+     * Writes the number of steps taken by the integrator so far in this run
+     * (steps are counted from the start of the run).
+     */
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        out.writeLong(integrator.getStepCount());
+    }
+
+    /**
+     * Reads the number of steps written by writeCheckpoint.  The next run
+     * will then take only the remaining steps (up to maxSteps) and will not
+     * reset the integrator.
+     */
+    public void readCheckpoint(DataInput in) throws IOException {
+        resumeStep = in.readLong();
+    }
 	
 	/**
 	 * @return Returns the integrator.
@@ -118,4 +149,5 @@ public class ActivityIntegrate extends Activity {
     private boolean ignoreOverlap;
 	private int sleepPeriod;
 	protected long maxSteps, stepCount;
+	protected long resumeStep = -1;
 }
@@ -0,0 +1,67 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.benchmark;
+
+/**
+ * A system that BenchmarkRunner times.  setUp builds the system for a given
+ * size from a fixed seed, so that every run (and every version of the code)
+ * times the same work; operation then performs one unit of that work (an
+ * integrator step, an energy calculation, ...), which is timed repeatedly.
+ *
+ * Operations should store something they computed in result, so that the
+ * work can't be optimized away.
+ */
+public abstract class BenchmarkFixture {
+
+    /**
+     * Returns the name of the benchmark, as used to select it from the
+     * command line.
+     */
+    public abstract String getName();
+
+    /**
+     * Returns a description of one operation, used in the report.
+     */
+    public abstract String getOperationName();
+
+    /**
+     * Returns the sizes used if none are given.
+     */
+    public abstract int[] getDefaultSizes();
+
+    /**
+     * Builds the system with the given size (number of atoms, or number of
+     * points for clusters).  Any randomness must come from the given seed.
+     */
+    public abstract void setUp(int size, int seed);
+
+    /**
+     * Performs one operation on the system built by setUp.
+     */
+    public abstract void operation();
+
+    /**
+     * Releases anything made by setUp.
+     */
+    public void tearDown() {}
+
+    /**
+     * Returns a value computed by the operations.
+     */
+    public double getResult() {
+        return result;
+    }
+
+    /**
+     * Returns a note about the last run (found by tearDown), which
+     * BenchmarkRunner prints below the result, or null if there is none.
+     */
+    public String getNote() {
+        return note;
+    }
+
+    protected double result;
+    protected String note;
+}
@@ -0,0 +1,209 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.benchmark;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import etomica.util.ParameterBase;
+import etomica.util.ParseArgs;
+
+/**
+ * Times the simulation hot paths, reporting the average time per operation
+ * for each benchmark and system size.  Each benchmark is run for a number of
+ * warmup iterations (to let the JIT compile the code) followed by a number
+ * of measurement iterations, each lasting a fixed amount of time.  The score
+ * is the mean time per operation over the measurement iterations and the
+ * error is the standard error of that mean.
+ *
+ * Run with -help to see the options.  -benchmarks selects benchmarks by
+ * name, -sizes overrides the sizes and -output writes the results as CSV
+ * so that runs before and after a change can be compared.
+ */
+public class BenchmarkRunner {
+
+    /**
+     * Returns all of the benchmarks.
+     */
+    public static List<BenchmarkFixture> allBenchmarks() {
+        List<BenchmarkFixture> list = new ArrayList<BenchmarkFixture>();
+        list.add(new LJMDBenchmark());
+        list.add(new HardSphereMDBenchmark(false));
+        list.add(new HardSphereMDBenchmark(true));
+        list.add(new LJMCBenchmark());
+        list.add(new EwaldBenchmark(false));
+        list.add(new EwaldBenchmark(true));
+        list.add(new ClusterWheatleyBenchmark(true));
+        list.add(new ClusterWheatleyBenchmark(false));
+        list.add(new RDFBenchmark());
+        list.add(new IsoFreeBenchmark(true));
+        list.add(new IsoFreeBenchmark(false));
+        return list;
+    }
+
+    public BenchmarkRunner(int warmupIterations, int iterations, long iterationTime) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("need at least one measurement iteration");
+        }
+        this.warmupIterations = warmupIterations;
+        this.iterations = iterations;
+        this.iterationTime = iterationTime;
+    }
+
+    /**
+     * Runs the benchmark for the given size and returns the scores (in
+     * nanoseconds per operation) from the measurement iterations.
+     */
+    public double[] run(BenchmarkFixture benchmark, int size, int seed) {
+        benchmark.setUp(size, seed);
+        try {
+            for (int i=0; i<warmupIterations; i++) {
+                runIteration(benchmark);
+            }
+            double[] scores = new double[iterations];
+            for (int i=0; i<iterations; i++) {
+                scores[i] = runIteration(benchmark);
+            }
+            return scores;
+        }
+        finally {
+            benchmark.tearDown();
+        }
+    }
+
+    /**
+     * Performs operations until the iteration time has passed and returns
+     * the time per operation, in nanoseconds.  At least one operation is
+     * always performed.
+     */
+    protected double runIteration(BenchmarkFixture benchmark) {
+        long tEnd = System.nanoTime() + iterationTime*1000000L;
+        long t0 = System.nanoTime();
+        long nOps = 0;
+        long t;
+        do {
+            benchmark.operation();
+            nOps++;
+            t = System.nanoTime();
+        } while (t < tEnd);
+        sink += benchmark.getResult();
+        return (t - t0)/(double)nOps;
+    }
+
+    /**
+     * Returns the mean of the scores.
+     */
+    public static double mean(double[] scores) {
+        double sum = 0;
+        for (int i=0; i<scores.length; i++) {
+            sum += scores[i];
+        }
+        return sum/scores.length;
+    }
+
+    /**
+     * Returns the standard error of the mean of the scores.
+     */
+    public static double error(double[] scores) {
+        if (scores.length < 2) return Double.NaN;
+        double avg = mean(scores);
+        double sum = 0;
+        for (int i=0; i<scores.length; i++) {
+            sum += (scores[i]-avg)*(scores[i]-avg);
+        }
+        return Math.sqrt(sum/(scores.length-1)/scores.length);
+    }
+
+    public static void main(String[] args) {
+        BenchmarkParam params = new BenchmarkParam();
+        if (args.length > 0) {
+            ParseArgs.doParseArgs(params, args);
+        }
+        List<BenchmarkFixture> benchmarks = allBenchmarks();
+        if (params.benchmarks.length > 0) {
+            List<BenchmarkFixture> selected = new ArrayList<BenchmarkFixture>();
+            for (int i=0; i<params.benchmarks.length; i++) {
+                boolean found = false;
+                for (BenchmarkFixture b : benchmarks) {
+                    if (b.getName().equals(params.benchmarks[i])) {
+                        selected.add(b);
+                        found = true;
+                    }
+                }
+                if (!found) {
+                    throw new IllegalArgumentException("unknown benchmark "+params.benchmarks[i]);
+                }
+            }
+            benchmarks = selected;
+        }
+
+        BenchmarkRunner runner = new BenchmarkRunner(params.warmupIterations, params.iterations, params.iterationTime);
+        FileWriter csv = null;
+        try {
+            if (params.output.length() > 0) {
+                csv = new FileWriter(params.output);
+                csv.write("benchmark,size,operation,ns_per_op,error\n");
+            }
+            System.out.println(String.format("%-20s %8s %-24s %16s %12s", "benchmark", "size", "operation", "ns/op", "error"));
+            for (BenchmarkFixture b : benchmarks) {
+                int[] sizes = params.sizes.length > 0 ? params.sizes : b.getDefaultSizes();
+                for (int i=0; i<sizes.length; i++) {
+                    double[] scores = runner.run(b, sizes[i], params.seed);
+                    double score = mean(scores);
+                    double err = error(scores);
+                    System.out.println(String.format("%-20s %8d %-24s %16.1f %12.1f", b.getName(), sizes[i], b.getOperationName(), score, err));
+                    if (b.getNote() != null) {
+                        System.out.println("  "+b.getNote());
+                    }
+                    if (params.verbose) {
+                        System.out.println("  iterations: "+Arrays.toString(scores));
+                    }
+                    if (csv != null) {
+                        csv.write(b.getName()+","+sizes[i]+","+b.getOperationName()+","+score+","+err+"\n");
+                        csv.flush();
+                    }
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        finally {
+            if (csv != null) {
+                try {
+                    csv.close();
+                }
+                catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        if (Double.isNaN(runner.sink)) {
+            System.out.println("some benchmark produced NaN");
+        }
+    }
+
+    protected final int warmupIterations, iterations;
+    protected final long iterationTime;
+    protected double sink;
+
+    public static class BenchmarkParam extends ParameterBase {
+        // names of the benchmarks to run; all if empty
+        public String[] benchmarks = new String[0];
+        // sizes to use for every benchmark; each benchmark's defaults if empty
+        public int[] sizes = new int[0];
+        public int warmupIterations = 3;
+        public int iterations = 5;
+        // length of each iteration, in milliseconds
+        public long iterationTime = 1000;
+        public int seed = 1;
+        // CSV file for the results; none if empty
+        public String output = "";
+        public boolean verbose = false;
+    }
+}
@@ -0,0 +1,105 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.benchmark;
+
+import etomica.api.IAtomList;
+import etomica.api.IMolecule;
+import etomica.api.IRandom;
+import etomica.api.IVectorMutable;
+import etomica.potential.P2LennardJones;
+import etomica.simulation.Simulation;
+import etomica.space.ISpace;
+import etomica.space.IVectorRandom;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.RandomMersenneTwister;
+import etomica.virial.BoxCluster;
+import etomica.virial.ClusterAbstract;
+import etomica.virial.ClusterWeightAbs;
+import etomica.virial.ClusterWheatleyHS;
+import etomica.virial.ClusterWheatleySoft;
+import etomica.virial.MayerGeneralSpherical;
+import etomica.virial.MayerHardSphere;
+
+/**
+ * Mayer sampling of ClusterWheatleyHS (hard spheres) or ClusterWheatleySoft
+ * (Lennard-Jones at T=1), where the size is the number of points.  Each
+ * operation is a single-atom displacement (declared to the box, as
+ * MCMoveClusterAtom does), evaluation of the cluster and a Metropolis
+ * acceptance test on the absolute value of the cluster.
+ */
+public class ClusterWheatleyBenchmark extends BenchmarkFixture {
+
+    public ClusterWheatleyBenchmark(boolean hardSphere) {
+        this.hardSphere = hardSphere;
+    }
+
+    public String getName() {
+        return hardSphere ? "wheatleyhs" : "wheatleysoft";
+    }
+
+    public String getOperationName() {
+        return "cluster move";
+    }
+
+    public int[] getDefaultSizes() {
+        return new int[]{4, 5, 6, 7, 8};
+    }
+
+    public void setUp(int size, int seed) {
+        ISpace space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species);
+        if (hardSphere) {
+            cluster = new ClusterWheatleyHS(size, new MayerHardSphere(1.0));
+        }
+        else {
+            cluster = new ClusterWheatleySoft(size, new MayerGeneralSpherical(new P2LennardJones(space)), 1e-12);
+        }
+        cluster.setTemperature(1.0);
+        box = new BoxCluster(new ClusterWeightAbs(cluster), space);
+        sim.addBox(box);
+        box.setNMolecules(species, size);
+        random = new RandomMersenneTwister(seed);
+        step = (IVectorRandom)space.makeVector();
+        IAtomList leafList = box.getLeafList();
+        // start with every pair overlapping
+        for (int i=0; i<size; i++) {
+            step.setRandomCube(random);
+            step.TE(0.3);
+            leafList.getAtom(i).getPosition().E(step);
+        }
+        box.trialNotify();
+        box.acceptNotify();
+        oldValue = Math.abs(cluster.value(box));
+    }
+
+    public void operation() {
+        IAtomList leafList = box.getLeafList();
+        IMolecule molecule = leafList.getAtom(random.nextInt(leafList.getAtomCount())).getParentGroup();
+        IVectorMutable r = molecule.getChildList().getAtom(0).getPosition();
+        step.setRandomCube(random);
+        r.PE(step);
+        box.trialNotify(molecule);
+        double newValue = Math.abs(cluster.value(box));
+        if (newValue > 0 && (newValue >= oldValue || random.nextDouble() < newValue/oldValue)) {
+            box.acceptNotify();
+            oldValue = newValue;
+        }
+        else {
+            r.ME(step);
+            box.rejectNotify();
+        }
+        result = oldValue;
+    }
+
+    protected final boolean hardSphere;
+    protected ClusterAbstract cluster;
+    protected BoxCluster box;
+    protected IRandom random;
+    protected IVectorRandom step;
+    protected double oldValue;
+}
@@ -0,0 +1,99 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.benchmark;
+
+import etomica.api.IAtom;
+import etomica.api.IAtomList;
+import etomica.api.IBox;
+import etomica.api.IVectorMutable;
+import etomica.atom.AtomLeafAgentManager;
+import etomica.box.Box;
+import etomica.potential.EwaldSummation;
+import etomica.potential.EwaldSummation.MyCharge;
+import etomica.potential.EwaldSummationSPME;
+import etomica.potential.PotentialSoft;
+import etomica.simulation.Simulation;
+import etomica.space.ISpace;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.RandomMersenneTwister;
+
+/**
+ * Coulomb energy of a disordered rock-salt-like arrangement of unit charges
+ * with EwaldSummation or EwaldSummationSPME.  The size is rounded to a cube
+ * of an even number of ions per side so that the box is neutral.  Both use
+ * the real-space cutoff of 0.45 times the box length and the same
+ * Ewald splitting parameter.  Each operation is one full energy calculation.
+ */
+public class EwaldBenchmark extends BenchmarkFixture {
+
+    public EwaldBenchmark(boolean spme) {
+        this.spme = spme;
+    }
+
+    public String getName() {
+        return spme ? "spme" : "ewald";
+    }
+
+    public String getOperationName() {
+        return "energy";
+    }
+
+    public int[] getDefaultSizes() {
+        return new int[]{512, 1000, 1728};
+    }
+
+    public void setUp(int size, int seed) {
+        ISpace space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species);
+        int m = 2*Math.max(1, (int)Math.round(0.5*Math.cbrt(size)));
+        double a = 1.5;
+        double l = m*a;
+        box = new Box(space);
+        sim.addBox(box);
+        box.getBoundary().setBoxSize(space.makeVector(new double[]{l, l, l}));
+        box.setNMolecules(species, m*m*m);
+        RandomMersenneTwister random = new RandomMersenneTwister(seed);
+        IAtomList leafList = box.getLeafList();
+        final int[] charge = new int[m*m*m];
+        for (int ix=0; ix<m; ix++) {
+            for (int iy=0; iy<m; iy++) {
+                for (int iz=0; iz<m; iz++) {
+                    int i = (ix*m + iy)*m + iz;
+                    IVectorMutable r = leafList.getAtom(i).getPosition();
+                    r.setX(0, (ix+0.5)*a - 0.5*l + 0.3*(random.nextDouble()-0.5));
+                    r.setX(1, (iy+0.5)*a - 0.5*l + 0.3*(random.nextDouble()-0.5));
+                    r.setX(2, (iz+0.5)*a - 0.5*l + 0.3*(random.nextDouble()-0.5));
+                    charge[i] = (ix+iy+iz)%2 == 0 ? 1 : -1;
+                }
+            }
+        }
+        AtomLeafAgentManager<MyCharge> agentManager = new AtomLeafAgentManager<MyCharge>(new AtomLeafAgentManager.AgentSource<MyCharge>() {
+            public MyCharge makeAgent(IAtom atom) {
+                return new MyCharge(charge[atom.getLeafIndex()]);
+            }
+            public void releaseAgent(MyCharge agent, IAtom atom) {}
+        }, box, MyCharge.class);
+        double rCut = 0.45*l;
+        double alpha = EwaldSummationSPME.alphaForTolerance(rCut, 1e-6);
+        if (spme) {
+            potential = new EwaldSummationSPME(box, agentManager, space, rCut, 1e-6);
+        }
+        else {
+            // EwaldSummation takes alpha from rCut and kCut: alpha = sqrt(kCut/(2 rCut))
+            potential = new EwaldSummation(box, agentManager, space, 2*alpha*alpha*rCut, rCut);
+        }
+    }
+
+    public void operation() {
+        result = potential.energy(null);
+    }
+
+    protected final boolean spme;
+    protected IBox box;
+    protected PotentialSoft potential;
+}
@@ -0,0 +1,125 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.benchmark;
+
+import etomica.action.BoxInflate;
+import etomica.api.IAtomType;
+import etomica.api.IBox;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.integrator.IntegratorHard;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.nbr.cell.P1CellCrossing;
+import etomica.nbr.cell.PotentialMasterCell;
+import etomica.nbr.list.PotentialMasterList;
+import etomica.potential.P2HardSphere;
+import etomica.potential.PotentialMaster;
+import etomica.simulation.Simulation;
+import etomica.space.ISpace;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.EventCalendarQueue;
+import etomica.util.RandomMersenneTwister;
+
+/**
+ * Event-driven molecular dynamics of hard spheres (packing fraction 0.35)
+ * with IntegratorHard.  Each operation is one time step of 0.01 (roughly
+ * 0.07 collisions per atom).  The number of collisions per step is given
+ * as the note for each size so that the cost per collision can be found.
+ * <p>
+ * The default uses PotentialMasterList and the integrator's default event
+ * queue.  The cell variant uses PotentialMasterCell with cell-crossing
+ * events, an EventCalendarQueue and lazy time with integrator events fired
+ * every 100 steps; its collision count includes the cell crossings.
+ */
+public class HardSphereMDBenchmark extends BenchmarkFixture {
+
+    public HardSphereMDBenchmark(boolean cellCrossing) {
+        this.cellCrossing = cellCrossing;
+    }
+
+    public String getName() {
+        return cellCrossing ? "hsmdcell" : "hsmd";
+    }
+
+    public String getOperationName() {
+        return "MD step";
+    }
+
+    public int[] getDefaultSizes() {
+        return cellCrossing ? new int[]{500, 10000, 100000} : new int[]{500, 4000, 32000};
+    }
+
+    public void setUp(int size, int seed) {
+        ISpace space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        sim.setRandom(new RandomMersenneTwister(seed));
+        PotentialMaster potentialMaster;
+        if (cellCrossing) {
+            potentialMaster = new PotentialMasterCell(sim, 1.0, space);
+            ((PotentialMasterCell)potentialMaster).setCellRange(1);
+        }
+        else {
+            potentialMaster = new PotentialMasterList(sim, 1.6, space);
+            ((PotentialMasterList)potentialMaster).setCellRange(1);
+        }
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        species.setIsDynamic(true);
+        sim.addSpecies(species);
+        box = new Box(space);
+        sim.addBox(box);
+        box.setNMolecules(species, size);
+        BoxInflate inflater = new BoxInflate(box, space);
+        inflater.setTargetDensity(0.35*6/Math.PI);
+        inflater.actionPerformed();
+        new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+        IAtomType leafType = species.getLeafType();
+        potentialMaster.addPotential(new P2HardSphere(space, 1.0, false), new IAtomType[]{leafType, leafType});
+
+        integrator = new IntegratorHard(sim, potentialMaster, space);
+        integrator.setTimeStep(0.01);
+        integrator.setTemperature(1.0);
+        integrator.setBox(box);
+        if (cellCrossing) {
+            integrator.setEventQueue(new EventCalendarQueue());
+            integrator.setNullPotential(new P1CellCrossing(space, (PotentialMasterCell)potentialMaster), leafType);
+            integrator.setFullNeighborSearch(true);
+            integrator.setLazyTime(true);
+            integrator.setEventInterval(100);
+            ((PotentialMasterCell)potentialMaster).getNbrCellManager(box).assignCellAll();
+        }
+        else {
+            integrator.getEventManager().addListener(((PotentialMasterList)potentialMaster).getNeighborManager(box));
+        }
+        integrator.reset();
+        integrator.setIsothermal(true);
+        integrator.setIsothermal(false);
+        // get away from the lattice
+        for (int i=0; i<100; i++) {
+            integrator.doStep();
+        }
+        collisions0 = integrator.getCollisionCount();
+        steps0 = integrator.getStepCount();
+        note = null;
+    }
+
+    public void operation() {
+        integrator.doStep();
+        result = integrator.getCollisionCount();
+    }
+
+    public void tearDown() {
+        long steps = integrator.getStepCount() - steps0;
+        if (steps > 0) {
+            double c = (integrator.getCollisionCount() - collisions0)/(double)steps;
+            note = String.format("%.1f collisions per step", c);
+        }
+    }
+
+    protected final boolean cellCrossing;
+    protected IBox box;
+    protected IntegratorHard integrator;
+    protected long collisions0, steps0;
+}
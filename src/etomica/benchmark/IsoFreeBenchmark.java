@@ -0,0 +1,89 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.benchmark;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import etomica.graph.iterators.IteratorWrapper;
+import etomica.graph.iterators.filters.IsomorphismFilter;
+import etomica.graph.model.BitmapFactory;
+import etomica.graph.model.Edge;
+import etomica.graph.model.Graph;
+import etomica.graph.model.GraphFactory;
+import etomica.graph.model.GraphIterator;
+import etomica.graph.operations.IsoFree;
+import etomica.graph.operations.Split;
+import etomica.graph.operations.SplitParameters;
+
+/**
+ * Isomorph removal as done when VirialDiagrams expands the e-bonds of the
+ * full star diagram (of size points) into f-bonds and 1-bonds with Split:
+ * the 2^(n(n-1)/2) labeled, complete graphs with two edge colors are reduced
+ * to the unlabeled graphs, with coefficients summed.  Each operation is one
+ * IsoFree, either with canonical labels or (for comparison) with pairwise
+ * matching by IsomorphismFilter.
+ */
+public class IsoFreeBenchmark extends BenchmarkFixture {
+
+    public IsoFreeBenchmark(boolean canonical) {
+        this.canonical = canonical;
+    }
+
+    public String getName() {
+        return canonical ? "isofree" : "isofreematch";
+    }
+
+    public String getOperationName() {
+        return "IsoFree";
+    }
+
+    public int[] getDefaultSizes() {
+        return new int[]{4, 5, 6};
+    }
+
+    public void setUp(int size, int seed) {
+        byte n = (byte)size;
+        Graph g = GraphFactory.createGraph(n, BitmapFactory.createBitmap(n, true));
+        for (Edge e : g.edges()) {
+            e.setColor('e');
+        }
+        // all of the labeled graphs, before Split removes isomorphs
+        graphs = new Split().apply(g, new SplitParameters('e', 'f', '1')).toArray(new Graph[0]);
+        oldDebug = IsomorphismFilter.DEBUG_MODE;
+        IsomorphismFilter.DEBUG_MODE = false;
+    }
+
+    public void operation() {
+        // IsoFree sums coefficients into the graphs it keeps
+        Set<Graph> set = new HashSet<Graph>();
+        for (int i=0; i<graphs.length; i++) {
+            graphs[i].coefficient().setNumerator(1);
+            graphs[i].coefficient().setDenominator(1);
+            set.add(graphs[i]);
+        }
+        Set<Graph> result;
+        if (canonical) {
+            result = new IsoFree().apply(set, null);
+        }
+        else {
+            result = new HashSet<Graph>();
+            GraphIterator iterator = new IsomorphismFilter(new IteratorWrapper(set.iterator(), true));
+            while (iterator.hasNext()) {
+                result.add(iterator.next());
+            }
+        }
+        this.result = result.size();
+    }
+
+    public void tearDown() {
+        IsomorphismFilter.DEBUG_MODE = oldDebug;
+        graphs = null;
+    }
+
+    protected final boolean canonical;
+    protected Graph[] graphs;
+    protected boolean oldDebug;
+}
@@ -0,0 +1,84 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.benchmark;
+
+import etomica.action.BoxInflate;
+import etomica.api.IAtomType;
+import etomica.api.IBox;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.integrator.IntegratorMC;
+import etomica.integrator.mcmove.MCMoveAtom;
+import etomica.integrator.mcmove.MCMoveStepTracker;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.nbr.cell.PotentialMasterCell;
+import etomica.potential.P2LennardJones;
+import etomica.potential.P2SoftSphericalTruncated;
+import etomica.simulation.Simulation;
+import etomica.space.ISpace;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.RandomMersenneTwister;
+
+/**
+ * Monte Carlo of a Lennard-Jones liquid (density 0.65, T=1.1, truncated at
+ * 3) with single-atom displacements and PotentialMasterCell.  Each
+ * operation is one trial move.
+ */
+public class LJMCBenchmark extends BenchmarkFixture {
+
+    public String getName() {
+        return "ljmc";
+    }
+
+    public String getOperationName() {
+        return "MC atom move";
+    }
+
+    public int[] getDefaultSizes() {
+        return new int[]{500, 4000, 32000};
+    }
+
+    public void setUp(int size, int seed) {
+        ISpace space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        sim.setRandom(new RandomMersenneTwister(seed));
+        PotentialMasterCell potentialMaster = new PotentialMasterCell(sim, space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species);
+        box = new Box(space);
+        sim.addBox(box);
+        box.setNMolecules(species, size);
+        BoxInflate inflater = new BoxInflate(box, space);
+        inflater.setTargetDensity(0.65);
+        inflater.actionPerformed();
+        new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+        P2SoftSphericalTruncated p2 = new P2SoftSphericalTruncated(space, new P2LennardJones(space), 3.0);
+        potentialMaster.setCellRange(3);
+        potentialMaster.setRange(p2.getRange());
+        IAtomType leafType = species.getLeafType();
+        potentialMaster.addPotential(p2, new IAtomType[]{leafType, leafType});
+
+        integrator = new IntegratorMC(sim, potentialMaster);
+        integrator.setTemperature(1.1);
+        MCMoveAtom mcMoveAtom = new MCMoveAtom(sim.getRandom(), potentialMaster, space);
+        mcMoveAtom.setStepSize(0.2);
+        ((MCMoveStepTracker)mcMoveAtom.getTracker()).setTunable(false);
+        integrator.getMoveManager().addMCMove(mcMoveAtom);
+        integrator.getMoveManager().setEquilibrating(false);
+        integrator.getMoveEventManager().addListener(potentialMaster.getNbrCellManager(box).makeMCMoveListener());
+        integrator.setBox(box);
+        potentialMaster.getNbrCellManager(box).assignCellAll();
+        integrator.reset();
+    }
+
+    public void operation() {
+        integrator.doStep();
+        result = integrator.getPotentialEnergy();
+    }
+
+    protected IBox box;
+    protected IntegratorMC integrator;
+}
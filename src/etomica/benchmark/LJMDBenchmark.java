@@ -0,0 +1,79 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.benchmark;
+
+import etomica.action.BoxInflate;
+import etomica.api.IAtomType;
+import etomica.api.IBox;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.integrator.IntegratorVelocityVerlet;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.nbr.list.PotentialMasterList;
+import etomica.potential.P2LennardJones;
+import etomica.potential.P2SoftSphericalTruncated;
+import etomica.simulation.Simulation;
+import etomica.space.ISpace;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.RandomMersenneTwister;
+
+/**
+ * Velocity-Verlet molecular dynamics of a Lennard-Jones liquid (density 0.8,
+ * T=1, truncated at 2.5) using PotentialMasterList.  Each operation is one
+ * time step, including neighbor list updates when needed.
+ */
+public class LJMDBenchmark extends BenchmarkFixture {
+
+    public String getName() {
+        return "ljmd";
+    }
+
+    public String getOperationName() {
+        return "MD step";
+    }
+
+    public int[] getDefaultSizes() {
+        return new int[]{500, 4000, 32000};
+    }
+
+    public void setUp(int size, int seed) {
+        ISpace space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        sim.setRandom(new RandomMersenneTwister(seed));
+        PotentialMasterList potentialMaster = new PotentialMasterList(sim, 3.0, space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        species.setIsDynamic(true);
+        sim.addSpecies(species);
+        box = new Box(space);
+        sim.addBox(box);
+        box.setNMolecules(species, size);
+        BoxInflate inflater = new BoxInflate(box, space);
+        inflater.setTargetDensity(0.8);
+        inflater.actionPerformed();
+        new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+        P2SoftSphericalTruncated p2 = new P2SoftSphericalTruncated(space, new P2LennardJones(space), 2.5);
+        IAtomType leafType = species.getLeafType();
+        potentialMaster.addPotential(p2, new IAtomType[]{leafType, leafType});
+
+        integrator = new IntegratorVelocityVerlet(sim, potentialMaster, space);
+        integrator.setTimeStep(0.005);
+        integrator.setTemperature(1.0);
+        integrator.setBox(box);
+        integrator.getEventManager().addListener(potentialMaster.getNeighborManager(box));
+        integrator.reset();
+        // give the atoms velocities and then run NVE
+        integrator.setIsothermal(true);
+        integrator.setIsothermal(false);
+    }
+
+    public void operation() {
+        integrator.doStep();
+        result = integrator.getKineticEnergy();
+    }
+
+    protected IBox box;
+    protected IntegratorVelocityVerlet integrator;
+}
@@ -0,0 +1,73 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.benchmark;
+
+import etomica.action.BoxInflate;
+import etomica.api.IAtomList;
+import etomica.api.IBox;
+import etomica.api.IVectorMutable;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.data.meter.MeterRDF;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.simulation.Simulation;
+import etomica.space.ISpace;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.RandomMersenneTwister;
+
+/**
+ * Sampling of the radial distribution function (out to 4, with 200 bins)
+ * with MeterRDF for a disordered configuration at density 0.8.  Each
+ * operation is one call to actionPerformed, which visits every pair.
+ */
+public class RDFBenchmark extends BenchmarkFixture {
+
+    public String getName() {
+        return "rdf";
+    }
+
+    public String getOperationName() {
+        return "RDF sample";
+    }
+
+    public int[] getDefaultSizes() {
+        return new int[]{500, 2000, 8000};
+    }
+
+    public void setUp(int size, int seed) {
+        ISpace space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species);
+        box = new Box(space);
+        sim.addBox(box);
+        box.setNMolecules(species, size);
+        BoxInflate inflater = new BoxInflate(box, space);
+        inflater.setTargetDensity(0.8);
+        inflater.actionPerformed();
+        new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+        RandomMersenneTwister random = new RandomMersenneTwister(seed);
+        IAtomList leafList = box.getLeafList();
+        for (int i=0; i<leafList.getAtomCount(); i++) {
+            IVectorMutable r = leafList.getAtom(i).getPosition();
+            for (int j=0; j<3; j++) {
+                r.setX(j, r.getX(j) + 0.3*(random.nextDouble()-0.5));
+            }
+        }
+        meter = new MeterRDF(space);
+        meter.getXDataSource().setXMax(4.0);
+        meter.getXDataSource().setNValues(200);
+        meter.setBox(box);
+    }
+
+    public void operation() {
+        meter.actionPerformed();
+        result = meter.getData().getValue(100);
+    }
+
+    protected IBox box;
+    protected MeterRDF meter;
+}
@@ -0,0 +1,178 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.box;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import etomica.api.IAtom;
+import etomica.api.IAtomKinetic;
+import etomica.api.IAtomList;
+import etomica.api.IBox;
+import etomica.api.IMoleculeList;
+import etomica.api.IVector;
+import etomica.api.IVectorMutable;
+import etomica.atom.IAtomOriented;
+import etomica.atom.IAtomOrientedKinetic;
+import etomica.atom.IMoleculeKinetic;
+import etomica.atom.IMoleculeOriented;
+import etomica.atom.IMoleculeOrientedKinetic;
+import etomica.atom.IMoleculePositioned;
+import etomica.space.ISpace;
+import etomica.space.IOrientation;
+import etomica.space3d.IOrientationFull3D;
+import etomica.util.Checkpointable;
+
+/**
+ * Checkpoints the configuration of a box: the box size and the position,
+ * velocity, orientation and angular velocity of each atom (and of each
+ * molecule, for molecules that have their own).  The box being restored must
+ * already hold the same number of molecules of each species; the numbers of
+ * molecules and atoms are checked.  Only the box size is restored, so a
+ * deformable boundary's shape is not.
+ */
+public class BoxCheckpoint implements Checkpointable {
+
+    public BoxCheckpoint(IBox box, ISpace space) {
+        this.box = box;
+        this.space = space;
+        work = space.makeVector();
+        work2 = space.makeVector();
+    }
+
+    public IBox getBox() {
+        return box;
+    }
+
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        IMoleculeList moleculeList = box.getMoleculeList();
+        IAtomList leafList = box.getLeafList();
+        out.writeInt(moleculeList.getMoleculeCount());
+        out.writeInt(leafList.getAtomCount());
+        writeVector(out, box.getBoundary().getBoxSize());
+
+        for (int i=0; i<moleculeList.getMoleculeCount(); i++) {
+            Object molecule = moleculeList.getMolecule(i);
+            if (molecule instanceof IMoleculePositioned) {
+                writeVector(out, ((IMoleculePositioned)molecule).getPosition());
+            }
+            if (molecule instanceof IMoleculeOriented) {
+                writeOrientation(out, ((IMoleculeOriented)molecule).getOrientation());
+            }
+            if (molecule instanceof IMoleculeKinetic) {
+                writeVector(out, ((IMoleculeKinetic)molecule).getVelocity());
+            }
+            if (molecule instanceof IMoleculeOrientedKinetic) {
+                writeVector(out, ((IMoleculeOrientedKinetic)molecule).getAngularVelocity());
+            }
+        }
+
+        for (int i=0; i<leafList.getAtomCount(); i++) {
+            IAtom atom = leafList.getAtom(i);
+            writeVector(out, atom.getPosition());
+            if (atom instanceof IAtomKinetic) {
+                writeVector(out, ((IAtomKinetic)atom).getVelocity());
+            }
+            if (atom instanceof IAtomOriented) {
+                writeOrientation(out, ((IAtomOriented)atom).getOrientation());
+            }
+            if (atom instanceof IAtomOrientedKinetic) {
+                writeVector(out, ((IAtomOrientedKinetic)atom).getAngularVelocity());
+            }
+        }
+    }
+
+    public void readCheckpoint(DataInput in) throws IOException {
+        IMoleculeList moleculeList = box.getMoleculeList();
+        IAtomList leafList = box.getLeafList();
+        int nMolecules = in.readInt();
+        int nAtoms = in.readInt();
+        if (nMolecules != moleculeList.getMoleculeCount() || nAtoms != leafList.getAtomCount()) {
+            throw new RuntimeException("checkpoint has "+nMolecules+" molecules and "+nAtoms
+                    +" atoms, but the box has "+moleculeList.getMoleculeCount()+" and "+leafList.getAtomCount());
+        }
+        readVector(in, work);
+        if (!work.equals(box.getBoundary().getBoxSize())) {
+            // setting the size notifies the box's listeners, so only do it
+            // if needed
+            box.getBoundary().setBoxSize(work);
+        }
+
+        for (int i=0; i<nMolecules; i++) {
+            Object molecule = moleculeList.getMolecule(i);
+            if (molecule instanceof IMoleculePositioned) {
+                readVector(in, ((IMoleculePositioned)molecule).getPosition());
+            }
+            if (molecule instanceof IMoleculeOriented) {
+                readOrientation(in, ((IMoleculeOriented)molecule).getOrientation());
+            }
+            if (molecule instanceof IMoleculeKinetic) {
+                readVector(in, ((IMoleculeKinetic)molecule).getVelocity());
+            }
+            if (molecule instanceof IMoleculeOrientedKinetic) {
+                readVector(in, ((IMoleculeOrientedKinetic)molecule).getAngularVelocity());
+            }
+        }
+
+        for (int i=0; i<nAtoms; i++) {
+            IAtom atom = leafList.getAtom(i);
+            readVector(in, atom.getPosition());
+            if (atom instanceof IAtomKinetic) {
+                readVector(in, ((IAtomKinetic)atom).getVelocity());
+            }
+            if (atom instanceof IAtomOriented) {
+                readOrientation(in, ((IAtomOriented)atom).getOrientation());
+            }
+            if (atom instanceof IAtomOrientedKinetic) {
+                readVector(in, ((IAtomOrientedKinetic)atom).getAngularVelocity());
+            }
+        }
+    }
+
+    protected void writeVector(DataOutput out, IVector v) throws IOException {
+        for (int j=0; j<v.getD(); j++) {
+            out.writeDouble(v.getX(j));
+        }
+    }
+
+    protected void readVector(DataInput in, IVectorMutable v) throws IOException {
+        for (int j=0; j<v.getD(); j++) {
+            v.setX(j, in.readDouble());
+        }
+    }
+
+    protected void writeOrientation(DataOutput out, IOrientation orientation) throws IOException {
+        writeVector(out, orientation.getDirection());
+        if (orientation instanceof IOrientationFull3D) {
+            writeVector(out, ((IOrientationFull3D)orientation).getSecondaryDirection());
+        }
+    }
+
+    protected void readOrientation(DataInput in, IOrientation orientation) throws IOException {
+        readVector(in, work);
+        if (orientation instanceof IOrientationFull3D) {
+            readVector(in, work2);
+            ((IOrientationFull3D)orientation).setDirections(work, work2);
+            // setDirections normalizes, which can change the last bit;
+            // put back the exact values if we can
+            IVector secondary = ((IOrientationFull3D)orientation).getSecondaryDirection();
+            if (secondary instanceof IVectorMutable) {
+                ((IVectorMutable)secondary).E(work2);
+            }
+        }
+        else {
+            orientation.setDirection(work);
+        }
+        IVector direction = orientation.getDirection();
+        if (direction instanceof IVectorMutable) {
+            ((IVectorMutable)direction).E(work);
+        }
+    }
+
+    protected final IBox box;
+    protected final ISpace space;
+    protected final IVectorMutable work, work2;
+}
@@ -0,0 +1,276 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.config;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import etomica.action.WriteTrajectoryBinary;
+import etomica.api.IAtomKinetic;
+import etomica.api.IAtomList;
+import etomica.api.IBox;
+import etomica.api.IVectorMutable;
+import etomica.space.ISpace;
+
+/**
+ * Reads frames from a trajectory file written by WriteTrajectoryBinary and
+ * assigns them to the leaf atoms in a box.  The file is memory-mapped (a
+ * window at a time), and any frame can be read directly using the index at
+ * the end of the file, so a trajectory can be replayed through meters
+ * without re-running the simulation:
+ * <pre>
+ *   for (int i=0; i&lt;config.getFrameCount(); i++) {
+ *       config.setFrame(i);
+ *       config.initializeCoordinates(box);
+ *       dataPump.actionPerformed();
+ *   }
+ * </pre>
+ * The box dimensions are set from each frame, as are atom velocities if the
+ * file has them.
+ */
+public class ConfigurationTrajectoryBinary implements Configuration {
+
+    public ConfigurationTrajectoryBinary(String fileName, ISpace space) {
+        this(fileName, space, 1 << 26);
+    }
+
+    /**
+     * Opens the file, mapping (at least) windowSize bytes of it at a time.
+     */
+    public ConfigurationTrajectoryBinary(String fileName, ISpace space, int windowSize) {
+        this.windowSize = windowSize;
+        try {
+            file = new RandomAccessFile(fileName, "r");
+            channel = file.getChannel();
+            fileSize = channel.size();
+            if (fileSize < WriteTrajectoryBinary.HEADER_SIZE) {
+                throw new RuntimeException(fileName+" is not a trajectory file");
+            }
+            map(0, WriteTrajectoryBinary.HEADER_SIZE);
+            if (window.getInt() != WriteTrajectoryBinary.MAGIC) {
+                throw new RuntimeException(fileName+" is not a trajectory file");
+            }
+            int version = window.getInt();
+            if (version != WriteTrajectoryBinary.VERSION) {
+                throw new RuntimeException("unknown trajectory file version "+version);
+            }
+            flags = window.getInt();
+            dim = window.getInt();
+            nAtoms = window.getInt();
+            if (dim != space.D()) {
+                throw new IllegalArgumentException("trajectory is "+dim+"D, space is "+space.D()+"D");
+            }
+            readIndex();
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        boolean useFloat = (flags & WriteTrajectoryBinary.FLAG_FLOAT) != 0;
+        int nValues = dim * (1 + (hasVelocities() ? 2 : 1) * nAtoms);
+        frameSize = (useFloat ? 4 : 8) * nValues;
+        values = new double[nValues];
+        if ((flags & WriteTrajectoryBinary.FLAG_COMPRESSED) != 0) {
+            inflater = new Inflater();
+            inflated = new byte[frameSize];
+            raw = new byte[frameSize/2 + 64];
+        }
+        boxSize = space.makeVector();
+    }
+
+    /**
+     * Maps the part of the file from position, of at least length bytes.
+     */
+    protected void map(long position, int length) throws IOException {
+        if (window != null && position >= windowStart && position + length <= windowStart + window.capacity()) {
+            window.position((int)(position - windowStart));
+            return;
+        }
+        windowStart = position;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(Math.max(windowSize, length), fileSize - position));
+    }
+
+    protected void readIndex() throws IOException {
+        long end = fileSize;
+        if (fileSize >= WriteTrajectoryBinary.HEADER_SIZE + 16) {
+            map(fileSize - 16, 16);
+            long indexStart = window.getLong();
+            int n = window.getInt();
+            if (window.getInt() == WriteTrajectoryBinary.INDEX_MAGIC && indexStart + 8L*n + 16 == fileSize) {
+                offsets = new long[n];
+                for (int i=0; i<n; i++) {
+                    map(indexStart + 8L*i, 8);
+                    offsets[i] = window.getLong();
+                }
+                nFrames = n;
+                return;
+            }
+        }
+        // the file wasn't closed; walk through the frames.  a frame cut off
+        // at the end of the file is ignored
+        offsets = new long[16];
+        long position = WriteTrajectoryBinary.HEADER_SIZE;
+        while (position + 4 <= end) {
+            map(position, 4);
+            int len = window.getInt();
+            if (len < 0 || position + 4 + len > end) break;
+            if (nFrames == offsets.length) {
+                long[] newOffsets = new long[2*offsets.length];
+                System.arraycopy(offsets, 0, newOffsets, 0, nFrames);
+                offsets = newOffsets;
+            }
+            offsets[nFrames++] = position;
+            position += 4 + len;
+        }
+    }
+
+    /**
+     * Returns the number of frames in the file.
+     */
+    public int getFrameCount() {
+        return nFrames;
+    }
+
+    /**
+     * Returns the number of atoms in each frame.
+     */
+    public int getAtomCount() {
+        return nAtoms;
+    }
+
+    /**
+     * Returns true if the file holds atom velocities.
+     */
+    public boolean hasVelocities() {
+        return (flags & WriteTrajectoryBinary.FLAG_VELOCITIES) != 0;
+    }
+
+    /**
+     * Sets the frame that initializeCoordinates will assign to the box.
+     */
+    public void setFrame(int newFrame) {
+        if (newFrame < 0 || newFrame >= nFrames) {
+            throw new IllegalArgumentException("frame "+newFrame+" is not in the file, which has "+nFrames+" frames");
+        }
+        frame = newFrame;
+    }
+
+    public int getFrame() {
+        return frame;
+    }
+
+    /**
+     * Reads the current frame into values.
+     */
+    protected void readFrame() {
+        if (frame == loadedFrame) return;
+        try {
+            map(offsets[frame], 4);
+            int len = window.getInt();
+            map(offsets[frame] + 4, len);
+            ByteBuffer data = window;
+            if (inflater != null) {
+                if (raw.length < len) {
+                    raw = new byte[len];
+                }
+                window.get(raw, 0, len);
+                inflater.reset();
+                inflater.setInput(raw, 0, len);
+                int n = 0;
+                while (n < frameSize && !inflater.finished()) {
+                    n += inflater.inflate(inflated, n, frameSize - n);
+                }
+                data = ByteBuffer.wrap(inflated);
+            }
+            else if (len != frameSize) {
+                throw new RuntimeException("frame "+frame+" has "+len+" bytes, expected "+frameSize);
+            }
+            if ((flags & WriteTrajectoryBinary.FLAG_FLOAT) != 0) {
+                for (int i=0; i<values.length; i++) {
+                    values[i] = data.getFloat();
+                }
+            }
+            else {
+                for (int i=0; i<values.length; i++) {
+                    values[i] = data.getDouble();
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        catch (DataFormatException e) {
+            throw new RuntimeException(e);
+        }
+        loadedFrame = frame;
+    }
+
+    /**
+     * Assigns the box dimensions, positions and (if the file has them)
+     * velocities from the current frame to the box.
+     */
+    public void initializeCoordinates(IBox box) {
+        IAtomList leafList = box.getLeafList();
+        if (leafList.getAtomCount() != nAtoms) {
+            throw new IllegalArgumentException("box has "+leafList.getAtomCount()+" atoms, trajectory has "+nAtoms);
+        }
+        readFrame();
+        for (int j=0; j<dim; j++) {
+            boxSize.setX(j, values[j]);
+        }
+        box.getBoundary().setBoxSize(boxSize);
+        int k = dim;
+        for (int iLeaf=0; iLeaf<nAtoms; iLeaf++) {
+            IVectorMutable p = leafList.getAtom(iLeaf).getPosition();
+            for (int j=0; j<dim; j++) {
+                p.setX(j, values[k++]);
+            }
+        }
+        if (hasVelocities()) {
+            for (int iLeaf=0; iLeaf<nAtoms; iLeaf++) {
+                IVectorMutable v = ((IAtomKinetic)leafList.getAtom(iLeaf)).getVelocity();
+                for (int j=0; j<dim; j++) {
+                    v.setX(j, values[k++]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases the file.
+     */
+    public void close() {
+        window = null;
+        if (inflater != null) {
+            inflater.end();
+        }
+        try {
+            file.close();
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected final RandomAccessFile file;
+    protected final FileChannel channel;
+    protected final long fileSize;
+    protected final int windowSize;
+    protected MappedByteBuffer window;
+    protected long windowStart;
+    protected int flags, dim, nAtoms;
+    protected long[] offsets;
+    protected int nFrames;
+    protected int frame, loadedFrame = -1;
+    protected final int frameSize;
+    protected final double[] values;
+    protected Inflater inflater;
+    protected byte[] inflated, raw;
+    protected final IVectorMutable boxSize;
+}
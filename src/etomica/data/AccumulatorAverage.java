@@ -4,9 +4,17 @@
 
 package etomica.data;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import etomica.data.types.DataDouble;
+import etomica.data.types.DataDoubleArray;
 import etomica.data.types.DataGroup;
 import etomica.data.types.DataGroup.DataInfoGroup;
+import etomica.data.types.DataVector;
 import etomica.units.Null;
+import etomica.util.Checkpointable;
 import etomica.util.EnumeratedType;
 
 /**
@@ -30,7 +38,7 @@ import etomica.util.EnumeratedType;
  * confidence limits for the overall average is obtained as the standard error
  * of the mean of these block averages.
  */
-public abstract class AccumulatorAverage extends DataAccumulator {
+public abstract class AccumulatorAverage extends DataAccumulator implements Checkpointable {
 
     /**
      * Default constructor sets block size to Default value, and sets the
@@ -214,6 +222,90 @@ public abstract class AccumulatorAverage extends DataAccumulator {
         return doIncludeACInError;
     }
 
+    /**
+     * Writes the sample and block counts and the most recent value.
+     * Subclasses add their sums.  The accumulator must have received its
+     * DataInfo.
+     */
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        if (mostRecent == null) {
+            throw new IllegalStateException("accumulator has not received its DataInfo");
+        }
+        out.writeLong(putCount);
+        out.writeBoolean(hasUnpushedData);
+        out.writeLong(count);
+        out.writeLong(blockCountDown);
+        out.writeLong(blockSize);
+        writeData(out, mostRecent);
+    }
+
+    /**
+     * Restores the state written by writeCheckpoint.  The accumulator must
+     * already have received the same DataInfo as the one that wrote the
+     * checkpoint.
+     */
+    public void readCheckpoint(DataInput in) throws IOException {
+        if (mostRecent == null) {
+            throw new IllegalStateException("accumulator has not received its DataInfo");
+        }
+        putCount = in.readLong();
+        hasUnpushedData = in.readBoolean();
+        count = in.readLong();
+        blockCountDown = in.readLong();
+        blockSize = in.readLong();
+        readData(in, mostRecent);
+    }
+
+    /**
+     * Writes the values held by the given data.
+     */
+    protected static void writeData(DataOutput out, IData data) throws IOException {
+        int n = data.getLength();
+        out.writeInt(n);
+        for (int i=0; i<n; i++) {
+            out.writeDouble(data.getValue(i));
+        }
+    }
+
+    /**
+     * Reads values written by writeData into the given data, which must have
+     * the same length.  Only DataDouble, DataDoubleArray, DataVector and
+     * DataGroups of those can be read.
+     */
+    protected static void readData(DataInput in, IData data) throws IOException {
+        int n = in.readInt();
+        if (n != data.getLength()) {
+            throw new RuntimeException("checkpoint has data of length "+n+", but the accumulator has "+data.getLength());
+        }
+        readValues(in, data);
+    }
+
+    protected static void readValues(DataInput in, IData data) throws IOException {
+        if (data instanceof DataDouble) {
+            ((DataDouble)data).x = in.readDouble();
+        }
+        else if (data instanceof DataDoubleArray) {
+            double[] x = ((DataDoubleArray)data).getData();
+            for (int i=0; i<x.length; i++) {
+                x[i] = in.readDouble();
+            }
+        }
+        else if (data instanceof DataVector) {
+            for (int i=0; i<data.getLength(); i++) {
+                ((DataVector)data).x.setX(i, in.readDouble());
+            }
+        }
+        else if (data instanceof DataGroup) {
+            DataGroup group = (DataGroup)data;
+            for (int i=0; i<group.getNData(); i++) {
+                readValues(in, group.getData(i));
+            }
+        }
+        else {
+            throw new IllegalArgumentException("can't read data of type "+data.getClass());
+        }
+    }
+
     /**
      * Enumerated type that can be used to indicated the statistic to be taken
      * from the accumulator (e.g., average, error, current value, etc.). An
@@ -4,6 +4,10 @@
 
 package etomica.data;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import etomica.util.Arrays;
 
 /**
@@ -113,6 +117,35 @@ public class AccumulatorAverageCollapsing extends AccumulatorAverage {
 
     }
     
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        super.writeCheckpoint(out);
+        out.writeLong(nominalBlockSize);
+        out.writeDouble(currentBlockSum);
+        out.writeDouble(totalSumSquare);
+        out.writeDouble(totalSumBlockSq);
+        out.writeDouble(correlationSum);
+        out.writeDouble(totalBlockSum);
+        out.writeInt(maxBlocks);
+        for (int i=0; i<maxBlocks; i++) {
+            out.writeDouble(blockSums[i]);
+        }
+    }
+
+    public void readCheckpoint(DataInput in) throws IOException {
+        super.readCheckpoint(in);
+        nominalBlockSize = in.readLong();
+        currentBlockSum = in.readDouble();
+        totalSumSquare = in.readDouble();
+        totalSumBlockSq = in.readDouble();
+        correlationSum = in.readDouble();
+        totalBlockSum = in.readDouble();
+        maxBlocks = in.readInt();
+        blockSums = new double[maxBlocks];
+        for (int i=0; i<maxBlocks; i++) {
+            blockSums[i] = in.readDouble();
+        }
+    }
+
     protected void collapseBlocks() {
         int intCount = (int)count;
         if (intCount % 2 == 1) {
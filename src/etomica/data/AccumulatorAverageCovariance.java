@@ -4,6 +4,10 @@
 
 package etomica.data;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import etomica.data.types.DataDoubleArray;
 import etomica.data.types.DataGroup;
 import etomica.data.types.DataGroup.DataInfoGroup;
@@ -97,6 +101,23 @@ public class AccumulatorAverageCovariance extends AccumulatorAverageFixed {
         super.doBlockSum();
     }
 
+    /**
+     * Adds the data collected by the given accumulator (which must also be an
+     * AccumulatorAverageCovariance, with the same fullCovariance setting) to
+     * this one.
+     *
+     * @see AccumulatorAverageFixed#merge(AccumulatorAverageFixed)
+     */
+    public void merge(AccumulatorAverageFixed other) {
+        if (!(other instanceof AccumulatorAverageCovariance) ||
+                ((AccumulatorAverageCovariance)other).fullCovariance != fullCovariance) {
+            throw new IllegalArgumentException("can only merge with an AccumulatorAverageCovariance of the same kind");
+        }
+        super.merge(other);
+        covSum.PE(((AccumulatorAverageCovariance)other).covSum);
+        blockCovSum.PE(((AccumulatorAverageCovariance)other).blockCovSum);
+    }
+
     public IData getData() {
         if (average == null)
             return null;
@@ -178,6 +199,18 @@ public class AccumulatorAverageCovariance extends AccumulatorAverageFixed {
         blockCovSum.E(0);
     }
 
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        super.writeCheckpoint(out);
+        writeData(out, covSum);
+        writeData(out, blockCovSum);
+    }
+
+    public void readCheckpoint(DataInput in) throws IOException {
+        super.readCheckpoint(in);
+        readData(in, covSum);
+        readData(in, blockCovSum);
+    }
+
     public IEtomicaDataInfo processDataInfo(IEtomicaDataInfo incomingDataInfo) {
         int n = incomingDataInfo.getLength();
         if (fullCovariance) {
@@ -4,6 +4,10 @@
 
 package etomica.data;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import etomica.api.IFunction;
 import etomica.data.types.DataGroup.DataInfoGroup;
 import etomica.util.Function;
@@ -213,6 +217,72 @@ public class AccumulatorAverageFixed extends AccumulatorAverage {
         return dataGroup;
     }
 
+    /**
+     * Adds the data collected by the given accumulator to this one.  Both
+     * accumulators must have received the same kind of data and have the
+     * same block size.  The other accumulator's incomplete block (if any) is
+     * added to this accumulator's incomplete block; an
+     * IllegalArgumentException is thrown if the combined incomplete block
+     * would be larger than the block size.  The other accumulator is not
+     * modified.
+     * <p>
+     * The result is exactly what this accumulator would hold if it had been
+     * given its own complete blocks, then the other's complete blocks, then
+     * the data in its own incomplete block, then the data in the other's
+     * incomplete block (except that the most recent value is the other's).
+     * If this accumulator has no incomplete block, or the other has no
+     * complete blocks, that is the same as adding the other's data after
+     * this one's.  Otherwise the merge is only approximate: the sample count,
+     * average, standard deviation and covariance are still exact, but the
+     * data is grouped into different blocks than sequential addition would
+     * give, so the error, block correlation and block covariance differ (as
+     * do the average and standard deviation if doStrictBlockData is set).
+     * To merge exactly, give each accumulator a whole number of blocks.
+     */
+    public void merge(AccumulatorAverageFixed other) {
+        if (sum == null || other.sum == null) {
+            throw new IllegalStateException("accumulators must receive data info before merging");
+        }
+        if (other.blockSize != blockSize) {
+            throw new IllegalArgumentException("block sizes differ ("+blockSize+" vs "+other.blockSize+")");
+        }
+        if (other.sum.getLength() != sum.getLength()) {
+            throw new IllegalArgumentException("accumulators hold different kinds of data");
+        }
+        long nPartial = blockSize - blockCountDown;
+        long nOtherPartial = blockSize - other.blockCountDown;
+        if (nPartial + nOtherPartial > blockSize) {
+            throw new IllegalArgumentException("incomplete blocks ("+nPartial+" + "+nOtherPartial+") don't fit in one block");
+        }
+        if (other.count > 0) {
+            if (count > 0) {
+                // correlation between our last block and their first block
+                work.E(mostRecentBlock);
+                work.TE(other.firstBlock);
+                correlationSum.PE(work);
+            }
+            else {
+                firstBlock.E(other.firstBlock);
+            }
+            mostRecentBlock.E(other.mostRecentBlock);
+            count += other.count;
+        }
+        if (other.count > 0 || nOtherPartial > 0) {
+            mostRecent.E(other.mostRecent);
+        }
+        sum.PE(other.sum);
+        sumBlockSquare.PE(other.sumBlockSquare);
+        sumSquare.PE(other.sumSquare);
+        correlationSum.PE(other.correlationSum);
+        if (nOtherPartial > 0) {
+            currentBlockSum.PE(other.currentBlockSum);
+            blockCountDown -= nOtherPartial;
+            if (blockCountDown == 0) {
+                doBlockSum();
+            }
+        }
+    }
+
     /**
      * Resets all sums to zero. All statistics are cleared.
      */
@@ -230,6 +300,28 @@ public class AccumulatorAverageFixed extends AccumulatorAverage {
         mostRecentBlock.E(Double.NaN);
     }
 
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        super.writeCheckpoint(out);
+        writeData(out, sum);
+        writeData(out, sumBlockSquare);
+        writeData(out, currentBlockSum);
+        writeData(out, sumSquare);
+        writeData(out, mostRecentBlock);
+        writeData(out, correlationSum);
+        writeData(out, firstBlock);
+    }
+
+    public void readCheckpoint(DataInput in) throws IOException {
+        super.readCheckpoint(in);
+        readData(in, sum);
+        readData(in, sumBlockSquare);
+        readData(in, currentBlockSum);
+        readData(in, sumSquare);
+        readData(in, mostRecentBlock);
+        readData(in, correlationSum);
+        readData(in, firstBlock);
+    }
+
     /**
      * Prepares the accumulator for input data.  Discards any previous 
      * contributions to statistics.
@@ -4,6 +4,8 @@
 
 package etomica.data;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.FileWriter;
 import java.io.IOException;
 
@@ -175,6 +177,34 @@ public class AccumulatorAverageFixedOutputFile extends AccumulatorAverage {
         mostRecentBlock.E(Double.NaN);
     }
 
+    /**
+     * Writes the sums.  The block averages already written to the file are
+     * not part of the checkpoint.
+     */
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        super.writeCheckpoint(out);
+        writeData(out, sum);
+        writeData(out, sumBlockSquare);
+        writeData(out, currentBlockSum);
+        writeData(out, sumSquare);
+        writeData(out, mostRecentBlock);
+        writeData(out, correlationSum);
+        writeData(out, firstBlock);
+        out.writeLong(blockCounter);
+    }
+
+    public void readCheckpoint(DataInput in) throws IOException {
+        super.readCheckpoint(in);
+        readData(in, sum);
+        readData(in, sumBlockSquare);
+        readData(in, currentBlockSum);
+        readData(in, sumSquare);
+        readData(in, mostRecentBlock);
+        readData(in, correlationSum);
+        readData(in, firstBlock);
+        blockCounter = in.readLong();
+    }
+
     /**
      * Prepares the accumulator for input data.  Discards any previous 
      * contributions to statistics.
@@ -10,12 +10,15 @@ import etomica.api.IPotentialMaster;
 import etomica.atom.iterator.IteratorDirective;
 import etomica.data.DataSourceScalar;
 import etomica.potential.PotentialCalculationEnergySum;
+import etomica.potential.PotentialMasterTargetEnergy;
 import etomica.units.Energy;
 
 /**
  * Meter for evaluation of the potential energy in a box.
  * Includes several related methods for computing the potential energy of a single
- * atom or molecule with all neighboring atoms
+ * atom or molecule with all neighboring atoms.  When the potential master
+ * implements PotentialMasterTargetEnergy, the energy of a target atom or
+ * molecule (without the long-range correction) is taken directly from it.
  *
  * @author David Kofke
  */
@@ -26,6 +29,7 @@ public class MeterPotentialEnergy extends DataSourceScalar {
         super("Potential Energy",Energy.DIMENSION);
         iteratorDirective.includeLrc = true;
         potential = potentialMaster;
+        targetEnergy = potentialMaster instanceof PotentialMasterTargetEnergy ? (PotentialMasterTargetEnergy)potentialMaster : null;
         iteratorDirective.setDirection(IteratorDirective.Direction.UP);
     }
 
@@ -60,6 +64,16 @@ public class MeterPotentialEnergy extends DataSourceScalar {
     */
     public double getDataAsScalar() {
         if (box == null) throw new IllegalStateException("must call setBox before using meter");
+        if (targetEnergy != null && !iteratorDirective.includeLrc && energy.getClass() == PotentialCalculationEnergySum.class) {
+            IAtom targetAtom = iteratorDirective.getTargetAtom();
+            if (targetAtom != null) {
+                return targetEnergy.computeEnergy(box, targetAtom);
+            }
+            IMolecule targetMolecule = iteratorDirective.getTargetMolecule();
+            if (targetMolecule != null) {
+                return targetEnergy.computeEnergy(box, targetMolecule);
+            }
+        }
     	energy.zeroSum();
         potential.calculate(box, iteratorDirective, energy);
         return energy.getSum();
@@ -85,4 +99,5 @@ public class MeterPotentialEnergy extends DataSourceScalar {
     protected final IteratorDirective iteratorDirective = new IteratorDirective();
     protected PotentialCalculationEnergySum energy = new PotentialCalculationEnergySum();
     protected final IPotentialMaster potential;
+    protected final PotentialMasterTargetEnergy targetEnergy;
 }
@@ -0,0 +1,544 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data.meter;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import etomica.action.IAction;
+import etomica.api.IAtomList;
+import etomica.api.IAtomType;
+import etomica.api.IBoundary;
+import etomica.api.IBox;
+import etomica.api.ISimulation;
+import etomica.api.IVector;
+import etomica.api.IVectorMutable;
+import etomica.atom.AtomArrayList;
+import etomica.atom.iterator.IteratorDirective;
+import etomica.data.DataSourceIndependent;
+import etomica.data.DataSourceUniform;
+import etomica.data.DataSourceUniform.LimitType;
+import etomica.data.DataTag;
+import etomica.data.IData;
+import etomica.data.IEtomicaDataInfo;
+import etomica.data.IEtomicaDataSource;
+import etomica.data.types.DataDoubleArray;
+import etomica.data.types.DataDoubleArray.DataInfoDoubleArray;
+import etomica.data.types.DataFunction;
+import etomica.data.types.DataFunction.DataInfoFunction;
+import etomica.lattice.CellLattice;
+import etomica.nbr.cell.Cell;
+import etomica.nbr.cell.NeighborCellManager;
+import etomica.space.ISpace;
+import etomica.units.Length;
+import etomica.units.Null;
+
+/**
+ * Meter for tabulation of the atomic radial distribution function (RDF) that
+ * finds pairs using a lattice of cells sized for the RDF range (xMax), so
+ * that the cost of each call to actionPerformed scales with the number of
+ * atoms rather than the number of atom pairs.  xMax must not be greater than
+ * half the box length.
+ *
+ * getData returns the RDF for all pairs of leaf atoms.  Partial RDFs for any
+ * number of pairs of atom types can be requested with addTypePair; all of
+ * them are tabulated in the same pass over the cells, and each is available
+ * as a data source from getPartial.  The number of pairs used for
+ * normalization is computed from the number of atoms of each type each time
+ * the RDF is taken, so the meter can be used when the number of atoms or the
+ * volume fluctuates.
+ *
+ * If a ForkJoinPool is given via setPool, the cells are divided among the
+ * pool's threads, each with its own histograms.
+ */
+public class MeterRDFCell implements IAction, IEtomicaDataSource, DataSourceIndependent, java.io.Serializable {
+
+    public MeterRDFCell(ISimulation sim, ISpace space) {
+        this.sim = sim;
+        this.space = space;
+
+        xDataSource = new DataSourceUniform("r", Length.DIMENSION);
+        xDataSource.setTypeMax(LimitType.HALF_STEP);
+        xDataSource.setTypeMin(LimitType.HALF_STEP);
+
+        tag = new DataTag();
+        pairTypes = new IAtomType[0][];
+        partials = new DataSourcePartialRDF[0];
+        types = new IAtomType[0];
+        typeCount = new int[0];
+        slotTable = new int[0];
+        atomTypeIndex = new int[0];
+        chunks = new SweepChunk[0];
+        chunkStart = new int[1];
+        reset();
+    }
+
+    public IEtomicaDataInfo getDataInfo() {
+        return dataInfo;
+    }
+
+    public DataTag getTag() {
+        return tag;
+    }
+
+    /**
+     * Adds a pair of atom types for which the partial RDF should be
+     * tabulated and returns the index of the partial (for getPartial).  The
+     * order of the types does not matter.  This resets the meter.
+     */
+    public int addTypePair(IAtomType type1, IAtomType type2) {
+        IAtomType[][] newPairTypes = new IAtomType[pairTypes.length+1][];
+        System.arraycopy(pairTypes, 0, newPairTypes, 0, pairTypes.length);
+        newPairTypes[pairTypes.length] = new IAtomType[]{type1, type2};
+        pairTypes = newPairTypes;
+
+        DataSourcePartialRDF[] newPartials = new DataSourcePartialRDF[partials.length+1];
+        System.arraycopy(partials, 0, newPartials, 0, partials.length);
+        newPartials[partials.length] = new DataSourcePartialRDF(partials.length);
+        partials = newPartials;
+
+        // collect the distinct types and build the table of
+        // (type, type) => partial
+        IAtomType[] newTypes = new IAtomType[0];
+        for (int i=0; i<pairTypes.length; i++) {
+            for (int j=0; j<2; j++) {
+                if (typeIndex(newTypes, pairTypes[i][j]) == -1) {
+                    IAtomType[] tmp = new IAtomType[newTypes.length+1];
+                    System.arraycopy(newTypes, 0, tmp, 0, newTypes.length);
+                    tmp[newTypes.length] = pairTypes[i][j];
+                    newTypes = tmp;
+                }
+            }
+        }
+        types = newTypes;
+        typeCount = new int[types.length];
+        int nTypes = types.length;
+        slotTable = new int[nTypes*nTypes];
+        java.util.Arrays.fill(slotTable, -1);
+        for (int i=0; i<pairTypes.length; i++) {
+            int t1 = typeIndex(types, pairTypes[i][0]);
+            int t2 = typeIndex(types, pairTypes[i][1]);
+            slotTable[t1*nTypes+t2] = i;
+            slotTable[t2*nTypes+t1] = i;
+        }
+        reset();
+        return partials.length-1;
+    }
+
+    protected static int typeIndex(IAtomType[] typeList, IAtomType type) {
+        for (int i=0; i<typeList.length; i++) {
+            if (typeList[i] == type) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of partial RDFs requested via addTypePair.
+     */
+    public int getNumPartials() {
+        return partials.length;
+    }
+
+    /**
+     * Returns the data source for the partial RDF with the given index.
+     */
+    public DataSourcePartialRDF getPartial(int i) {
+        return partials[i];
+    }
+
+    /**
+     * Sets the pool used to perform the sweep over the cells.  If null (the
+     * default), the sweep is done on the calling thread.
+     */
+    public void setPool(ForkJoinPool newPool) {
+        pool = newPool;
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Zero's out the RDF sums tracked by this meter.
+     */
+    public void reset() {
+        rData = (DataDoubleArray)xDataSource.getData();
+        xMax = xDataSource.getXMax();
+        int nBins = rData.getLength();
+        data = new DataFunction(new int[] {nBins});
+        dataInfo = new DataInfoFunction("g(r)", Null.DIMENSION, this);
+        dataInfo.addTag(tag);
+        // slot 0 holds all pairs, slot i+1 holds partial i
+        gSum = new long[(partials.length+1)*nBins];
+        pairDensitySum = new double[partials.length+1];
+        for (int i=0; i<partials.length; i++) {
+            partials[i].reset(nBins);
+        }
+        chunks = new SweepChunk[0];
+        callCount = 0;
+        if (cellManager != null) {
+            cellManager.setPotentialRange(xMax);
+        }
+    }
+
+    protected boolean needsReset() {
+        return rData != xDataSource.getData() ||
+               data.getLength() != rData.getLength() ||
+               xDataSource.getXMax() != xMax;
+    }
+
+    /**
+     * Takes the RDF for the current configuration of the box.
+     */
+    public void actionPerformed() {
+        if (needsReset()) {
+            reset();
+        }
+        IAtomList leafList = box.getLeafList();
+        int nLeaf = leafList.getAtomCount();
+        if (atomTypeIndex.length < nLeaf) {
+            atomTypeIndex = new int[nLeaf];
+        }
+        java.util.Arrays.fill(typeCount, 0);
+        for (int i=0; i<nLeaf; i++) {
+            int t = typeIndex(types, leafList.getAtom(i).getType());
+            atomTypeIndex[i] = t;
+            if (t > -1) {
+                typeCount[t]++;
+            }
+        }
+
+        // count the pairs for normalization
+        double volume = boundary.volume();
+        pairDensitySum[0] += 0.5*nLeaf*(nLeaf-1.0)/volume;
+        for (int i=0; i<pairTypes.length; i++) {
+            double n1 = typeCount[typeIndex(types, pairTypes[i][0])];
+            if (pairTypes[i][0] == pairTypes[i][1]) {
+                pairDensitySum[i+1] += 0.5*n1*(n1-1)/volume;
+            }
+            else {
+                pairDensitySum[i+1] += n1*typeCount[typeIndex(types, pairTypes[i][1])]/volume;
+            }
+        }
+
+        cellManager.assignCellAll();
+        Object[] cells = cellManager.getLattice().sites();
+        int nChunks = 1;
+        if (pool != null) {
+            nChunks = Math.min(pool.getParallelism(), cells.length);
+        }
+        if (chunks.length != nChunks) {
+            chunks = new SweepChunk[nChunks];
+            for (int c=0; c<nChunks; c++) {
+                chunks[c] = new SweepChunk();
+            }
+        }
+        for (int c=0; c<nChunks; c++) {
+            chunks[c].setLattice(cellManager.getLattice());
+        }
+        if (nChunks == 1) {
+            chunks[0].sweep(cells, 0, cells.length);
+        }
+        else {
+            // divide the cells into chunks with roughly equal numbers of atoms
+            if (chunkStart.length != nChunks+1) {
+                chunkStart = new int[nChunks+1];
+            }
+            chunkStart[0] = 0;
+            int chunk = 1;
+            long nAtoms = 0;
+            for (int i=0; i<cells.length && chunk<nChunks; i++) {
+                nAtoms += ((Cell)cells[i]).occupants().getAtomCount();
+                if (nAtoms*nChunks >= (long)chunk*nLeaf) {
+                    chunkStart[chunk++] = i+1;
+                }
+            }
+            while (chunk <= nChunks) {
+                chunkStart[chunk++] = cells.length;
+            }
+            pool.invoke(new SweepTask(cells, 0, nChunks));
+        }
+        for (int c=0; c<nChunks; c++) {
+            long[] hist = chunks[c].hist;
+            for (int i=0; i<hist.length; i++) {
+                gSum[i] += hist[i];
+                hist[i] = 0;
+            }
+        }
+        callCount++;
+    }
+
+    /**
+     * Fills y with the RDF computed from the histogram in the given slot.
+     */
+    protected void computeRDF(int slot, double[] y) {
+        double[] r = rData.getData();
+        double dx2 = 0.5*(xMax - xDataSource.getXMin())/r.length;
+        int offset = slot*r.length;
+        double norm = pairDensitySum[slot];
+        for (int i=0; i<r.length; i++) {
+            if (norm == 0) {
+                y[i] = Double.NaN;
+                continue;
+            }
+            double vShell = space.sphereVolume(r[i]+dx2)-space.sphereVolume(r[i]-dx2);
+            y[i] = gSum[offset+i] / (norm*vShell);
+        }
+    }
+
+    /**
+     * Returns the RDF for all pairs, averaged over the calls to
+     * actionPerformed since the meter was reset or had some parameter
+     * changed (xMax or # of bins).
+     */
+    public IData getData() {
+        if (needsReset()) {
+            reset();
+            //that zeroed everything.  just return the zeros.
+            return data;
+        }
+        computeRDF(0, data.getData());
+        return data;
+    }
+
+    public DataSourceUniform getXDataSource() {
+        return xDataSource;
+    }
+
+    public DataDoubleArray getIndependentData(int i) {
+        return (DataDoubleArray)xDataSource.getData();
+    }
+
+    public DataInfoDoubleArray getIndependentDataInfo(int i) {
+        return (DataInfoDoubleArray)xDataSource.getDataInfo();
+    }
+
+    public DataTag getIndependentTag() {
+        return xDataSource.getTag();
+    }
+
+    public int getIndependentArrayDimension() {
+        return 1;
+    }
+
+    public IBox getBox() {
+        return box;
+    }
+
+    /**
+     * Sets the box and constructs the cells used to find pairs.
+     */
+    public void setBox(IBox newBox) {
+        box = newBox;
+        boundary = box.getBoundary();
+        periodicity = new boolean[space.D()];
+        for (int i=0; i<periodicity.length; i++) {
+            periodicity[i] = boundary.getPeriodicity(i);
+        }
+        cellManager = new NeighborCellManager(sim, box, xMax, space);
+        cellManager.setDoApplyPBC(true);
+        chunks = new SweepChunk[0];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    private static final long serialVersionUID = 1L;
+    protected final ISimulation sim;
+    protected final ISpace space;
+    protected IBox box;
+    protected IBoundary boundary;
+    protected boolean[] periodicity;
+    protected NeighborCellManager cellManager;
+    protected long[] gSum;
+    protected double[] pairDensitySum;
+    protected DataFunction data;
+    protected IEtomicaDataInfo dataInfo;
+    protected DataDoubleArray rData;
+    protected final DataSourceUniform xDataSource;
+    protected double xMax;
+    protected String name;
+    protected final DataTag tag;
+    protected long callCount;
+    protected IAtomType[][] pairTypes;
+    protected DataSourcePartialRDF[] partials;
+    protected IAtomType[] types;
+    protected int[] typeCount, slotTable, atomTypeIndex;
+    protected transient ForkJoinPool pool;
+    protected SweepChunk[] chunks;
+    protected int[] chunkStart;
+
+    /**
+     * Histograms and work objects for one chunk of cells.
+     */
+    protected class SweepChunk {
+        public SweepChunk() {
+            nbrIterator = new CellLattice.NeighborIterator(space.D(), xMax);
+            nbrIterator.setDirection(IteratorDirective.Direction.UP);
+            latticeIndex = new int[space.D()];
+            dr = space.makeVector();
+            hist = new long[gSum.length];
+        }
+
+        public void setLattice(CellLattice lattice) {
+            this.lattice = lattice;
+            nbrIterator.setLattice(lattice);
+            nbrIterator.setPeriodicity(periodicity);
+        }
+
+        /**
+         * Adds all pairs with the first atom in cells start through end-1
+         * (and the second in the same cell or an uplist neighbor cell) to the
+         * histograms.
+         */
+        public void sweep(Object[] cells, int start, int end) {
+            nbrIterator.checkDimensions();
+            for (int c=start; c<end; c++) {
+                AtomArrayList occupants = ((Cell)cells[c]).occupants();
+                int nOccupants = occupants.getAtomCount();
+                if (nOccupants == 0) continue;
+                for (int i=0; i<nOccupants-1; i++) {
+                    for (int j=i+1; j<nOccupants; j++) {
+                        addPair(occupants, i, occupants, j);
+                    }
+                }
+                lattice.latticeIndex(c, latticeIndex);
+                nbrIterator.setSite(latticeIndex);
+                nbrIterator.reset();
+                while (nbrIterator.hasNext()) {
+                    AtomArrayList nbrOccupants = ((Cell)nbrIterator.next()).occupants();
+                    int nNbrOccupants = nbrOccupants.getAtomCount();
+                    for (int i=0; i<nOccupants; i++) {
+                        for (int j=0; j<nNbrOccupants; j++) {
+                            addPair(occupants, i, nbrOccupants, j);
+                        }
+                    }
+                }
+            }
+        }
+
+        protected void addPair(AtomArrayList list0, int i, AtomArrayList list1, int j) {
+            IVector r0 = list0.getAtom(i).getPosition();
+            IVector r1 = list1.getAtom(j).getPosition();
+            dr.Ev1Mv2(r1, r0);
+            boundary.nearestImage(dr);
+            double r2 = dr.squared();
+            if (r2 >= xMax*xMax) return;
+            int index = xDataSource.getIndex(Math.sqrt(r2));
+            if (index < 0) return;
+            hist[index]++;
+            if (slotTable.length == 0) return;
+            int t0 = atomTypeIndex[list0.getAtom(i).getLeafIndex()];
+            int t1 = atomTypeIndex[list1.getAtom(j).getLeafIndex()];
+            if (t0 < 0 || t1 < 0) return;
+            int slot = slotTable[t0*types.length+t1];
+            if (slot > -1) {
+                hist[(slot+1)*rData.getLength()+index]++;
+            }
+        }
+
+        protected final CellLattice.NeighborIterator nbrIterator;
+        protected CellLattice lattice;
+        protected final int[] latticeIndex;
+        protected final IVectorMutable dr;
+        public final long[] hist;
+    }
+
+    /**
+     * Task that sweeps a range of chunks, splitting the range until each
+     * task has one chunk.
+     */
+    protected class SweepTask extends RecursiveAction {
+        public SweepTask(Object[] cells, int firstChunk, int lastChunk) {
+            this.cells = cells;
+            this.firstChunk = firstChunk;
+            this.lastChunk = lastChunk;
+        }
+
+        protected void compute() {
+            if (lastChunk - firstChunk == 1) {
+                chunks[firstChunk].sweep(cells, chunkStart[firstChunk], chunkStart[lastChunk]);
+                return;
+            }
+            int mid = (firstChunk + lastChunk)/2;
+            invokeAll(new SweepTask(cells, firstChunk, mid), new SweepTask(cells, mid, lastChunk));
+        }
+
+        private static final long serialVersionUID = 1L;
+        protected final Object[] cells;
+        protected final int firstChunk, lastChunk;
+    }
+
+    /**
+     * Data source for one of the partial RDFs tabulated by the meter.
+     */
+    public class DataSourcePartialRDF implements IEtomicaDataSource, DataSourceIndependent, java.io.Serializable {
+
+        protected DataSourcePartialRDF(int index) {
+            this.index = index;
+            partialTag = new DataTag();
+            reset(rData.getLength());
+        }
+
+        protected void reset(int nBins) {
+            partialData = new DataFunction(new int[] {nBins});
+            partialDataInfo = new DataInfoFunction("g(r)", Null.DIMENSION, this);
+            partialDataInfo.addTag(partialTag);
+        }
+
+        /**
+         * Returns the pair of atom types for this partial RDF.
+         */
+        public IAtomType[] getTypes() {
+            return pairTypes[index];
+        }
+
+        public IData getData() {
+            if (needsReset()) {
+                MeterRDFCell.this.reset();
+                return partialData;
+            }
+            computeRDF(index+1, partialData.getData());
+            return partialData;
+        }
+
+        public IEtomicaDataInfo getDataInfo() {
+            return partialDataInfo;
+        }
+
+        public DataTag getTag() {
+            return partialTag;
+        }
+
+        public DataDoubleArray getIndependentData(int i) {
+            return (DataDoubleArray)xDataSource.getData();
+        }
+
+        public DataInfoDoubleArray getIndependentDataInfo(int i) {
+            return (DataInfoDoubleArray)xDataSource.getDataInfo();
+        }
+
+        public DataTag getIndependentTag() {
+            return xDataSource.getTag();
+        }
+
+        public int getIndependentArrayDimension() {
+            return 1;
+        }
+
+        private static final long serialVersionUID = 1L;
+        protected final int index;
+        protected final DataTag partialTag;
+        protected DataFunction partialData;
+        protected IEtomicaDataInfo partialDataInfo;
+    }
+}
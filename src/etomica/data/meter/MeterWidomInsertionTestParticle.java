@@ -0,0 +1,341 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data.meter;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import etomica.action.MoleculeActionTranslateTo;
+import etomica.api.IBox;
+import etomica.api.IMolecule;
+import etomica.api.IPotentialMaster;
+import etomica.api.IRandom;
+import etomica.api.ISpecies;
+import etomica.api.IVectorMutable;
+import etomica.atom.iterator.IteratorDirective;
+import etomica.box.RandomPositionSource;
+import etomica.box.RandomPositionSourceRectangular;
+import etomica.data.DataSourceScalar;
+import etomica.integrator.IntegratorBox;
+import etomica.potential.PotentialCalculationEnergySum;
+import etomica.potential.PotentialMasterTestParticle;
+import etomica.space.ISpace;
+import etomica.units.Null;
+
+/**
+ * Meter to measure the chemical potential (as its exponent: exp(-mu/kT)) of a
+ * species via the Widom insertion method, like MeterWidomInsertion, but
+ * without adding the test molecule to the box.  The energy of each trial
+ * insertion is computed by a PotentialMasterTestParticle, so no box events
+ * are fired and agent managers, cells and neighbor lists are left alone.
+ * <br>
+ * The trial positions are all drawn (serially, from the position source)
+ * before any energies are computed.  If a ForkJoinPool is given via setPool,
+ * the insertions are divided into batches, each with its own test molecule
+ * and TestParticleEnergy, which are evaluated concurrently.  The same
+ * insertions are done with or without a pool, so results differ only by
+ * roundoff.
+ * <br>
+ * The test molecule is only translated, so its intramolecular energy is
+ * computed once per call.  The long-range correction (if included) is also
+ * computed once per call, for the test molecule as a target with the
+ * molecules currently in the box.
+ *
+ * The actual chemical potential can be calculated as -kT ln(<x>) where x is
+ * the value returned by getDataAsScalar.
+ *
+ * @see MeterWidomInsertion
+ */
+public class MeterWidomInsertionTestParticle extends DataSourceScalar {
+
+    public MeterWidomInsertionTestParticle(ISpace space, IRandom random) {
+        super("exp(-\u03BC/kT)", Null.DIMENSION);//"\u03BC" is Unicode for greek "mu"
+        this.space = space;
+        setNInsert(100);
+        setResidual(true);
+        setIncludeLrc(true);
+        positionSource = new RandomPositionSourceRectangular(space, random);
+        iteratorDirective = new IteratorDirective();
+        lrcEnergySum = new PotentialCalculationEnergySum();
+        batches = new Batch[0];
+        positions = new IVectorMutable[0];
+    }
+
+    /**
+     * Sets flag specifying if full or residual chemical potential is computed
+     * Default is <code>true</code> (only residual is computed)
+     */
+    public void setResidual(boolean b) {
+        residual = b;
+    }
+
+    /**
+     * Accessor for flag specifying if full or residual chemical potential is
+     * computed
+     */
+    public boolean isResidual() {
+        return residual;
+    }
+
+    /**
+     * Sets flag specifying whether the long-range correction is included in
+     * the insertion energy.  Default is <code>true</code>.
+     */
+    public void setIncludeLrc(boolean b) {
+        includeLrc = b;
+    }
+
+    /**
+     * Accessor for flag specifying whether the long-range correction is
+     * included in the insertion energy.
+     */
+    public boolean isIncludeLrc() {
+        return includeLrc;
+    }
+
+    /**
+     * Sets the species for which chemical potential is evaluated.
+     */
+    public void setSpecies(ISpecies s) {
+        species = s;
+        batches = new Batch[0];
+    }
+
+    /**
+     * Accessor for the species for which chemical potential is evaluated
+     */
+    public ISpecies getSpecies() {
+        return species;
+    }
+
+    /**
+     * Number of Widom insertions attempted with each call to getDataAsScalar
+     */
+    public void setNInsert(int n) {
+        nInsert = n;
+    }
+
+    /**
+     * Accessor to number of Widom insertions attempted with each call to
+     * getDataAsScalar
+     */
+    public int getNInsert() {
+        return nInsert;
+    }
+
+    public void setPressure(double newPressure) {
+        pressure = newPressure;
+    }
+
+    /**
+     * Sets the pool used to perform the insertions.  If null (the default),
+     * the insertions are done in the calling thread.  Concurrent insertions
+     * require the box's pair potentials to have reentrant energy methods (as
+     * u(r2) is for Potential2SoftSpherical).
+     */
+    public void setPool(ForkJoinPool newPool) {
+        pool = newPool;
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Performs a Widom insertion average, doing nInsert insertion attempts
+     * Temperature used to get exp(-uTest/kT) is that of the integrator for the
+     * box
+     *
+     * @return the sum of exp(-uTest/kT)/nInsert, multiplied by V/N if
+     * <code>residual</code> is false
+     */
+    public double getDataAsScalar() {
+        if (integrator != null) temperature = integrator.getTemperature();
+        int nBatches = pool == null ? 1 : Math.min(pool.getParallelism(), nInsert);
+        if (batches.length != nBatches) {
+            batches = new Batch[nBatches];
+            for (int i=0; i<nBatches; i++) {
+                batches[i] = new Batch();
+            }
+        }
+        if (positions.length != nInsert) {
+            positions = new IVectorMutable[nInsert];
+            for (int i=0; i<nInsert; i++) {
+                positions[i] = space.makeVector();
+            }
+        }
+        for (int i=0; i<nInsert; i++) {
+            positions[i].E(positionSource.randomPosition());
+        }
+
+        // the test molecule is only translated, so these are the same for
+        // every insertion
+        IMolecule testMolecule = batches[0].testMolecule;
+        double uConst = batches[0].testParticleEnergy.intraEnergy(testMolecule);
+        if (includeLrc && potentialMaster.lrcMaster() != null) {
+            iteratorDirective.setTargetMolecule(testMolecule);
+            lrcEnergySum.zeroSum();
+            potentialMaster.lrcMaster().calculate(box, iteratorDirective, lrcEnergySum);
+            uConst += lrcEnergySum.getSum();
+        }
+
+        for (int i=0; i<nBatches; i++) {
+            batches[i].start = (int)(((long)nInsert*i)/nBatches);
+            batches[i].end = (int)(((long)nInsert*(i+1))/nBatches);
+            batches[i].uConst = uConst;
+        }
+        if (nBatches == 1) {
+            batches[0].run();
+        }
+        else {
+            pool.invoke(new InsertTask(0, nBatches));
+        }
+        double sum = 0.0;
+        for (int i=0; i<nBatches; i++) {
+            sum += batches[i].sum;
+        }
+        if (Double.isInfinite(sum)) {
+            throw new RuntimeException("oops");
+        }
+
+        if (!residual) {
+            // multiply by V/N
+            sum *= box.getBoundary().volume() / (box.getNMolecules(species)+1);
+        }
+        else if (!Double.isNaN(pressure)) {
+            sum *= pressure*box.getBoundary().volume() / ((box.getNMolecules(species) + 1)*temperature);
+        }
+        return sum / nInsert; //return average
+    }
+
+    /**
+     * Returns the integrator associated with this class.  The box, potentialMaster
+     * and temperature are taken from the integrator.
+     */
+    public IntegratorBox getIntegrator() {
+        return integrator;
+    }
+
+    /**
+     * Sets the integrator associated with this class.  The box, potentialMaster
+     * and temperature are taken from the integrator.  Alternatively, you can
+     * set the temperature, box and potential master separately.
+     */
+    public void setIntegrator(IntegratorBox newIntegrator) {
+        integrator = newIntegrator;
+        setPotentialMaster(integrator.getPotentialMaster());
+        setBox(integrator.getBox());
+    }
+
+    /**
+     * Sets the potential master used to compute insertion energies.  It must
+     * implement PotentialMasterTestParticle.
+     */
+    public void setPotentialMaster(IPotentialMaster newPotentialMaster) {
+        if (!(newPotentialMaster instanceof PotentialMasterTestParticle)) {
+            throw new IllegalArgumentException("potential master must implement PotentialMasterTestParticle");
+        }
+        potentialMaster = newPotentialMaster;
+        batches = new Batch[0];
+    }
+
+    public void setBox(IBox newBox) {
+        box = newBox;
+        positionSource.setBox(box);
+        batches = new Batch[0];
+    }
+
+    public void setTemperature(double newTemperature) {
+        temperature = newTemperature;
+    }
+
+    /**
+     * Sets a new RandomPositionSource for this meter to use.  By default, a
+     * position source is used which assumes rectangular boundaries.
+     */
+    public void setPositionSource(RandomPositionSource newPositionSource) {
+        positionSource = newPositionSource;
+        if (box != null) {
+            positionSource.setBox(box);
+        }
+    }
+
+    /**
+     * Returns the RandomPositionSource used by this meter.
+     */
+    public RandomPositionSource getPositionSource() {
+        return positionSource;
+    }
+
+    protected final ISpace space;
+    protected IntegratorBox integrator;
+    protected IPotentialMaster potentialMaster;
+
+    /**
+     * Number of insertions attempted in each call to getDataAsScalar.
+     * Default is 100
+     */
+    protected int nInsert;
+    protected ISpecies species;
+    protected boolean residual; // flag to specify if total or residual chemical
+                                // potential evaluated. Default true
+    protected boolean includeLrc;
+    protected RandomPositionSource positionSource;
+    protected IBox box;
+    protected double temperature;
+    protected double pressure = Double.NaN;
+    protected transient ForkJoinPool pool;
+    protected final IteratorDirective iteratorDirective;
+    protected final PotentialCalculationEnergySum lrcEnergySum;
+    protected Batch[] batches;
+    protected IVectorMutable[] positions;
+
+    /**
+     * A range of the trial insertions, with its own test molecule and
+     * TestParticleEnergy.
+     */
+    protected class Batch {
+        public Batch() {
+            testMolecule = species.makeMolecule();
+            translator = new MoleculeActionTranslateTo(space);
+            testParticleEnergy = ((PotentialMasterTestParticle)potentialMaster).makeTestParticleEnergy(box);
+        }
+
+        public void run() {
+            sum = 0;
+            for (int i=start; i<end; i++) {
+                translator.setDestination(positions[i]);
+                translator.actionPerformed(testMolecule);
+                double u = uConst + testParticleEnergy.energy(testMolecule);
+                sum += Math.exp(-u / temperature);
+            }
+        }
+
+        protected final IMolecule testMolecule;
+        protected final MoleculeActionTranslateTo translator;
+        protected final PotentialMasterTestParticle.TestParticleEnergy testParticleEnergy;
+        protected int start, end;
+        protected double uConst, sum;
+    }
+
+    protected class InsertTask extends RecursiveAction {
+        public InsertTask(int firstBatch, int lastBatch) {
+            this.firstBatch = firstBatch;
+            this.lastBatch = lastBatch;
+        }
+
+        protected void compute() {
+            if (lastBatch - firstBatch == 1) {
+                batches[firstBatch].run();
+                return;
+            }
+            int mid = (firstBatch + lastBatch) / 2;
+            invokeAll(new InsertTask(firstBatch, mid), new InsertTask(mid, lastBatch));
+        }
+
+        protected final int firstBatch, lastBatch;
+        private static final long serialVersionUID = 1L;
+    }
+}
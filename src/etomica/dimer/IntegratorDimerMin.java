@@ -10,6 +10,7 @@ import etomica.action.CalcVibrationalModes;
 import etomica.action.WriteConfiguration;
 import etomica.action.activity.ActivityIntegrate;
 import etomica.api.IAtom;
+import etomica.api.IAtomList;
 import etomica.api.IBox;
 import etomica.api.IMoleculeList;
 import etomica.api.IPotentialMaster;
@@ -75,6 +76,7 @@ public class IntegratorDimerMin extends IntegratorBox implements AgentSource<Int
 	public boolean rotate, normalD, minFound;
 	public String file;
 	public WriteConfiguration writer;
+	protected double[] startSaddle, startSideA, startSideB;
 	private final ISpace space;
 	public CalcVibrationalModes vib;
 	
@@ -120,7 +122,13 @@ public class IntegratorDimerMin extends IntegratorBox implements AgentSource<Int
 		
 	public void reset() {
 	    
+	    boolean wasInitialized = initialized;
         super.reset();
+        if (wasInitialized) {
+            // setup read the saddle the first time; read the (possibly
+            // different) saddle named by the current file name
+            readSaddle();
+        }
         rotate = true;
         minFound = false;
         counter = 0;
@@ -254,6 +262,51 @@ public class IntegratorDimerMin extends IntegratorBox implements AgentSource<Int
             }
 		}  
 		
+        readSaddle();
+
+	}
+	
+	/**
+	 * Sets the positions of the movable atoms at the saddle and at the two
+	 * ends of the dimer, to be used in place of the files the next time the
+	 * integrator is reset.  Each array holds D coordinates for the first atom
+	 * of each molecule of the movable species, one species after another.
+	 */
+	public void setStartPositions(double[] saddle, double[] sideA, double[] sideB){
+	    startSaddle = saddle;
+	    startSideA = sideA;
+	    startSideB = sideB;
+	}
+	
+	/**
+	 * Reads the saddle (file+"_saddle") into the box and the starting end of
+	 * the dimer (file+"_A_saddle", or file+"_B_saddle" if normalDir is true)
+	 * into boxMin.
+	 */
+	protected void readSaddle(){
+	    if (startSaddle != null) {
+	        // use the positions given to setStartPositions, just this once
+	        IAtomList leafList = box.getLeafList();
+	        IAtomList leafListMin = boxMin.getLeafList();
+	        for (int i=0; i<leafList.getAtomCount(); i++) {
+	            leafListMin.getAtom(i).getPosition().E(leafList.getAtom(i).getPosition());
+	        }
+	        double[] start = normalD ? startSideB : startSideA;
+	        int D = space.D();
+	        for (int i=0; i<list.getAtomCount(); i++) {
+	            IVectorMutable r = list.getAtom(i).getPosition();
+	            IVectorMutable rMin = listMin.getAtom(i).getPosition();
+	            for (int k=0; k<D; k++) {
+	                r.setX(k, startSaddle[i*D+k]);
+	                rMin.setX(k, start[i*D+k]);
+	            }
+	        }
+	        startSaddle = startSideA = startSideB = null;
+	        writer = new WriteConfiguration(space);
+	        writer.setConfName(file+(normalD ? "_B_minimum" : "_A_minimum"));
+	        dimerNormal();
+	        return;
+	    }
         ConfigurationFile config = new ConfigurationFile(file+"_saddle");
         config.initializeCoordinates(box);        
         
@@ -271,7 +324,6 @@ public class IntegratorDimerMin extends IntegratorBox implements AgentSource<Int
         }
         
         dimerNormal();
-
 	}
 	
 	/**
@@ -0,0 +1,377 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.graph.isomorphism;
+
+import java.util.Arrays;
+
+import etomica.graph.model.Edge;
+import etomica.graph.model.Graph;
+import etomica.graph.model.Node;
+
+/**
+ * Computes a canonical labeling of a graph: a relabeling of its nodes that
+ * gives the same graph for every isomorph.  Two graphs are isomorphic if and
+ * only if their certificates (the canonical adjacency matrix and node
+ * colors, packed into a String) are equal, so isomorphs can be found with a
+ * single hash lookup instead of pairwise matching.
+ * <p>
+ * The labeling is found by individualization and refinement.  Nodes start
+ * out partitioned by color (and type, if types are used) and the partition
+ * is refined until nodes in each cell have the same number of edges of each
+ * color to each cell.  If some cell still has more than one node, each node
+ * in the first such cell is individualized in turn and the search continues
+ * until every cell holds a single node.  Each of these leaves gives a
+ * labeling and the greatest resulting adjacency matrix is taken.  Leaves
+ * that give the same matrix reveal automorphisms of the graph, and nodes
+ * that an automorphism (fixing the nodes already individualized) maps onto
+ * a node that has been tried are skipped.
+ * <p>
+ * Node and edge compatibility follows Match: by default, nodes and edges are
+ * compared by color only, as with MetadataImpl.rootPointsSpecial false.
+ * With useTypes, node and edge types (root or field) must also match.  Edge
+ * colors are taken in each direction (Graph.getEdge(from, to)), so reversed
+ * edge colors are handled.
+ */
+public class CanonicalLabeling {
+
+  public CanonicalLabeling() {
+    this(false);
+  }
+
+  public CanonicalLabeling(boolean useTypes) {
+    this.useTypes = useTypes;
+  }
+
+  /**
+   * Finds the canonical labeling of the graph, which can then be retrieved
+   * with getLabels() and getCertificate().
+   */
+  public void label(Graph g) {
+    search(g);
+  }
+
+  /**
+   * Returns the canonical labels for the graph; node i of the graph is node
+   * labels[i] of the canonical graph.  The array can be used with
+   * RelabelParameters.
+   */
+  public byte[] getLabels(Graph g) {
+    search(g);
+    return getLabels();
+  }
+
+  /**
+   * Returns the canonical labels for the graph last passed to label.
+   */
+  public byte[] getLabels() {
+    byte[] labels = new byte[n];
+    for (int i = 0; i < n; i++) {
+      labels[bestInv[i]] = (byte) i;
+    }
+    return labels;
+  }
+
+  /**
+   * Returns the certificate of the graph.  Graphs have the same certificate
+   * if and only if they are isomorphic.
+   */
+  public String getCertificate(Graph g) {
+    search(g);
+    return getCertificate();
+  }
+
+  /**
+   * Returns the certificate for the graph last passed to label.
+   */
+  public String getCertificate() {
+    StringBuilder sb = new StringBuilder(2 * best.length + 1);
+    sb.append((char) n);
+    for (int i = 0; i < best.length; i++) {
+      sb.append((char) (best[i] >>> 16));
+      sb.append((char) best[i]);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Returns the number of leaves reached by the last search, for testing
+   * how well automorphisms prune the search.
+   */
+  public int getLeafCount() {
+    return leafCount;
+  }
+
+  protected int nodeKey(Node node) {
+    return useTypes ? (node.getType() << 16) | node.getColor() : node.getColor();
+  }
+
+  protected int edgeKey(Edge edge) {
+    // 0 is reserved for no edge
+    return 1 + (useTypes ? (edge.getType() << 16) | edge.getColor() : edge.getColor());
+  }
+
+  protected void search(Graph g) {
+    n = g.nodeCount();
+    nodeKeys = new int[n];
+    adj = new int[n][n];
+    for (byte i = 0; i < n; i++) {
+      nodeKeys[i] = nodeKey(g.getNode(i));
+      for (byte j = 0; j < n; j++) {
+        if (i != j && g.hasEdge(i, j)) {
+          adj[i][j] = edgeKey(g.getEdge(i, j));
+        }
+      }
+    }
+    best = null;
+    bestInv = new int[n];
+    leafCount = 0;
+    nGenerators = 0;
+    generators = new int[4][];
+    nbrs = new int[n][];
+    sortKeys = new long[n][];
+    order = new int[n];
+    for (int v = 0; v < n; v++) {
+      int nNbrs = 0;
+      for (int u = 0; u < n; u++) {
+        if (adj[v][u] != 0 || adj[u][v] != 0) nNbrs++;
+      }
+      nbrs[v] = new int[nNbrs];
+      nNbrs = 0;
+      for (int u = 0; u < n; u++) {
+        if (adj[v][u] != 0 || adj[u][v] != 0) nbrs[v][nNbrs++] = u;
+      }
+      sortKeys[v] = new long[1 + nNbrs];
+    }
+
+    // start with nodes partitioned by their keys
+    int[] colors = new int[n];
+    for (int v = 0; v < n; v++) {
+      sortKeys[v][0] = nodeKeys[v];
+    }
+    assignColors(colors, 1);
+    refine(colors);
+    search(colors, new int[n], 0);
+  }
+
+  /**
+   * Searches the subtree below the given (refined) partition, where the
+   * first depth entries of prefix are the nodes individualized so far.
+   */
+  protected void search(int[] colors, int[] prefix, int depth) {
+    // each cell is labeled by its first position, so the partition is
+    // discrete when every color is used
+    int[] cellSize = new int[n];
+    for (int i = 0; i < n; i++) {
+      cellSize[colors[i]]++;
+    }
+    int target = -1;
+    for (int c = 0; c < n; c++) {
+      if (cellSize[c] > 1) {
+        target = c;
+        break;
+      }
+    }
+    if (target == -1) {
+      leaf(colors);
+      return;
+    }
+    boolean[] tried = new boolean[n];
+    for (int v = 0; v < n; v++) {
+      if (colors[v] != target) continue;
+      if (inTriedOrbit(v, tried, prefix, depth)) continue;
+      tried[v] = true;
+      int[] newColors = colors.clone();
+      // v keeps the cell's position and the rest of the cell moves after it
+      for (int u = 0; u < n; u++) {
+        if (u != v && colors[u] == target) {
+          newColors[u] = target + 1;
+        }
+      }
+      refine(newColors);
+      prefix[depth] = v;
+      search(newColors, prefix, depth + 1);
+    }
+  }
+
+  /**
+   * Returns true if v is in the same orbit as a node already tried, under
+   * the automorphisms found so far that fix the individualized nodes.
+   */
+  protected boolean inTriedOrbit(int v, boolean[] tried, int[] prefix, int depth) {
+    if (nGenerators == 0) return false;
+    int[] orbit = new int[n];
+    for (int i = 0; i < n; i++) {
+      orbit[i] = i;
+    }
+    for (int k = 0; k < nGenerators; k++) {
+      int[] gen = generators[k];
+      boolean fixes = true;
+      for (int d = 0; d < depth; d++) {
+        if (gen[prefix[d]] != prefix[d]) {
+          fixes = false;
+          break;
+        }
+      }
+      if (!fixes) continue;
+      for (int i = 0; i < n; i++) {
+        int a = find(orbit, i), b = find(orbit, gen[i]);
+        if (a != b) {
+          orbit[a] = b;
+        }
+      }
+    }
+    int rv = find(orbit, v);
+    for (int w = 0; w < n; w++) {
+      if (tried[w] && find(orbit, w) == rv) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  protected static int find(int[] orbit, int i) {
+    while (orbit[i] != i) {
+      orbit[i] = orbit[orbit[i]];
+      i = orbit[i];
+    }
+    return i;
+  }
+
+  /**
+   * Handles a discrete partition, where colors[v] is the position of node v.
+   */
+  protected void leaf(int[] colors) {
+    leafCount++;
+    int[] inv = new int[n];
+    for (int v = 0; v < n; v++) {
+      inv[colors[v]] = v;
+    }
+    int[] cert = new int[n + n * n];
+    for (int i = 0; i < n; i++) {
+      cert[i] = nodeKeys[inv[i]];
+      for (int j = 0; j < n; j++) {
+        cert[n + i * n + j] = adj[inv[i]][inv[j]];
+      }
+    }
+    if (best == null) {
+      best = cert;
+      System.arraycopy(inv, 0, bestInv, 0, n);
+      return;
+    }
+    int cmp = 0;
+    for (int i = 0; i < cert.length; i++) {
+      if (cert[i] != best[i]) {
+        cmp = cert[i] > best[i] ? 1 : -1;
+        break;
+      }
+    }
+    if (cmp > 0) {
+      best = cert;
+      System.arraycopy(inv, 0, bestInv, 0, n);
+    }
+    else if (cmp == 0) {
+      // an automorphism, mapping each node to the node at the same position
+      // in the best labeling
+      int[] gen = new int[n];
+      for (int v = 0; v < n; v++) {
+        gen[v] = bestInv[colors[v]];
+      }
+      if (nGenerators == generators.length) {
+        int[][] newGenerators = new int[2 * nGenerators][];
+        System.arraycopy(generators, 0, newGenerators, 0, nGenerators);
+        generators = newGenerators;
+      }
+      generators[nGenerators++] = gen;
+    }
+  }
+
+  /**
+   * Refines the partition until each node in a cell has the same number of
+   * edges of each color to and from each other cell.  A cell is labeled by
+   * its first position; the refinement depends only on the colors, so
+   * isomorphic graphs get isomorphic partitions.
+   */
+  protected void refine(int[] colors) {
+    int nCells = countCells(colors);
+    while (nCells < n) {
+      for (int v = 0; v < n; v++) {
+        // (color, edge out, edge in) of each neighbor, sorted
+        long[] key = sortKeys[v];
+        key[0] = colors[v];
+        int[] vNbrs = nbrs[v];
+        for (int i = 0; i < vNbrs.length; i++) {
+          int u = vNbrs[i];
+          key[1 + i] = ((long) colors[u] << 48) | ((long) (adj[v][u] & 0xffffff) << 24) | (adj[u][v] & 0xffffff);
+        }
+        Arrays.sort(key, 1, key.length);
+      }
+      int newCells = assignColors(colors, Integer.MAX_VALUE);
+      if (newCells == nCells) break;
+      nCells = newCells;
+    }
+  }
+
+  /**
+   * Sorts the nodes by (the first len elements of) their sortKeys and
+   * assigns each node the first position of its group of equal keys.
+   * Returns the number of groups.
+   */
+  protected int assignColors(int[] colors, int len) {
+    // insertion sort; there are only a few nodes
+    for (int i = 0; i < n; i++) {
+      int v = i;
+      int j = i;
+      while (j > 0 && compareKeys(order[j - 1], v, len) > 0) {
+        order[j] = order[j - 1];
+        j--;
+      }
+      order[j] = v;
+    }
+    int c = 0, nCells = 0;
+    for (int i = 0; i < n; i++) {
+      if (i == 0 || compareKeys(order[i], order[i - 1], len) != 0) {
+        c = i;
+        nCells++;
+      }
+      colors[order[i]] = c;
+    }
+    return nCells;
+  }
+
+  protected int compareKeys(int a, int b, int len) {
+    long[] ka = sortKeys[a], kb = sortKeys[b];
+    int l = Math.min(Math.min(ka.length, kb.length), len);
+    for (int i = 0; i < l; i++) {
+      if (ka[i] != kb[i]) {
+        return ka[i] < kb[i] ? -1 : 1;
+      }
+    }
+    return Math.min(ka.length, len) - Math.min(kb.length, len);
+  }
+
+  protected int countCells(int[] colors) {
+    boolean[] used = new boolean[n];
+    int count = 0;
+    for (int i = 0; i < n; i++) {
+      if (!used[colors[i]]) {
+        used[colors[i]] = true;
+        count++;
+      }
+    }
+    return count;
+  }
+
+  protected final boolean useTypes;
+  protected int n;
+  protected int[] nodeKeys;
+  protected int[][] adj;
+  protected int[] best, bestInv;
+  protected int leafCount;
+  protected int[][] generators;
+  protected int nGenerators;
+  protected int[][] nbrs;
+  protected long[][] sortKeys;
+  protected int[] order;
+}
@@ -0,0 +1,134 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.graph.iterators;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.NoSuchElementException;
+
+import etomica.graph.model.Graph;
+import etomica.graph.model.GraphIterator;
+
+/**
+ * Iterates over graphs stored in a file (see Graph6Format and
+ * Graph6FileWriter).  The file is memory-mapped, a window at a time, and
+ * each graph is decoded only when next() is called, so only the graph
+ * being handled need be in memory.  Lines that are empty or start with '#'
+ * are skipped.
+ */
+public class Graph6FileIterator implements GraphIterator, Closeable {
+
+  public Graph6FileIterator(String fileName) {
+    this(fileName, 1 << 26);
+  }
+
+  /**
+   * Opens the file, mapping windowSize bytes of it at a time.
+   */
+  public Graph6FileIterator(String fileName, int windowSize) {
+    if (windowSize < 1024) {
+      throw new IllegalArgumentException("window size must be at least 1024");
+    }
+    this.windowSize = windowSize;
+    try {
+      file = new RandomAccessFile(fileName, "r");
+      channel = file.getChannel();
+      fileSize = channel.size();
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    line = new byte[256];
+    map(0);
+    advance();
+  }
+
+  protected void map(long position) {
+    try {
+      windowStart = position;
+      window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, fileSize - position));
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Copies the next graph's line into line (setting lineLength), or sets
+   * lineLength to -1 if there are no more graphs.
+   */
+  protected void advance() {
+    while (true) {
+      lineLength = 0;
+      if (windowStart + window.position() == fileSize) {
+        lineLength = -1;
+        return;
+      }
+      while (true) {
+        if (!window.hasRemaining()) {
+          long position = windowStart + window.position();
+          if (position == fileSize) break;
+          map(position);
+        }
+        byte b = window.get();
+        if (b == '\n') break;
+        if (lineLength == line.length) {
+          byte[] newLine = new byte[2 * line.length];
+          System.arraycopy(line, 0, newLine, 0, lineLength);
+          line = newLine;
+        }
+        line[lineLength++] = b;
+      }
+      if (lineLength > 0 && line[lineLength - 1] == '\r') {
+        lineLength--;
+      }
+      if (lineLength > 0 && line[0] != '#') return;
+    }
+  }
+
+  public boolean hasNext() {
+    return lineLength > -1;
+  }
+
+  public Graph next() {
+    if (lineLength == -1) {
+      throw new NoSuchElementException();
+    }
+    Graph g = Graph6Format.decode(line, 0, lineLength);
+    advance();
+    return g;
+  }
+
+  public void remove() {
+
+    // no-op
+  }
+
+  /**
+   * Releases the file.  The iterator can't be used afterwards.
+   */
+  public void close() {
+    window = null;
+    lineLength = -1;
+    try {
+      file.close();
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  protected final RandomAccessFile file;
+  protected final FileChannel channel;
+  protected final long fileSize;
+  protected final int windowSize;
+  protected MappedByteBuffer window;
+  protected long windowStart;
+  protected byte[] line;
+  protected int lineLength;
+}
@@ -0,0 +1,98 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.graph.iterators;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+import etomica.graph.model.Graph;
+
+/**
+ * Writes graphs to a file, one line per graph (see Graph6Format), so that a
+ * set of graphs can be built up (or passed from one operation to the next)
+ * without holding it in memory.  The file can be read back with
+ * Graph6FileIterator.  Graphs are written in the order they are added and
+ * nothing is done to remove duplicates or isomorphs.
+ */
+public class Graph6FileWriter implements Closeable {
+
+  public Graph6FileWriter(String fileName) {
+    this(fileName, false);
+  }
+
+  /**
+   * Opens the file, appending to it if append is true.
+   */
+  public Graph6FileWriter(String fileName, boolean append) {
+    try {
+      out = new BufferedOutputStream(new FileOutputStream(fileName, append), 1 << 16);
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    sb = new StringBuilder();
+  }
+
+  /**
+   * Writes the graph to the file.
+   */
+  public void add(Graph g) {
+    sb.setLength(0);
+    Graph6Format.encode(g, sb);
+    sb.append('\n');
+    int len = sb.length();
+    if (buf.length < len) {
+      buf = new byte[2 * len];
+    }
+    for (int i = 0; i < len; i++) {
+      buf[i] = (byte)sb.charAt(i);
+    }
+    try {
+      out.write(buf, 0, len);
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    count++;
+  }
+
+  /**
+   * Writes each of the graphs from the iterator (which might be a
+   * GraphIterator or the iterator of a Set) and returns the number written.
+   */
+  public long addAll(Iterator<Graph> iterator) {
+    long n = 0;
+    while (iterator.hasNext()) {
+      add(iterator.next());
+      n++;
+    }
+    return n;
+  }
+
+  /**
+   * Returns the number of graphs written so far.
+   */
+  public long getCount() {
+    return count;
+  }
+
+  public void close() {
+    try {
+      out.close();
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  protected final OutputStream out;
+  protected final StringBuilder sb;
+  protected byte[] buf = new byte[256];
+  protected long count;
+}
@@ -0,0 +1,186 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.graph.iterators;
+
+import etomica.graph.model.Coefficient;
+import etomica.graph.model.Graph;
+import etomica.graph.model.GraphFactory;
+import etomica.graph.model.Node;
+
+/**
+ * Encodes graphs as single lines of printable ASCII, for storing graph sets
+ * on disk (Graph6FileWriter and Graph6FileIterator).  A line starts with the
+ * graph6 encoding of the edges (see the nauty manual): the character 63+n
+ * followed by the upper triangle of the adjacency matrix, taken column by
+ * column ((0,1), (0,2), (1,2), (0,3), ...), 6 bits per character (+63).  The
+ * rest of the graph follows, separated by spaces:
+ * <pre>
+ *   nodes        the type and color of each node (FA, RB, ...)
+ *   edge colors  the color of each edge, in graph6 order
+ *   coefficient  numerator/denominator
+ *   factors      comma-separated exponents (empty if there are none)
+ * </pre>
+ * For example, the 3-point ring with an f-bond between root nodes 0 and 1
+ * and e-bonds to field node 2, with a coefficient of 1/2, is
+ * <pre>
+ *   Bw RARAFA fee 1/2 
+ * </pre>
+ * so a nauty tool can read the leading graph6 field of each line.  Graphs
+ * must have fewer than 63 nodes (the edge ids of GraphImpl already limit
+ * graphs to far fewer) and coefficients that haven't overflowed.
+ */
+public class Graph6Format {
+
+  /**
+   * Appends the line (without the newline) for the graph to sb.
+   */
+  public static void encode(Graph g, StringBuilder sb) {
+
+    byte n = g.nodeCount();
+    if (n > 62) {
+      throw new IllegalArgumentException("graph6 records hold up to 62 nodes");
+    }
+    sb.append((char)(63 + n));
+    int bits = 0, nBits = 0;
+    for (byte j = 1; j < n; j++) {
+      for (byte i = 0; i < j; i++) {
+        bits = (bits << 1) | (g.hasEdge(i, j) ? 1 : 0);
+        nBits++;
+        if (nBits == 6) {
+          sb.append((char)(63 + bits));
+          bits = nBits = 0;
+        }
+      }
+    }
+    if (nBits > 0) {
+      sb.append((char)(63 + (bits << (6 - nBits))));
+    }
+
+    sb.append(' ');
+    for (byte i = 0; i < n; i++) {
+      Node node = g.getNode(i);
+      sb.append(node.getType());
+      sb.append(checkChar(node.getColor()));
+    }
+    sb.append(' ');
+    for (byte j = 1; j < n; j++) {
+      for (byte i = 0; i < j; i++) {
+        if (g.hasEdge(i, j)) {
+          sb.append(checkChar(g.getEdge(i, j).getColor()));
+        }
+      }
+    }
+    Coefficient c = g.coefficient();
+    if (c.hasOverflow()) {
+      throw new IllegalArgumentException("can't store a coefficient that has overflowed");
+    }
+    sb.append(' ').append(c.getNumerator()).append('/').append(c.getDenominator()).append(' ');
+    int[] factors = g.factors();
+    for (int i = 0; i < factors.length; i++) {
+      if (i > 0) sb.append(',');
+      sb.append(factors[i]);
+    }
+  }
+
+  protected static char checkChar(char c) {
+    if (c <= ' ' || c > '~') {
+      throw new IllegalArgumentException("color '"+c+"' can't be stored");
+    }
+    return c;
+  }
+
+  /**
+   * Returns the graph encoded in line[start]..line[end-1] (without the
+   * newline).
+   */
+  public static Graph decode(byte[] line, int start, int end) {
+
+    int ptr = start;
+    int n = line[ptr++] - 63;
+    if (n < 0 || n > 62) {
+      throw new IllegalArgumentException("invalid graph6 record");
+    }
+    int graph6End = ptr + (n * (n - 1) / 2 + 5) / 6;
+    int nodesEnd = graph6End + 1 + 2 * n;
+    if (nodesEnd >= end || line[graph6End] != ' ' || line[nodesEnd] != ' ') {
+      throw new IllegalArgumentException("invalid graph record");
+    }
+    Node[] nodes = new Node[n];
+    for (byte i = 0; i < n; i++) {
+      nodes[i] = GraphFactory.createNode(i, (char)line[graph6End + 2 + 2*i], (char)line[graph6End + 1 + 2*i]);
+      if (nodes[i] == null) {
+        throw new IllegalArgumentException("invalid node type "+(char)line[graph6End + 1 + 2*i]);
+      }
+    }
+    Graph g = GraphFactory.createGraph(nodes);
+
+    int colorPtr = nodesEnd + 1;
+    int bit = 6;
+    int bits = 0;
+    for (byte j = 1; j < n; j++) {
+      for (byte i = 0; i < j; i++) {
+        if (bit == 6) {
+          bits = line[ptr++] - 63;
+          bit = 0;
+        }
+        if (((bits >> (5 - bit)) & 1) == 1) {
+          g.putEdge(i, j);
+          g.getEdge(i, j).setColor((char)line[colorPtr++]);
+        }
+        bit++;
+      }
+    }
+    if (colorPtr >= end || line[colorPtr] != ' ') {
+      throw new IllegalArgumentException("invalid graph record");
+    }
+    g.createReverseEdges();
+
+    ptr = colorPtr + 1;
+    int slash = ptr;
+    while (slash < end && line[slash] != '/') slash++;
+    int space = slash;
+    while (space < end && line[space] != ' ') space++;
+    if (space == end) {
+      throw new IllegalArgumentException("invalid graph record");
+    }
+    g.coefficient().setNumerator(parseInt(line, ptr, slash));
+    g.coefficient().setDenominator(parseInt(line, slash + 1, space));
+
+    ptr = space + 1;
+    if (ptr < end) {
+      int nFactors = 1;
+      for (int i = ptr; i < end; i++) {
+        if (line[i] == ',') nFactors++;
+      }
+      int[] factors = new int[nFactors];
+      for (int k = 0; k < nFactors; k++) {
+        int comma = ptr;
+        while (comma < end && line[comma] != ',') comma++;
+        factors[k] = parseInt(line, ptr, comma);
+        ptr = comma + 1;
+      }
+      g.setNumFactors(nFactors);
+      g.addFactors(factors);
+    }
+    return g;
+  }
+
+  protected static int parseInt(byte[] line, int start, int end) {
+    boolean negative = line[start] == '-';
+    if (negative) start++;
+    if (start == end) {
+      throw new IllegalArgumentException("invalid graph record");
+    }
+    int value = 0;
+    for (int i = start; i < end; i++) {
+      int digit = line[i] - '0';
+      if (digit < 0 || digit > 9) {
+        throw new IllegalArgumentException("invalid graph record");
+      }
+      value = 10 * value + digit;
+    }
+    return negative ? -value : value;
+  }
+}
@@ -0,0 +1,64 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.graph.iterators;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import etomica.graph.model.Graph;
+import etomica.graph.model.GraphIterator;
+import etomica.graph.model.GraphList;
+import etomica.graph.operations.Parameters;
+import etomica.graph.operations.Unary;
+
+/**
+ * Applies a Unary operation to the graphs from another iterator one at a
+ * time, returning the resulting graphs.  With Graph6FileIterator and
+ * Graph6FileWriter, this lets an operation be applied to a set of graphs
+ * too large to hold in memory.  As with ParallelUnary, the operation must
+ * act on each graph independently; isomorphs resulting from different
+ * graphs are not merged.
+ */
+public class UnaryIterator implements GraphIterator {
+
+  public UnaryIterator(Iterator<Graph> iterator, Unary op, Parameters params) {
+    this.iterator = iterator;
+    this.op = op;
+    this.params = params;
+  }
+
+  public boolean hasNext() {
+
+    while (results == null || !results.hasNext()) {
+      if (!iterator.hasNext()) {
+        return false;
+      }
+      // the operation might hand back its argument, so use a new set each time
+      Set<Graph> single = new GraphList<Graph>(null);
+      single.add(iterator.next());
+      results = op.apply(single, params).iterator();
+    }
+    return true;
+  }
+
+  public Graph next() {
+
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return results.next();
+  }
+
+  public void remove() {
+
+    // no-op
+  }
+
+  protected final Iterator<Graph> iterator;
+  protected final Unary op;
+  protected final Parameters params;
+  protected Iterator<Graph> results;
+}
@@ -0,0 +1,69 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.graph.iterators.filters;
+
+import java.util.Set;
+
+import etomica.graph.isomorphism.CanonicalLabeling;
+import etomica.graph.model.Graph;
+import etomica.graph.model.GraphIterator;
+import etomica.graph.model.impl.MetadataImpl;
+
+/**
+ * Filter that keeps one graph from each set of isomorphs, like
+ * IsomorphismFilter, but finds isomorphs by appending the canonical
+ * certificate of each graph to its signature.  Each blocking set then holds
+ * at most one graph, which is known to be isomorphic to any graph that maps
+ * to the same set, so no pairwise matching is needed.
+ */
+public class CanonicalIsomorphismFilter extends GlobalFilter {
+
+  public CanonicalIsomorphismFilter(GraphIterator iterator) {
+    this(iterator, null);
+  }
+
+  public CanonicalIsomorphismFilter(GraphIterator iterator, SignatureMaker signatureMaker) {
+    super(iterator, new CanonicalSignatureMaker(signatureMaker));
+  }
+
+  protected boolean accept(Graph g1, Set<Graph> set) {
+
+    if (set.isEmpty()) {
+      return true;
+    }
+    // keep the isomorph higher in the graph order, as IsomorphismFilter does
+    Graph isoGraph = set.iterator().next();
+    if (isoGraph.compareTo(g1) >= 0) {
+      isoGraph.coefficient().add(g1.coefficient());
+      if (isoGraph.coefficient().getNumerator() == 0) {
+        set.remove(isoGraph);
+      }
+      return false;
+    }
+    set.remove(isoGraph);
+    g1.coefficient().add(isoGraph.coefficient());
+    return g1.coefficient().getNumerator() != 0;
+  }
+
+  /**
+   * SignatureMaker that appends the canonical certificate to the signature
+   * from another SignatureMaker.
+   */
+  public static class CanonicalSignatureMaker extends SignatureMaker {
+    protected final SignatureMaker signatureMaker;
+    protected final CanonicalLabeling labeling;
+
+    public CanonicalSignatureMaker(SignatureMaker signatureMaker) {
+      this.signatureMaker = signatureMaker == null ? new SignatureMaker() : signatureMaker;
+      labeling = new CanonicalLabeling(MetadataImpl.rootPointsSpecial);
+    }
+
+    public String getSignature(Graph g) {
+      // signatures don't contain \0, so the certificate can't be confused
+      // with the end of a longer signature
+      return signatureMaker.getSignature(g) + '\0' + labeling.getCertificate(g);
+    }
+  }
+}
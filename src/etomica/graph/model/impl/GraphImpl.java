@@ -40,7 +40,8 @@ public class GraphImpl implements Graph {
   private final Bitmap store;
   private final Node[] nodes;
   private List<Node> nodeList;
-  private List<Edge> edgeList;
+  // volatile so that a list built by one thread is seen complete by others
+  private volatile List<Edge> edgeList;
   private final Coefficient coefficient;
   private final Edge[] edges, reverseEdges;
   private int[] factors = new int[0];
@@ -244,13 +245,17 @@ public class GraphImpl implements Graph {
   }
 
   public List<Edge> edges() {
-    if (edgeList != null) return edgeList;
+    List<Edge> list = edgeList;
+    if (list != null) return list;
     
-    edgeList = new ArrayList<Edge>(edgeCount());
+    // fill the list before assigning the (volatile) field, so that another
+    // thread reading the graph sees either no list or the whole list
+    list = new ArrayList<Edge>(edgeCount());
     for (byte edgeId=0; edgeId<edges.length; edgeId++) {
-      if (edges[edgeId] != null) edgeList.add(edges[edgeId]);
+      if (edges[edgeId] != null) list.add(edges[edgeId]);
     }
-    return edgeList;
+    edgeList = list;
+    return list;
   }
 
   public String edgesToString() {
@@ -6,15 +6,16 @@ package etomica.graph.model.impl;
 
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import etomica.graph.model.Metadata;
 
 public class MetadataImpl implements Metadata {
 
-  private static final Map<String, Metadata> stock = new HashMap<String, Metadata>();
+  // graphs may be built on several threads at once (ParallelUnary)
+  private static final ConcurrentMap<String, Metadata> stock = new ConcurrentHashMap<String, Metadata>();
   public static Comparator<Metadata> metaDataComparator = null;
   private char type;
   private char color;
@@ -37,10 +38,16 @@ public class MetadataImpl implements Metadata {
   public static Metadata getStockComponent(char type, char color) {
 
     String key = "" + type + color;
-    if (!stock.containsKey(key)) {
-      stock.put(key, new MetadataImpl(type, color));
+    Metadata m = stock.get(key);
+    if (m == null) {
+      // the first one in wins, so that there is only ever one of each
+      Metadata newMetadata = new MetadataImpl(type, color);
+      m = stock.putIfAbsent(key, newMetadata);
+      if (m == null) {
+        m = newMetadata;
+      }
     }
-    return stock.get(key);
+    return m;
   }
 
   public char getColor() {
@@ -4,28 +4,138 @@
 
 package etomica.graph.operations;
 
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
-import etomica.graph.iterators.IteratorWrapper;
+import etomica.graph.isomorphism.CanonicalLabeling;
 import etomica.graph.iterators.filters.GlobalFilter;
-import etomica.graph.iterators.filters.IsomorphismFilter;
 import etomica.graph.model.Graph;
-import etomica.graph.model.GraphIterator;
+import etomica.graph.model.GraphList;
+import etomica.graph.model.impl.MetadataImpl;
 
+/**
+ * Returns a set with one graph from each set of isomorphs in the argument,
+ * with the coefficients of the isomorphs summed.  Isomorphs are found from
+ * the canonical labeling of each graph (as in CanonicalIsomorphismFilter).
+ * Each set of isomorphs is represented by the one highest in the graph
+ * order, and sets whose coefficients cancel are dropped.  The result is a
+ * GraphList sorted by ParallelUnary.GRAPH_ORDER, so it depends neither on
+ * the iteration order of the argument nor on whether a pool is used.
+ *
+ * If given a ForkJoinPool (setPool), the canonical labels are found
+ * concurrently; the isomorphs are always merged on the calling thread.
+ */
 public class IsoFree implements Unary {
 
   public Set<Graph> apply(Set<Graph> argument, Parameters params) {
 
-    IteratorWrapper wrapper = new IteratorWrapper(argument.iterator(), true);
-    GraphIterator isomorphs = new IsomorphismFilter(wrapper, (IsoFreeParams)params);
-    Set<Graph> result = new HashSet<Graph>();
-    while (isomorphs.hasNext()) {
-      result.add(isomorphs.next());
+    Graph[] graphs = argument.toArray(new Graph[0]);
+    String[] certificates = new String[graphs.length];
+    boolean useTypes = MetadataImpl.rootPointsSpecial;
+    if (pool != null && graphs.length > 1) {
+      pool.invoke(new LabelTask(graphs, certificates, 0, graphs.length, useTypes));
+    }
+    else {
+      CanonicalLabeling labeling = new CanonicalLabeling(useTypes);
+      for (int i=0; i<graphs.length; i++) {
+        certificates[i] = labeling.getCertificate(graphs[i]);
+      }
+    }
+    return merge(graphs, certificates, (IsoFreeParams)params);
+  }
+
+  /**
+   * Sets the pool used to find canonical labels concurrently.  If null (the
+   * default), everything is done on the calling thread.
+   */
+  public void setPool(ForkJoinPool newPool) {
+    pool = newPool;
+  }
+
+  /**
+   * Returns the pool used to find canonical labels, or null if everything
+   * is done on the calling thread.
+   */
+  public ForkJoinPool getPool() {
+    return pool;
+  }
+
+  /**
+   * Merges the isomorphs among the given graphs, which have the given
+   * canonical certificates.
+   */
+  protected Set<Graph> merge(Graph[] graphs, String[] certificates, IsoFreeParams params) {
+
+    // signatures are computed here because a custom SignatureMaker might not
+    // be safe to use from several threads
+    GlobalFilter.SignatureMaker signatureMaker = params == null ? new GlobalFilter.SignatureMaker() : params;
+    Map<String,Graph> isomorphs = new HashMap<String,Graph>();
+    for (int i=0; i<graphs.length; i++) {
+      Graph g = graphs[i];
+      String key = signatureMaker.getSignature(g) + '\0' + certificates[i];
+      Graph isoGraph = isomorphs.get(key);
+      // keep the isomorph higher in the graph order, as the filters do.
+      // isomorphs whose coefficients cancel are only dropped at the end, so
+      // that the one kept doesn't depend on the order of the argument
+      if (isoGraph == null) {
+        isomorphs.put(key, g);
+      }
+      else if (isoGraph.compareTo(g) >= 0) {
+        isoGraph.coefficient().add(g.coefficient());
+      }
+      else {
+        g.coefficient().add(isoGraph.coefficient());
+        isomorphs.put(key, g);
+      }
+    }
+    Set<Graph> result = new GraphList<Graph>(ParallelUnary.GRAPH_ORDER);
+    for (Graph g : isomorphs.values()) {
+      if (g.coefficient().getNumerator() != 0) {
+        result.add(g);
+      }
     }
     return result;
   }
 
+  /**
+   * Finds the canonical certificates for a range of graphs, splitting the
+   * range between subtasks.
+   */
+  protected static class LabelTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    protected static final int MIN_GRAPHS = 64;
+    protected final Graph[] graphs;
+    protected final String[] certificates;
+    protected final int start, end;
+    protected final boolean useTypes;
+
+    public LabelTask(Graph[] graphs, String[] certificates, int start, int end, boolean useTypes) {
+      this.graphs = graphs;
+      this.certificates = certificates;
+      this.start = start;
+      this.end = end;
+      this.useTypes = useTypes;
+    }
+
+    protected void compute() {
+      if (end - start <= MIN_GRAPHS) {
+        CanonicalLabeling labeling = new CanonicalLabeling(useTypes);
+        for (int i=start; i<end; i++) {
+          certificates[i] = labeling.getCertificate(graphs[i]);
+        }
+        return;
+      }
+      int mid = (start + end) >>> 1;
+      invokeAll(new LabelTask(graphs, certificates, start, mid, useTypes),
+                new LabelTask(graphs, certificates, mid, end, useTypes));
+    }
+  }
+
   public static class IsoFreeParams extends GlobalFilter.SignatureMaker implements Parameters {
   }
-}
\ No newline at end of file
+
+  protected ForkJoinPool pool;
+}
@@ -5,10 +5,14 @@
 package etomica.graph.operations;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
+import etomica.graph.isomorphism.CanonicalLabeling;
 import etomica.graph.model.Graph;
+import etomica.graph.model.impl.GraphImpl;
 import etomica.graph.operations.GraphOp.GraphOpNull;
 import etomica.graph.property.Property;
 
@@ -18,23 +22,70 @@ import etomica.graph.property.Property;
  * the original graph (according to Graph.compareTo).  The graph in the
  * returned set may just be a copy of the original graph.
  *
+ * When applied to a set, the relabeling found for one graph is reused for
+ * its isomorphs (found from their canonical labels), so the search over
+ * relabelings is only done once for each set of isomorphs.
+ *
  * @author Andrew Schultz
  */
 public class MaxIsomorph implements Unary {
 
   public Set<Graph> apply(Set<Graph> argument, Parameters params) {
     assert (params == null || params instanceof MaxIsomorphParameters);
+    MaxIsomorphParameters mip = (MaxIsomorphParameters)params;
     Set<Graph> result = new HashSet<Graph>();
+    // Relabel doesn't carry reversed edge colors faithfully, so isomorphs
+    // might not give identical relabelings
+    CanonicalLabeling labeling = GraphImpl.useReverseEdges ? null : new CanonicalLabeling(true);
+    // labels taking each canonical graph to its max isomorph
+    Map<String,byte[]> maxLabels = new HashMap<String,byte[]>();
+    Relabel relabel = new Relabel();
     for (Graph g : argument) {
-      Graph newGraph = apply(g, (MaxIsomorphParameters)params);
-      if (newGraph != null) {
-        result.add(newGraph);
+      Graph newGraph;
+      if (labeling == null || g.nodeCount() < 2) {
+        newGraph = apply(g, mip);
+      }
+      else {
+        labeling.label(g);
+        String key = labeling.getCertificate();
+        byte[] canonical = labeling.getLabels();
+        byte[] labels = maxLabels.get(key);
+        if (labels == null) {
+          byte[] gLabels = new byte[canonical.length];
+          newGraph = apply(g, mip, gLabels);
+          labels = new byte[canonical.length];
+          for (int i=0; i<labels.length; i++) {
+            labels[canonical[i]] = gLabels[i];
+          }
+          maxLabels.put(key, labels);
+        }
+        else {
+          // g => canonical graph => max isomorph
+          byte[] gLabels = new byte[canonical.length];
+          for (int i=0; i<gLabels.length; i++) {
+            gLabels[i] = labels[canonical[i]];
+          }
+          newGraph = mip.graphOp.apply(relabel.apply(g, new RelabelParameters(gLabels)));
+          if (!mip.prop.check(newGraph)) {
+            throw new RuntimeException("no happy graph for "+g);
+          }
+        }
       }
+      result.add(newGraph);
     }
     return result;
   }
 
   public Graph apply(Graph g, MaxIsomorphParameters params) {
+    return apply(g, params, null);
+  }
+
+  /**
+   * Returns the max isomorph of g, as apply(Graph, MaxIsomorphParameters)
+   * does.  If bestLabels is not null, the labels that give the max isomorph
+   * (with Relabel) are copied into it.
+   */
+  protected Graph apply(Graph g, MaxIsomorphParameters params, byte[] bestLabels) {
     Graph result = params.graphOp.apply(g);
     if (!params.prop.check(result)) {
       result = null;
@@ -50,6 +101,9 @@ public class MaxIsomorph implements Unary {
     for (byte i=0; i<labels.length; i++) {
       labels[i] = i;
     }
+    if (bestLabels != null) {
+      System.arraycopy(labels, 0, bestLabels, 0, nodeCount);
+    }
     
     Relabel relabel = new Relabel();
     RelabelParameters rp = new RelabelParameters(labels);
@@ -116,6 +170,9 @@ public class MaxIsomorph implements Unary {
       Graph pg = params.graphOp.apply(relabel.apply(g, rp));
       if (params.prop.check(pg) && (result == null || pg.compareTo(result) > 0)) {
         result = pg;
+        if (bestLabels != null) {
+          System.arraycopy(labels, 0, bestLabels, 0, nodeCount);
+        }
       }
     }
   }
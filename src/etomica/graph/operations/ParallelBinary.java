@@ -0,0 +1,142 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.graph.operations;
+
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import etomica.graph.model.Graph;
+import etomica.graph.model.GraphList;
+import etomica.graph.operations.ParallelUnary.ChunksTask;
+
+/**
+ * Applies a Binary operation concurrently, using a ForkJoinPool, by
+ * splitting the left argument into chunks and applying the operation to
+ * each chunk with the whole right argument.  This is only valid for
+ * operations, like Mul and MulFlexible, where the result is the union of
+ * the results for each graph in the left argument, possibly followed by
+ * isomorph removal.  The operation must not keep any state between calls.
+ * <p>
+ * As with ParallelUnary, the result is a GraphList sorted by
+ * ParallelUnary.GRAPH_ORDER, so it depends neither on the number of threads
+ * nor on the iteration order of the arguments, and setIsoFree(true) merges
+ * isomorphs from different chunks.  Without a pool, the operation is just
+ * applied to the whole arguments.
+ */
+public class ParallelBinary implements Binary {
+
+  public ParallelBinary(Binary op) {
+    this.op = op;
+    chunkSize = 8;
+    isoFree = new IsoFree();
+  }
+
+  public Set<Graph> apply(Set<Graph> left, Set<Graph> right, Parameters params) {
+
+    if (pool == null) {
+      return op.apply(left, right, params);
+    }
+    // every task reads the graphs in right; build their lazily made lists
+    // now, before the tasks start
+    for (Graph g : right) {
+      g.nodes();
+      g.edges();
+    }
+    Graph[] graphs = left.toArray(new Graph[0]);
+    int nChunks = (graphs.length + chunkSize - 1) / chunkSize;
+    ChunkTask[] tasks = new ChunkTask[nChunks];
+    for (int i=0; i<nChunks; i++) {
+      tasks[i] = new ChunkTask(graphs, i*chunkSize, Math.min((i+1)*chunkSize, graphs.length), right, params);
+    }
+    pool.invoke(new ChunksTask(tasks));
+    Set<Graph> result = new GraphList<Graph>(ParallelUnary.GRAPH_ORDER);
+    for (int i=0; i<nChunks; i++) {
+      result.addAll(tasks[i].result);
+    }
+    if (doIsoFree) {
+      isoFree.setPool(pool);
+      result = isoFree.apply(result, null);
+    }
+    return result;
+  }
+
+  /**
+   * Sets the pool used to apply the operation.  If null (the default), the
+   * operation is applied to the whole arguments on the calling thread.
+   */
+  public void setPool(ForkJoinPool newPool) {
+    pool = newPool;
+  }
+
+  /**
+   * Returns the pool used to apply the operation.
+   */
+  public ForkJoinPool getPool() {
+    return pool;
+  }
+
+  /**
+   * Sets the number of graphs from the left argument in each chunk.
+   * Default is 8.
+   */
+  public void setChunkSize(int newChunkSize) {
+    if (newChunkSize < 1) {
+      throw new IllegalArgumentException("chunk size must be positive");
+    }
+    chunkSize = newChunkSize;
+  }
+
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  /**
+   * Sets whether isomorphs from different chunks are merged (with IsoFree).
+   * This should be true if the operation itself removes isomorphs.
+   * Default is false.
+   */
+  public void setIsoFree(boolean newIsoFree) {
+    doIsoFree = newIsoFree;
+  }
+
+  public boolean isIsoFree() {
+    return doIsoFree;
+  }
+
+  /**
+   * Applies the operation to one chunk of the left argument.
+   */
+  protected class ChunkTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    protected final Graph[] graphs;
+    protected final int start, end;
+    protected final Set<Graph> right;
+    protected final Parameters params;
+    protected Set<Graph> result;
+
+    public ChunkTask(Graph[] graphs, int start, int end, Set<Graph> right, Parameters params) {
+      this.graphs = graphs;
+      this.start = start;
+      this.end = end;
+      this.right = right;
+      this.params = params;
+    }
+
+    protected void compute() {
+      Set<Graph> chunk = new GraphList<Graph>(null);
+      for (int i=start; i<end; i++) {
+        chunk.add(graphs[i]);
+      }
+      result = op.apply(chunk, right, params);
+    }
+  }
+
+  protected final Binary op;
+  protected final IsoFree isoFree;
+  protected ForkJoinPool pool;
+  protected int chunkSize;
+  protected boolean doIsoFree;
+}
@@ -0,0 +1,176 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.graph.operations;
+
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import etomica.graph.model.Graph;
+import etomica.graph.model.GraphList;
+
+/**
+ * Applies a Unary operation to chunks of the argument concurrently, using a
+ * ForkJoinPool, and collects the results.  This is only valid for
+ * operations that act on each graph independently, so that the result for a
+ * set is the union of the results for its graphs (Relabel, MulScalar,
+ * DeleteEdge, Split, ...), possibly followed by isomorph removal.  The
+ * operation is applied to several chunks at once, so it must not keep any
+ * state between calls.
+ * <p>
+ * The argument is split into chunks (of chunkSize graphs) in its iteration
+ * order.  The result is a GraphList sorted by GRAPH_ORDER, so its order
+ * depends neither on the number of threads nor on the iteration order of
+ * the argument (which, for a HashSet, varies from run to run).  Operations
+ * that remove isomorphs can only do so within a chunk; with
+ * setIsoFree(true), isomorphs from different chunks are then merged with
+ * IsoFree (using the same pool).  Without a pool, the operation is just
+ * applied to the whole argument.
+ */
+public class ParallelUnary implements Unary {
+
+  public ParallelUnary(Unary op) {
+    this.op = op;
+    chunkSize = 32;
+    isoFree = new IsoFree();
+  }
+
+  public Set<Graph> apply(Set<Graph> argument, Parameters params) {
+
+    if (pool == null) {
+      return op.apply(argument, params);
+    }
+    Graph[] graphs = argument.toArray(new Graph[0]);
+    int nChunks = (graphs.length + chunkSize - 1) / chunkSize;
+    ChunkTask[] tasks = new ChunkTask[nChunks];
+    for (int i=0; i<nChunks; i++) {
+      tasks[i] = new ChunkTask(graphs, i*chunkSize, Math.min((i+1)*chunkSize, graphs.length), params);
+    }
+    pool.invoke(new ChunksTask(tasks));
+    Set<Graph> result = new GraphList<Graph>(GRAPH_ORDER);
+    for (int i=0; i<nChunks; i++) {
+      result.addAll(tasks[i].result);
+    }
+    if (doIsoFree) {
+      isoFree.setPool(pool);
+      result = isoFree.apply(result, null);
+    }
+    return result;
+  }
+
+  /**
+   * Sets the pool used to apply the operation.  If null (the default), the
+   * operation is applied to the whole argument on the calling thread.
+   */
+  public void setPool(ForkJoinPool newPool) {
+    pool = newPool;
+  }
+
+  /**
+   * Returns the pool used to apply the operation.
+   */
+  public ForkJoinPool getPool() {
+    return pool;
+  }
+
+  /**
+   * Sets the number of graphs in each chunk that the operation is applied
+   * to.  Default is 32.
+   */
+  public void setChunkSize(int newChunkSize) {
+    if (newChunkSize < 1) {
+      throw new IllegalArgumentException("chunk size must be positive");
+    }
+    chunkSize = newChunkSize;
+  }
+
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  /**
+   * Sets whether isomorphs from different chunks are merged (with IsoFree).
+   * This should be true if the operation itself removes isomorphs.
+   * Default is false.
+   */
+  public void setIsoFree(boolean newIsoFree) {
+    doIsoFree = newIsoFree;
+  }
+
+  public boolean isIsoFree() {
+    return doIsoFree;
+  }
+
+  /**
+   * Applies the operation to one chunk of graphs.
+   */
+  protected class ChunkTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    protected final Graph[] graphs;
+    protected final int start, end;
+    protected final Parameters params;
+    protected Set<Graph> result;
+
+    public ChunkTask(Graph[] graphs, int start, int end, Parameters params) {
+      this.graphs = graphs;
+      this.start = start;
+      this.end = end;
+      this.params = params;
+    }
+
+    protected void compute() {
+      Set<Graph> chunk = new GraphList<Graph>(null);
+      for (int i=start; i<end; i++) {
+        chunk.add(graphs[i]);
+      }
+      result = op.apply(chunk, params);
+    }
+  }
+
+  /**
+   * Orders graphs by compareTo and then by coefficient.  Graphs that tie
+   * are identical, so sorting with this gives a reproducible order.
+   */
+  protected static final Comparator<Graph> GRAPH_ORDER = new Comparator<Graph>() {
+    public int compare(Graph g1, Graph g2) {
+      int c = g1.compareTo(g2);
+      if (c != 0) {
+        return c;
+      }
+      c = Double.compare(g1.coefficient().getValue(), g2.coefficient().getValue());
+      if (c != 0) {
+        return c;
+      }
+      c = Integer.compare(g1.coefficient().getNumerator(), g2.coefficient().getNumerator());
+      if (c != 0) {
+        return c;
+      }
+      return Integer.compare(g1.coefficient().getDenominator(), g2.coefficient().getDenominator());
+    }
+  };
+
+  /**
+   * Runs all of the chunk tasks.
+   */
+  protected static class ChunksTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    protected final RecursiveAction[] tasks;
+
+    public ChunksTask(RecursiveAction[] tasks) {
+      this.tasks = tasks;
+    }
+
+    protected void compute() {
+      invokeAll(tasks);
+    }
+  }
+
+  protected final Unary op;
+  protected final IsoFree isoFree;
+  protected ForkJoinPool pool;
+  protected int chunkSize;
+  protected boolean doIsoFree;
+}
@@ -0,0 +1,193 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.graph.test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import etomica.graph.isomorphism.CanonicalLabeling;
+import etomica.graph.isomorphism.Match;
+import etomica.graph.iterators.DefaultIterator;
+import etomica.graph.iterators.IteratorWrapper;
+import etomica.graph.iterators.filters.CanonicalIsomorphismFilter;
+import etomica.graph.iterators.filters.IsomorphismFilter;
+import etomica.graph.model.BitmapFactory;
+import etomica.graph.model.Edge;
+import etomica.graph.model.Graph;
+import etomica.graph.model.GraphFactory;
+import etomica.graph.model.GraphIterator;
+import etomica.graph.operations.DeleteEdge;
+import etomica.graph.operations.DeleteEdgeParameters;
+import etomica.graph.operations.IsoFree;
+import etomica.graph.operations.MaxIsomorph;
+import etomica.graph.operations.Relabel;
+import etomica.graph.operations.RelabelParameters;
+import etomica.graph.operations.Split;
+import etomica.graph.operations.SplitParameters;
+
+public class CanonicalLabelingTest extends GraphIteratorTest {
+
+  public void reset() {
+
+    super.reset();
+    printPermutations = false;
+    checkAssertion = true;
+  }
+
+  public void testIsoFreeGraphs() {
+
+    reset();
+    // nodes = 7: 1044 out of 2097152 graphs in about 15 secs
+    for (byte i = 2; i <= 6; i++) {
+      expected = Match.ISMORPHS_COUNT[i - 1];
+      testTemplate(i, new CanonicalIsomorphismFilter(new DefaultIterator(i)));
+    }
+  }
+
+  protected Graph randomGraph(Random random, byte nodeCount, byte rootCount) {
+
+    Graph g = GraphFactory.createGraph(nodeCount, rootCount, BitmapFactory.createBitmap(nodeCount, false));
+    for (byte i = 0; i < nodeCount; i++) {
+      if (random.nextInt(3) == 0) {
+        g.getNode(i).setColor('B');
+      }
+      for (byte j = (byte) (i + 1); j < nodeCount; j++) {
+        int r = random.nextInt(4);
+        if (r > 0) {
+          g.putEdge(i, j);
+          g.getEdge(i, j).setColor(r == 1 ? 'A' : 'B');
+        }
+      }
+    }
+    return g;
+  }
+
+  protected byte[] randomPermutation(Random random, byte nodeCount) {
+
+    byte[] labels = new byte[nodeCount];
+    for (byte i = 0; i < nodeCount; i++) {
+      labels[i] = i;
+    }
+    for (int i = nodeCount - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      byte tmp = labels[i];
+      labels[i] = labels[j];
+      labels[j] = tmp;
+    }
+    return labels;
+  }
+
+  public void testRelabel() {
+
+    Random random = new Random(3);
+    CanonicalLabeling labeling = new CanonicalLabeling(true);
+    Relabel relabel = new Relabel();
+    for (int k = 0; k < 500; k++) {
+      byte nodeCount = (byte) (2 + random.nextInt(9));
+      Graph g = randomGraph(random, nodeCount, (byte) random.nextInt(3));
+      Graph g2 = relabel.apply(g, new RelabelParameters(randomPermutation(random, nodeCount)));
+      assertEquals(labeling.getCertificate(g), labeling.getCertificate(g2));
+      // the canonical graphs should be identical
+      Graph c = relabel.apply(g, new RelabelParameters(labeling.getLabels(g)));
+      Graph c2 = relabel.apply(g2, new RelabelParameters(labeling.getLabels(g2)));
+      assertEquals(0, c.compareTo(c2));
+      // and non-isomorphic graphs should be told apart
+      Graph h = randomGraph(random, nodeCount, (byte) 0);
+      assertEquals(Match.match(g, h, false) && g.getSignature().equals(h.getSignature()),
+          labeling.getCertificate(g).equals(labeling.getCertificate(h)));
+    }
+  }
+
+  public void testSymmetricGraphs() {
+
+    // automorphisms should keep the search small for the complete graph
+    CanonicalLabeling labeling = new CanonicalLabeling();
+    Graph g = GraphFactory.createGraph((byte) 10, BitmapFactory.createBitmap((byte) 10, true));
+    labeling.label(g);
+    assertTrue(labeling.getLeafCount() < 100);
+    // a 10-point ring
+    g = GraphFactory.createGraph((byte) 10);
+    for (byte i = 0; i < 10; i++) {
+      g.putEdge(i, (byte) ((i + 1) % 10));
+    }
+    Graph g2 = new Relabel().apply(g, new RelabelParameters(randomPermutation(new Random(5), (byte) 10)));
+    assertEquals(labeling.getCertificate(g), labeling.getCertificate(g2));
+  }
+
+  protected Set<Graph> splitSet(byte nodeCount) {
+
+    Graph g = GraphFactory.createGraph(nodeCount, BitmapFactory.createBitmap(nodeCount, true));
+    for (Edge e : g.edges()) {
+      e.setColor('e');
+    }
+    g.coefficient().setDenominator(2);
+    Set<Graph> set = new HashSet<Graph>();
+    set.add(g);
+    set = new Split().apply(set, new SplitParameters('e', 'f', '1'));
+    return new DeleteEdge().apply(set, new DeleteEdgeParameters('1'));
+  }
+
+  public void testIsoFreeCoefficients() {
+
+    boolean oldDebug = IsomorphismFilter.DEBUG_MODE;
+    IsomorphismFilter.DEBUG_MODE = false;
+    Set<Graph> canonical = new IsoFree().apply(splitSet((byte) 6), null);
+    Set<Graph> matched = new HashSet<Graph>();
+    GraphIterator iterator = new IsomorphismFilter(new IteratorWrapper(splitSet((byte) 6).iterator(), true));
+    while (iterator.hasNext()) {
+      matched.add(iterator.next());
+    }
+    IsomorphismFilter.DEBUG_MODE = oldDebug;
+    assertEquals(Match.ISMORPHS_COUNT[5], canonical.size());
+    assertEquals(matched.size(), canonical.size());
+    for (Graph g : canonical) {
+      boolean found = false;
+      for (Graph g2 : matched) {
+        if (g.compareTo(g2) == 0) {
+          assertEquals(g2.coefficient().getValue(), g.coefficient().getValue(), 1e-12);
+          found = true;
+          break;
+        }
+      }
+      assertTrue(found);
+    }
+  }
+
+  public void testMaxIsomorph() {
+
+    Random random = new Random(7);
+    Relabel relabel = new Relabel();
+    MaxIsomorph maxIsomorph = new MaxIsomorph();
+    Set<Graph> set = new HashSet<Graph>();
+    List<Graph> list = new ArrayList<Graph>();
+    for (int k = 0; k < 20; k++) {
+      byte nodeCount = (byte) (2 + random.nextInt(5));
+      Graph g = randomGraph(random, nodeCount, (byte) random.nextInt(2));
+      // several isomorphs of each
+      for (int l = 0; l < 3; l++) {
+        Graph g2 = relabel.apply(g, new RelabelParameters(randomPermutation(random, nodeCount)));
+        g2.coefficient().setNumerator(l + 1);
+        set.add(g2);
+        list.add(g2);
+      }
+    }
+    Set<Graph> maxSet = maxIsomorph.apply(set, MaxIsomorph.PARAM_ALL);
+    assertEquals(list.size(), maxSet.size());
+    for (Graph g : list) {
+      Graph max = maxIsomorph.apply(g, MaxIsomorph.PARAM_ALL);
+      boolean found = false;
+      for (Graph g2 : maxSet) {
+        if (g2.compareTo(max) == 0 && g2.coefficient().getValue() == max.coefficient().getValue()) {
+          found = true;
+          break;
+        }
+      }
+      assertTrue(found);
+    }
+  }
+}
@@ -0,0 +1,142 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.graph.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import etomica.graph.isomorphism.CanonicalLabeling;
+import etomica.graph.iterators.Graph6FileIterator;
+import etomica.graph.iterators.Graph6FileWriter;
+import etomica.graph.iterators.Graph6Format;
+import etomica.graph.iterators.IteratorToSet;
+import etomica.graph.iterators.UnaryIterator;
+import etomica.graph.model.BitmapFactory;
+import etomica.graph.model.Edge;
+import etomica.graph.model.Graph;
+import etomica.graph.model.GraphFactory;
+import etomica.graph.model.Node;
+import etomica.graph.operations.IsoFree;
+import etomica.graph.operations.Split;
+import etomica.graph.operations.SplitParameters;
+
+public class Graph6FileTest extends TestCase {
+
+  protected File tmpFile() throws IOException {
+
+    File f = File.createTempFile("graphs", ".g6");
+    f.deleteOnExit();
+    return f;
+  }
+
+  protected Graph randomGraph(Random random) {
+
+    byte n = (byte) (1 + random.nextInt(12));
+    Node[] nodes = new Node[n];
+    for (byte i = 0; i < n; i++) {
+      nodes[i] = GraphFactory.createNode(i, (char) ('A' + random.nextInt(3)), random.nextInt(3) == 0 ? 'R' : 'F');
+    }
+    Graph g = GraphFactory.createGraph(nodes);
+    for (byte j = 1; j < n; j++) {
+      for (byte i = 0; i < j; i++) {
+        if (random.nextBoolean()) {
+          g.putEdge(i, j);
+          g.getEdge(i, j).setColor("efAB".charAt(random.nextInt(4)));
+        }
+      }
+    }
+    g.coefficient().setNumerator(random.nextInt(201) - 100);
+    g.coefficient().setDenominator(1 + random.nextInt(24));
+    if (random.nextBoolean()) {
+      g.setNumFactors(2);
+      g.addFactors(new int[] { random.nextInt(4), random.nextInt(4) });
+    }
+    return g;
+  }
+
+  public void testFormat() {
+
+    Graph g = GraphFactory.createGraph((byte) 3, (byte) 2, BitmapFactory.createBitmap((byte) 3, true));
+    for (Edge e : g.edges()) {
+      e.setColor('e');
+    }
+    g.getEdge((byte) 0, (byte) 1).setColor('f');
+    g.coefficient().setDenominator(2);
+    StringBuilder sb = new StringBuilder();
+    Graph6Format.encode(g, sb);
+    assertEquals("Bw RARAFA fee 1/2 ", sb.toString());
+  }
+
+  public void testRoundTrip() throws IOException {
+
+    Random random = new Random(11);
+    List<String> written = new ArrayList<String>();
+    File f = tmpFile();
+    Graph6FileWriter writer = new Graph6FileWriter(f.getPath());
+    for (int i = 0; i < 2000; i++) {
+      Graph g = randomGraph(random);
+      written.add(g.toString());
+      writer.add(g);
+    }
+    writer.close();
+    assertEquals(2000, writer.getCount());
+
+    // a small window, so that lines straddle the mapped windows
+    Graph6FileIterator iterator = new Graph6FileIterator(f.getPath(), 1024);
+    int i = 0;
+    while (iterator.hasNext()) {
+      Graph g = iterator.next();
+      assertEquals(written.get(i), g.toString());
+      i++;
+    }
+    iterator.close();
+    assertEquals(written.size(), i);
+  }
+
+  public void testStreaming() throws IOException {
+
+    Graph g = GraphFactory.createGraph((byte) 5, BitmapFactory.createBitmap((byte) 5, true));
+    for (Edge e : g.edges()) {
+      e.setColor('e');
+    }
+    Set<Graph> set = new HashSet<Graph>();
+    set.add(g);
+    File f1 = tmpFile();
+    Graph6FileWriter writer = new Graph6FileWriter(f1.getPath());
+    writer.addAll(set.iterator());
+    writer.close();
+
+    // split each e-bond of the graphs from the file, without holding the
+    // result in memory, and then read back the result
+    SplitParameters sp = new SplitParameters('e', 'f', '1');
+    File f2 = tmpFile();
+    Graph6FileIterator iterator = new Graph6FileIterator(f1.getPath());
+    writer = new Graph6FileWriter(f2.getPath());
+    long count = writer.addAll(new UnaryIterator(iterator, new Split(), sp));
+    writer.close();
+    iterator.close();
+    assertTrue(count > 1);
+
+    iterator = new Graph6FileIterator(f2.getPath());
+    Set<Graph> streamed = new IsoFree().apply(new IteratorToSet().getSet(iterator), null);
+    iterator.close();
+    Set<Graph> inMemory = new IsoFree().apply(new Split().apply(set, sp), null);
+    assertEquals(inMemory.size(), streamed.size());
+    CanonicalLabeling labeling = new CanonicalLabeling();
+    Set<String> certificates = new HashSet<String>();
+    for (Graph s : inMemory) {
+      certificates.add(labeling.getCertificate(s) + s.coefficient());
+    }
+    for (Graph s : streamed) {
+      assertTrue(certificates.contains(labeling.getCertificate(s) + s.coefficient()));
+    }
+  }
+}
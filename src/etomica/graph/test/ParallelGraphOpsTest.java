@@ -0,0 +1,247 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.graph.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+import etomica.graph.isomorphism.CanonicalLabeling;
+import etomica.graph.model.BitmapFactory;
+import etomica.graph.model.Edge;
+import etomica.graph.model.Graph;
+import etomica.graph.model.GraphFactory;
+import etomica.graph.model.GraphList;
+import etomica.graph.operations.DeleteEdge;
+import etomica.graph.operations.DeleteEdgeParameters;
+import etomica.graph.operations.IsoFree;
+import etomica.graph.operations.MulFlexible;
+import etomica.graph.operations.MulFlexible.MulFlexibleParameters;
+import etomica.graph.operations.MulScalar;
+import etomica.graph.operations.MulScalarParameters;
+import etomica.graph.operations.ParallelBinary;
+import etomica.graph.operations.ParallelUnary;
+import etomica.graph.operations.Split;
+import etomica.graph.operations.SplitParameters;
+
+/**
+ * Checks that the parallel graph operations (IsoFree with a pool,
+ * ParallelUnary and ParallelBinary) give the same graphs as the serial
+ * operations, in an order that depends neither on the number of threads nor
+ * on the order of the argument.
+ */
+public class ParallelGraphOpsTest extends TestCase {
+
+  public void setUp() {
+
+    pool1 = new ForkJoinPool(1);
+    pool3 = new ForkJoinPool(3);
+  }
+
+  public void tearDown() {
+
+    pool1.shutdown();
+    pool3.shutdown();
+  }
+
+  /**
+   * Returns all of the labeled graphs from splitting the e-bonds of the
+   * complete graph into f-bonds and 1-bonds (with the 1-bonds deleted).
+   */
+  protected Set<Graph> labeledGraphs(byte nodeCount) {
+
+    Graph g = GraphFactory.createGraph(nodeCount, BitmapFactory.createBitmap(nodeCount, true));
+    for (Edge e : g.edges()) {
+      e.setColor('e');
+    }
+    Set<Graph> set = new GraphList<Graph>(null);
+    set.addAll(new Split().apply(g, new SplitParameters('e', 'f', '1')));
+    return new DeleteEdge().apply(set, new DeleteEdgeParameters('1'));
+  }
+
+  protected Set<Graph> copy(Set<Graph> set) {
+
+    Set<Graph> copy = new GraphList<Graph>(null);
+    for (Graph g : set) {
+      copy.add(g.copy());
+    }
+    return copy;
+  }
+
+  /**
+   * Returns the coefficient of each graph, keyed by its canonical certificate.
+   */
+  protected Map<String,String> coefficients(Set<Graph> set) {
+
+    CanonicalLabeling labeling = new CanonicalLabeling();
+    Map<String,String> map = new HashMap<String,String>();
+    for (Graph g : set) {
+      String cert = labeling.getCertificate(g);
+      assertFalse(map.containsKey(cert));
+      map.put(cert, g.coefficient().toString());
+    }
+    return map;
+  }
+
+  /**
+   * Returns a copy of the set in a HashSet, whose order varies with the
+   * identity hash codes of the copies.
+   */
+  protected Set<Graph> hashCopy(Set<Graph> set) {
+
+    return new HashSet<Graph>(copy(set));
+  }
+
+  /**
+   * Returns a copy of the set in the reverse order.
+   */
+  protected Set<Graph> reversedCopy(Set<Graph> set) {
+
+    List<Graph> list = new ArrayList<Graph>(copy(set));
+    Collections.reverse(list);
+    Set<Graph> reversed = new GraphList<Graph>(null);
+    reversed.addAll(list);
+    return reversed;
+  }
+
+  protected List<String> strings(Set<Graph> set) {
+
+    List<String> list = new ArrayList<String>();
+    for (Graph g : set) {
+      list.add(g.toString());
+    }
+    return list;
+  }
+
+  public void testIsoFree() {
+
+    Set<Graph> graphs = labeledGraphs((byte) 5);
+    Set<Graph> serial = new IsoFree().apply(copy(graphs), null);
+    assertEquals(34, serial.size());
+
+    IsoFree isoFree = new IsoFree();
+    isoFree.setPool(pool1);
+    Set<Graph> parallel1 = isoFree.apply(copy(graphs), null);
+    isoFree.setPool(pool3);
+    Set<Graph> parallel3 = isoFree.apply(copy(graphs), null);
+    assertEquals(coefficients(serial), coefficients(parallel1));
+    // the pool only changes where the labels are found
+    assertEquals(strings(serial), strings(parallel1));
+    assertEquals(strings(parallel1), strings(parallel3));
+
+    // the representatives and their order don't depend on the argument's order
+    assertEquals(strings(parallel3), strings(isoFree.apply(hashCopy(graphs), null)));
+    assertEquals(strings(parallel3), strings(isoFree.apply(reversedCopy(graphs), null)));
+  }
+
+  /**
+   * Checks that isomorphs whose coefficients cancel part way through the
+   * argument don't change which isomorph represents the set.
+   */
+  public void testIsoFreeCancel() {
+
+    // find three isomorphs
+    CanonicalLabeling labeling = new CanonicalLabeling();
+    Map<String,List<Graph>> classes = new HashMap<String,List<Graph>>();
+    List<Graph> isomorphs = null;
+    for (Graph g : labeledGraphs((byte) 4)) {
+      String cert = labeling.getCertificate(g);
+      List<Graph> list = classes.get(cert);
+      if (list == null) {
+        list = new ArrayList<Graph>();
+        classes.put(cert, list);
+      }
+      list.add(g);
+      if (list.size() == 3) {
+        isomorphs = list;
+        break;
+      }
+    }
+    assertNotNull(isomorphs);
+    Graph highest = isomorphs.get(0);
+    for (Graph g : isomorphs) {
+      if (g.compareTo(highest) > 0) highest = g;
+    }
+
+    // the first two cancel (+1, -1), then the third is added (+1)
+    IsoFree isoFree = new IsoFree();
+    for (int i=0; i<3; i++) {
+      for (int k=0; k<2; k++) {
+        Set<Graph> argument = new GraphList<Graph>(null);
+        for (int j=0; j<3; j++) {
+          Graph g = isomorphs.get((i+j)%3).copy();
+          g.coefficient().setNumerator(j == 1 ? -1 : 1);
+          argument.add(g);
+        }
+        isoFree.setPool(k == 0 ? null : pool3);
+        Set<Graph> result = isoFree.apply(argument, null);
+        assertEquals(1, result.size());
+        Graph g = result.iterator().next();
+        assertEquals(0, g.compareTo(highest));
+        assertEquals(1, g.coefficient().getNumerator());
+      }
+    }
+  }
+
+  public void testUnary() {
+
+    Set<Graph> graphs = labeledGraphs((byte) 5);
+    MulScalarParameters msp = new MulScalarParameters(1, 2);
+    Set<Graph> serial = new IsoFree().apply(new MulScalar().apply(copy(graphs), msp), null);
+
+    ParallelUnary mulScalar = new ParallelUnary(new MulScalar());
+    mulScalar.setChunkSize(100);
+    mulScalar.setIsoFree(true);
+    mulScalar.setPool(pool1);
+    Set<Graph> parallel1 = mulScalar.apply(copy(graphs), msp);
+    mulScalar.setPool(pool3);
+    Set<Graph> parallel3 = mulScalar.apply(copy(graphs), msp);
+    assertEquals(coefficients(serial), coefficients(parallel1));
+    assertEquals(strings(parallel1), strings(parallel3));
+    assertEquals(strings(parallel3), strings(mulScalar.apply(hashCopy(graphs), msp)));
+    assertEquals(strings(parallel3), strings(mulScalar.apply(reversedCopy(graphs), msp)));
+
+    // without isomorph removal, the graphs from each chunk are still sorted
+    mulScalar.setIsoFree(false);
+    mulScalar.setChunkSize(7);
+    Set<Graph> all = mulScalar.apply(copy(graphs), msp);
+    assertEquals(graphs.size(), all.size());
+    assertEquals(strings(all), strings(mulScalar.apply(hashCopy(graphs), msp)));
+
+    // without a pool, the operation is applied directly
+    mulScalar.setPool(null);
+    assertEquals(graphs.size(), mulScalar.apply(graphs, msp).size());
+  }
+
+  public void testBinary() {
+
+    Set<Graph> left = new IsoFree().apply(labeledGraphs((byte) 3), null);
+    Set<Graph> right = new IsoFree().apply(labeledGraphs((byte) 4), null);
+    MulFlexibleParameters mp = MulFlexibleParameters.makeParameters(new char[0], (byte) 7);
+    Set<Graph> serial = new IsoFree().apply(new MulFlexible().apply(left, right, mp), null);
+    assertTrue(serial.size() > right.size());
+
+    // MulFlexible swaps its arguments if left is bigger, so the products from
+    // each chunk are only isomorphic to those from the whole set
+    ParallelBinary mul = new ParallelBinary(new MulFlexible());
+    mul.setChunkSize(1);
+    mul.setIsoFree(true);
+    mul.setPool(pool1);
+    Set<Graph> parallel1 = mul.apply(left, right, mp);
+    mul.setPool(pool3);
+    Set<Graph> parallel3 = mul.apply(left, right, mp);
+    assertEquals(coefficients(serial), coefficients(parallel1));
+    assertEquals(strings(parallel1), strings(parallel3));
+    assertEquals(strings(parallel3), strings(mul.apply(hashCopy(left), hashCopy(right), mp)));
+  }
+
+  protected ForkJoinPool pool1, pool3;
+}
@@ -0,0 +1,216 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.graphics;
+
+import java.awt.Color;
+
+import etomica.api.IAtom;
+import etomica.api.IAtomList;
+import etomica.api.IBox;
+import etomica.api.IVector;
+import etomica.atom.AtomFilter;
+import etomica.atom.AtomFilterCollective;
+import etomica.atom.DiameterHash;
+import etomica.atom.IAtomOriented;
+import etomica.space.IOrientation;
+import etomica.space3d.IOrientationFull3D;
+
+/**
+ * A copy of everything needed to draw a box at one moment: the position,
+ * color, diameter and (for oriented atoms) orientation of each leaf atom,
+ * whether the atom passes the display's filter, and the box dimensions.
+ * Snapshots are filled on the simulation's thread (see
+ * BoxSnapshotPublisher) so that the display canvases can draw them on
+ * another thread without looking at the live box.
+ *
+ * The atoms themselves are also kept, but only as keys; their state should
+ * not be read while drawing.  A canvas can record its own object for each
+ * atom (its figure, for instance) with setAgent while the snapshot is
+ * filled, so that it need not look the object up while drawing.
+ */
+public class BoxSnapshot {
+
+    public BoxSnapshot(int D) {
+        this.D = D;
+        boxSize = new double[D];
+        atoms = new IAtom[0];
+        agents = new Object[0];
+        positions = new double[0];
+        colors = new Color[0];
+        diameters = new double[0];
+        drawable = new boolean[0];
+    }
+
+    /**
+     * Copies the state of the box's leaf atoms into this snapshot.  The
+     * color scheme and filter are reset (if collective) before they are
+     * used.  The filter may be null, in which case every atom is drawable.
+     */
+    public void fill(IBox box, ColorScheme colorScheme, DiameterHash diameterHash, AtomFilter atomFilter) {
+        if (colorScheme instanceof ColorSchemeCollective) {
+            ((ColorSchemeCollective)colorScheme).colorAllAtoms();
+        }
+        if (atomFilter instanceof AtomFilterCollective) {
+            ((AtomFilterCollective)atomFilter).resetFilter();
+        }
+        IAtomList leafList = box.getLeafList();
+        nAtoms = leafList.getAtomCount();
+        if (atoms.length < nAtoms) {
+            atoms = new IAtom[nAtoms];
+            agents = new Object[nAtoms];
+            positions = new double[nAtoms*D];
+            colors = new Color[nAtoms];
+            diameters = new double[nAtoms];
+            drawable = new boolean[nAtoms];
+            directions = secondaryDirections = null;
+        }
+        boolean oriented = false;
+        for (int i=0; i<nAtoms; i++) {
+            IAtom a = leafList.getAtom(i);
+            atoms[i] = a;
+            agents[i] = null;
+            IVector r = a.getPosition();
+            for (int k=0; k<D; k++) {
+                positions[i*D+k] = r.getX(k);
+            }
+            colors[i] = colorScheme.getAtomColor(a);
+            double sigma = diameterHash.getDiameter(a);
+            // default diameter
+            diameters[i] = sigma == -1 ? 1 : sigma;
+            drawable[i] = atomFilter == null || atomFilter.accept(a);
+            if (a instanceof IAtomOriented) {
+                if (!oriented) {
+                    if (directions == null) {
+                        directions = new double[atoms.length*D];
+                        secondaryDirections = new double[atoms.length*D];
+                    }
+                    oriented = true;
+                }
+                IOrientation orientation = ((IAtomOriented)a).getOrientation();
+                IVector direction = orientation.getDirection();
+                for (int k=0; k<D; k++) {
+                    directions[i*D+k] = direction.getX(k);
+                }
+                if (orientation instanceof IOrientationFull3D) {
+                    IVector direction2 = ((IOrientationFull3D)orientation).getSecondaryDirection();
+                    for (int k=0; k<D; k++) {
+                        secondaryDirections[i*D+k] = direction2.getX(k);
+                    }
+                }
+            }
+        }
+        hasOrientations = oriented;
+        IVector size = box.getBoundary().getBoxSize();
+        for (int k=0; k<D; k++) {
+            boxSize[k] = size.getX(k);
+        }
+    }
+
+    public int getD() {
+        return D;
+    }
+
+    public int getAtomCount() {
+        return nAtoms;
+    }
+
+    /**
+     * Returns the ith atom, which should be used only as a key.
+     */
+    public IAtom getAtom(int i) {
+        return atoms[i];
+    }
+
+    /**
+     * Sets the object a canvas keeps for the ith atom.  This should be
+     * called on the thread filling the snapshot.
+     */
+    public void setAgent(int i, Object agent) {
+        agents[i] = agent;
+    }
+
+    /**
+     * Returns the object set for the ith atom by setAgent, or null.
+     */
+    public Object getAgent(int i) {
+        return agents[i];
+    }
+
+    /**
+     * Returns the kth coordinate of the ith atom.
+     */
+    public double getPosition(int i, int k) {
+        return positions[i*D+k];
+    }
+
+    public Color getColor(int i) {
+        return colors[i];
+    }
+
+    public double getDiameter(int i) {
+        return diameters[i];
+    }
+
+    /**
+     * Returns true if the ith atom was accepted by the filter.
+     */
+    public boolean isDrawable(int i) {
+        return drawable[i];
+    }
+
+    /**
+     * Returns true if any atom is oriented.
+     */
+    public boolean hasOrientations() {
+        return hasOrientations;
+    }
+
+    /**
+     * Returns the kth component of the ith atom's direction.  Meaningful
+     * only for oriented atoms.
+     */
+    public double getDirection(int i, int k) {
+        return directions[i*D+k];
+    }
+
+    /**
+     * Returns the kth component of the ith atom's secondary direction.
+     * Meaningful only for atoms with an IOrientationFull3D.
+     */
+    public double getSecondaryDirection(int i, int k) {
+        return secondaryDirections[i*D+k];
+    }
+
+    /**
+     * Returns the kth dimension of the box.
+     */
+    public double getBoxSize(int k) {
+        return boxSize[k];
+    }
+
+    /**
+     * Returns the step count recorded with this snapshot by the publisher.
+     */
+    public long getStep() {
+        return step;
+    }
+
+    public void setStep(long newStep) {
+        step = newStep;
+    }
+
+    protected final int D;
+    protected int nAtoms;
+    protected IAtom[] atoms;
+    protected Object[] agents;
+    protected double[] positions;
+    protected Color[] colors;
+    protected double[] diameters;
+    protected boolean[] drawable;
+    protected boolean hasOrientations;
+    protected double[] directions, secondaryDirections;
+    protected final double[] boxSize;
+    protected long step;
+}
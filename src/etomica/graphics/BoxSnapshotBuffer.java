@@ -0,0 +1,111 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.graphics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A fixed ring of BoxSnapshots passed from one writer (the simulation
+ * thread) to any number of readers (the canvases) without locks.  The
+ * writer fills a free snapshot and publishes it as the latest; readers take
+ * the latest snapshot and release it when they're done drawing.  Neither
+ * side ever waits: if every snapshot is either the latest or being read,
+ * the writer simply skips that frame.
+ *
+ * Each slot has a state: -1 while being written, otherwise the number of
+ * readers holding it.  The writer claims only slots that are unread and
+ * not the latest, and a reader can only claim a slot that isn't being
+ * written, so a snapshot never changes while it is being drawn.  With a
+ * single reader, three slots are enough for the writer to always find one.
+ */
+public class BoxSnapshotBuffer {
+
+    /**
+     * @param D the dimension of the space
+     * @param capacity the number of snapshots, at least 2 (3 or more so that
+     *        the writer never has to skip a frame for a single reader)
+     */
+    public BoxSnapshotBuffer(int D, int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("need at least 2 snapshots");
+        }
+        snapshots = new BoxSnapshot[capacity];
+        for (int i=0; i<capacity; i++) {
+            snapshots[i] = new BoxSnapshot(D);
+        }
+        state = new AtomicIntegerArray(capacity);
+        latest = new AtomicInteger(-1);
+    }
+
+    public int getCapacity() {
+        return snapshots.length;
+    }
+
+    /**
+     * Returns a snapshot for the writer to fill, or null if none is free.
+     * The snapshot must be passed to publish once it has been filled.
+     */
+    public BoxSnapshot beginWrite() {
+        int l = latest.get();
+        for (int j=1; j<=snapshots.length; j++) {
+            int i = (l + j + snapshots.length) % snapshots.length;
+            if (i == l) continue;
+            if (state.compareAndSet(i, 0, -1)) {
+                writing = i;
+                return snapshots[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Makes the snapshot returned by the last call to beginWrite the latest
+     * one.
+     */
+    public void publish() {
+        int i = writing;
+        writing = -1;
+        state.set(i, 0);
+        latest.set(i);
+    }
+
+    /**
+     * Returns the most recently published snapshot, or null if none has
+     * been published.  The snapshot will not change until it is passed to
+     * release.
+     */
+    public BoxSnapshot acquireLatest() {
+        while (true) {
+            int i = latest.get();
+            if (i < 0) return null;
+            int s = state.get(i);
+            // if s is -1, the writer reclaimed the slot after publishing a
+            // newer one, so just look again
+            if (s >= 0 && state.compareAndSet(i, s, s+1)) {
+                return snapshots[i];
+            }
+        }
+    }
+
+    /**
+     * Releases a snapshot returned by acquireLatest.
+     */
+    public void release(BoxSnapshot snapshot) {
+        for (int i=0; i<snapshots.length; i++) {
+            if (snapshots[i] == snapshot) {
+                state.decrementAndGet(i);
+                return;
+            }
+        }
+        throw new IllegalArgumentException("snapshot is not from this buffer");
+    }
+
+    protected final BoxSnapshot[] snapshots;
+    protected final AtomicIntegerArray state;
+    protected final AtomicInteger latest;
+    // only touched by the writer
+    protected int writing = -1;
+}
@@ -0,0 +1,258 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.graphics;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import javax.imageio.ImageIO;
+
+import etomica.action.IAction;
+import etomica.api.IBox;
+import etomica.api.ISimulation;
+import etomica.atom.AtomFilter;
+import etomica.atom.DiameterHash;
+import etomica.atom.DiameterHashByElement;
+import etomica.atom.DiameterHashByElementType;
+
+/**
+ * Action that draws a box into an offscreen image and writes it to a
+ * numbered image file (prefix00000.png, prefix00001.png, ...), for making
+ * movies of a simulation run without a display.  It does not need a
+ * window system and works with java.awt.headless=true.
+ *
+ * Each call to actionPerformed takes a BoxSnapshot of the box and writes
+ * it; frames published elsewhere (for instance taken from a
+ * BoxSnapshotBuffer on another thread) can be written with writeFrame.
+ * The box is scaled to fit the image and viewed along the z axis; in 3D
+ * the atoms are drawn from back to front as shaded disks.
+ */
+public class BoxSnapshotImageWriter implements IAction {
+
+    /**
+     * Makes a writer that colors atoms by type and sizes them by element,
+     * like DisplayBox does by default.
+     */
+    public BoxSnapshotImageWriter(ISimulation sim, IBox box) {
+        this.box = box;
+        colorScheme = new ColorSchemeByType(sim);
+        diameterHash = new DiameterHashByElementType(sim);
+        DiameterHashByElement.populateVDWDiameters(((DiameterHashByElementType)diameterHash).getDiameterHashByElement());
+        snapshot = new BoxSnapshot(box.getBoundary().getBoxSize().getD());
+        width = height = 400;
+        filePrefix = "frame";
+        format = "png";
+        background = Color.white;
+    }
+
+    public void setColorScheme(ColorScheme newColorScheme) {
+        colorScheme = newColorScheme;
+    }
+
+    public ColorScheme getColorScheme() {
+        return colorScheme;
+    }
+
+    public void setDiameterHash(DiameterHash newDiameterHash) {
+        diameterHash = newDiameterHash;
+    }
+
+    public DiameterHash getDiameterHash() {
+        return diameterHash;
+    }
+
+    /**
+     * Sets the filter for atoms that are drawn.  Atoms for which the filter
+     * returns false are not drawn.  Default is null (all atoms are drawn).
+     */
+    public void setAtomFilter(AtomFilter newAtomFilter) {
+        atomFilter = newAtomFilter;
+    }
+
+    public AtomFilter getAtomFilter() {
+        return atomFilter;
+    }
+
+    /**
+     * Sets the size of the images, in pixels.  Default is 400x400.
+     */
+    public void setImageSize(int newWidth, int newHeight) {
+        if (newWidth < 1 || newHeight < 1) {
+            throw new IllegalArgumentException("image size must be positive");
+        }
+        width = newWidth;
+        height = newHeight;
+    }
+
+    public int getImageWidth() {
+        return width;
+    }
+
+    public int getImageHeight() {
+        return height;
+    }
+
+    /**
+     * Sets the beginning of the file names, which may include a directory.
+     * Default is "frame".
+     */
+    public void setFilePrefix(String newFilePrefix) {
+        filePrefix = newFilePrefix;
+    }
+
+    public String getFilePrefix() {
+        return filePrefix;
+    }
+
+    /**
+     * Sets the image format, which must be one understood by ImageIO
+     * ("png", "jpg", "bmp", ...).  Default is "png".
+     */
+    public void setFormat(String newFormat) {
+        format = newFormat;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public void setBackground(Color newBackground) {
+        background = newBackground;
+    }
+
+    public Color getBackground() {
+        return background;
+    }
+
+    /**
+     * Returns the number of frames written so far, which is also the number
+     * of the next frame.
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public void setFrameCount(int newFrameCount) {
+        frameCount = newFrameCount;
+    }
+
+    public void actionPerformed() {
+        snapshot.fill(box, colorScheme, diameterHash, atomFilter);
+        writeFrame(snapshot);
+    }
+
+    /**
+     * Draws the snapshot and writes it to the next file.
+     */
+    public void writeFrame(BoxSnapshot frame) {
+        BufferedImage image = draw(frame);
+        File file = new File(filePrefix+String.format("%05d", frameCount)+"."+format);
+        try {
+            if (!ImageIO.write(image, format, file)) {
+                throw new RuntimeException("no writer for image format "+format);
+            }
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Cannot write "+file+", caught IOException: "+e.getMessage(), e);
+        }
+        frameCount++;
+    }
+
+    /**
+     * Returns an image of the snapshot.
+     */
+    public BufferedImage draw(BoxSnapshot frame) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(background);
+        g.fillRect(0, 0, width, height);
+
+        int D = frame.getD();
+        double lx = frame.getBoxSize(0);
+        double ly = D > 1 ? frame.getBoxSize(1) : 1;
+        // leave a margin of one atom around the box
+        double toPixels = Math.min((width-1)/(lx+2), (height-1)/(ly+2));
+        double ox = 0.5*width;
+        double oy = 0.5*height;
+
+        g.setColor(Color.gray);
+        g.drawRect((int)(ox-0.5*lx*toPixels), (int)(oy-0.5*ly*toPixels), (int)(lx*toPixels), (int)(ly*toPixels));
+
+        int n = frame.getAtomCount();
+        int[] order = new int[n];
+        for (int i=0; i<n; i++) {
+            order[i] = i;
+        }
+        if (D > 2) {
+            // sort by z so that nearer atoms (larger z) are drawn last
+            double[] z = new double[n];
+            for (int i=0; i<n; i++) {
+                z[i] = frame.getPosition(i, 2);
+            }
+            sortByKey(order, z);
+        }
+
+        for (int j=0; j<n; j++) {
+            int i = order[j];
+            if (!frame.isDrawable(i)) continue;
+            double x = ox + toPixels*frame.getPosition(i, 0);
+            double y = D > 1 ? oy + toPixels*frame.getPosition(i, 1) : oy;
+            int sigmaP = (int)(toPixels*frame.getDiameter(i));
+            if (sigmaP < 1) sigmaP = 1;
+            int xP = (int)x - (sigmaP>>1);
+            int yP = (int)y - (sigmaP>>1);
+            Color color = frame.getColor(i);
+            if (D > 2) {
+                // outline with a darker shade so overlapping atoms stand apart
+                g.setColor(color.darker());
+                g.fillOval(xP, yP, sigmaP, sigmaP);
+                g.setColor(color);
+                int inset = sigmaP/8;
+                g.fillOval(xP+inset, yP+inset, sigmaP-2*inset, sigmaP-2*inset);
+            }
+            else {
+                g.setColor(color);
+                g.fillOval(xP, yP, sigmaP, sigmaP);
+            }
+        }
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * Sorts order so that key[order[i]] increases with i.
+     */
+    protected static void sortByKey(int[] order, final double[] key) {
+        Integer[] boxed = new Integer[order.length];
+        for (int i=0; i<order.length; i++) {
+            boxed[i] = order[i];
+        }
+        Arrays.sort(boxed, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Double.compare(key[a], key[b]);
+            }
+        });
+        for (int i=0; i<order.length; i++) {
+            order[i] = boxed[i];
+        }
+    }
+
+    protected final IBox box;
+    protected final BoxSnapshot snapshot;
+    protected ColorScheme colorScheme;
+    protected DiameterHash diameterHash;
+    protected AtomFilter atomFilter;
+    protected int width, height;
+    protected String filePrefix, format;
+    protected Color background;
+    protected int frameCount;
+}
@@ -0,0 +1,107 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.graphics;
+
+import etomica.action.IAction;
+import etomica.api.IIntegrator;
+
+/**
+ * Action that copies the box of a DisplayBox into a BoxSnapshot and
+ * publishes it to the display's BoxSnapshotBuffer, then asks the display
+ * to repaint.  The action is meant to be run on the simulation's thread,
+ * typically as an integrator listener:
+ *
+ * <pre>
+ * BoxSnapshotPublisher publisher = new BoxSnapshotPublisher(displayBox);
+ * integrator.getEventManager().addListener(new IntegratorListenerAction(publisher, 10));
+ * </pre>
+ *
+ * Constructing the publisher gives the DisplayBox a buffer, after which its
+ * canvas draws only from the published snapshots (on the event thread) and
+ * never reads the live box.  The listener interval sets how often (in
+ * steps) a snapshot is taken; setMinPeriod additionally limits the rate in
+ * wall-clock time, which is useful when steps are fast.
+ */
+public class BoxSnapshotPublisher implements IAction {
+
+    /**
+     * Makes a buffer with 3 snapshots for the display.
+     */
+    public BoxSnapshotPublisher(DisplayBox displayBox) {
+        this(displayBox, 3);
+    }
+
+    public BoxSnapshotPublisher(DisplayBox displayBox, int capacity) {
+        this.displayBox = displayBox;
+        buffer = new BoxSnapshotBuffer(displayBox.getBox().getBoundary().getBoxSize().getD(), capacity);
+        displayBox.setSnapshotBuffer(buffer);
+    }
+
+    public BoxSnapshotBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Sets the minimum time (in milliseconds) between snapshots.  Calls to
+     * actionPerformed that come sooner than this after the last snapshot do
+     * nothing.  Default is 0.
+     */
+    public void setMinPeriod(long newMinPeriod) {
+        minPeriod = newMinPeriod;
+    }
+
+    public long getMinPeriod() {
+        return minPeriod;
+    }
+
+    /**
+     * Sets the integrator whose step count is recorded with each snapshot.
+     * May be null (the default), in which case snapshots are numbered.
+     */
+    public void setIntegrator(IIntegrator newIntegrator) {
+        integrator = newIntegrator;
+    }
+
+    public IIntegrator getIntegrator() {
+        return integrator;
+    }
+
+    /**
+     * Returns the number of snapshots skipped because no buffer slot was
+     * free.
+     */
+    public long getDroppedCount() {
+        return nDropped;
+    }
+
+    public void actionPerformed() {
+        if (minPeriod > 0) {
+            long now = System.currentTimeMillis();
+            if (now - lastTime < minPeriod) return;
+            lastTime = now;
+        }
+        BoxSnapshot snapshot = buffer.beginWrite();
+        if (snapshot == null) {
+            // the canvases are holding every other snapshot; they'll get the
+            // next one
+            nDropped++;
+            return;
+        }
+        snapshot.fill(displayBox.getBox(), displayBox.getColorScheme(), displayBox.getDiameterHash(), displayBox.getAtomFilter());
+        if (displayBox.canvas != null) {
+            displayBox.canvas.recordSnapshotAgents(snapshot);
+        }
+        snapshot.setStep(integrator == null ? nPublished : integrator.getStepCount());
+        buffer.publish();
+        nPublished++;
+        displayBox.repaint();
+    }
+
+    protected final DisplayBox displayBox;
+    protected final BoxSnapshotBuffer buffer;
+    protected IIntegrator integrator;
+    protected long minPeriod, lastTime;
+    protected long nPublished, nDropped;
+}
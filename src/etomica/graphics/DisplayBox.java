@@ -47,6 +47,7 @@ public class DisplayBox extends Display {
     protected ColorScheme colorScheme;
     protected DiameterHash diameterHash;
     protected AtomFilter atomFilter = null;
+    protected BoxSnapshotBuffer snapshotBuffer = null;
     protected boolean displayBoundary = true;
     LinkedList drawables = new LinkedList();  //was ArrayList before Java2 conversion
     private IBox box;
@@ -481,6 +482,25 @@ public class DisplayBox extends Display {
      */
     public AtomFilter getAtomFilter() {return atomFilter;}
 
+    /**
+     * Sets the buffer from which the canvas takes the snapshots it draws.
+     * If a buffer is set, the canvas draws only from the latest snapshot
+     * and repaint just schedules drawing on the event thread; something
+     * (normally a BoxSnapshotPublisher) must publish snapshots to the buffer.
+     * Default is null, meaning that the canvas draws from the live box.
+     */
+    public void setSnapshotBuffer(BoxSnapshotBuffer newSnapshotBuffer) {
+        snapshotBuffer = newSnapshotBuffer;
+    }
+
+    /**
+     * Returns the buffer from which the canvas takes the snapshots it
+     * draws, or null if the canvas draws from the live box.
+     */
+    public BoxSnapshotBuffer getSnapshotBuffer() {
+        return snapshotBuffer;
+    }
+
     /**
      *
      * @return LinkedList
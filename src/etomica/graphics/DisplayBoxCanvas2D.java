@@ -7,7 +7,6 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
-import java.awt.TextField;
 import java.awt.event.ComponentEvent;
 import java.awt.event.ComponentListener;
 import java.util.Iterator;
@@ -31,7 +30,6 @@ import etomica.units.Pixel;
 //Class used to define canvas onto which configuration is drawn
 public class DisplayBoxCanvas2D extends DisplayCanvas {
     
-    private TextField scaleText = new TextField();
     private Font font = new Font("sansserif", Font.PLAIN, 10);
     //  private int annotationHeight = font.getFontMetrics().getHeight();
     private int annotationHeight = 12;
@@ -43,9 +41,6 @@ public class DisplayBoxCanvas2D extends DisplayCanvas {
     public DisplayBoxCanvas2D(DisplayBox _box, ISpace _space, Controller controller) {
         super(controller);
     	this.space = _space;
-        scaleText.setVisible(true);
-        scaleText.setEditable(false);
-        scaleText.setBounds(0,0,100,50);
         displayBox = _box;
         atomOrigin = new int[space.D()];
         boundingBox = space.makeVector();
@@ -129,6 +124,38 @@ public class DisplayBoxCanvas2D extends DisplayCanvas {
         }
     }
             
+    /**
+     * Draws the ith atom of the snapshot.  Subclasses that override
+     * drawAtom(Graphics, int[], IAtom) to draw atoms differently should
+     * override this method as well if they are used with a
+     * BoxSnapshotBuffer.
+     */
+    protected void drawAtom(Graphics g, int origin[], BoxSnapshot snapshot, int i) {
+        int sigmaP, xP, yP, baseXP, baseYP;
+
+        g.setColor(snapshot.getColor(i));
+        
+        double toPixels = pixel.toPixels() * displayBox.getScale();
+
+        baseXP = origin[0] + (int)(toPixels*snapshot.getPosition(i, 0));
+        baseYP = origin[1] + (int)(toPixels*snapshot.getPosition(i, 1));
+        double sigma = snapshot.getDiameter(i);
+        sigmaP = (int)(toPixels*sigma);
+        sigmaP = (sigmaP == 0) ? 1 : sigmaP;
+        xP = baseXP - (sigmaP>>1);
+        yP = baseYP - (sigmaP>>1);
+        g.fillOval(xP, yP, sigmaP, sigmaP);
+        /* Draw the orientation line, if any */
+        if(snapshot.getAtom(i).getType() instanceof AtomTypeOrientedSphere) {
+            int dxy = (int)(toPixels*0.5*sigma);
+            int dx = (int)(dxy*snapshot.getDirection(i, 0));
+            int dy = (int)(dxy*snapshot.getDirection(i, 1));
+            g.setColor(Color.red);
+            xP += dxy; yP += dxy;
+            g.drawLine(xP-dx, yP-dy, xP+dx, yP+dy);
+        }
+    }
+
     IVectorMutable vec2;  
    /**
     * Method that handles the drawing of the box to the screen.
@@ -137,6 +164,21 @@ public class DisplayBoxCanvas2D extends DisplayCanvas {
     */
     public void doPaint(Graphics g) {
         if(!isVisible() || displayBox.getBox() == null) {return;}
+        BoxSnapshotBuffer buffer = displayBox.getSnapshotBuffer();
+        if (buffer != null) {
+            BoxSnapshot snapshot = buffer.acquireLatest();
+            if (snapshot == null) {
+                // nothing has been published yet
+                return;
+            }
+            try {
+                doPaint(g, snapshot);
+            }
+            finally {
+                buffer.release(snapshot);
+            }
+            return;
+        }
         int w = getSize().width;
         int h = getSize().height;
 
@@ -244,4 +286,84 @@ public class DisplayBoxCanvas2D extends DisplayCanvas {
             g.drawString("Scale: "+Integer.toString((int)(100*displayBox.getScale()))+"%", 0, getSize().height-3);
         }
     }//end of doPaint
+
+    /**
+     * Draws the box from the given snapshot, without looking at the atoms
+     * of the box.  Only the boundary's shape is taken from the box.
+     */
+    protected void doPaint(Graphics g, BoxSnapshot snapshot) {
+        int w = getSize().width;
+        int h = getSize().height;
+
+        g.setColor(getBackground());
+        g.fillRect(0,0,w,h);
+        displayBox.computeImageParameters2(w, h);
+        for (int i=0; i<2; i++) {
+            boundingBox.setX(i, snapshot.getBoxSize(i));
+        }
+        int[] origin = displayBox.getOrigin();
+        double toPixels = displayBox.getScale() * pixel.toPixels();
+
+        IBoundary boundary = displayBox.getBox().getBoundary();
+        if(drawBoundary>DRAW_BOUNDARY_NONE && boundary instanceof Boundary) {
+            g.setColor(Color.gray);
+            Polygon shape = (Polygon)((Boundary)boundary).getShape();
+            LineSegment[] edges = shape.getEdges();
+            int ox = origin[0] + (int)(toPixels*boundingBox.getX(0)*0.5);
+            int oy = origin[1] + (int)(toPixels*boundingBox.getX(1)*0.5);
+            for(int i=0; i<edges.length; i++) {
+                IVector[] vertices = edges[i].getVertices();
+                int x1 = ox + (int)(toPixels*vertices[0].getX(0));
+                int y1 = oy + (int)(toPixels*vertices[0].getX(1));
+                int x2 = ox + (int)(toPixels*vertices[1].getX(0));
+                int y2 = oy + (int)(toPixels*vertices[1].getX(1));
+                g.drawLine(x1,y1,x2,y2);
+            }
+        }
+
+        for(Iterator<?> iter=displayBox.getDrawables().iterator(); iter.hasNext(); ) {
+            Drawable obj = (Drawable)iter.next();
+            obj.draw(g, origin, toPixels);
+        }
+
+        atomOrigin[0] = origin[0] + (int)(0.5*toPixels*boundingBox.getX(0));
+        atomOrigin[1] = origin[1] + (int)(0.5*toPixels*boundingBox.getX(1));
+
+        int nLeaf = snapshot.getAtomCount();
+        for (int iLeaf=0; iLeaf<nLeaf; iLeaf++) {
+            if (!snapshot.isDrawable(iLeaf)) continue;
+            drawAtom(g, this instanceof DisplayBoxSpin2D ? origin : atomOrigin, snapshot, iLeaf);
+        }
+
+        if(displayBox.getDrawOverflow()) {
+            OverflowShift overflow = new OverflowShift(space);
+            IVectorMutable r = space.makeVector();
+            for (int iLeaf=0; iLeaf<nLeaf; iLeaf++) {
+                if (!snapshot.isDrawable(iLeaf)) continue;
+                for (int k=0; k<r.getD(); k++) {
+                    r.setX(k, snapshot.getPosition(iLeaf, k));
+                }
+                float[][] shifts = overflow.getShifts(boundary, r, 0.5*snapshot.getDiameter(iLeaf));
+                for(int i=shifts.length-1; i>=0; i--) {
+                    shiftOrigin[0] = atomOrigin[0] + (int)(toPixels*shifts[i][0]);
+                    shiftOrigin[1] = atomOrigin[1] + (int)(toPixels*shifts[i][1]);
+                    drawAtom(g, shiftOrigin, snapshot, iLeaf);
+                }
+            }
+        }
+
+        if(boundary instanceof Boundary && displayBox.getImageShells() > 0) {
+            double[][] origins = ((Boundary)boundary).imageOrigins(displayBox.getImageShells());
+            for(int i=0; i<origins.length; i++) {
+                g.copyArea(displayBox.getOrigin()[0],displayBox.getOrigin()[1],displayBox.getDrawSize()[0],displayBox.getDrawSize()[1],(int)(toPixels*origins[i][0]),(int)(toPixels*origins[i][1]));
+            }
+        }
+        if(writeScale) {
+            g.setColor(Color.lightGray);
+            g.fillRect(0,getSize().height-annotationHeight,getSize().width,annotationHeight);
+            g.setColor(Color.black);
+            g.setFont(font);
+            g.drawString("Scale: "+Integer.toString((int)(100*displayBox.getScale()))+"%", 0, getSize().height-3);
+        }
+    }
 }  //end of DisplayBox.Canvas
@@ -43,7 +43,7 @@ public class DisplayBoxCanvasG3DSys extends DisplayCanvas implements
 	private Color backgroundColor;
 	private Color boundaryFrameColor;
 	private Color planeColor;
-	private Panel panel = null;
+	private Container panel = null;
 	private boolean initialOrient = false;
     private Plane[] planes;
     private Triangle[][] planeTriangles;
@@ -54,6 +54,9 @@ public class DisplayBoxCanvasG3DSys extends DisplayCanvas implements
     private double[] planeAngles;
     private final ISpace space;
     protected AtomLeafAgentManager<Ball[]> aamOriented;
+    // balls for the oriented sites of the atom at each snapshot index; used
+    // only while drawing snapshots
+    protected Ball[][] snapshotSiteBalls = new Ball[0][];
     protected final AtomTypeAgentManager atomTypeOrientedManager;
     protected IVector rMin, rMax;
 
@@ -70,7 +73,9 @@ public class DisplayBoxCanvasG3DSys extends DisplayCanvas implements
          */
         // this.setVisible(false); // to be set visible later by
         // SimulationGraphic
-        panel = new Panel();
+        // a Panel can't be made without a display, so use a lightweight
+        // container when headless (for instance when testing)
+        panel = GraphicsEnvironment.isHeadless() ? new javax.swing.JPanel() : new Panel();
         this.setLayout(new java.awt.GridLayout());
         panel.setLayout(new java.awt.GridLayout());
         panel.setSize(2000, 1600);
@@ -256,106 +261,23 @@ public class DisplayBoxCanvasG3DSys extends DisplayCanvas implements
         }
 */
 
-		AtomFilter atomFilter = displayBox.getAtomFilter();
-        if (atomFilter instanceof AtomFilterCollective) {
-            ((AtomFilterCollective)atomFilter).resetFilter();
-        }
-        ColorScheme colorScheme = displayBox.getColorScheme();
-		if (colorScheme instanceof ColorSchemeCollective) {
-			((ColorSchemeCollective) colorScheme).colorAllAtoms();
-		}
-
-		DiameterHash diameterHash = displayBox.getDiameterHash();
-
-		IAtomList leafList = displayBox.getBox().getLeafList();
-		int nLeaf = leafList.getAtomCount();
-
-		for (int iLeaf = 0; iLeaf < nLeaf; iLeaf++) {
-		    IAtom a = null;
-		    Ball ball = null;
+		BoxSnapshotBuffer buffer = displayBox.getSnapshotBuffer();
+		BoxSnapshot snapshot = null;
+		if (buffer != null) {
+		    snapshot = buffer.acquireLatest();
+		    if (snapshot == null) {
+		        // nothing has been published yet
+		        return;
+		    }
 		    try {
-		        a = leafList.getAtom(iLeaf);
-	            if (a == null)
-	                continue;
-	            ball = (Ball) aam.getAgent(a);
+		        updateBalls(snapshot);
 		    }
-		    catch (ArrayIndexOutOfBoundsException e) {
-		        System.out.println("oops, array index out of bounds");
-		        //atoms might have been removed on another thread
-		        break;
+		    finally {
+		        buffer.release(snapshot);
 		    }
-            catch (IndexOutOfBoundsException e) {
-                System.out.println("oops, index out of bounds");
-                //atoms might have been removed on another thread
-                break;
-            }
-			if (ball == null) {
-				continue;
-			}
-			/*
-			 * Atomfilter changes the drawable flag in spheres; bonds respect
-			 * this and will not draw themselves either. Wireframe mode, on the
-			 * other hand, tells G3DSys to ignore spheres entirely regardless of
-			 * drawable flag. This makes it possible to filter bonds in
-			 * wireframe mode as well.
-			 */
-			boolean drawable = atomFilter == null ? true : atomFilter.accept(a);
-			if (drawable && rMin != null) {
-			    for (int i=0; i<rMin.getD(); i++) {
-			        double x = a.getPosition().getX(i);
-			        if (x < rMin.getX(i) || x > rMax.getX(i)) {
-			            drawable = false;
-			            break;
-			        }
-			    }
-			}
-			ball.setDrawable(drawable);
-			if (!drawable) {
-				continue;
-			}
-			a.getPosition().assignTo(coords);
-			float diameter = (float) diameterHash.getDiameter(a);
-            // default diameter
-	        if (diameter == -1) diameter = 1;
-			ball.setColor(G3DSys.getColix(colorScheme.getAtomColor(a)));
-			ball.setD(diameter);
-			ball.setX((float) coords[0]);
-			ball.setY((float) coords[1]);
-			ball.setZ((float) coords[2]);
-
-			OrientedSite[] sites = (OrientedSite[])atomTypeOrientedManager.getAgent(a.getType());
-			if (sites != null) {
-			    Ball[] ballSites = aamOriented.getAgent(a);
-			    if (ballSites == null) {
-		            ballSites = new Ball[sites.length];
-		            for (int j=0; j<sites.length; j++) {
-		                ballSites[j] = new Ball(gsys, G3DSys.getColix(sites[j].color), 0, 0, 0, (float)sites[j].diameter);
-		                gsys.addFig(ballSites[j]);
-		            }
-		            aamOriented.setAgent(a, ballSites);
-			    }
-			    IOrientation orientation = ((IAtomOriented)a).getOrientation();
-			    IVector direction1 = orientation.getDirection();
-			    IVector direction2 = null;
-			    if (orientation instanceof IOrientationFull3D) {
-			        direction2 = ((IOrientationFull3D)orientation).getSecondaryDirection();
-	                work2.E(direction1);
-	                work2.XE(direction2);
-			    }
-			    
-			    for (int j=0; j<sites.length; j++) {
-			        work.E(a.getPosition());
-			        work.PEa1Tv1(sites[j].coord, direction1);
-			        if (sites[j] instanceof OrientedFullSite) {
-			            work.PEa1Tv1(((OrientedFullSite)sites[j]).coord2, direction2);
-			            work.PEa1Tv1(((OrientedFullSite)sites[j]).coord3, work2);
-			        }
-			        work.assignTo(coords);
-			        ballSites[j].setX((float) coords[0]);
-			        ballSites[j].setY((float) coords[1]);
-			        ballSites[j].setZ((float) coords[2]);
-			    }
-			}
+		}
+		else {
+		    updateBallsLive();
 		}
 
         for (int i=0; i<lines.length; i++) {
@@ -471,6 +393,230 @@ public class DisplayBoxCanvasG3DSys extends DisplayCanvas implements
 		gsys.fastRefresh();
 	}
 
+    /**
+     * Updates the ball of each atom from the live box.
+     */
+    protected void updateBallsLive() {
+		AtomFilter atomFilter = displayBox.getAtomFilter();
+        if (atomFilter instanceof AtomFilterCollective) {
+            ((AtomFilterCollective)atomFilter).resetFilter();
+        }
+        ColorScheme colorScheme = displayBox.getColorScheme();
+        if (colorScheme instanceof ColorSchemeCollective) {
+        	((ColorSchemeCollective) colorScheme).colorAllAtoms();
+        }
+
+        DiameterHash diameterHash = displayBox.getDiameterHash();
+
+        IAtomList leafList = displayBox.getBox().getLeafList();
+        int nLeaf = leafList.getAtomCount();
+
+        for (int iLeaf = 0; iLeaf < nLeaf; iLeaf++) {
+            IAtom a = null;
+            Ball ball = null;
+            try {
+                a = leafList.getAtom(iLeaf);
+	            if (a == null)
+	                continue;
+	            ball = (Ball) aam.getAgent(a);
+            }
+            catch (ArrayIndexOutOfBoundsException e) {
+                System.out.println("oops, array index out of bounds");
+                //atoms might have been removed on another thread
+                break;
+            }
+            catch (IndexOutOfBoundsException e) {
+                System.out.println("oops, index out of bounds");
+                //atoms might have been removed on another thread
+                break;
+            }
+        	if (ball == null) {
+        		continue;
+        	}
+        	/*
+        	 * Atomfilter changes the drawable flag in spheres; bonds respect
+        	 * this and will not draw themselves either. Wireframe mode, on the
+        	 * other hand, tells G3DSys to ignore spheres entirely regardless of
+        	 * drawable flag. This makes it possible to filter bonds in
+        	 * wireframe mode as well.
+        	 */
+        	boolean drawable = atomFilter == null ? true : atomFilter.accept(a);
+        	if (drawable && rMin != null) {
+        	    for (int i=0; i<rMin.getD(); i++) {
+        	        double x = a.getPosition().getX(i);
+        	        if (x < rMin.getX(i) || x > rMax.getX(i)) {
+        	            drawable = false;
+        	            break;
+        	        }
+        	    }
+        	}
+        	ball.setDrawable(drawable);
+        	if (!drawable) {
+        		continue;
+        	}
+        	a.getPosition().assignTo(coords);
+        	float diameter = (float) diameterHash.getDiameter(a);
+            // default diameter
+	        if (diameter == -1) diameter = 1;
+        	ball.setColor(G3DSys.getColix(colorScheme.getAtomColor(a)));
+        	ball.setD(diameter);
+        	ball.setX((float) coords[0]);
+        	ball.setY((float) coords[1]);
+        	ball.setZ((float) coords[2]);
+
+        	OrientedSite[] sites = (OrientedSite[])atomTypeOrientedManager.getAgent(a.getType());
+        	if (sites != null) {
+        	    Ball[] ballSites = aamOriented.getAgent(a);
+        	    if (ballSites == null) {
+                    ballSites = new Ball[sites.length];
+                    for (int j=0; j<sites.length; j++) {
+                        ballSites[j] = new Ball(gsys, G3DSys.getColix(sites[j].color), 0, 0, 0, (float)sites[j].diameter);
+                        gsys.addFig(ballSites[j]);
+                    }
+                    aamOriented.setAgent(a, ballSites);
+        	    }
+        	    IOrientation orientation = ((IAtomOriented)a).getOrientation();
+        	    IVector direction1 = orientation.getDirection();
+        	    IVector direction2 = null;
+        	    if (orientation instanceof IOrientationFull3D) {
+        	        direction2 = ((IOrientationFull3D)orientation).getSecondaryDirection();
+	                work2.E(direction1);
+	                work2.XE(direction2);
+        	    }
+        	    
+        	    for (int j=0; j<sites.length; j++) {
+        	        work.E(a.getPosition());
+        	        work.PEa1Tv1(sites[j].coord, direction1);
+        	        if (sites[j] instanceof OrientedFullSite) {
+        	            work.PEa1Tv1(((OrientedFullSite)sites[j]).coord2, direction2);
+        	            work.PEa1Tv1(((OrientedFullSite)sites[j]).coord3, work2);
+        	        }
+        	        work.assignTo(coords);
+        	        ballSites[j].setX((float) coords[0]);
+        	        ballSites[j].setY((float) coords[1]);
+        	        ballSites[j].setZ((float) coords[2]);
+        	    }
+        	}
+        }
+    }
+
+    /**
+     * Records each atom's ball in the snapshot.  The agent manager is only
+     * changed (as atoms are added and removed) on the simulation's thread,
+     * so it is read here rather than while drawing.
+     */
+    protected void recordSnapshotAgents(BoxSnapshot snapshot) {
+        int nLeaf = snapshot.getAtomCount();
+        for (int iLeaf = 0; iLeaf < nLeaf; iLeaf++) {
+            snapshot.setAgent(iLeaf, aam.getAgent(snapshot.getAtom(iLeaf)));
+        }
+    }
+
+    /**
+     * Updates the ball of each atom from the snapshot, without looking at
+     * the atoms or the agent managers.  The balls were recorded in the
+     * snapshot when it was filled; the balls for oriented sites are kept
+     * by snapshot index.
+     */
+    protected void updateBalls(BoxSnapshot snapshot) {
+        int nLeaf = snapshot.getAtomCount();
+        for (int iLeaf = 0; iLeaf < nLeaf; iLeaf++) {
+            Ball ball = (Ball) snapshot.getAgent(iLeaf);
+            if (ball == null) {
+                continue;
+            }
+            boolean drawable = snapshot.isDrawable(iLeaf);
+            if (drawable && rMin != null) {
+                for (int i=0; i<rMin.getD(); i++) {
+                    double x = snapshot.getPosition(iLeaf, i);
+                    if (x < rMin.getX(i) || x > rMax.getX(i)) {
+                        drawable = false;
+                        break;
+                    }
+                }
+            }
+            ball.setDrawable(drawable);
+            if (!drawable) {
+                continue;
+            }
+            ball.setColor(G3DSys.getColix(snapshot.getColor(iLeaf)));
+            ball.setD((float) snapshot.getDiameter(iLeaf));
+            ball.setX((float) snapshot.getPosition(iLeaf, 0));
+            ball.setY((float) snapshot.getPosition(iLeaf, 1));
+            ball.setZ((float) snapshot.getPosition(iLeaf, 2));
+
+            OrientedSite[] sites = (OrientedSite[])atomTypeOrientedManager.getAgent(snapshot.getAtom(iLeaf).getType());
+            Ball[] ballSites = getSnapshotSiteBalls(iLeaf, sites);
+            if (ballSites == null) {
+                continue;
+            }
+            for (int k=0; k<3; k++) {
+                work3.setX(k, snapshot.getDirection(iLeaf, k));
+            }
+            boolean full3D = false;
+            for (int j=0; j<sites.length; j++) {
+                if (sites[j] instanceof OrientedFullSite) full3D = true;
+            }
+            if (full3D) {
+                for (int k=0; k<3; k++) {
+                    work.setX(k, snapshot.getSecondaryDirection(iLeaf, k));
+                }
+                work2.E(work3);
+                work2.XE(work);
+            }
+            for (int j=0; j<sites.length; j++) {
+                for (int k=0; k<3; k++) {
+                    coords[k] = snapshot.getPosition(iLeaf, k) + sites[j].coord*work3.getX(k);
+                }
+                if (sites[j] instanceof OrientedFullSite) {
+                    for (int k=0; k<3; k++) {
+                        coords[k] += ((OrientedFullSite)sites[j]).coord2*work.getX(k)
+                                   + ((OrientedFullSite)sites[j]).coord3*work2.getX(k);
+                    }
+                }
+                ballSites[j].setX((float) coords[0]);
+                ballSites[j].setY((float) coords[1]);
+                ballSites[j].setZ((float) coords[2]);
+            }
+        }
+        // the atoms beyond the end of the snapshot have been removed
+        for (int iLeaf = nLeaf; iLeaf < snapshotSiteBalls.length; iLeaf++) {
+            getSnapshotSiteBalls(iLeaf, null);
+        }
+    }
+
+    /**
+     * Returns the balls for the sites of the atom at the given snapshot
+     * index, making (or replacing) them if they don't match the given
+     * sites.  Returns null, after removing any old balls, if sites is null.
+     */
+    protected Ball[] getSnapshotSiteBalls(int iLeaf, OrientedSite[] sites) {
+        if (iLeaf >= snapshotSiteBalls.length) {
+            if (sites == null) {
+                return null;
+            }
+            Ball[][] newSiteBalls = new Ball[iLeaf+1][];
+            System.arraycopy(snapshotSiteBalls, 0, newSiteBalls, 0, snapshotSiteBalls.length);
+            snapshotSiteBalls = newSiteBalls;
+        }
+        Ball[] ballSites = snapshotSiteBalls[iLeaf];
+        if (ballSites != null && (sites == null || ballSites.length != sites.length)) {
+            for (int j=0; j<ballSites.length; j++) {
+                gsys.removeFig(ballSites[j]);
+            }
+            ballSites = null;
+        }
+        if (ballSites == null && sites != null) {
+            ballSites = new Ball[sites.length];
+            for (int j=0; j<sites.length; j++) {
+                ballSites[j] = new Ball(gsys, G3DSys.getColix(sites[j].color), 0, 0, 0, (float)sites[j].diameter);
+                gsys.addFig(ballSites[j]);
+            }
+        }
+        snapshotSiteBalls[iLeaf] = ballSites;
+        return ballSites;
+    }
+
     public void addLine(LineSegment newLine) {
         lines = (LineSegment[])Arrays.addObject(lines, newLine);
         IVector[] endpoints = newLine.getVertices();
@@ -28,6 +28,17 @@ public class DisplayBoxSpin2D extends DisplayBoxCanvas2D {
     }
     
     protected void drawAtom(Graphics g, int origin[], IAtom atom) {
+        drawSpin(g, origin, atom, atom.getPosition().getX(0));
+    }
+
+    protected void drawAtom(Graphics g, int origin[], BoxSnapshot snapshot, int i) {
+        drawSpin(g, origin, snapshot.getAtom(i), snapshot.getPosition(i, 0));
+    }
+
+    /**
+     * Draws the site of the given atom, whose spin is the sign of x.
+     */
+    protected void drawSpin(Graphics g, int origin[], IAtom atom, double x) {
         AtomSite site = neighborSiteManager.getSite(atom);
         if (site == null) return;
         RectangularLattice lattice = neighborSiteManager.getLattice();
@@ -42,7 +53,7 @@ public class DisplayBoxSpin2D extends DisplayBoxCanvas2D {
         ox = origin[0] + ox*spinWidth*(lattice.getSize()[0]) + 1;
         oy = origin[1] + oy*spinWidth*(lattice.getSize()[1]) + 1;
         //draw lattice plane
-        g.setColor(atom.getPosition().getX(0) > 0 ? Color.green : Color.white);
+        g.setColor(x > 0 ? Color.green : Color.white);
         g.fillRect(ox+latticeIndex[0]*spinWidth,oy+latticeIndex[1]*spinWidth,spinWidth,spinWidth);
 //        g.setColor(Color.black);
 //        g.drawRect(ox+latticeIndex[0]*spinWidth,oy+latticeIndex[1]*spinWidth,spinWidth,spinWidth);
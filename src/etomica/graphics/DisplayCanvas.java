@@ -95,8 +95,25 @@ public abstract class DisplayCanvas extends javax.swing.JPanel {
     
     protected abstract void doPaint(Graphics g);
     
+    /**
+     * Returns true if the canvas draws from the snapshots published to the
+     * display's BoxSnapshotBuffer.  Drawing is then always done on the
+     * event thread from the latest snapshot.
+     */
+    protected boolean isSnapshotMode() {
+        return displayBox != null && displayBox.getSnapshotBuffer() != null;
+    }
+    
+    /**
+     * Records in the snapshot (with setAgent) anything the canvas keeps for
+     * each atom, so that it need not be looked up while drawing.  This is
+     * called on the simulation's thread just after the snapshot is filled.
+     * Does nothing by default.
+     */
+    protected void recordSnapshotAgents(BoxSnapshot snapshot) {}
+    
     public synchronized void paint(Graphics g) {
-        if (controller == null || !controller.isActive() || controller.isPaused()) {
+        if (isSnapshotMode() || controller == null || !controller.isActive() || controller.isPaused()) {
             // controller isn't running (we weren't called from the integrator)
             // so we need to do the drawing work here
             ensureOffScreen();
@@ -110,7 +127,17 @@ public abstract class DisplayCanvas extends javax.swing.JPanel {
         g.drawImage(offScreen, 0, 0, null);
     }
 
-    public synchronized void repaint() {
+    public void repaint() {
+        if (isSnapshotMode()) {
+            // paint will draw the latest snapshot on the event thread.  don't
+            // take the lock, so the simulation never waits for drawing.
+            super.repaint();
+            return;
+        }
+        repaintNow();
+    }
+    
+    protected synchronized void repaintNow() {
         // do the drawing work now (on this thread)
         ensureOffScreen();
         if (osg == null) {
@@ -4,6 +4,10 @@
 
 package etomica.integrator;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import etomica.api.IIntegrator;
 import etomica.api.IIntegratorEventManager;
 import etomica.api.IVectorMutable;
@@ -66,6 +70,14 @@ public abstract class Integrator implements java.io.Serializable, IIntegrator {
         }
     }
     
+    /**
+     * Returns true if the step in progress will fire integrator events once
+     * doStepInternal returns.
+     */
+    protected boolean isEventStep() {
+        return iieCount == 0;
+    }
+
     /**
      * Performs the elementary integration step, such as a molecular dynamics
      * time step, or a Monte Carlo trial.
@@ -104,6 +116,51 @@ public abstract class Integrator implements java.io.Serializable, IIntegrator {
     public IIntegratorEventManager getEventManager() {
         return eventManager;
     }
+
+    /**
+     * Writes the step count and the countdown to the next interval event.
+     * Subclasses add their own state.  Integrators that save all of their
+     * state implement Checkpointable and make this public (see
+     * checkCheckpointable).
+     */
+    protected void writeCheckpoint(DataOutput out) throws IOException {
+        out.writeLong(stepCount);
+        // iieCount is 0 if this is called from a listener at the end of a
+        // step, and will be reset once the listeners are done
+        out.writeInt(iieCount == 0 ? interval : iieCount);
+    }
+
+    /**
+     * Restores the state written by writeCheckpoint.  The integrator should
+     * already have been reset once (so that one-time setup doesn't undo the
+     * restored state) and the box should already have been restored.
+     */
+    protected void readCheckpoint(DataInput in) throws IOException {
+        stepCount = in.readLong();
+        iieCount = in.readInt();
+        initialized = true;
+    }
+
+    /**
+     * Throws an UnsupportedOperationException unless the class of this
+     * integrator declares its own (public) writeCheckpoint and
+     * readCheckpoint.  Checkpointable integrators call this so that a
+     * subclass that keeps more state doesn't silently lose it in a
+     * checkpoint; a subclass that has nothing to add can override the
+     * methods just to call super.
+     */
+    protected void checkCheckpointable() {
+        try {
+            if (getClass().getMethod("writeCheckpoint", DataOutput.class).getDeclaringClass() == getClass()
+                    && getClass().getMethod("readCheckpoint", DataInput.class).getDeclaringClass() == getClass()) {
+                return;
+            }
+        }
+        catch (NoSuchMethodException e) {
+            // not public, so not Checkpointable
+        }
+        throw new UnsupportedOperationException(getClass().getName()+" does not save its state in checkpoints");
+    }
     
     /**
      * Perform initialization.  Subclasses can override this method to set up
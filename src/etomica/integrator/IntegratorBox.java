@@ -4,6 +4,10 @@
 
 package etomica.integrator;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import etomica.api.IBox;
 import etomica.api.IPotentialMaster;
 import etomica.data.DataSourceScalar;
@@ -131,4 +135,28 @@ public abstract class IntegratorBox extends Integrator {
         return meterPE;
     }
 
+    protected void writeCheckpoint(DataOutput out) throws IOException {
+        super.writeCheckpoint(out);
+        out.writeDouble(temperature);
+        out.writeDouble(currentPotentialEnergy);
+    }
+
+    /**
+     * Restores the integrator's state and then resets it, recomputing
+     * anything that depends on the (already restored) configuration.  The
+     * potential energy is then taken from the checkpoint, since the energy
+     * tracked through the run can differ (by roundoff) from a fresh sum.
+     */
+    protected void readCheckpoint(DataInput in) throws IOException {
+        super.readCheckpoint(in);
+        // set the temperature as if uninitialized, so that subclasses don't
+        // apply a thermostat
+        initialized = false;
+        setTemperature(in.readDouble());
+        initialized = true;
+        double u = in.readDouble();
+        reset();
+        currentPotentialEnergy = u;
+    }
+
 }
@@ -31,8 +31,9 @@ import etomica.potential.PotentialCalculation;
 import etomica.potential.PotentialHard;
 import etomica.space.ISpace;
 import etomica.util.Debug;
+import etomica.util.EventHeap;
+import etomica.util.EventQueue;
 import etomica.util.TreeLinker;
-import etomica.util.TreeList;
 
 /**
  * Integrator for hard potentials.
@@ -40,6 +41,15 @@ import etomica.util.TreeList;
  * collision to the next.  Determination of time of collision and
  * implementation of collision dynamics is handled by the potential between the
  * atoms and stored in an Agent.
+ * <p>
+ * Normally all atoms are advanced at the end of each step.  With lazy time
+ * (see setLazyTime) each atom instead keeps the time at which its position
+ * is current; only the atoms involved in an event (and the neighbors whose
+ * collision times are recomputed) are brought up to the event time.  All
+ * positions are synchronized before the integrator fires its step events, so
+ * meters and listeners see a consistent box, and before anything that
+ * changes velocities (the thermostat) runs.  Using an event interval larger
+ * than 1 then avoids visiting every atom on every step.
  *
  * @author David Kofke
  *
@@ -59,8 +69,12 @@ public class IntegratorHard extends IntegratorMD
 
     protected final IteratorDirective upList = new IteratorDirective(IteratorDirective.Direction.UP);
     protected final IteratorDirective downList = new IteratorDirective(IteratorDirective.Direction.DOWN);
+    // used to find the collisions of an atom that's changed
+    protected final IteratorDirective targetList = new IteratorDirective(IteratorDirective.Direction.UP);
+    // used to find atoms that wanted to collide with an atom that's changed
+    protected final IteratorDirective reverseList = new IteratorDirective(IteratorDirective.Direction.DOWN);
     protected final AtomArrayList listToUpdate = new AtomArrayList();
-    protected final TreeList eventList = new TreeList();
+    protected EventQueue eventList = new EventHeap();
 
     protected final ReverseCollisionHandler reverseCollisionHandler;
     protected final CollisionHandlerUp collisionHandlerUp;
@@ -72,6 +86,7 @@ public class IntegratorHard extends IntegratorMD
     protected AtomLeafAgentManager<Agent> agentManager;
     protected final AtomTypeAgentManager nullPotentialManager;
     protected int handlingEvent;
+    protected boolean lazyTime;
 
     public IntegratorHard(ISimulation sim, IPotentialMaster potentialMaster, ISpace _space) {
         this(sim, potentialMaster, sim.getRandom(), 0.05, 1.0, _space);
@@ -139,6 +154,91 @@ public class IntegratorHard extends IntegratorMD
         return colliderAgent;
     }
 
+    /**
+     * Returns the queue holding the collision events.
+     */
+    public EventQueue getEventQueue() {
+        return eventList;
+    }
+
+    /**
+     * Sets the queue used to hold the collision events.  The default is an
+     * EventHeap; an EventCalendarQueue or a TreeList can be used instead.
+     */
+    public void setEventQueue(EventQueue newEventQueue) {
+        eventList.reset();
+        eventList = newEventQueue;
+        collisionHandlerDown.eventList = newEventQueue;
+        resetCollisionTimes();
+    }
+
+    /**
+     * Sets whether an atom whose collision is recomputed looks at all of its
+     * neighbors, and the atoms that planned to collide with an atom that has
+     * changed are looked for among all of its neighbors (true), or whether
+     * each only looks at the neighbors up (or down) from the atom (false, the
+     * default).  The full search is needed when the up/down ordering of
+     * neighbors can change during the simulation, as it does with
+     * cell-crossing events (P1CellCrossing).
+     */
+    public void setFullNeighborSearch(boolean newFullNeighborSearch) {
+        targetList.setDirection(newFullNeighborSearch ? null : IteratorDirective.Direction.UP);
+        reverseList.setDirection(newFullNeighborSearch ? null : IteratorDirective.Direction.DOWN);
+    }
+
+    /**
+     * Returns true if recomputed collisions and the atoms that planned to
+     * collide with a changed atom are looked for among all neighbors.
+     */
+    public boolean isFullNeighborSearch() {
+        return reverseList.direction() == null;
+    }
+
+    /**
+     * Sets whether atoms are advanced only when needed (true) or all atoms
+     * are advanced at the end of each step (false, the default).  With lazy
+     * time, positions read between steps are only current after a step that
+     * fired integrator events or after calling synchronizeAtoms.
+     */
+    public void setLazyTime(boolean newLazyTime) {
+        if (!newLazyTime) {
+            synchronizeAtoms();
+        }
+        lazyTime = newLazyTime;
+        collisionHandlerUp.lazyTime = lazyTime;
+        collisionHandlerDown.lazyTime = lazyTime;
+    }
+
+    /**
+     * Returns true if atoms are only advanced when needed.
+     */
+    public boolean isLazyTime() {
+        return lazyTime;
+    }
+
+    /**
+     * Brings the position of every atom up to the current time.  This does
+     * nothing unless lazy time is in use; it is called automatically before
+     * the integrator fires events and before the thermostat acts, and must be
+     * called before positions are read (or any position or velocity is
+     * changed) at other times.
+     */
+    public void synchronizeAtoms() {
+        if (!lazyTime || box == null) return;
+        double t = collisionTimeStep;
+        IAtomList leafList = box.getLeafList();
+        int nLeaf = leafList.getAtomCount();
+        for (int iLeaf=0; iLeaf<nLeaf; iLeaf++) {
+            Agent agent = agentManager.getAgent(leafList.getAtom(iLeaf));
+            agent.synchronize(t);
+            // shift the time origin back to 0 so that times don't grow
+            agent.time = 0;
+            agent.decrementCollisionTime(t);
+        }
+        eventList.keysDecremented(t);
+        collisionTimeStep = 0;
+    }
+
     /** 
      * Steps all atoms across time interval timeStep, handling all intervening collisions.
      */
@@ -149,10 +249,14 @@ public class IntegratorHard extends IntegratorMD
             currentPotentialEnergy = meterPE.getDataAsScalar();
         }
         super.doStepInternal();
+        // with lazy time, event times are measured from the last
+        // synchronization, which might have been some steps ago
+        double stepStart = lazyTime ? collisionTimeStep : 0;
+        double stepEnd = stepStart + timeStep;
         findNextCollider();
         collisionTimeStep = (colliderAgent != null) ? colliderAgent.collisionTime() : Double.POSITIVE_INFINITY;
-        double oldTime = 0;
-        while(collisionTimeStep < timeStep) {//advance to collision if occurs before remaining interval
+        double oldTime = stepStart;
+        while(collisionTimeStep < stepEnd) {//advance to collision if occurs before remaining interval
             IAtomList atoms;
             if (colliderAgent.collisionPartner() != null) {
                 atoms = pair;
@@ -234,7 +338,15 @@ public class IntegratorHard extends IntegratorMD
                 }
             }
 
-            colliderAgent.collisionPotential.bump(atoms,collisionTimeStep);
+            if (lazyTime) {
+                for (int i=0; i<atoms.getAtomCount(); i++) {
+                    agentManager.getAgent(atoms.getAtom(i)).synchronize(collisionTimeStep);
+                }
+                colliderAgent.collisionPotential.bump(atoms, 0);
+            }
+            else {
+                colliderAgent.collisionPotential.bump(atoms,collisionTimeStep);
+            }
             double dE = colliderAgent.collisionPotential.energyChange();
             currentPotentialEnergy += dE;
             currentKineticEnergy -= dE;
@@ -259,9 +371,18 @@ public class IntegratorHard extends IntegratorMD
             collisionTimeStep = (colliderAgent != null) ? colliderAgent.collisionTime() : Double.POSITIVE_INFINITY;
         } 
 
-        advanceAcrossTimeStep(timeStep);
-        collisionTimeStep = 0.0;
+        if (lazyTime) {
+            collisionTimeStep = stepEnd;
+            if (isEventStep()) {
+                synchronizeAtoms();
+            }
+        }
+        else {
+            advanceAcrossTimeStep(timeStep);
+            collisionTimeStep = 0.0;
+        }
         if (Debug.ON && Debug.DEBUG_NOW && Debug.LEVEL > 1 && Debug.thisBox(box)) {
+            synchronizeAtoms();
             eventList.check();
             double PE = meterPE.getDataAsScalar();
             if (Math.abs((PE - currentPotentialEnergy)/(PE+currentPotentialEnergy)) > 1.e-9
@@ -298,26 +419,35 @@ public class IntegratorHard extends IntegratorMD
 
         listToUpdate.clear();
 
-        downList.setTargetAtom(colliders.atom0);
-        potentialMaster.calculate(box, downList, reverseCollisionHandler);
-        downList.setTargetAtom(colliders.atom1);
-        potentialMaster.calculate(box, downList, reverseCollisionHandler);
+        reverseList.setTargetAtom(colliders.atom0);
+        reverseCollisionHandler.target = colliders.atom0;
+        potentialMaster.calculate(box, reverseList, reverseCollisionHandler);
+        reverseList.setTargetAtom(colliders.atom1);
+        reverseCollisionHandler.target = colliders.atom1;
+        potentialMaster.calculate(box, reverseList, reverseCollisionHandler);
 
         // this would update collider0 as well since it wanted to collide with
         // atom1.  But we to full reset it, so remove it from the (hopefully
         // small) list.
         listToUpdate.remove(listToUpdate.indexOf(colliders.atom0));
+        if (reverseList.direction() == null) {
+            // atom1 might also have planned to collide with atom0
+            int idx1 = listToUpdate.indexOf(colliders.atom1);
+            if (idx1 > -1) {
+                listToUpdate.remove(idx1);
+            }
+        }
         processReverseList();
 
         Agent agent = agentManager.getAgent(colliders.atom0);
         if (agent.collisionPotential != null) {
-            agent.eventLinker.remove();
+            eventList.remove(agent.eventLinker);
         }
         agent.resetCollisionFull();
-        upList.setTargetAtom(colliders.atom0);
-        collisionHandlerUp.setAtom(colliders.atom0);
+        targetList.setTargetAtom(colliders.atom0);
+        collisionHandlerUp.setTarget(colliders.atom0);
         collisionHandlerUp.collisionTimeStep = this.collisionTimeStep;
-        potentialMaster.calculate(box, upList, collisionHandlerUp);
+        potentialMaster.calculate(box, targetList, collisionHandlerUp);
         if (agent.collisionPotential != null) {
             eventList.add(agent.eventLinker);
         }
@@ -327,13 +457,13 @@ public class IntegratorHard extends IntegratorMD
 
         agent = agentManager.getAgent(colliders.atom1);
         if (agent.collisionPotential != null) {
-            agent.eventLinker.remove();
+            eventList.remove(agent.eventLinker);
         }
         agent.resetCollisionFull();
-        upList.setTargetAtom(colliders.atom1);
-        collisionHandlerUp.setAtom(colliders.atom1);
+        targetList.setTargetAtom(colliders.atom1);
+        collisionHandlerUp.setTarget(colliders.atom1);
         collisionHandlerUp.collisionTimeStep = this.collisionTimeStep;
-        potentialMaster.calculate(box, upList, collisionHandlerUp);
+        potentialMaster.calculate(box, targetList, collisionHandlerUp);
         if (agent.collisionPotential != null) {
             eventList.add(agent.eventLinker);
         }
@@ -352,21 +482,23 @@ public class IntegratorHard extends IntegratorMD
 
         listToUpdate.clear();
 
-        downList.setTargetAtom(a);
-        potentialMaster.calculate(box, downList, reverseCollisionHandler);
+        reverseList.setTargetAtom(a);
+        reverseCollisionHandler.target = a;
+        potentialMaster.calculate(box, reverseList, reverseCollisionHandler);
         processReverseList();
 
         if (agent.collisionPotential != null) {
-            agent.eventLinker.remove();
+            eventList.remove(agent.eventLinker);
         }
         agent.resetCollisionFull();
-        upList.setTargetAtom(a);
-        collisionHandlerUp.setAtom(a);
+        targetList.setTargetAtom(a);
+        collisionHandlerUp.setTarget(a);
         collisionHandlerUp.collisionTimeStep = this.collisionTimeStep;
-        potentialMaster.calculate(box, upList, collisionHandlerUp);
+        potentialMaster.calculate(box, targetList, collisionHandlerUp);
         if (agent.collisionPotential != null) {
             eventList.add(agent.eventLinker);
         }
+        downList.setTargetAtom(a);
         collisionHandlerDown.collisionTimeStep = this.collisionTimeStep;
         potentialMaster.calculate(box, downList, collisionHandlerDown);
     }
@@ -382,17 +514,17 @@ public class IntegratorHard extends IntegratorMD
             IAtom reverseAtom = listToUpdate.getAtom(i);
             Agent agent = agentManager.getAgent(reverseAtom);
             if (agent.collisionPotential != null) {
-                agent.eventLinker.remove();
+                eventList.remove(agent.eventLinker);
             }
             // reset collision, but not a "full" reset
             // this atom thought it would collide with something and now it
             // won't.  We should rever to the "null" collision time it had
             // the last time it had a real collision of its own.
             agent.resetCollision();
-            upList.setTargetAtom(reverseAtom);
+            targetList.setTargetAtom(reverseAtom);
             collisionHandlerUp.collisionTimeStep = this.collisionTimeStep;
-            collisionHandlerUp.setAtom(reverseAtom);
-            potentialMaster.calculate(box, upList, collisionHandlerUp);
+            collisionHandlerUp.setTarget(reverseAtom);
+            potentialMaster.calculate(box, targetList, collisionHandlerUp);
             if (agent.collisionPotential != null) {
                 eventList.add(agent.eventLinker);
             }
@@ -401,7 +533,7 @@ public class IntegratorHard extends IntegratorMD
 
 	/**
      * Advances all atom coordinates by tStep, without any intervening collisions.
-     * Uses free-flight kinematics.
+     * Uses free-flight kinematics.  This is not used with lazy time.
      */
 	protected void advanceAcrossTimeStep(double tStep) {
         IAtomList leafList = box.getLeafList();
@@ -411,9 +543,11 @@ public class IntegratorHard extends IntegratorMD
             agentManager.getAgent(a).decrementCollisionTime(tStep);
 			a.getPosition().PEa1Tv1(tStep,a.getVelocity());
 		}
+        eventList.keysDecremented(tStep);
 	}
 
     public void reset() {
+        synchronizeAtoms();
         ConfigurationOverlapException overlapException = null;
         try {
             super.reset();
@@ -448,6 +582,7 @@ public class IntegratorHard extends IntegratorMD
      */
     public void resetCollisionTimes() {
         if(!initialized) return;
+        synchronizeAtoms();
         IAtomList leafList = box.getLeafList();
         int nLeaf = leafList.getAtomCount();
         for (int iLeaf=0; iLeaf<nLeaf; iLeaf++) {
@@ -472,6 +607,7 @@ public class IntegratorHard extends IntegratorMD
      * Updates collision times appropriately after scaling momenta.
      */
     protected void scaleMomenta() {
+        synchronizeAtoms();
         super.scaleMomenta();
         // super.scaleMomenta alters the velocities, so we need to 
         // recalculate collision times
@@ -483,6 +619,7 @@ public class IntegratorHard extends IntegratorMD
      * as part of the Andersen thermostat.
      */
     protected void randomizeMomenta() {
+        synchronizeAtoms();
         super.randomizeMomenta();
         // super.randomizeMomenta alters the velocities, so we need to 
         // recalculate collision times
@@ -494,6 +631,7 @@ public class IntegratorHard extends IntegratorMD
      * as part of the Andersen scaling thermostat.
      */
     protected void randomizeTotalKE() {
+        synchronizeAtoms();
         super.randomizeTotalKE();
         // super.randomizeMomenta alters the velocities, so we need to 
         // recalculate collision times
@@ -505,12 +643,30 @@ public class IntegratorHard extends IntegratorMD
      * as part of the Andersen thermostat.
      */
     protected void randomizeMomentum(IAtomKinetic atom) {
+        if (lazyTime) {
+            // bring the atom up to now before its velocity changes
+            Agent agent = agentManager.getAgent(atom);
+            if (agent != null) {
+                agent.synchronize(collisionTimeStep);
+            }
+        }
         super.randomizeMomentum(atom);
         if (handlingEvent == 0) {
             updateAtom(atom);
         }
     }
 
+    /**
+     * Synchronizes the atoms (with lazy time) before the thermostat, or
+     * anything else done in its place, acts on the box.
+     */
+    protected void doThermostatInternal() {
+        if (thermostatCount == 1) {
+            synchronizeAtoms();
+        }
+        super.doThermostatInternal();
+    }
+
     /**
      * Registers an object that implements the CollisionListener interface.
      * This causes the collisionAction method of the object to be called after each collision.
@@ -590,8 +746,9 @@ public class IntegratorHard extends IntegratorMD
     protected static final class CollisionHandlerUp implements PotentialCalculation {
         double minCollisionTime;
         Agent aia;
-        IAtom atom1;
+        IAtom atom1, target;
         double collisionTimeStep;
+        boolean lazyTime;
         private AtomLeafAgentManager<Agent> integratorAgentManager;
 
         /**
@@ -601,6 +758,7 @@ public class IntegratorHard extends IntegratorMD
          */
         public void reset() {
             atom1 = null;
+            target = null;
         }
 
         public void setAgentManager(AtomLeafAgentManager<Agent> newAgentManager) {
@@ -616,11 +774,29 @@ public class IntegratorHard extends IntegratorMD
             minCollisionTime = aia.collisionTime();
         }//end of setAtom
 
+        /**
+         * sets the atom whose collision time is to be calculated from its
+         * neighbors (found in either direction)
+         */
+        public void setTarget(IAtom a) {
+            target = a;
+            setAtom(a);
+        }
+
         //atom pair
         public void doCalculation(IAtomList atoms, IPotentialAtomic potential) {
             PotentialHard pHard = (PotentialHard)potential;
-            if(atoms.getAtom(0) != atom1) setAtom(atoms.getAtom(0)); //need this if doing minimum collision time calculation for more than one atom
-            double collisionTime = pHard.collisionTime(atoms,collisionTimeStep);
+            IAtom partner;
+            if (target != null && atoms.getAtom(0) != target) {
+                // found looking down from the target
+                partner = atoms.getAtom(0);
+            }
+            else {
+                if(atoms.getAtom(0) != atom1) setAtom(atoms.getAtom(0)); //need this if doing minimum collision time calculation for more than one atom
+                partner = (atoms.getAtomCount() == 2) ? atoms.getAtom(1) : null;
+            }
+            double collisionTime = lazyTime ? lazyCollisionTime(pHard, atoms, collisionTimeStep, integratorAgentManager)
+                                            : pHard.collisionTime(atoms,collisionTimeStep);
             if (Debug.ON && Debug.DEBUG_NOW && (Debug.LEVEL > 2 || (Debug.LEVEL > 1 && Debug.anyAtom(atoms)) || Debug.allAtoms(atoms))) {
                 System.out.println("collision up time "+collisionTime+" for atom "+atoms+" "+pHard.getClass());
             }
@@ -629,7 +805,7 @@ public class IntegratorHard extends IntegratorMD
                     System.out.println("setting up time "+collisionTime+" for atom "+atoms);
                 }
                 minCollisionTime = collisionTime;
-                aia.setCollision(collisionTime, (atoms.getAtomCount() == 2) ? atoms.getAtom(1) : null, pHard);
+                aia.setCollision(collisionTime, partner, pHard);
             }//end if
         }//end of calculate(AtomPair...
 
@@ -641,9 +817,10 @@ public class IntegratorHard extends IntegratorMD
 	private static final class CollisionHandlerDown implements PotentialCalculation, java.io.Serializable {
         private static final long serialVersionUID = 1L;
         double collisionTimeStep;
-        final TreeList eventList;
+        boolean lazyTime;
+        EventQueue eventList;
         private AtomLeafAgentManager<Agent> integratorAgentManager;
-        CollisionHandlerDown(TreeList list) {
+        CollisionHandlerDown(EventQueue list) {
             eventList = list;
         }
 
@@ -655,7 +832,8 @@ public class IntegratorHard extends IntegratorMD
 			if (atoms.getAtomCount() != 2) return;
             PotentialHard pHard = (PotentialHard)potential;
 
-			double collisionTime = pHard.collisionTime(atoms,collisionTimeStep);
+			double collisionTime = lazyTime ? lazyCollisionTime(pHard, atoms, collisionTimeStep, integratorAgentManager)
+			                                : pHard.collisionTime(atoms,collisionTimeStep);
             if (Debug.ON && Debug.DEBUG_NOW && (Debug.LEVEL > 2 || (Debug.LEVEL > 1 && Debug.anyAtom(atoms)))) {
                 System.out.println("collision down time "+collisionTime+" for atoms "+atoms+" "+pHard.getClass());
             }
@@ -666,7 +844,7 @@ public class IntegratorHard extends IntegratorMD
 						System.out.println("setting down time "+collisionTime+" for atoms "+atoms);
 					}
                     if (aia.collisionPotential != null) {
-                        aia.eventLinker.remove();
+                        eventList.remove(aia.eventLinker);
                     }
                     aia.setCollision(collisionTime, atoms.getAtom(1), pHard);
                     eventList.add(aia.eventLinker);
@@ -675,6 +853,19 @@ public class IntegratorHard extends IntegratorMD
 		}
 	}
 
+    /**
+     * Brings the given atoms up to time t and returns the time (measured like
+     * t) of their next collision with the given potential.  Used with lazy
+     * time.
+     */
+    protected static double lazyCollisionTime(PotentialHard pHard, IAtomList atoms, double t,
+            AtomLeafAgentManager<Agent> agentManager) {
+        for (int i=0; i<atoms.getAtomCount(); i++) {
+            agentManager.getAgent(atoms.getAtom(i)).synchronize(t);
+        }
+        return pHard.collisionTime(atoms, 0) + t;
+    }
+
     /**
      * A PotentialCalculation to find atoms that thought they would collide
      * with an atom.  The iterator should return an atom and its "down"
@@ -684,6 +875,7 @@ public class IntegratorHard extends IntegratorMD
         private static final long serialVersionUID = 1L;
         final AtomArrayList listToUpdate;
         private AtomLeafAgentManager<Agent> integratorAgentManager;
+        IAtom target;
         
         ReverseCollisionHandler(AtomArrayList list) {
             listToUpdate = list;
@@ -695,16 +887,18 @@ public class IntegratorHard extends IntegratorMD
         
         public void doCalculation(IAtomList pair, IPotentialAtomic p) {
             if (pair.getAtomCount() != 2) return;
-            // look for pairs in which pair[0] is the collision partner of pair[1]
-            IAtom aPartner = integratorAgentManager.getAgent(pair.getAtom(0)).collisionPartner();
+            // look for pairs in which the target is the collision partner of
+            // the other atom
+            IAtom other = pair.getAtom(0) == target ? pair.getAtom(1) : pair.getAtom(0);
+            IAtom aPartner = integratorAgentManager.getAgent(other).collisionPartner();
             if (Debug.ON && Debug.DEBUG_NOW && ((Debug.allAtoms(pair) && Debug.LEVEL > 1) || (Debug.anyAtom(pair) && Debug.LEVEL > 2))) {
-                System.out.println(pair.getAtom(0)+" thought it would collide with "+aPartner);
+                System.out.println(other+" thought it would collide with "+aPartner);
             }
-            if(aPartner == pair.getAtom(1)) {
+            if(aPartner == target) {
                 if (Debug.ON && Debug.DEBUG_NOW && (Debug.allAtoms(pair) || Debug.LEVEL > 2)) {
-                    System.out.println("Will update "+pair.getAtom(0)+" because it wanted to collide with "+aPartner);
+                    System.out.println("Will update "+other+" because it wanted to collide with "+aPartner);
                 }
-                listToUpdate.add(pair.getAtom(0));
+                listToUpdate.add(other);
             }
         }
     }
@@ -729,6 +923,10 @@ public class IntegratorHard extends IntegratorMD
 	 */
     public Agent makeAgent(IAtom a) {
         Agent agent = new Agent(a, this);
+        if (lazyTime) {
+            // the new atom's position is current now
+            agent.time = collisionTimeStep;
+        }
         if (nullPotentialManager != null) {
             agent.setNullPotential((PotentialHard)nullPotentialManager.getAgent(a.getType()));
         }
@@ -763,6 +961,8 @@ public class IntegratorHard extends IntegratorMD
         public IAtom atom, collisionPartner;
         public PotentialHard collisionPotential;  //potential governing interaction between collisionPartner and atom containing this Agent
         public TreeLinker eventLinker;
+        // with lazy time, the time at which the atom's position is current
+        public double time;
         protected PotentialHard nullPotential;
         protected AtomSetSinglet atomSetSinglet;
         protected double nullCollisionTime;
@@ -822,7 +1022,12 @@ public class IntegratorHard extends IntegratorMD
                     atomSetSinglet = new AtomSetSinglet();
                 }
                 atomSetSinglet.atom = atom;
-                eventLinker.sortKey = collisionPotential.collisionTime(atomSetSinglet,integrator.collisionTimeStep);
+                if (integrator.lazyTime) {
+                    eventLinker.sortKey = lazyCollisionTime(collisionPotential, atomSetSinglet, integrator.collisionTimeStep, integrator.agentManager);
+                }
+                else {
+                    eventLinker.sortKey = collisionPotential.collisionTime(atomSetSinglet,integrator.collisionTimeStep);
+                }
                 nullCollisionTime = eventLinker.sortKey;
                 if (Debug.ON && Debug.DEBUG_NOW && Debug.LEVEL > 1 && Debug.anyAtom(atomSetSinglet)) {
                     System.out.println("initializing null collision time for "+atom+" to "+eventLinker.sortKey);
@@ -856,6 +1061,18 @@ public class IntegratorHard extends IntegratorMD
             nullCollisionTime -= interval;
         }
 
+        /**
+         * Advances the atom's position (free flight) from the time at which
+         * it was current to time t.  Used with lazy time.
+         */
+        public final void synchronize(double t) {
+            if (time != t) {
+                IAtomKinetic a = (IAtomKinetic)atom;
+                a.getPosition().PEa1Tv1(t - time, a.getVelocity());
+                time = t;
+            }
+        }
+
         /**
          * Accessor method for the time to next collision of this atom
          */
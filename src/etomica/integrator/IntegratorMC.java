@@ -4,6 +4,11 @@
 
 package etomica.integrator;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+
 import etomica.api.IBox;
 import etomica.api.IPotentialMaster;
 import etomica.api.IRandom;
@@ -15,6 +20,7 @@ import etomica.integrator.mcmove.MCMoveManager;
 import etomica.integrator.mcmove.MCMoveTrialCompletedEvent;
 import etomica.integrator.mcmove.MCMoveTrialFailedEvent;
 import etomica.integrator.mcmove.MCMoveTrialInitiatedEvent;
+import etomica.util.Checkpointable;
 import etomica.util.IEvent;
 import etomica.util.IEventManager;
 
@@ -29,7 +35,7 @@ import etomica.util.IEventManager;
  * @see MCMove
  */
 
-public class IntegratorMC extends IntegratorBox {
+public class IntegratorMC extends IntegratorBox implements Checkpointable {
 
     public IntegratorMC(ISimulation sim, IPotentialMaster potentialMaster) {
         this(potentialMaster, sim.getRandom(), 1.0);
@@ -137,6 +143,34 @@ public class IntegratorMC extends IntegratorBox {
         moveManager.recomputeMoveFrequencies();
     }
 
+    /**
+     * Also writes the acceptance statistics (and step sizes) tracked for
+     * each move.  Subclasses must override this and readCheckpoint (see
+     * checkCheckpointable).
+     */
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        checkCheckpointable();
+        super.writeCheckpoint(out);
+        List<MCMove> moves = moveManager.getMCMoves();
+        out.writeInt(moves.size());
+        for (int i=0; i<moves.size(); i++) {
+            moves.get(i).getTracker().writeCheckpoint(out);
+        }
+    }
+
+    public void readCheckpoint(DataInput in) throws IOException {
+        checkCheckpointable();
+        super.readCheckpoint(in);
+        List<MCMove> moves = moveManager.getMCMoves();
+        int nMoves = in.readInt();
+        if (nMoves != moves.size()) {
+            throw new RuntimeException("checkpoint has "+nMoves+" moves, but the integrator has "+moves.size());
+        }
+        for (int i=0; i<nMoves; i++) {
+            moves.get(i).getTracker().readCheckpoint(in);
+        }
+    }
+
     /**
      * Adds a listener that will be notified when a MCMove trial is attempted
      * and when it is completed.
@@ -145,6 +179,14 @@ public class IntegratorMC extends IntegratorBox {
         return moveEventManager;
     }
 
+    /**
+     * Returns the random number generator used to select moves and decide
+     * acceptance.
+     */
+    public IRandom getRandom() {
+        return random;
+    }
+
     private static final long serialVersionUID = 2L;
     protected final IRandom random;
     protected MCMoveManager moveManager;
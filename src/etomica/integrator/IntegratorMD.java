@@ -4,6 +4,10 @@
 
 package etomica.integrator;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import etomica.action.AtomActionRandomizeVelocity;
 import etomica.api.IAtom;
 import etomica.api.IAtomKinetic;
@@ -63,6 +67,13 @@ public abstract class IntegratorMD extends IntegratorBox implements IBoxListener
     }
     public final double getTimeStep() {return timeStep;}
     public Dimension getTimeStepDimension() {return Time.DIMENSION;}
+
+    /**
+     * Returns the random number generator used by the thermostat.
+     */
+    public IRandom getRandom() {
+        return random;
+    }
     
     public void setBox(IBox p) {
         if (box != null) {
@@ -116,6 +127,34 @@ public abstract class IntegratorMD extends IntegratorBox implements IBoxListener
         }
     }
 
+    /**
+     * Writes the time, the thermostat countdown and the tracked kinetic
+     * energy.  For HYBRID_MC, the acceptance counts are written, but the
+     * configuration saved for rejection is not; a checkpoint should be taken
+     * just after a thermostat step.
+     */
+    protected void writeCheckpoint(DataOutput out) throws IOException {
+        super.writeCheckpoint(out);
+        out.writeDouble(currentTime);
+        out.writeInt(thermostatCount);
+        out.writeDouble(currentKineticEnergy);
+        out.writeDouble(oldEnergy);
+        out.writeDouble(oldPotentialEnergy);
+        out.writeLong(nRejected);
+        out.writeLong(nAccepted);
+    }
+
+    protected void readCheckpoint(DataInput in) throws IOException {
+        super.readCheckpoint(in);
+        currentTime = in.readDouble();
+        thermostatCount = in.readInt();
+        currentKineticEnergy = in.readDouble();
+        oldEnergy = in.readDouble();
+        oldPotentialEnergy = in.readDouble();
+        nRejected = in.readLong();
+        nAccepted = in.readLong();
+    }
+
     public void doStepInternal() {
         currentTime += timeStep;
     }
@@ -4,7 +4,11 @@
 
 package etomica.integrator;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 import etomica.api.IIntegrator;
+import etomica.api.IPotentialMaster;
 import etomica.api.IRandom;
 import etomica.exception.ConfigurationOverlapException;
 import etomica.integrator.mcmove.MCMove;
@@ -15,11 +19,22 @@ import etomica.integrator.mcmove.MCMoveTrialInitiatedEvent;
 import etomica.util.Arrays;
 import etomica.util.IEvent;
 import etomica.util.IEventManager;
+import etomica.util.RandomMersenneTwister;
 
 /**
  * Integrator manages other Integrators which either act on a Box, or manager 
  * still other Integrators.  Each step, this class either performs global MC 
  * moves between the Integrators or runs the sub-integratos.
+ * <p>
+ * If given a ForkJoinPool (setPool), the sub-integrators take their steps
+ * concurrently, while global moves still happen between steps on the calling
+ * thread.  The sub-integrators must then be independent of each other: each
+ * needs its own PotentialMaster (and potentials), MC moves and IRandom, and
+ * setPool rejects sub-integrators that share a PotentialMaster or IRandom.
+ * Making each replica's random with makeReplicaRandom (from common seeds
+ * and the replica's index) and using it for the replica's integrator and
+ * moves gives results that are reproducible from the seeds and the same as
+ * without the pool.
  * 
  * @author David Kofke and Andrew Schultz
  */
@@ -83,6 +98,10 @@ public class IntegratorManagerMC extends Integrator {
     public void addIntegrator(IIntegrator integrator){
         integrators = (IIntegrator[])Arrays.addObject(integrators,integrator);
         nIntegrators++;
+        stepTask = null;
+        if (pool != null) {
+            checkIndependent();
+        }
     }
 
     /**
@@ -95,8 +114,87 @@ public class IntegratorManagerMC extends Integrator {
             return false;
         }
         nIntegrators--;
+        stepTask = null;
         return true;
     }
+
+    /**
+     * Sets the pool used to run the sub-integrators' steps concurrently.  If
+     * null (the default), the sub-integrators take their steps one after
+     * another on the calling thread.
+     *
+     * @throws IllegalStateException if two of the sub-integrators share a
+     * PotentialMaster or an IRandom, or if a sub-integrator uses this
+     * integrator's IRandom
+     */
+    public void setPool(ForkJoinPool newPool) {
+        pool = newPool;
+        if (pool != null) {
+            checkIndependent();
+        }
+    }
+
+    /**
+     * Returns the pool used to run the sub-integrators' steps, or null if
+     * they are run on the calling thread.
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Returns a random number generator for the given replica, seeded with
+     * the given seeds followed by the replica's index.  Each replica then has
+     * its own stream, and the streams are reproducible from the seeds.
+     */
+    public static IRandom makeReplicaRandom(int[] seeds, int iReplica) {
+        int[] replicaSeeds = new int[seeds.length+1];
+        System.arraycopy(seeds, 0, replicaSeeds, 0, seeds.length);
+        replicaSeeds[seeds.length] = iReplica;
+        return new RandomMersenneTwister(replicaSeeds);
+    }
+
+    /**
+     * Checks that no two sub-integrators share a PotentialMaster or an
+     * IRandom (with each other or with this integrator), which would not be
+     * safe to use from more than one thread and would make the results
+     * depend on the order in which the steps happen to run.  The randoms
+     * held by MC moves can't be checked; they should be the integrator's.
+     */
+    protected void checkIndependent() {
+        for (int i=0; i<nIntegrators; i++) {
+            IRandom randomi = getRandom(integrators[i]);
+            if (randomi != null && randomi == random) {
+                throw new IllegalStateException("integrator "+i+" shares this integrator's IRandom and cannot step concurrently");
+            }
+            for (int j=i+1; j<nIntegrators; j++) {
+                if (randomi != null && getRandom(integrators[j]) == randomi) {
+                    throw new IllegalStateException("integrators "+i+" and "+j+" share an IRandom and cannot step concurrently");
+                }
+            }
+            if (!(integrators[i] instanceof IntegratorBox)) continue;
+            IPotentialMaster pmi = ((IntegratorBox)integrators[i]).getPotentialMaster();
+            for (int j=i+1; j<nIntegrators; j++) {
+                if (integrators[j] instanceof IntegratorBox && ((IntegratorBox)integrators[j]).getPotentialMaster() == pmi) {
+                    throw new IllegalStateException("integrators "+i+" and "+j+" share a PotentialMaster and cannot step concurrently");
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the random number generator used by the given integrator, or
+     * null if it isn't known.
+     */
+    protected static IRandom getRandom(IIntegrator integrator) {
+        if (integrator instanceof IntegratorMC) {
+            return ((IntegratorMC)integrator).getRandom();
+        }
+        if (integrator instanceof IntegratorMD) {
+            return ((IntegratorMD)integrator).getRandom();
+        }
+        return null;
+    }
     
     public IIntegrator[] getIntegrators() {
         return integrators.clone();
@@ -124,6 +222,12 @@ public class IntegratorManagerMC extends Integrator {
     public void doStepInternal() {
         if(random.nextDouble() < globalMoveProbability) {
             doGlobalMoves();
+        } else if (pool != null && nIntegrators > 1) {
+            if (stepTask == null) {
+                stepTask = new StepAllTask(integrators, nIntegrators);
+            }
+            stepTask.reinitialize();
+            pool.invoke(stepTask);
         } else {
             for(int i=0; i<nIntegrators; i++) {
                 integrators[i].doStep();
@@ -199,6 +303,58 @@ public class IntegratorManagerMC extends Integrator {
      */
     public double getGlobalMoveInterval() {return globalMoveInterval;}
     
+    /**
+     * Steps all of the sub-integrators, each in its own task.
+     */
+    protected static class StepAllTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        protected final StepTask[] tasks;
+
+        public StepAllTask(IIntegrator[] integrators, int nIntegrators) {
+            tasks = new StepTask[nIntegrators];
+            for (int i=0; i<nIntegrators; i++) {
+                tasks[i] = new StepTask(integrators[i]);
+            }
+        }
+
+        /**
+         * Returns the task that steps the ith sub-integrator.
+         */
+        public StepTask getTask(int i) {
+            return tasks[i];
+        }
+
+        protected void compute() {
+            for (int i=0; i<tasks.length; i++) {
+                tasks[i].reinitialize();
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    /**
+     * Takes numSteps steps (1 by default) with a single sub-integrator and
+     * records the wall-clock time (in milliseconds) taken to do so.
+     */
+    protected static class StepTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        protected final IIntegrator integrator;
+        public long numSteps = 1;
+        public long time;
+
+        public StepTask(IIntegrator integrator) {
+            this.integrator = integrator;
+        }
+
+        protected void compute() {
+            long t0 = System.currentTimeMillis();
+            for (long j=0; j<numSteps; j++) {
+                integrator.doStep();
+            }
+            time = System.currentTimeMillis() - t0;
+        }
+    }
+
     private static final long serialVersionUID = 2L;
     private double globalMoveInterval;
     protected double globalMoveProbability;
@@ -209,4 +365,6 @@ public class IntegratorManagerMC extends Integrator {
     private final IEvent trialEvent;
     private final IEvent acceptedEvent, rejectedEvent;
     protected final IRandom random;
+    protected transient ForkJoinPool pool;
+    protected transient StepAllTask stepTask;
 }
@@ -4,6 +4,10 @@
 
 package etomica.integrator;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import etomica.api.IAtom;
 import etomica.api.IAtomKinetic;
 import etomica.api.IAtomList;
@@ -20,9 +24,10 @@ import etomica.potential.PotentialCalculationForcePressureSum;
 import etomica.potential.PotentialCalculationForceSum;
 import etomica.space.ISpace;
 import etomica.space.Tensor;
+import etomica.util.Checkpointable;
 import etomica.util.Debug;
 
-public class IntegratorVelocityVerlet extends IntegratorMD implements AgentSource<IntegratorVelocityVerlet.MyAgent> {
+public class IntegratorVelocityVerlet extends IntegratorMD implements AgentSource<IntegratorVelocityVerlet.MyAgent>, Checkpointable {
 
     protected PotentialCalculationForceSum forceSum;;
     protected final IteratorDirective allAtoms;
@@ -157,6 +162,38 @@ public class IntegratorVelocityVerlet extends IntegratorMD implements AgentSourc
         potentialMaster.calculate(box, allAtoms, forceSum);
     }
 
+    /**
+     * Also writes the force on each atom.  Forces recomputed from the
+     * restored configuration would normally be the same, but the sums might
+     * be taken in a different order.  Subclasses must override this and
+     * readCheckpoint (see checkCheckpointable).
+     */
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        checkCheckpointable();
+        super.writeCheckpoint(out);
+        IAtomList leafList = box.getLeafList();
+        int dim = space.D();
+        for (int i=0; i<leafList.getAtomCount(); i++) {
+            IVectorMutable force = agentManager.getAgent(leafList.getAtom(i)).force;
+            for (int j=0; j<dim; j++) {
+                out.writeDouble(force.getX(j));
+            }
+        }
+    }
+
+    public void readCheckpoint(DataInput in) throws IOException {
+        checkCheckpointable();
+        super.readCheckpoint(in);
+        IAtomList leafList = box.getLeafList();
+        int dim = space.D();
+        for (int i=0; i<leafList.getAtomCount(); i++) {
+            IVectorMutable force = agentManager.getAgent(leafList.getAtom(i)).force;
+            for (int j=0; j<dim; j++) {
+                force.setX(j, in.readDouble());
+            }
+        }
+    }
+
 //--------------------------------------------------------------
     
     public MyAgent makeAgent(IAtom a) {
@@ -4,6 +4,10 @@
 
 package etomica.integrator.mcmove;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * This Class tracks acceptance statistics for an MCMove and also manages the
  * move's step size.  Given an acceptance target, it can adjust the 
@@ -197,6 +201,40 @@ public class MCMoveStepTracker extends MCMoveTracker {
         return noisyAdjustment;
     }
 
+    /**
+     * Writes the acceptance statistics, the state of the step adjustment and
+     * the move's step size.
+     */
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        super.writeCheckpoint(out);
+        out.writeDouble(mcMove == null ? Double.NaN : mcMove.getStepSize());
+        out.writeDouble(acceptanceTarget);
+        out.writeLong(adjustInterval);
+        out.writeLong(lastAdjust);
+        out.writeDouble(adjustStep);
+    }
+
+    public void readCheckpoint(DataInput in) throws IOException {
+        // read the statistics after setting the step size, which would
+        // otherwise reset them
+        long trials = in.readLong();
+        long accept = in.readLong();
+        double chi = in.readDouble();
+        double stepSize = in.readDouble();
+        if (mcMove != null) {
+            noReset = true;
+            mcMove.setStepSize(stepSize);
+            noReset = false;
+        }
+        nTrials = trials;
+        nAccept = accept;
+        chiSum = chi;
+        acceptanceTarget = in.readDouble();
+        adjustInterval = in.readLong();
+        lastAdjust = in.readLong();
+        adjustStep = in.readDouble();
+    }
+
     protected MCMoveStepDependent mcMove;
     protected double acceptanceTarget;
     protected long adjustInterval;
@@ -4,6 +4,11 @@
 
 package etomica.integrator.mcmove;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import etomica.util.Checkpointable;
 
 /**
  * This class is responsible for tracking acceptance statistics for an MCMove.
@@ -12,7 +17,7 @@ package etomica.integrator.mcmove;
  *
  * @author Andrew Schultz
  */
-public class MCMoveTracker {
+public class MCMoveTracker implements Checkpointable {
 
     /**
      * Updates statistics regarding the acceptance rate of this move.  This 
@@ -54,6 +59,18 @@ public class MCMoveTracker {
         nTrials = nAccept = 0;
         chiSum = 0;
     }
+
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        out.writeLong(nTrials);
+        out.writeLong(nAccept);
+        out.writeDouble(chiSum);
+    }
+
+    public void readCheckpoint(DataInput in) throws IOException {
+        nTrials = in.readLong();
+        nAccept = in.readLong();
+        chiSum = in.readDouble();
+    }
     
     protected long nTrials, nAccept;
     protected double chiSum;
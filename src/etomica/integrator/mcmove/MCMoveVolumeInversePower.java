@@ -0,0 +1,586 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.integrator.mcmove;
+
+import etomica.api.IAtom;
+import etomica.api.IAtomList;
+import etomica.api.IBoundary;
+import etomica.api.IBox;
+import etomica.api.IPotentialMaster;
+import etomica.api.IRandom;
+import etomica.api.ISimulation;
+import etomica.api.IVectorMutable;
+import etomica.atom.AtomArrayList;
+import etomica.atom.iterator.AtomIterator;
+import etomica.atom.iterator.AtomIteratorNull;
+import etomica.atom.iterator.IteratorDirective;
+import etomica.lattice.CellLattice;
+import etomica.nbr.cell.Cell;
+import etomica.nbr.cell.NeighborCellManager;
+import etomica.potential.PotentialCalculationEnergySum;
+import etomica.space.ISpace;
+import etomica.util.IEvent;
+import etomica.util.IListener;
+
+/**
+ * Monte Carlo volume-change move for NPT simulations of atoms interacting
+ * with a truncated pair potential that is a sum of inverse powers,
+ * u(r) = sum_k c_k r^-n_k for r &lt; rc (Lennard-Jones, soft spheres, ...).
+ * A power of 0 can be used for the shift of a truncated-shifted potential.
+ * <p>
+ * The move keeps a sum of r^-n_k over pairs for each power.  Under isotropic
+ * scaling of all positions by s, each sum scales as s^-n_k, so the energy
+ * of a trial volume is found without moving any atoms.  Only pairs close
+ * enough to the cutoff that they might cross it for some allowed step are
+ * kept individually, and are checked against the cutoff at each trial.  The
+ * long-range correction scales as 1/V.  The box is only inflated (and its
+ * cells and neighbor lists updated) when a trial is accepted.
+ * <p>
+ * The sums are found with a lattice of cells owned by the move, sized for
+ * rc*exp(stepSizeMax/D), and are recomputed from scratch only after a
+ * volume change is accepted or reset is called.  Other changes to the
+ * configuration are applied incrementally: the moved atom's old pair terms
+ * are subtracted and its new ones added.  If the listener from
+ * makeMCMoveListener is added to the integrator's move event manager, this
+ * is done for the atoms of each accepted move; otherwise each trial compares
+ * every position with the one used for the sums to find the atoms that
+ * moved.  The default stepSizeMax is 0.2.
+ * <p>
+ * The pair potential (and its long-range correction) must be the only
+ * interaction in the box and each molecule must be a single atom; the
+ * coefficients, powers and cutoff given to this move must match it.
+ *
+ * @see MCMoveVolume
+ */
+public class MCMoveVolumeInversePower extends MCMoveVolume {
+
+    /**
+     * @param coefficients the coefficients c_k of the inverse powers
+     * @param powers the powers n_k (r^-n_k)
+     * @param rCut the truncation distance of the potential
+     */
+    public MCMoveVolumeInversePower(ISimulation sim, IPotentialMaster potentialMaster, IRandom random,
+            ISpace _space, double pressure, double[] coefficients, double[] powers, double rCut) {
+        super(potentialMaster, random, _space, pressure);
+        if (coefficients.length != powers.length) {
+            throw new IllegalArgumentException("need one coefficient for each power");
+        }
+        this.sim = sim;
+        this.space = _space;
+        this.coefficients = coefficients.clone();
+        this.powers = powers.clone();
+        this.rCut = rCut;
+        halfPowers = new int[powers.length];
+        for (int k=0; k<powers.length; k++) {
+            // even integer powers are found by multiplying 1/r2
+            halfPowers[k] = (powers[k] >= 0 && powers[k] % 2 == 0) ? (int)(powers[k]/2) : -1;
+        }
+        innerSums = new double[powers.length];
+        pairPowers = new double[powers.length];
+        shellR2 = new double[0];
+        shellPowers = new double[0];
+        lrcDirective = new IteratorDirective();
+        lrcDirective.includeLrc = true;
+        lrcEnergySum = new PotentialCalculationEnergySum();
+        dr = _space.makeVector();
+        boxSize = _space.makeVector();
+        positions = new IVectorMutable[0];
+        shellKeys = new long[0];
+        atomShells = new int[0][];
+        nAtomShells = new int[0];
+        latticeIndex = new int[_space.D()];
+        periodicity = new boolean[_space.D()];
+        setStepSizeMax(0.2);
+        stale = true;
+    }
+
+    public void setBox(IBox p) {
+        IBox oldBox = box;
+        super.setBox(p);
+        if (cellManager == null || p != oldBox) {
+            if (cellManager != null) {
+                cellManager.dispose();
+            }
+            cellManager = new NeighborCellManager(sim, p, rCut*Math.exp(stepSizeMax/D), space);
+            cellManager.setDoApplyPBC(true);
+            nbrIterator = new CellLattice.NeighborIterator(D, cellManager.getPotentialRange());
+            nbrIterator.setDirection(IteratorDirective.Direction.UP);
+            nbrIteratorAll = new CellLattice.NeighborIterator(D, cellManager.getPotentialRange());
+            nbrIteratorAll.setDirection(null);
+        }
+        stale = true;
+    }
+
+    /**
+     * Sets the maximum step (in ln(V)).  Pairs within a factor of
+     * exp(stepSizeMax/D) of the cutoff are tracked individually, so a larger
+     * maximum step means more pairs to check at each trial.
+     */
+    public void setStepSizeMax(double newStepSizeMax) {
+        super.setStepSizeMax(newStepSizeMax);
+        if (stepSize > stepSizeMax) {
+            stepSize = stepSizeMax;
+        }
+        if (cellManager != null) {
+            cellManager.setPotentialRange(rCut*Math.exp(stepSizeMax/D));
+            nbrIterator.setNeighborDistance(cellManager.getPotentialRange());
+            nbrIteratorAll.setNeighborDistance(cellManager.getPotentialRange());
+        }
+        stale = true;
+    }
+
+    /**
+     * Marks the pair sums as out of date, so that they are recomputed at the
+     * next trial.  If the listener from makeMCMoveListener is used, this
+     * should be called whenever the configuration is changed by anything
+     * other than an MC move of the integrator.
+     */
+    public void reset() {
+        stale = true;
+    }
+
+    /**
+     * Returns a listener that should be added to the integrator's move event
+     * manager.  The listener updates the pair sums for the atoms moved by
+     * each accepted move, so that trials need not look for moved atoms.
+     */
+    public IListener makeMCMoveListener() {
+        trackMoves = true;
+        return new MoveListener();
+    }
+
+    /**
+     * Computes the sums of r^-n_k over all pairs that stay inside the cutoff
+     * for any allowed step, and collects the pairs that might cross it, along
+     * with the long-range correction.
+     */
+    protected void computeSums() {
+        for (int k=0; k<innerSums.length; k++) {
+            innerSums[k] = 0;
+        }
+        nShell = 0;
+        double sMax = Math.exp(stepSizeMax/D);
+        double rInner = rCut/sMax;
+        rInner2 = rInner*rInner;
+        rOuter2 = cellManager.getPotentialRange()*cellManager.getPotentialRange();
+        boundary = box.getBoundary();
+        boxSize.E(boundary.getBoxSize());
+
+        IAtomList leafList = box.getLeafList();
+        nAtoms = leafList.getAtomCount();
+        if (positions.length < nAtoms) {
+            IVectorMutable[] newPositions = new IVectorMutable[nAtoms];
+            System.arraycopy(positions, 0, newPositions, 0, positions.length);
+            for (int i=positions.length; i<nAtoms; i++) {
+                newPositions[i] = space.makeVector();
+            }
+            positions = newPositions;
+        }
+        if (atomShells.length < nAtoms) {
+            int[][] newAtomShells = new int[nAtoms][];
+            System.arraycopy(atomShells, 0, newAtomShells, 0, atomShells.length);
+            for (int i=atomShells.length; i<nAtoms; i++) {
+                newAtomShells[i] = new int[4];
+            }
+            atomShells = newAtomShells;
+            nAtomShells = new int[nAtoms];
+        }
+        for (int i=0; i<nAtoms; i++) {
+            nAtomShells[i] = 0;
+        }
+        for (int i=0; i<nAtoms; i++) {
+            positions[i].E(leafList.getAtom(i).getPosition());
+        }
+
+        cellManager.assignCellAll();
+        CellLattice lattice = cellManager.getLattice();
+        if (nbrIterator.getLattice() != lattice) {
+            nbrIterator.setLattice(lattice);
+            nbrIteratorAll.setLattice(lattice);
+        }
+        for (int i=0; i<periodicity.length; i++) {
+            periodicity[i] = boundary.getPeriodicity(i);
+        }
+        nbrIterator.setPeriodicity(periodicity);
+        nbrIterator.checkDimensions();
+        nbrIteratorAll.setPeriodicity(periodicity);
+        nbrIteratorAll.checkDimensions();
+        Object[] cells = lattice.sites();
+        for (int c=0; c<cells.length; c++) {
+            AtomArrayList occupants = ((Cell)cells[c]).occupants();
+            int nOccupants = occupants.getAtomCount();
+            if (nOccupants == 0) continue;
+            for (int i=0; i<nOccupants-1; i++) {
+                int iLeaf = occupants.getAtom(i).getLeafIndex();
+                for (int j=i+1; j<nOccupants; j++) {
+                    addPair(iLeaf, occupants.getAtom(j).getLeafIndex());
+                }
+            }
+            lattice.latticeIndex(c, latticeIndex);
+            nbrIterator.setSite(latticeIndex);
+            nbrIterator.reset();
+            while (nbrIterator.hasNext()) {
+                AtomArrayList nbrOccupants = ((Cell)nbrIterator.next()).occupants();
+                int nNbrOccupants = nbrOccupants.getAtomCount();
+                for (int i=0; i<nOccupants; i++) {
+                    int iLeaf = occupants.getAtom(i).getLeafIndex();
+                    for (int j=0; j<nNbrOccupants; j++) {
+                        addPair(iLeaf, nbrOccupants.getAtom(j).getLeafIndex());
+                    }
+                }
+            }
+        }
+
+        uLrc = 0;
+        if (energyMeter.isIncludeLrc()) {
+            lrcEnergySum.zeroSum();
+            potential.lrcMaster().calculate(box, lrcDirective, lrcEnergySum);
+            uLrc = lrcEnergySum.getSum();
+        }
+        stale = false;
+    }
+
+    /**
+     * Brings the sums up to date for the atoms moved by the given (accepted)
+     * move.  The sums are marked out of date instead if the move changed the
+     * box or the number of atoms.
+     */
+    protected void moveAccepted(MCMove move) {
+        if (stale) return;
+        if (box.getLeafList().getAtomCount() != nAtoms || !boxSize.equals(box.getBoundary().getBoxSize())) {
+            stale = true;
+            return;
+        }
+        AtomIterator iterator = move.affectedAtoms(box);
+        iterator.reset();
+        for (IAtom atom = iterator.nextAtom(); atom != null; atom = iterator.nextAtom()) {
+            updateAtom(atom);
+        }
+    }
+
+    /**
+     * Brings the sums up to date for every atom whose position differs from
+     * the one used for the sums.  The sums are recomputed instead if the box
+     * or the number of atoms changed.
+     */
+    protected void updateMovedAtoms() {
+        IAtomList leafList = box.getLeafList();
+        if (leafList.getAtomCount() != nAtoms || !boxSize.equals(box.getBoundary().getBoxSize())) {
+            computeSums();
+            return;
+        }
+        for (int i=0; i<nAtoms; i++) {
+            IAtom atom = leafList.getAtom(i);
+            if (!positions[i].equals(atom.getPosition())) {
+                updateAtom(atom);
+            }
+        }
+    }
+
+    /**
+     * Replaces the pair terms of the given atom at its old position with
+     * those at its current position, and moves it to its new cell.
+     */
+    protected void updateAtom(IAtom atom) {
+        atomPairs(atom, false);
+        positions[atom.getLeafIndex()].E(atom.getPosition());
+        cellManager.getCell(atom).removeAtom(atom);
+        cellManager.assignCell(atom);
+        atomPairs(atom, true);
+    }
+
+    /**
+     * Adds (or removes) the pairs of the given atom with every other atom
+     * in its own and neighboring cells.
+     */
+    protected void atomPairs(IAtom atom, boolean add) {
+        int iLeaf = atom.getLeafIndex();
+        Cell cell = cellManager.getCell(atom);
+        AtomArrayList occupants = cell.occupants();
+        for (int j=0; j<occupants.getAtomCount(); j++) {
+            IAtom atomj = occupants.getAtom(j);
+            if (atomj == atom) continue;
+            if (add) {
+                addPair(iLeaf, atomj.getLeafIndex());
+            }
+            else {
+                removePair(iLeaf, atomj.getLeafIndex());
+            }
+        }
+        cellManager.getLattice().latticeIndex(cell.getLatticeArrayIndex(), latticeIndex);
+        nbrIteratorAll.setSite(latticeIndex);
+        nbrIteratorAll.reset();
+        while (nbrIteratorAll.hasNext()) {
+            AtomArrayList nbrOccupants = ((Cell)nbrIteratorAll.next()).occupants();
+            for (int j=0; j<nbrOccupants.getAtomCount(); j++) {
+                if (add) {
+                    addPair(iLeaf, nbrOccupants.getAtom(j).getLeafIndex());
+                }
+                else {
+                    removePair(iLeaf, nbrOccupants.getAtom(j).getLeafIndex());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns r^2 for the pair of atoms with the given leaf indices, taken
+     * from the positions used for the sums.  The separation is always taken
+     * from the lower index to the higher one, so that adding and removing a
+     * pair see exactly the same value.
+     */
+    protected double pairR2(int i, int j) {
+        if (i < j) {
+            dr.Ev1Mv2(positions[j], positions[i]);
+        }
+        else {
+            dr.Ev1Mv2(positions[i], positions[j]);
+        }
+        boundary.nearestImage(dr);
+        return dr.squared();
+    }
+
+    /**
+     * Adds the pair of atoms with the given leaf indices to the inner sums
+     * or to the shell pairs.
+     */
+    protected void addPair(int i, int j) {
+        double r2 = pairR2(i, j);
+        if (r2 >= rOuter2) return;
+        computePowers(r2);
+        if (r2 < rInner2) {
+            for (int k=0; k<innerSums.length; k++) {
+                innerSums[k] += pairPowers[k];
+            }
+            return;
+        }
+        int nPowers = powers.length;
+        if (nShell == shellR2.length) {
+            double[] newShellR2 = new double[nShell*2+10];
+            System.arraycopy(shellR2, 0, newShellR2, 0, nShell);
+            shellR2 = newShellR2;
+            double[] newShellPowers = new double[newShellR2.length*nPowers];
+            System.arraycopy(shellPowers, 0, newShellPowers, 0, nShell*nPowers);
+            shellPowers = newShellPowers;
+            long[] newShellKeys = new long[newShellR2.length];
+            System.arraycopy(shellKeys, 0, newShellKeys, 0, nShell);
+            shellKeys = newShellKeys;
+        }
+        shellR2[nShell] = r2;
+        System.arraycopy(pairPowers, 0, shellPowers, nShell*nPowers, nPowers);
+        shellKeys[nShell] = pairKey(i, j);
+        addAtomShell(i, nShell);
+        addAtomShell(j, nShell);
+        nShell++;
+    }
+
+    /**
+     * Removes the pair of atoms with the given leaf indices from the inner
+     * sums or from the shell pairs.
+     */
+    protected void removePair(int i, int j) {
+        double r2 = pairR2(i, j);
+        if (r2 >= rOuter2) return;
+        if (r2 < rInner2) {
+            computePowers(r2);
+            for (int k=0; k<innerSums.length; k++) {
+                innerSums[k] -= pairPowers[k];
+            }
+            return;
+        }
+        long key = pairKey(i, j);
+        int p = -1;
+        int[] iShells = atomShells[i];
+        for (int l=0; l<nAtomShells[i]; l++) {
+            if (shellKeys[iShells[l]] == key) {
+                p = iShells[l];
+                break;
+            }
+        }
+        if (p == -1) {
+            throw new IllegalStateException("shell pair "+i+" "+j+" was never added");
+        }
+        replaceAtomShell(i, p, -1);
+        replaceAtomShell(j, p, -1);
+        // move the last shell pair into the hole
+        int nPowers = powers.length;
+        nShell--;
+        if (p != nShell) {
+            shellR2[p] = shellR2[nShell];
+            System.arraycopy(shellPowers, nShell*nPowers, shellPowers, p*nPowers, nPowers);
+            shellKeys[p] = shellKeys[nShell];
+            replaceAtomShell((int)(shellKeys[p]>>32), nShell, p);
+            replaceAtomShell((int)shellKeys[p], nShell, p);
+        }
+    }
+
+    /**
+     * Adds shell pair p to the list of shell pairs of the given atom.
+     */
+    protected void addAtomShell(int i, int p) {
+        int n = nAtomShells[i];
+        if (n == atomShells[i].length) {
+            int[] newShells = new int[n*2];
+            System.arraycopy(atomShells[i], 0, newShells, 0, n);
+            atomShells[i] = newShells;
+        }
+        atomShells[i][n] = p;
+        nAtomShells[i] = n+1;
+    }
+
+    /**
+     * Replaces shell pair p in the list of shell pairs of the given atom
+     * with newP, or removes it if newP is -1.
+     */
+    protected void replaceAtomShell(int i, int p, int newP) {
+        int[] shells = atomShells[i];
+        for (int l=0; l<nAtomShells[i]; l++) {
+            if (shells[l] != p) continue;
+            if (newP == -1) {
+                nAtomShells[i]--;
+                shells[l] = shells[nAtomShells[i]];
+            }
+            else {
+                shells[l] = newP;
+            }
+            return;
+        }
+    }
+
+    protected static long pairKey(int i, int j) {
+        return i < j ? (((long)i)<<32) + j : (((long)j)<<32) + i;
+    }
+
+    /**
+     * Fills pairPowers with r^-n_k for the given r^2.
+     */
+    protected void computePowers(double r2) {
+        double r2inv = 1.0/r2;
+        for (int k=0; k<powers.length; k++) {
+            int m = halfPowers[k];
+            if (m < 0) {
+                pairPowers[k] = Math.pow(r2, -0.5*powers[k]);
+                continue;
+            }
+            double p = 1;
+            for (int l=0; l<m; l++) {
+                p *= r2inv;
+            }
+            pairPowers[k] = p;
+        }
+    }
+
+    /**
+     * Returns the pair energy (without long-range correction) after all
+     * positions are scaled by s.
+     */
+    protected double energy(double s) {
+        double s2 = s*s;
+        double rCut2 = rCut*rCut;
+        int nPowers = powers.length;
+        for (int k=0; k<nPowers; k++) {
+            pairPowers[k] = innerSums[k];
+        }
+        for (int p=0; p<nShell; p++) {
+            if (shellR2[p]*s2 >= rCut2) continue;
+            for (int k=0; k<nPowers; k++) {
+                pairPowers[k] += shellPowers[p*nPowers+k];
+            }
+        }
+        double u = 0;
+        for (int k=0; k<nPowers; k++) {
+            u += coefficients[k]*Math.pow(s, -powers[k])*pairPowers[k];
+        }
+        return u;
+    }
+
+    public boolean doTrial() {
+        if (stale) {
+            computeSums();
+        }
+        else if (!trackMoves) {
+            updateMovedAtoms();
+        }
+        uOld = energy(1) + uLrc;
+        double vOld = box.getBoundary().volume();
+        hOld = uOld + pressure*vOld;
+        biasOld = vBias.f(vOld);
+        vScale = (2.*random.nextDouble()-1.)*stepSize;
+        vNew = vOld * Math.exp(vScale); //Step in ln(V)
+        rScale = Math.exp(vScale/D);
+        uNew = energy(rScale) + uLrc*vOld/vNew;
+        hNew = uNew + pressure*vNew;
+        return true;
+    }
+
+    public double getA() {
+        // N, not N+1 here because of the shell volume
+        // D. S. Corti, Mol. Phys. 100, 1887 (2002).
+        double biasNew = vBias.f(vNew);
+        if (temperature != 0) {
+            return biasNew/biasOld*Math.exp(box.getMoleculeList().getMoleculeCount()*vScale - (hNew-hOld)/temperature);
+        }
+        return biasNew/biasOld*Math.exp(box.getMoleculeList().getMoleculeCount()*vScale);
+    }
+
+    public void acceptNotify() {
+        //cells+neighbors get updated here
+        inflate.setScale(rScale);
+        inflate.actionPerformed();
+        stale = true;
+    }
+
+    public void rejectNotify() {
+        // the box was never changed
+    }
+
+    /**
+     * Returns an empty iterator; atoms are only moved (all of them) when the
+     * move is accepted, and the box's cells are updated then by the
+     * inflation.
+     */
+    public AtomIterator affectedAtoms() {
+        return AtomIteratorNull.INSTANCE;
+    }
+
+    protected final ISimulation sim;
+    protected final ISpace space;
+    protected final double[] coefficients, powers;
+    protected final int[] halfPowers;
+    protected final double rCut;
+    protected final double[] innerSums, pairPowers;
+    protected double[] shellR2, shellPowers;
+    protected int nShell;
+    protected double rInner2, rOuter2;
+    protected double uLrc, rScale;
+    protected int nAtoms;
+    protected IVectorMutable[] positions;
+    protected final IVectorMutable boxSize;
+    protected long[] shellKeys;
+    protected int[][] atomShells;
+    protected int[] nAtomShells;
+    protected final IteratorDirective lrcDirective;
+    protected final PotentialCalculationEnergySum lrcEnergySum;
+    protected NeighborCellManager cellManager;
+    protected CellLattice.NeighborIterator nbrIterator, nbrIteratorAll;
+    protected IBoundary boundary;
+    protected final IVectorMutable dr;
+    protected final int[] latticeIndex;
+    protected final boolean[] periodicity;
+    protected boolean stale, trackMoves;
+
+    protected class MoveListener implements IListener, java.io.Serializable {
+        public void actionPerformed(IEvent evt) {
+            if (evt instanceof MCMoveTrialCompletedEvent && ((MCMoveTrialCompletedEvent)evt).isAccepted()) {
+                MCMove move = ((MCMoveTrialCompletedEvent)evt).getMCMove();
+                // our own accepted moves mark the sums out of date
+                if (move != MCMoveVolumeInversePower.this) {
+                    moveAccepted(move);
+                }
+            }
+        }
+        private static final long serialVersionUID = 1L;
+    }
+}
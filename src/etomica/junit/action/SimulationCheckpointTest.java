@@ -0,0 +1,252 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.junit.action;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+import etomica.action.BoxInflate;
+import etomica.action.IAction;
+import etomica.action.SimulationCheckpoint;
+import etomica.action.activity.ActivityIntegrate;
+import etomica.api.IAtomKinetic;
+import etomica.api.IAtomList;
+import etomica.api.IAtomType;
+import etomica.api.IBox;
+import etomica.box.Box;
+import etomica.box.BoxCheckpoint;
+import etomica.config.ConfigurationLattice;
+import etomica.data.AccumulatorAverage;
+import etomica.data.AccumulatorAverageCollapsing;
+import etomica.data.AccumulatorAverageFixed;
+import etomica.data.DataPump;
+import etomica.data.IData;
+import etomica.data.meter.MeterPotentialEnergyFromIntegrator;
+import etomica.integrator.IntegratorBox;
+import etomica.integrator.IntegratorHard;
+import etomica.integrator.IntegratorMC;
+import etomica.integrator.IntegratorMD.ThermostatType;
+import etomica.integrator.IntegratorVelocityVerlet;
+import etomica.integrator.mcmove.MCMoveAtom;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.listener.IntegratorListenerAction;
+import etomica.nbr.list.PotentialMasterList;
+import etomica.potential.P2LennardJones;
+import etomica.potential.P2SoftSphericalTruncated;
+import etomica.simulation.Simulation;
+import etomica.space.ISpace;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.Checkpointable;
+import etomica.util.RandomMersenneTwister;
+
+/**
+ * Runs Lennard-Jones MC and MD simulations, writing a checkpoint partway
+ * through, and checks that a new simulation restored from the checkpoint
+ * finishes the run exactly as the original did.
+ */
+public class SimulationCheckpointTest extends TestCase {
+
+    public void setUp() throws IOException {
+        file = File.createTempFile("checkpoint", ".bin");
+        file.deleteOnExit();
+    }
+
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * Builds the simulation, with everything that needs to be saved added
+     * to a SimulationCheckpoint.  The checkpoint is written after
+     * checkpointStep steps, if that is positive.
+     */
+    protected SimulationCheckpoint makeSim(boolean md, final int checkpointStep) {
+        ISpace space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        RandomMersenneTwister random = new RandomMersenneTwister(11);
+        sim.setRandom(random);
+        potentialMaster = new PotentialMasterList(sim, 3.0, space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        species.setIsDynamic(md);
+        sim.addSpecies(species);
+        box = new Box(space);
+        sim.addBox(box);
+        box.setNMolecules(species, 256);
+        BoxInflate inflater = new BoxInflate(box, space);
+        inflater.setTargetDensity(0.7);
+        inflater.actionPerformed();
+        new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+        IAtomType leafType = species.getLeafType();
+        potentialMaster.addPotential(new P2SoftSphericalTruncated(space, new P2LennardJones(space), 2.5),
+                new IAtomType[]{leafType, leafType});
+
+        if (md) {
+            IntegratorVelocityVerlet integratorMD = new IntegratorVelocityVerlet(sim, potentialMaster, space);
+            integratorMD.setTimeStep(0.005);
+            integratorMD.setIsothermal(true);
+            integratorMD.setThermostat(ThermostatType.ANDERSEN_SINGLE);
+            integratorMD.setThermostatInterval(7);
+            integrator = integratorMD;
+        }
+        else {
+            IntegratorMC integratorMC = new IntegratorMC(sim, potentialMaster);
+            MCMoveAtom move = new MCMoveAtom(random, potentialMaster, space);
+            integratorMC.getMoveManager().addMCMove(move);
+            integrator = integratorMC;
+        }
+        integrator.setTemperature(1.2);
+        integrator.setBox(box);
+        integrator.getEventManager().addListener(potentialMaster.getNeighborManager(box));
+
+        MeterPotentialEnergyFromIntegrator meterPE = new MeterPotentialEnergyFromIntegrator(integrator);
+        accumulator = new AccumulatorAverageFixed(10);
+        integrator.getEventManager().addListener(new IntegratorListenerAction(new DataPump(meterPE, accumulator)));
+        accumulatorCollapsing = new AccumulatorAverageCollapsing();
+        IntegratorListenerAction collapsingListener = new IntegratorListenerAction(new DataPump(meterPE, accumulatorCollapsing), 3);
+        integrator.getEventManager().addListener(collapsingListener);
+
+        activity = new ActivityIntegrate(integrator);
+        activity.setMaxSteps(nSteps);
+
+        final SimulationCheckpoint checkpoint = new SimulationCheckpoint(file.getPath());
+        checkpoint.add("box", new BoxCheckpoint(box, space));
+        checkpoint.add("neighbors", potentialMaster.getNeighborManager(box));
+        checkpoint.add("random", random);
+        checkpoint.add("average", accumulator);
+        checkpoint.add("collapsing", accumulatorCollapsing);
+        checkpoint.add("collapsingListener", collapsingListener);
+        checkpoint.add("integrator", (Checkpointable)integrator);
+        checkpoint.add("activity", activity);
+        if (checkpointStep > 0) {
+            integrator.getEventManager().addListener(new IntegratorListenerAction(new IAction() {
+                public void actionPerformed() {
+                    if (integrator.getStepCount() == checkpointStep) {
+                        checkpoint.actionPerformed();
+                    }
+                }
+            }));
+        }
+        return checkpoint;
+    }
+
+    protected void checkSame(IBox box1, IBox box2, boolean md) {
+        IAtomList leafList1 = box1.getLeafList();
+        IAtomList leafList2 = box2.getLeafList();
+        for (int i=0; i<leafList1.getAtomCount(); i++) {
+            for (int j=0; j<3; j++) {
+                assertEquals(leafList1.getAtom(i).getPosition().getX(j), leafList2.getAtom(i).getPosition().getX(j), 0);
+                if (md) {
+                    assertEquals(((IAtomKinetic)leafList1.getAtom(i)).getVelocity().getX(j),
+                            ((IAtomKinetic)leafList2.getAtom(i)).getVelocity().getX(j), 0);
+                }
+            }
+        }
+    }
+
+    protected void checkSame(AccumulatorAverage accumulator1, AccumulatorAverage accumulator2) {
+        assertEquals(accumulator1.getSampleCount(), accumulator2.getSampleCount());
+        IData data1 = accumulator1.getData();
+        IData data2 = accumulator2.getData();
+        for (int i=0; i<data1.getLength(); i++) {
+            assertEquals("value "+i+" of "+accumulator1.getClass().getSimpleName(), data1.getValue(i), data2.getValue(i), 0);
+        }
+    }
+
+    protected void doTest(boolean md) throws IOException {
+        makeSim(md, nSteps/2);
+        activity.actionPerformed();
+        IBox box1 = box;
+        IntegratorBox integrator1 = integrator;
+        AccumulatorAverage accumulator1 = accumulator;
+        AccumulatorAverage accumulatorCollapsing1 = accumulatorCollapsing;
+
+        SimulationCheckpoint checkpoint = makeSim(md, 0);
+        checkpoint.restore();
+        assertEquals(nSteps/2, integrator.getStepCount());
+        activity.actionPerformed();
+
+        assertEquals(nSteps, integrator.getStepCount());
+        checkSame(box1, box, md);
+        assertEquals(integrator1.getPotentialEnergy(), integrator.getPotentialEnergy(), 0);
+        checkSame(accumulator1, accumulator);
+        checkSame(accumulatorCollapsing1, accumulatorCollapsing);
+    }
+
+    public void testMC() throws IOException {
+        doTest(false);
+    }
+
+    public void testMD() throws IOException {
+        doTest(true);
+    }
+
+    public void testMismatch() throws IOException {
+        makeSim(false, nSteps/2);
+        activity.actionPerformed();
+        SimulationCheckpoint checkpoint = makeSim(false, 0);
+        checkpoint.add("extra", accumulator);
+        try {
+            checkpoint.restore();
+            fail("restored a checkpoint without all the sections");
+        }
+        catch (RuntimeException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Checks that integrators that don't save all of their state can't be
+     * checkpointed: those that aren't Checkpointable at all, and subclasses
+     * of Checkpointable integrators that don't declare their own methods.
+     */
+    public void testUnsupported() throws IOException {
+        assertFalse(Checkpointable.class.isAssignableFrom(IntegratorHard.class));
+
+        makeSim(false, 0);
+        IntegratorMC subclass = new IntegratorMC(potentialMaster, new RandomMersenneTwister(1), 1.0) {
+            private static final long serialVersionUID = 1L;
+        };
+        subclass.setBox(box);
+        try {
+            subclass.writeCheckpoint(new DataOutputStream(new ByteArrayOutputStream()));
+            fail("wrote a checkpoint for a subclass that doesn't declare its state");
+        }
+        catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Checks that a neighbor list manager that wasn't added to a checkpoint
+     * doesn't record positions, and so refuses to write a checkpoint.
+     */
+    public void testNeighborListNotCheckpointing() throws IOException {
+        makeSim(false, 0);
+        // adding the manager to the checkpoint turned checkpointing on
+        assertTrue(potentialMaster.getNeighborManager(box).isCheckpointing());
+        potentialMaster.getNeighborManager(box).setCheckpointing(false);
+        activity.setMaxSteps(10);
+        activity.actionPerformed();
+        try {
+            potentialMaster.getNeighborManager(box).writeCheckpoint(new DataOutputStream(new ByteArrayOutputStream()));
+            fail("wrote neighbor lists without recorded positions");
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    protected static final int nSteps = 400;
+    protected File file;
+    protected IBox box;
+    protected IntegratorBox integrator;
+    protected PotentialMasterList potentialMaster;
+    protected AccumulatorAverage accumulator, accumulatorCollapsing;
+    protected ActivityIntegrate activity;
+}
@@ -0,0 +1,146 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.junit.action;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+import etomica.action.WriteTrajectoryBinary;
+import etomica.api.IAtomKinetic;
+import etomica.api.IAtomList;
+import etomica.api.IBox;
+import etomica.api.IRandom;
+import etomica.api.IVectorMutable;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.config.ConfigurationTrajectoryBinary;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.simulation.Simulation;
+import etomica.space.ISpace;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.RandomMersenneTwister;
+
+/**
+ * Writes trajectories with WriteTrajectoryBinary (in each format) and checks
+ * that ConfigurationTrajectoryBinary reads back the same frames.
+ */
+public class TrajectoryBinaryTest extends TestCase {
+
+    public void setUp() {
+        space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        species = new SpeciesSpheresMono(sim, space);
+        species.setIsDynamic(true);
+        sim.addSpecies(species);
+        box = new Box(space);
+        sim.addBox(box);
+        box.setNMolecules(species, 108);
+        new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+        random = new RandomMersenneTwister(5);
+    }
+
+    /**
+     * Moves the atoms and changes the box size, returning the frame (box
+     * size, positions and velocities).
+     */
+    protected double[] perturb() {
+        IVectorMutable boxSize = space.makeVector();
+        boxSize.E(box.getBoundary().getBoxSize());
+        boxSize.TE(1 + 0.01*(random.nextDouble()-0.5));
+        box.getBoundary().setBoxSize(boxSize);
+        IAtomList leafList = box.getLeafList();
+        double[] frame = new double[3 + 6*leafList.getAtomCount()];
+        boxSize.assignTo(frame);
+        for (int i=0; i<leafList.getAtomCount(); i++) {
+            IAtomKinetic a = (IAtomKinetic)leafList.getAtom(i);
+            for (int j=0; j<3; j++) {
+                a.getPosition().setX(j, boxSize.getX(j)*(0.98*random.nextDouble()-0.49));
+                a.getVelocity().setX(j, random.nextGaussian());
+                frame[3+3*i+j] = a.getPosition().getX(j);
+                frame[3+3*leafList.getAtomCount()+3*i+j] = a.getVelocity().getX(j);
+            }
+        }
+        return frame;
+    }
+
+    protected void check(double[] frame, boolean velocities, double tol) {
+        IAtomList leafList = box.getLeafList();
+        int n = leafList.getAtomCount();
+        for (int j=0; j<3; j++) {
+            assertEquals(frame[j], box.getBoundary().getBoxSize().getX(j), tol*Math.abs(frame[j]));
+        }
+        for (int i=0; i<n; i++) {
+            IAtomKinetic a = (IAtomKinetic)leafList.getAtom(i);
+            for (int j=0; j<3; j++) {
+                assertEquals(frame[3+3*i+j], a.getPosition().getX(j), tol*Math.abs(frame[3+3*i+j]));
+                if (velocities) {
+                    assertEquals(frame[3+3*n+3*i+j], a.getVelocity().getX(j), tol*Math.abs(frame[3+3*n+3*i+j]));
+                }
+            }
+        }
+    }
+
+    protected void doTest(boolean useFloat, boolean compressed, boolean velocities, boolean close) throws IOException {
+        File f = File.createTempFile("traj", ".bin");
+        f.deleteOnExit();
+        WriteTrajectoryBinary writer = new WriteTrajectoryBinary(space);
+        writer.setFileName(f.getPath());
+        writer.setBox(box);
+        // the atoms are all in the box; applying PBC would only add roundoff
+        writer.setDoApplyPBC(false);
+        writer.setUseFloat(useFloat);
+        writer.setCompressed(compressed);
+        writer.setWriteVelocities(velocities);
+        double[][] frames = new double[50][];
+        for (int i=0; i<frames.length; i++) {
+            frames[i] = perturb();
+            writer.actionPerformed();
+        }
+        if (close) {
+            writer.close();
+        }
+        assertEquals(frames.length, writer.getFrameCount());
+
+        // a small window, so that frames straddle the mapped windows
+        ConfigurationTrajectoryBinary config = new ConfigurationTrajectoryBinary(f.getPath(), space, 4096);
+        assertEquals(frames.length, config.getFrameCount());
+        assertEquals(velocities, config.hasVelocities());
+        double tol = useFloat ? 1e-6 : 0;
+        // read the frames backwards and then forwards
+        for (int i=frames.length-1; i>=0; i--) {
+            config.setFrame(i);
+            config.initializeCoordinates(box);
+            check(frames[i], velocities, tol);
+        }
+        for (int i=0; i<frames.length; i++) {
+            config.setFrame(i);
+            config.initializeCoordinates(box);
+            check(frames[i], velocities, tol);
+        }
+        config.close();
+        writer.close();
+    }
+
+    public void testDouble() throws IOException {
+        doTest(false, false, true, true);
+    }
+
+    public void testFloatCompressed() throws IOException {
+        doTest(true, true, false, true);
+        doTest(true, true, true, true);
+    }
+
+    public void testNoIndex() throws IOException {
+        // the reader should find the frames in a file that wasn't closed
+        doTest(false, true, false, false);
+    }
+
+    protected ISpace space;
+    protected SpeciesSpheresMono species;
+    protected IBox box;
+    protected IRandom random;
+}
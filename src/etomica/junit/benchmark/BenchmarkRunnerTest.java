@@ -0,0 +1,41 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.junit.benchmark;
+
+import junit.framework.TestCase;
+import etomica.benchmark.BenchmarkFixture;
+import etomica.benchmark.BenchmarkRunner;
+import etomica.benchmark.HardSphereMDBenchmark;
+
+/**
+ * Runs each benchmark briefly at its smallest size to check that the
+ * fixtures can be built and produce sensible results.
+ */
+public class BenchmarkRunnerTest extends TestCase {
+
+    public void testBenchmarks() {
+        BenchmarkRunner runner = new BenchmarkRunner(0, 2, 10);
+        for (BenchmarkFixture b : BenchmarkRunner.allBenchmarks()) {
+            int size = b.getDefaultSizes()[0];
+            double[] scores = runner.run(b, size, 1);
+            assertEquals(2, scores.length);
+            for (int i=0; i<scores.length; i++) {
+                assertTrue(b.getName(), scores[i] > 0);
+            }
+            assertFalse(b.getName(), Double.isNaN(b.getResult()));
+            assertFalse(b.getName(), Double.isInfinite(b.getResult()));
+            if (b instanceof HardSphereMDBenchmark) {
+                assertNotNull(b.getNote());
+            }
+        }
+    }
+
+    public void testStatistics() {
+        double[] scores = new double[]{1, 2, 3, 4};
+        assertEquals(2.5, BenchmarkRunner.mean(scores), 1e-12);
+        // stdev = sqrt(5/3), error = stdev/sqrt(4)
+        assertEquals(Math.sqrt(5.0/3.0)/2, BenchmarkRunner.error(scores), 1e-12);
+    }
+}
@@ -0,0 +1,147 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.junit.data;
+
+import junit.framework.TestCase;
+import etomica.data.AccumulatorAverage;
+import etomica.data.AccumulatorAverage.StatType;
+import etomica.data.AccumulatorAverageCovariance;
+import etomica.data.AccumulatorRatioAverageCovariance;
+import etomica.data.IData;
+import etomica.data.types.DataDoubleArray;
+import etomica.data.types.DataGroup;
+import etomica.units.Null;
+import etomica.util.RandomNumberGenerator;
+
+/**
+ * Checks that merging accumulators gives the same statistics as putting all
+ * of the data into a single accumulator, and that when the first accumulator
+ * ends with an incomplete block the merge is exact only for statistics that
+ * don't depend on how the data is blocked.
+ */
+public class AccumulatorMergeTest extends TestCase {
+
+    protected AccumulatorRatioAverageCovariance makeAccumulator() {
+        AccumulatorRatioAverageCovariance acc = new AccumulatorRatioAverageCovariance(10);
+        acc.putDataInfo(new DataDoubleArray.DataInfoDoubleArray("test", Null.DIMENSION, new int[]{2}));
+        return acc;
+    }
+
+    /**
+     * Returns n samples from the correlated process used by the tests.
+     */
+    protected double[][] makeSamples(int n, RandomNumberGenerator rng) {
+        double[][] samples = new double[n][2];
+        double x0 = 0;
+        for (int i=0; i<n; i++) {
+            x0 = 1 + 0.9*(x0-1) + 0.1*rng.nextGaussian();
+            samples[i][0] = x0;
+            samples[i][1] = 0.5*x0 + rng.nextDouble();
+        }
+        return samples;
+    }
+
+    protected void addSamples(AccumulatorRatioAverageCovariance acc, double[][] samples, int from, int to) {
+        DataDoubleArray rawData = new DataDoubleArray(2);
+        for (int i=from; i<to; i++) {
+            rawData.E(samples[i]);
+            acc.putData(rawData);
+        }
+    }
+
+    protected void checkSame(AccumulatorRatioAverageCovariance acc1, AccumulatorRatioAverageCovariance acc2, StatType stat) {
+        IData a = acc1.getData(stat);
+        IData b = acc2.getData(stat);
+        for (int j=0; j<a.getLength(); j++) {
+            assertEquals(a.getValue(j), b.getValue(j), 1e-10*Math.abs(a.getValue(j)));
+        }
+    }
+
+    public void testMerge() {
+        AccumulatorRatioAverageCovariance all = makeAccumulator();
+        AccumulatorRatioAverageCovariance[] parts = new AccumulatorRatioAverageCovariance[3];
+        for (int i=0; i<parts.length; i++) {
+            parts[i] = makeAccumulator();
+        }
+        // the last part ends with an incomplete block
+        int[] nParts = new int[]{500, 1230, 1004};
+        RandomNumberGenerator rng = new RandomNumberGenerator(5);
+        DataDoubleArray rawData = new DataDoubleArray(2);
+        double[] x = rawData.getData();
+        for (int i=0; i<parts.length; i++) {
+            for (int j=0; j<nParts[i]; j++) {
+                x[0] = 1 + 0.9*(x[0]-1) + 0.1*rng.nextGaussian();
+                x[1] = 0.5*x[0] + rng.nextDouble();
+                all.putData(rawData);
+                parts[i].putData(rawData);
+            }
+        }
+        AccumulatorRatioAverageCovariance merged = parts[0];
+        merged.merge(parts[1]);
+        merged.merge(parts[2]);
+        assertEquals(all.getSampleCount(), merged.getSampleCount());
+        assertEquals(all.getBlockCount(), merged.getBlockCount());
+
+        DataGroup allData = (DataGroup)all.getData();
+        DataGroup mergedData = (DataGroup)merged.getData();
+        for (int i=0; i<allData.getNData(); i++) {
+            IData a = allData.getData(i);
+            IData b = mergedData.getData(i);
+            for (int j=0; j<a.getLength(); j++) {
+                assertEquals(a.getValue(j), b.getValue(j), 1e-10*Math.abs(a.getValue(j)));
+            }
+        }
+
+        AccumulatorRatioAverageCovariance other = makeAccumulator();
+        other.setBlockSize(20);
+        try {
+            merged.merge(other);
+            fail("merged accumulators with different block sizes");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    /**
+     * Merges into an accumulator that ends with an incomplete block.  The
+     * result should match an accumulator given the data with the first
+     * accumulator's incomplete block moved to the end, and match sequential
+     * addition only for the statistics that don't depend on blocking.
+     */
+    public void testMergeIncompleteBlock() {
+        RandomNumberGenerator rng = new RandomNumberGenerator(5);
+        double[][] samples0 = makeSamples(503, rng);
+        double[][] samples1 = makeSamples(1230, rng);
+        AccumulatorRatioAverageCovariance merged = makeAccumulator();
+        addSamples(merged, samples0, 0, 503);
+        AccumulatorRatioAverageCovariance other = makeAccumulator();
+        addSamples(other, samples1, 0, 1230);
+        merged.merge(other);
+
+        AccumulatorRatioAverageCovariance regrouped = makeAccumulator();
+        addSamples(regrouped, samples0, 0, 500);
+        addSamples(regrouped, samples1, 0, 1230);
+        addSamples(regrouped, samples0, 500, 503);
+        assertEquals(regrouped.getSampleCount(), merged.getSampleCount());
+        assertEquals(regrouped.getBlockCount(), merged.getBlockCount());
+        StatType[] stats = AccumulatorRatioAverageCovariance.choices();
+        for (int i=0; i<stats.length; i++) {
+            if (stats[i] == AccumulatorAverage.MOST_RECENT) continue;
+            checkSame(regrouped, merged, stats[i]);
+        }
+
+        AccumulatorRatioAverageCovariance all = makeAccumulator();
+        addSamples(all, samples0, 0, 503);
+        addSamples(all, samples1, 0, 1230);
+        assertEquals(all.getSampleCount(), merged.getSampleCount());
+        checkSame(all, merged, AccumulatorAverage.MOST_RECENT);
+        checkSame(all, merged, AccumulatorAverage.AVERAGE);
+        checkSame(all, merged, AccumulatorAverage.STANDARD_DEVIATION);
+        checkSame(all, merged, AccumulatorAverageCovariance.COVARIANCE);
+        checkSame(all, merged, AccumulatorRatioAverageCovariance.RATIO);
+        // the blocks are different, so the error is too
+        double error = all.getData(AccumulatorAverage.ERROR).getValue(0);
+        assertTrue(Math.abs(error - merged.getData(AccumulatorAverage.ERROR).getValue(0)) > 1e-10*error);
+    }
+}
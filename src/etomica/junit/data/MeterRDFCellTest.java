@@ -0,0 +1,133 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.junit.data;
+
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+import etomica.action.BoxInflate;
+import etomica.api.IAtomList;
+import etomica.api.IAtomType;
+import etomica.api.IBox;
+import etomica.api.IVectorMutable;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.data.IData;
+import etomica.data.meter.MeterRDF;
+import etomica.data.meter.MeterRDFCell;
+import etomica.data.types.DataFunction;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.simulation.Simulation;
+import etomica.space.ISpace;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+
+/**
+ * Compares the RDFs from MeterRDFCell with those from MeterRDF.
+ */
+public class MeterRDFCellTest extends TestCase {
+
+    public void setUp() {
+        space = Space3D.getInstance();
+        sim = new Simulation(space);
+        SpeciesSpheresMono speciesA = new SpeciesSpheresMono(sim, space);
+        SpeciesSpheresMono speciesB = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(speciesA);
+        sim.addSpecies(speciesB);
+        typeA = speciesA.getLeafType();
+        typeB = speciesB.getLeafType();
+        box = new Box(space);
+        sim.addBox(box);
+        box.setNMolecules(speciesA, 300);
+        box.setNMolecules(speciesB, 200);
+        BoxInflate inflater = new BoxInflate(box, space);
+        inflater.setTargetDensity(0.8);
+        inflater.actionPerformed();
+        new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+        IAtomList leafList = box.getLeafList();
+        for (int i=0; i<leafList.getAtomCount(); i++) {
+            IVectorMutable r = leafList.getAtom(i).getPosition();
+            for (int j=0; j<3; j++) {
+                r.setX(j, r.getX(j) + 0.3*Math.sin(11*i+5*j));
+            }
+        }
+    }
+
+    protected MeterRDFCell makeMeter() {
+        MeterRDFCell meter = new MeterRDFCell(sim, space);
+        meter.getXDataSource().setXMax(xMax);
+        meter.getXDataSource().setNValues(nBins);
+        meter.addTypePair(typeA, typeA);
+        meter.addTypePair(typeA, typeB);
+        meter.addTypePair(typeB, typeB);
+        meter.setBox(box);
+        return meter;
+    }
+
+    protected double[] getRDF(IAtomType type) {
+        MeterRDF meter = new MeterRDF(space);
+        meter.getXDataSource().setXMax(xMax);
+        meter.getXDataSource().setNValues(nBins);
+        if (type != null) {
+            meter.setAtomType(type);
+        }
+        meter.setBox(box);
+        meter.actionPerformed();
+        return values(meter.getData());
+    }
+
+    public void testRDF() {
+        MeterRDFCell meter = makeMeter();
+        meter.actionPerformed();
+
+        double[] g = values(meter.getData());
+        double[] gAll = getRDF(null);
+        double[] gAA = getRDF(typeA);
+        double[] gBB = getRDF(typeB);
+        double[] gAAcell = values(meter.getPartial(0).getData());
+        double[] gABcell = values(meter.getPartial(1).getData());
+        double[] gBBcell = values(meter.getPartial(2).getData());
+        double sum = 0;
+        for (int i=0; i<nBins; i++) {
+            assertEquals(gAll[i], g[i], 1e-10);
+            assertEquals(gAA[i], gAAcell[i], 1e-10);
+            assertEquals(gBB[i], gBBcell[i], 1e-10);
+            // the partials should add up to the total
+            double nAA = 300*299/2, nAB = 300*200, nBB = 200*199/2;
+            double total = (nAA*gAAcell[i] + nAB*gABcell[i] + nBB*gBBcell[i])/(nAA+nAB+nBB);
+            assertEquals(g[i], total, 1e-10);
+            sum += g[i];
+        }
+        assertTrue(sum > 0);
+    }
+
+    public void testParallel() {
+        MeterRDFCell meter = makeMeter();
+        meter.actionPerformed();
+        double[] g = values(meter.getData());
+        double[] gAB = values(meter.getPartial(1).getData());
+
+        MeterRDFCell parallelMeter = makeMeter();
+        parallelMeter.setPool(new ForkJoinPool(3));
+        parallelMeter.actionPerformed();
+        double[] parallelG = values(parallelMeter.getData());
+        double[] parallelGAB = values(parallelMeter.getPartial(1).getData());
+        for (int i=0; i<nBins; i++) {
+            assertEquals(g[i], parallelG[i], 0);
+            assertEquals(gAB[i], parallelGAB[i], 0);
+        }
+    }
+
+    protected static double[] values(IData data) {
+        return ((DataFunction)data).getData().clone();
+    }
+
+    protected ISpace space;
+    protected Simulation sim;
+    protected IBox box;
+    protected IAtomType typeA, typeB;
+    protected final double xMax = 4.0;
+    protected final int nBins = 80;
+}
@@ -0,0 +1,199 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.junit.data;
+
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+import etomica.action.BoxInflate;
+import etomica.api.IAtomList;
+import etomica.api.IAtomType;
+import etomica.api.IBoundary;
+import etomica.api.IBox;
+import etomica.api.IMolecule;
+import etomica.api.IVectorMutable;
+import etomica.box.Box;
+import etomica.box.RandomPositionSourceRectangular;
+import etomica.config.ConfigurationLattice;
+import etomica.data.meter.MeterPotentialEnergy;
+import etomica.data.meter.MeterWidomInsertion;
+import etomica.data.meter.MeterWidomInsertionTestParticle;
+import etomica.integrator.IntegratorMC;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.nbr.cell.NeighborCellManager;
+import etomica.nbr.cell.PotentialMasterCell;
+import etomica.nbr.list.PotentialMasterList;
+import etomica.potential.P2LennardJones;
+import etomica.potential.P2SoftSphericalTruncated;
+import etomica.potential.PotentialMaster;
+import etomica.potential.PotentialMasterTestParticle;
+import etomica.simulation.Simulation;
+import etomica.space.ISpace;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.RandomMersenneTwister;
+
+/**
+ * Checks that test-particle energies from PotentialMasterCell and
+ * PotentialMasterList match a direct sum over the box, and that
+ * MeterWidomInsertionTestParticle matches MeterWidomInsertion with and
+ * without a pool, leaving the box alone.
+ */
+public class MeterWidomInsertionTestParticleTest extends TestCase {
+
+    protected void setUp(PotentialMaster pm) {
+        potentialMaster = pm;
+        species = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species);
+        box = new Box(space);
+        sim.addBox(box);
+        box.setNMolecules(species, 500);
+        BoxInflate inflater = new BoxInflate(box, space);
+        inflater.setTargetDensity(0.6);
+        inflater.actionPerformed();
+        new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+        IAtomList leafList = box.getLeafList();
+        for (int i=0; i<leafList.getAtomCount(); i++) {
+            IVectorMutable r = leafList.getAtom(i).getPosition();
+            for (int j=0; j<3; j++) {
+                r.setX(j, r.getX(j) + 0.2*(sim.getRandom().nextDouble()-0.5));
+            }
+        }
+        IAtomType type = species.getLeafType();
+        if (filterPairs) {
+            // like P2Cohesion, filter pairs in energy without changing u
+            p2 = new P2SoftSphericalTruncated(space, new P2LennardJones(space), 2.5) {
+                public double energy(IAtomList atoms) {
+                    if (atoms.getAtom(0).getLeafIndex() % 2 == 1 || atoms.getAtom(1).getLeafIndex() % 2 == 1) {
+                        return 0;
+                    }
+                    return super.energy(atoms);
+                }
+            };
+        }
+        else {
+            p2 = new P2SoftSphericalTruncated(space, new P2LennardJones(space), 2.5);
+        }
+        pm.addPotential(p2, new IAtomType[]{type, type});
+        integrator = new IntegratorMC(pm, sim.getRandom(), 1.5);
+        integrator.setBox(box);
+    }
+
+    protected void setUpList() {
+        space = Space3D.getInstance();
+        sim = new Simulation(space);
+        sim.setRandom(new RandomMersenneTwister(7));
+        PotentialMasterList pm = new PotentialMasterList(sim, 3.0, space);
+        setUp(pm);
+        integrator.getEventManager().addListener(pm.getNeighborManager(box));
+        integrator.reset();
+    }
+
+    protected void setUpCell() {
+        space = Space3D.getInstance();
+        sim = new Simulation(space);
+        sim.setRandom(new RandomMersenneTwister(7));
+        PotentialMasterCell pm = new PotentialMasterCell(sim, 2.5, space);
+        pm.setCellRange(2);
+        setUp(pm);
+        NeighborCellManager cellManager = pm.getNbrCellManager(box);
+        integrator.getMoveEventManager().addListener(cellManager.makeMCMoveListener());
+        cellManager.assignCellAll();
+        integrator.reset();
+    }
+
+    protected void checkTestEnergy() {
+        PotentialMasterTestParticle testParticle = (PotentialMasterTestParticle)potentialMaster;
+        IMolecule testMolecule = species.makeMolecule();
+        IVectorMutable r = testMolecule.getChildList().getAtom(0).getPosition();
+        RandomPositionSourceRectangular positionSource = new RandomPositionSourceRectangular(space, sim.getRandom());
+        positionSource.setBox(box);
+        IBoundary boundary = box.getBoundary();
+        IVectorMutable dr = space.makeVector();
+        IAtomList leafList = box.getLeafList();
+        for (int k=0; k<200; k++) {
+            r.E(positionSource.randomPosition());
+            double u = 0;
+            for (int i=0; i<leafList.getAtomCount(); i++) {
+                // the test atom's leaf index is 0
+                if (filterPairs && i % 2 == 1) continue;
+                dr.Ev1Mv2(leafList.getAtom(i).getPosition(), r);
+                boundary.nearestImage(dr);
+                u += p2.u(dr.squared());
+            }
+            assertEquals(u, testParticle.computeTestEnergy(box, testMolecule), 1e-9*(1+Math.abs(u)));
+        }
+        assertEquals(500, box.getNMolecules(species));
+    }
+
+    protected void checkMeter() {
+        MeterWidomInsertion meterOld = new MeterWidomInsertion(space, new RandomMersenneTwister(11));
+        meterOld.setSpecies(species);
+        meterOld.setIntegrator(integrator);
+        MeterPotentialEnergy meterPE = new MeterPotentialEnergy(potentialMaster);
+        meterPE.setIncludeLrc(false);
+        meterOld.setEnergyMeter(meterPE);
+        meterOld.setBox(box);
+        meterOld.setNInsert(1000);
+        double xOld = meterOld.getDataAsScalar();
+
+        MeterWidomInsertionTestParticle meter = new MeterWidomInsertionTestParticle(space, new RandomMersenneTwister(11));
+        meter.setSpecies(species);
+        meter.setIntegrator(integrator);
+        meter.setIncludeLrc(false);
+        meter.setNInsert(1000);
+        double x = meter.getDataAsScalar();
+        assertEquals(xOld, x, 1e-10*xOld);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        meter = new MeterWidomInsertionTestParticle(space, new RandomMersenneTwister(11));
+        meter.setSpecies(species);
+        meter.setIntegrator(integrator);
+        meter.setIncludeLrc(false);
+        meter.setNInsert(1000);
+        meter.setPool(pool);
+        double xPool = meter.getDataAsScalar();
+        pool.shutdown();
+        assertEquals(x, xPool, 1e-12*x);
+    }
+
+    public void testCell() {
+        setUpCell();
+        checkTestEnergy();
+        checkMeter();
+    }
+
+    public void testList() {
+        setUpList();
+        checkTestEnergy();
+        MeterWidomInsertionTestParticle meter = new MeterWidomInsertionTestParticle(space, new RandomMersenneTwister(11));
+        meter.setSpecies(species);
+        meter.setIntegrator(integrator);
+        meter.setIncludeLrc(false);
+        meter.setNInsert(1000);
+        double x = meter.getDataAsScalar();
+        assertTrue(x > 0);
+        assertEquals(500, box.getNMolecules(species));
+    }
+
+    /**
+     * Checks that a potential that overrides energy is used through energy
+     * and not u.
+     */
+    public void testOverriddenEnergy() {
+        filterPairs = true;
+        setUpCell();
+        checkTestEnergy();
+    }
+
+    protected boolean filterPairs;
+    protected ISpace space;
+    protected Simulation sim;
+    protected IBox box;
+    protected SpeciesSpheresMono species;
+    protected P2SoftSphericalTruncated p2;
+    protected PotentialMaster potentialMaster;
+    protected IntegratorMC integrator;
+}
@@ -0,0 +1,136 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.junit.graphics;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import junit.framework.TestCase;
+import etomica.action.BoxInflate;
+import etomica.api.IBox;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.graphics.BoxSnapshot;
+import etomica.graphics.BoxSnapshotBuffer;
+import etomica.graphics.BoxSnapshotImageWriter;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.simulation.Simulation;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+
+/**
+ * Checks that BoxSnapshotBuffer never hands a reader a snapshot that the
+ * writer is changing, and that BoxSnapshotImageWriter draws and writes
+ * frames without a display.
+ */
+public class BoxSnapshotBufferTest extends TestCase {
+
+    public void testSlots() {
+        BoxSnapshotBuffer buffer = new BoxSnapshotBuffer(3, 3);
+        assertNull(buffer.acquireLatest());
+
+        BoxSnapshot s0 = buffer.beginWrite();
+        s0.setStep(0);
+        buffer.publish();
+        BoxSnapshot read = buffer.acquireLatest();
+        assertSame(s0, read);
+
+        // the writer must skip the snapshot being read
+        BoxSnapshot s1 = buffer.beginWrite();
+        assertNotSame(s0, s1);
+        s1.setStep(1);
+        buffer.publish();
+        BoxSnapshot s2 = buffer.beginWrite();
+        assertNotSame(s0, s2);
+        assertNotSame(s1, s2);
+        s2.setStep(2);
+        buffer.publish();
+        // s0 is held and s2 is the latest, so only s1 is free
+        assertSame(s1, buffer.beginWrite());
+        buffer.publish();
+        assertEquals(0, read.getStep());
+        buffer.release(read);
+
+        // two readers with the only other slot being the latest
+        BoxSnapshotBuffer buffer2 = new BoxSnapshotBuffer(3, 2);
+        buffer2.beginWrite();
+        buffer2.publish();
+        BoxSnapshot r1 = buffer2.acquireLatest();
+        BoxSnapshot w = buffer2.beginWrite();
+        assertNotNull(w);
+        buffer2.publish();
+        BoxSnapshot r2 = buffer2.acquireLatest();
+        assertNotSame(r1, r2);
+        assertNull(buffer2.beginWrite());
+        buffer2.release(r1);
+        assertSame(r1, buffer2.beginWrite());
+    }
+
+    public void testConcurrent() throws InterruptedException {
+        final BoxSnapshotBuffer buffer = new BoxSnapshotBuffer(3, 3);
+        final int nFrames = 200000;
+        Thread writer = new Thread() {
+            public void run() {
+                for (int i=1; i<=nFrames; i++) {
+                    BoxSnapshot s = buffer.beginWrite();
+                    if (s == null) continue;
+                    // write the step, then check that nobody got it while writing
+                    s.setStep(-i);
+                    Thread.yield();
+                    s.setStep(i);
+                    buffer.publish();
+                }
+            }
+        };
+        writer.start();
+        long last = 0;
+        while (writer.isAlive()) {
+            BoxSnapshot s = buffer.acquireLatest();
+            if (s == null) continue;
+            long step = s.getStep();
+            assertTrue(step > 0);
+            assertTrue(step >= last);
+            last = step;
+            // hold it a bit; it must not change
+            Thread.yield();
+            assertEquals(step, s.getStep());
+            buffer.release(s);
+        }
+        writer.join();
+    }
+
+    public void testImageWriter() throws Exception {
+        Space3D space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species);
+        IBox box = new Box(space);
+        sim.addBox(box);
+        box.setNMolecules(species, 32);
+        BoxInflate inflater = new BoxInflate(box, space);
+        inflater.setTargetDensity(0.5);
+        inflater.actionPerformed();
+        new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+
+        File dir = File.createTempFile("frames", "");
+        dir.delete();
+        dir.mkdir();
+        BoxSnapshotImageWriter writer = new BoxSnapshotImageWriter(sim, box);
+        writer.setImageSize(120, 100);
+        writer.setFilePrefix(new File(dir, "f").getPath());
+        BufferedImage image = writer.draw(new BoxSnapshot(3));
+        assertEquals(120, image.getWidth());
+        writer.actionPerformed();
+        writer.actionPerformed();
+        assertEquals(2, writer.getFrameCount());
+        File f0 = new File(dir, "f00000.png");
+        File f1 = new File(dir, "f00001.png");
+        assertTrue(f0.length() > 0);
+        assertTrue(f1.length() > 0);
+        f0.delete();
+        f1.delete();
+        dir.delete();
+    }
+}
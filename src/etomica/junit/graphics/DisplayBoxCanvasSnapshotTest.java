@@ -0,0 +1,185 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.junit.graphics;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+import etomica.api.IAtomList;
+import etomica.api.IBox;
+import etomica.api.IVectorMutable;
+import etomica.box.Box;
+import etomica.graphics.BoxSnapshotPublisher;
+import etomica.graphics.ColorSchemeByType;
+import etomica.graphics.DisplayBox;
+import etomica.graphics.DisplayBoxCanvas2D;
+import etomica.graphics.DisplayBoxCanvasG3DSys;
+import etomica.graphics.DisplayCanvas;
+import etomica.simulation.Simulation;
+import etomica.space.ISpace;
+import etomica.space2d.Space2D;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import g3dsys.images.Ball;
+import g3dsys.images.Figure;
+
+/**
+ * Checks that DisplayBoxCanvas2D and DisplayBoxCanvasG3DSys draw the
+ * published snapshot rather than the live box once the DisplayBox has a
+ * BoxSnapshotBuffer.  Neither test needs a display.
+ */
+public class DisplayBoxCanvasSnapshotTest extends TestCase {
+
+    protected void setUp(ISpace space) {
+        sim = new Simulation(space);
+        species = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species);
+        box = new Box(space);
+        sim.addBox(box);
+        IVectorMutable boxSize = space.makeVector();
+        boxSize.E(10);
+        box.getBoundary().setBoxSize(boxSize);
+        box.setNMolecules(species, 4);
+        IAtomList leafList = box.getLeafList();
+        for (int i=0; i<leafList.getAtomCount(); i++) {
+            IVectorMutable r = leafList.getAtom(i).getPosition();
+            r.E(0);
+            r.setX(0, -3 + 2*i);
+            r.setX(1, 1 - i);
+        }
+        displayBox = new DisplayBox(sim, box, space, sim.getController());
+    }
+
+    /**
+     * Moves each atom by the same amount.
+     */
+    protected void moveAtoms(double dx) {
+        IAtomList leafList = box.getLeafList();
+        for (int i=0; i<leafList.getAtomCount(); i++) {
+            IVectorMutable r = leafList.getAtom(i).getPosition();
+            r.setX(1, r.getX(1) + dx);
+        }
+    }
+
+    protected BufferedImage paint(DisplayBoxCanvas2D canvas) {
+        BufferedImage image = new BufferedImage(canvas.getWidth(), canvas.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics g = image.createGraphics();
+        canvas.doPaint(g);
+        g.dispose();
+        return image;
+    }
+
+    protected boolean sameImage(BufferedImage image1, BufferedImage image2) {
+        for (int i=0; i<image1.getWidth(); i++) {
+            for (int j=0; j<image1.getHeight(); j++) {
+                if (image1.getRGB(i, j) != image2.getRGB(i, j)) return false;
+            }
+        }
+        return true;
+    }
+
+    public void testCanvas2D() {
+        setUp(Space2D.getInstance());
+        DisplayCanvas canvas = displayBox.canvas;
+        assertTrue(canvas instanceof DisplayBoxCanvas2D);
+        DisplayBoxCanvas2D canvas2D = (DisplayBoxCanvas2D)canvas;
+        assertTrue(canvas2D.getWidth() > 0 && canvas2D.getHeight() > 0);
+        BufferedImage liveImage = paint(canvas2D);
+
+        BoxSnapshotPublisher publisher = new BoxSnapshotPublisher(displayBox);
+        // nothing has been published, so nothing is drawn
+        BufferedImage blankImage = paint(canvas2D);
+        assertFalse(sameImage(liveImage, blankImage));
+
+        publisher.actionPerformed();
+        moveAtoms(2);
+        ((ColorSchemeByType)displayBox.getColorScheme()).setColor(species.getLeafType(), Color.green);
+        // the canvas should draw the atoms where they were, with their old color
+        BufferedImage snapshotImage = paint(canvas2D);
+        assertTrue(sameImage(liveImage, snapshotImage));
+
+        // the live box looks different now
+        displayBox.setSnapshotBuffer(null);
+        assertFalse(sameImage(snapshotImage, paint(canvas2D)));
+    }
+
+    /**
+     * Returns the balls of the canvas, in the order of the box's leaf atoms.
+     */
+    protected Ball[] getBalls(DisplayBoxCanvasG3DSys canvas) {
+        ArrayList<Ball> balls = new ArrayList<Ball>();
+        for (Figure figure : canvas.getG3DSys().getFigs()) {
+            if (figure instanceof Ball) {
+                balls.add((Ball)figure);
+            }
+        }
+        return balls.toArray(new Ball[0]);
+    }
+
+    protected void checkBalls(Ball[] balls, double dx, Color color) {
+        IAtomList leafList = box.getLeafList();
+        assertEquals(leafList.getAtomCount(), balls.length);
+        for (int i=0; i<balls.length; i++) {
+            IVectorMutable r = leafList.getAtom(i).getPosition();
+            assertEquals(r.getX(0), balls[i].getX(), 1e-6);
+            assertEquals(r.getX(1) + dx, balls[i].getY(), 1e-6);
+            assertEquals(r.getX(2), balls[i].getZ(), 1e-6);
+            assertEquals(g3dsys.control.G3DSys.getColix(color), balls[i].getColor());
+        }
+    }
+
+    public void testCanvasG3DSys() {
+        setUp(Space3D.getInstance());
+        DisplayCanvas canvas = displayBox.canvas;
+        assertTrue(canvas instanceof DisplayBoxCanvasG3DSys);
+        DisplayBoxCanvasG3DSys canvasG3DSys = (DisplayBoxCanvasG3DSys)canvas;
+        BufferedImage image = new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB);
+        Graphics g = image.createGraphics();
+        ColorSchemeByType colorScheme = (ColorSchemeByType)displayBox.getColorScheme();
+        Color oldColor = colorScheme.getAtomColor(box.getLeafList().getAtom(0));
+
+        BoxSnapshotPublisher publisher = new BoxSnapshotPublisher(displayBox);
+        publisher.actionPerformed();
+        moveAtoms(2);
+        colorScheme.setColor(species.getLeafType(), Color.green);
+        canvasG3DSys.doPaint(g);
+        // the balls should be where the atoms were, with their old color
+        Ball[] balls = getBalls(canvasG3DSys);
+        checkBalls(balls, -2, oldColor);
+
+        // the next snapshot has the new positions and color
+        publisher.actionPerformed();
+        canvasG3DSys.doPaint(g);
+        checkBalls(balls, 0, Color.green);
+
+        // remove an atom after publishing; the canvas draws the others from
+        // the balls recorded in the snapshot
+        publisher.actionPerformed();
+        box.removeMolecule(box.getMoleculeList().getMolecule(0));
+        moveAtoms(2);
+        canvasG3DSys.doPaint(g);
+        balls = getBalls(canvasG3DSys);
+        IAtomList leafList = box.getLeafList();
+        assertEquals(leafList.getAtomCount(), balls.length);
+        for (int i=0; i<balls.length; i++) {
+            boolean found = false;
+            for (int j=0; j<leafList.getAtomCount(); j++) {
+                IVectorMutable r = leafList.getAtom(j).getPosition();
+                found = found || (Math.abs(r.getX(0) - balls[i].getX()) < 1e-6
+                        && Math.abs(r.getX(1) - 2 - balls[i].getY()) < 1e-6);
+            }
+            assertTrue(found);
+        }
+        g.dispose();
+    }
+
+    protected Simulation sim;
+    protected SpeciesSpheresMono species;
+    protected IBox box;
+    protected DisplayBox displayBox;
+}
@@ -0,0 +1,181 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.junit.integrator;
+
+import junit.framework.TestCase;
+import etomica.action.BoxInflate;
+import etomica.api.IAtom;
+import etomica.api.IAtomKinetic;
+import etomica.api.IAtomList;
+import etomica.api.IAtomType;
+import etomica.api.IBox;
+import etomica.api.IVectorMutable;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.data.meter.MeterPressureHard;
+import etomica.integrator.IntegratorHard;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.nbr.cell.NeighborCellManager;
+import etomica.nbr.cell.P1CellCrossing;
+import etomica.nbr.cell.PotentialMasterCell;
+import etomica.nbr.list.PotentialMasterList;
+import etomica.potential.P2HardSphere;
+import etomica.potential.P2SquareWell;
+import etomica.potential.PotentialMaster;
+import etomica.simulation.Simulation;
+import etomica.space.ISpace;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.EventCalendarQueue;
+import etomica.util.EventHeap;
+import etomica.util.EventQueue;
+import etomica.util.TreeList;
+import etomica.util.RandomMersenneTwister;
+
+/**
+ * Checks that IntegratorHard follows the same trajectory with each
+ * EventQueue, and with cell-crossing events (PotentialMasterCell and
+ * P1CellCrossing) instead of neighbor lists.  In particular, the default
+ * queue (EventHeap) must give the same hard-sphere trajectories and
+ * pressure as TreeList, which was the default before.
+ */
+public class IntegratorHardEventQueueTest extends TestCase {
+
+    protected IntegratorHard makeIntegrator(EventQueue eventQueue, boolean cellCrossing) {
+        return makeIntegrator(eventQueue, cellCrossing, false);
+    }
+
+    protected IntegratorHard makeIntegrator(EventQueue eventQueue, boolean cellCrossing, boolean hardSphere) {
+        space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        sim.setRandom(new RandomMersenneTwister(3));
+        PotentialMaster potentialMaster;
+        if (cellCrossing) {
+            potentialMaster = new PotentialMasterCell(sim, 1.5, space);
+            ((PotentialMasterCell)potentialMaster).setCellRange(2);
+        }
+        else {
+            potentialMaster = new PotentialMasterList(sim, 2.5, space);
+        }
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        species.setIsDynamic(true);
+        sim.addSpecies(species);
+        IBox box = new Box(space);
+        sim.addBox(box);
+        box.setNMolecules(species, 500);
+        BoxInflate inflater = new BoxInflate(box, space);
+        inflater.setTargetDensity(0.5);
+        inflater.actionPerformed();
+        new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+        IAtomType leafType = species.getLeafType();
+        if (hardSphere) {
+            potentialMaster.addPotential(new P2HardSphere(space, 1.0, false), new IAtomType[]{leafType, leafType});
+        }
+        else {
+            potentialMaster.addPotential(new P2SquareWell(space, 1.0, 1.5, 1.0, false), new IAtomType[]{leafType, leafType});
+        }
+
+        IntegratorHard integrator = new IntegratorHard(sim, potentialMaster, space);
+        integrator.setTimeStep(0.01);
+        integrator.setTemperature(1.5);
+        integrator.setBox(box);
+        if (eventQueue != null) {
+            integrator.setEventQueue(eventQueue);
+        }
+        if (cellCrossing) {
+            integrator.setNullPotential(new P1CellCrossing(space, (PotentialMasterCell)potentialMaster), leafType);
+            integrator.setFullNeighborSearch(true);
+            ((PotentialMasterCell)potentialMaster).getNbrCellManager(box).assignCellAll();
+        }
+        else {
+            integrator.getEventManager().addListener(((PotentialMasterList)potentialMaster).getNeighborManager(box));
+        }
+        integrator.reset();
+        return integrator;
+    }
+
+    protected void checkSame(IntegratorHard integrator1, IntegratorHard integrator2) {
+        IAtomList leafList1 = integrator1.getBox().getLeafList();
+        IAtomList leafList2 = integrator2.getBox().getLeafList();
+        IVectorMutable dr = space.makeVector();
+        for (int i=0; i<leafList1.getAtomCount(); i++) {
+            IAtomKinetic a1 = (IAtomKinetic)leafList1.getAtom(i);
+            IAtomKinetic a2 = (IAtomKinetic)leafList2.getAtom(i);
+            dr.Ev1Mv2(a1.getPosition(), a2.getPosition());
+            integrator1.getBox().getBoundary().nearestImage(dr);
+            assertEquals(0, Math.sqrt(dr.squared()), 1e-8);
+            for (int j=0; j<3; j++) {
+                assertEquals(a1.getVelocity().getX(j), a2.getVelocity().getX(j), 1e-8);
+            }
+        }
+        assertEquals(integrator1.getPotentialEnergy(), integrator2.getPotentialEnergy(), 1e-8);
+    }
+
+    protected void run(IntegratorHard integrator1, IntegratorHard integrator2, int steps) {
+        for (int i=0; i<steps; i++) {
+            integrator1.doStep();
+            integrator2.doStep();
+        }
+    }
+
+    public void testEventQueues() {
+        IntegratorHard integrator = makeIntegrator(null, false);
+        IntegratorHard integratorTree = makeIntegrator(new TreeList(), false);
+        IntegratorHard integratorCalendar = makeIntegrator(new EventCalendarQueue(), false);
+        for (int i=0; i<100; i++) {
+            integrator.doStep();
+            integratorTree.doStep();
+            integratorCalendar.doStep();
+        }
+        assertTrue(integrator.getCollisionCount() > 0);
+        checkSame(integrator, integratorTree);
+        checkSame(integrator, integratorCalendar);
+        assertEquals(integrator.getCollisionCount(), integratorTree.getCollisionCount());
+        assertEquals(integrator.getCollisionCount(), integratorCalendar.getCollisionCount());
+    }
+
+    /**
+     * Checks that hard spheres follow the same trajectory, with the same
+     * collisions and pressure, using the default queue and TreeList.
+     */
+    public void testHardSphereDefault() {
+        IntegratorHard integrator = makeIntegrator(null, false, true);
+        assertTrue(integrator.getEventQueue() instanceof EventHeap);
+        IntegratorHard integratorTree = makeIntegrator(new TreeList(), false, true);
+        MeterPressureHard meterPressure = new MeterPressureHard(space);
+        meterPressure.setIntegrator(integrator);
+        MeterPressureHard meterPressureTree = new MeterPressureHard(space);
+        meterPressureTree.setIntegrator(integratorTree);
+        run(integrator, integratorTree, 200);
+        assertTrue(integrator.getCollisionCount() > 0);
+        assertEquals(integrator.getCollisionCount(), integratorTree.getCollisionCount());
+        checkSame(integrator, integratorTree);
+        double p = meterPressure.getDataAsScalar();
+        assertEquals(p, meterPressureTree.getDataAsScalar(), 1e-10*Math.abs(p));
+    }
+
+    public void testCellCrossing() {
+        IntegratorHard integrator = makeIntegrator(null, false);
+        IntegratorHard integratorCell = makeIntegrator(new EventCalendarQueue(), true);
+        integratorCell.setLazyTime(true);
+        integratorCell.setEventInterval(5);
+        run(integrator, integratorCell, 100);
+        integratorCell.synchronizeAtoms();
+        // cell crossings are counted as collisions too
+        assertTrue(integratorCell.getCollisionCount() > integrator.getCollisionCount());
+        checkSame(integrator, integratorCell);
+
+        // each atom should still be in the box and in the right cell
+        IBox box = integratorCell.getBox();
+        NeighborCellManager cellManager = ((PotentialMasterCell)integratorCell.getPotentialMaster()).getNbrCellManager(box);
+        IAtomList leafList = box.getLeafList();
+        for (int i=0; i<leafList.getAtomCount(); i++) {
+            IAtom atom = leafList.getAtom(i);
+            assertSame(cellManager.getLattice().site(atom.getPosition()), cellManager.getCell(atom));
+        }
+    }
+
+    protected ISpace space;
+}
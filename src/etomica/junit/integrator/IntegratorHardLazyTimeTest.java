@@ -0,0 +1,120 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.junit.integrator;
+
+import junit.framework.TestCase;
+import etomica.action.BoxInflate;
+import etomica.api.IAtomKinetic;
+import etomica.api.IAtomList;
+import etomica.api.IAtomType;
+import etomica.api.IBox;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.data.meter.MeterKineticEnergy;
+import etomica.integrator.IntegratorHard;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.nbr.list.PotentialMasterList;
+import etomica.potential.P2SquareWell;
+import etomica.simulation.Simulation;
+import etomica.space.ISpace;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.RandomMersenneTwister;
+
+/**
+ * Checks that IntegratorHard with lazy time follows the same trajectory as
+ * it does when all atoms are advanced every step.
+ */
+public class IntegratorHardLazyTimeTest extends TestCase {
+
+    protected IntegratorHard makeIntegrator(boolean lazyTime) {
+        ISpace space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        sim.setRandom(new RandomMersenneTwister(3));
+        // neighbors are only checked at events (every 4 steps), so the range
+        // leaves room for the atoms to move that far within the safe limit
+        PotentialMasterList potentialMaster = new PotentialMasterList(sim, 3.0, space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        species.setIsDynamic(true);
+        sim.addSpecies(species);
+        IBox box = new Box(space);
+        sim.addBox(box);
+        box.setNMolecules(species, 500);
+        BoxInflate inflater = new BoxInflate(box, space);
+        inflater.setTargetDensity(0.5);
+        inflater.actionPerformed();
+        new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+        IAtomType leafType = species.getLeafType();
+        potentialMaster.addPotential(new P2SquareWell(space, 1.0, 1.5, 1.0, false), new IAtomType[]{leafType, leafType});
+
+        IntegratorHard integrator = new IntegratorHard(sim, potentialMaster, space);
+        integrator.setTimeStep(0.01);
+        integrator.setTemperature(1.5);
+        integrator.setBox(box);
+        integrator.setEventInterval(4);
+        integrator.setLazyTime(lazyTime);
+        integrator.getEventManager().addListener(potentialMaster.getNeighborManager(box));
+        integrator.reset();
+        return integrator;
+    }
+
+    protected void checkSame(IntegratorHard integrator1, IntegratorHard integrator2) {
+        IAtomList leafList1 = integrator1.getBox().getLeafList();
+        IAtomList leafList2 = integrator2.getBox().getLeafList();
+        for (int i=0; i<leafList1.getAtomCount(); i++) {
+            IAtomKinetic a1 = (IAtomKinetic)leafList1.getAtom(i);
+            IAtomKinetic a2 = (IAtomKinetic)leafList2.getAtom(i);
+            for (int j=0; j<3; j++) {
+                assertEquals(a1.getPosition().getX(j), a2.getPosition().getX(j), 1e-8);
+                assertEquals(a1.getVelocity().getX(j), a2.getVelocity().getX(j), 1e-8);
+            }
+        }
+        assertEquals(integrator1.getCollisionCount(), integrator2.getCollisionCount());
+        assertEquals(integrator1.getPotentialEnergy(), integrator2.getPotentialEnergy(), 1e-8);
+    }
+
+    public void testLazyTime() {
+        IntegratorHard integrator = makeIntegrator(false);
+        IntegratorHard lazyIntegrator = makeIntegrator(true);
+        assertTrue(lazyIntegrator.isLazyTime());
+        // the last step fires events, so the lazy integrator's atoms are
+        // synchronized
+        for (int i=0; i<100; i++) {
+            integrator.doStep();
+            lazyIntegrator.doStep();
+        }
+        assertTrue(integrator.getCollisionCount() > 0);
+        checkSame(integrator, lazyIntegrator);
+
+        // stop part way between events and synchronize explicitly
+        for (int i=0; i<3; i++) {
+            integrator.doStep();
+            lazyIntegrator.doStep();
+        }
+        lazyIntegrator.synchronizeAtoms();
+        checkSame(integrator, lazyIntegrator);
+
+        // energy is conserved (the potential energy is tracked by the
+        // integrator)
+        MeterKineticEnergy meterKE = new MeterKineticEnergy();
+        meterKE.setBox(lazyIntegrator.getBox());
+        double e0 = meterKE.getDataAsScalar() + lazyIntegrator.getPotentialEnergy();
+        for (int i=0; i<20; i++) {
+            integrator.doStep();
+            lazyIntegrator.doStep();
+        }
+        lazyIntegrator.synchronizeAtoms();
+        double e1 = meterKE.getDataAsScalar() + lazyIntegrator.getPotentialEnergy();
+        assertEquals(e0, e1, 1e-8*Math.abs(e0));
+
+        lazyIntegrator.setLazyTime(false);
+        assertFalse(lazyIntegrator.isLazyTime());
+        for (int i=0; i<20; i++) {
+            integrator.doStep();
+            lazyIntegrator.doStep();
+        }
+        checkSame(integrator, lazyIntegrator);
+    }
+}
@@ -0,0 +1,161 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.junit.integrator;
+
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+import etomica.action.BoxInflate;
+import etomica.api.IAtomList;
+import etomica.api.IAtomType;
+import etomica.api.IBox;
+import etomica.api.IIntegrator;
+import etomica.api.IRandom;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.integrator.IntegratorMC;
+import etomica.integrator.IntegratorManagerMC;
+import etomica.integrator.IntegratorPT;
+import etomica.integrator.mcmove.MCMoveAtom;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.potential.P2LennardJones;
+import etomica.potential.P2SoftSphericalTruncated;
+import etomica.potential.PotentialMaster;
+import etomica.simulation.Simulation;
+import etomica.space.ISpace;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.RandomMersenneTwister;
+
+/**
+ * Checks that parallel tempering gives the same configurations whether the
+ * replicas step one after another or concurrently on a ForkJoinPool, that
+ * concurrent runs are reproducible from the seeds, and that replicas that
+ * aren't independent are rejected.
+ */
+public class IntegratorManagerMCParallelTest extends TestCase {
+
+    public void setUp() {
+        pool = new ForkJoinPool(nReplicas);
+    }
+
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    protected IntegratorPT makeIntegrator(boolean shareMaster, boolean shareRandom) {
+        ISpace space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species);
+        IAtomType leafType = species.getLeafType();
+        int[] seeds = new int[]{7};
+        IntegratorPT integratorPT = new IntegratorPT(new RandomMersenneTwister(seeds), space);
+        integratorPT.setGlobalMoveInterval(5);
+        PotentialMaster potentialMaster = null;
+        IRandom random = null;
+        for (int i=0; i<nReplicas; i++) {
+            IBox box = new Box(space);
+            sim.addBox(box);
+            box.setNMolecules(species, 108);
+            BoxInflate inflater = new BoxInflate(box, space);
+            inflater.setTargetDensity(0.6);
+            inflater.actionPerformed();
+            new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+
+            if (potentialMaster == null || !shareMaster) {
+                potentialMaster = new PotentialMaster();
+                potentialMaster.addPotential(new P2SoftSphericalTruncated(space, new P2LennardJones(space), 2.5), new IAtomType[]{leafType, leafType});
+            }
+            if (random == null || !shareRandom) {
+                random = IntegratorManagerMC.makeReplicaRandom(seeds, i);
+            }
+            IntegratorMC integrator = new IntegratorMC(potentialMaster, random, 1.0 + 0.5*i);
+            MCMoveAtom moveAtom = new MCMoveAtom(random, potentialMaster, space);
+            moveAtom.setStepSize(0.2);
+            integrator.getMoveManager().addMCMove(moveAtom);
+            integrator.setBox(box);
+            integratorPT.addIntegrator(integrator);
+        }
+        integratorPT.reset();
+        return integratorPT;
+    }
+
+    /**
+     * Checks that each replica of the two integrators has the same energy
+     * and configuration.
+     */
+    protected void checkSame(IntegratorPT integratorPT1, IntegratorPT integratorPT2) {
+        IIntegrator[] integrators1 = integratorPT1.getIntegrators();
+        IIntegrator[] integrators2 = integratorPT2.getIntegrators();
+        for (int i=0; i<nReplicas; i++) {
+            IntegratorMC integrator1 = (IntegratorMC)integrators1[i];
+            IntegratorMC integrator2 = (IntegratorMC)integrators2[i];
+            assertEquals(integrator1.getPotentialEnergy(), integrator2.getPotentialEnergy(), 1e-10);
+            IAtomList leafList1 = integrator1.getBox().getLeafList();
+            IAtomList leafList2 = integrator2.getBox().getLeafList();
+            for (int j=0; j<leafList1.getAtomCount(); j++) {
+                assertTrue(leafList1.getAtom(j).getPosition().equals(leafList2.getAtom(j).getPosition()));
+            }
+        }
+    }
+
+    public void testParallel() {
+        IntegratorPT serial = makeIntegrator(false, false);
+        IntegratorPT parallel = makeIntegrator(false, false);
+        parallel.setPool(pool);
+        for (int i=0; i<2000; i++) {
+            serial.doStep();
+            parallel.doStep();
+        }
+        checkSame(serial, parallel);
+        // some swaps should have been accepted
+        double swapAcceptance = serial.getMoveManager().getMCMoves().get(0).getTracker().acceptanceRatio();
+        assertTrue(swapAcceptance > 0);
+    }
+
+    /**
+     * Checks that two concurrent runs with the same seeds give the same
+     * results.
+     */
+    public void testReproducible() {
+        IntegratorPT parallel1 = makeIntegrator(false, false);
+        parallel1.setPool(pool);
+        for (int i=0; i<2000; i++) {
+            parallel1.doStep();
+        }
+        IntegratorPT parallel2 = makeIntegrator(false, false);
+        parallel2.setPool(pool);
+        for (int i=0; i<2000; i++) {
+            parallel2.doStep();
+        }
+        checkSame(parallel1, parallel2);
+    }
+
+    public void testSharedPotentialMaster() {
+        IntegratorPT integratorPT = makeIntegrator(true, false);
+        try {
+            integratorPT.setPool(pool);
+            fail("replicas sharing a PotentialMaster should not be allowed to step concurrently");
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void testSharedRandom() {
+        IntegratorPT integratorPT = makeIntegrator(false, true);
+        try {
+            integratorPT.setPool(pool);
+            fail("replicas sharing an IRandom should not be allowed to step concurrently");
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    protected ForkJoinPool pool;
+    protected static final int nReplicas = 4;
+}
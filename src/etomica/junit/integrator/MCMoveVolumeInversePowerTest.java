@@ -0,0 +1,208 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.junit.integrator;
+
+import junit.framework.TestCase;
+import etomica.action.BoxInflate;
+import etomica.api.IAtomList;
+import etomica.api.IAtomType;
+import etomica.api.IBox;
+import etomica.api.IVectorMutable;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.data.meter.MeterPotentialEnergy;
+import etomica.integrator.IntegratorMC;
+import etomica.integrator.mcmove.MCMoveAtom;
+import etomica.integrator.mcmove.MCMoveTrialCompletedEvent;
+import etomica.integrator.mcmove.MCMoveVolumeInversePower;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.nbr.cell.NeighborCellManager;
+import etomica.nbr.cell.PotentialMasterCell;
+import etomica.potential.P2LennardJones;
+import etomica.potential.P2SoftSphericalTruncated;
+import etomica.simulation.Simulation;
+import etomica.space.ISpace;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.IEvent;
+import etomica.util.IListener;
+import etomica.util.RandomMersenneTwister;
+
+/**
+ * Checks that MCMoveVolumeInversePower computes trial energies matching
+ * those of the inflated box, and keeps the integrator's energy consistent
+ * with the configuration in an NPT simulation of Lennard-Jones atoms.
+ */
+public class MCMoveVolumeInversePowerTest extends TestCase {
+
+    public void setUp() {
+        space = Space3D.getInstance();
+        sim = new Simulation(space);
+        sim.setRandom(new RandomMersenneTwister(3));
+        double rc = 2.5;
+        potentialMaster = new PotentialMasterCell(sim, rc, space);
+        potentialMaster.setCellRange(2);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species);
+        box = new Box(space);
+        sim.addBox(box);
+        box.setNMolecules(species, 500);
+        BoxInflate inflater = new BoxInflate(box, space);
+        inflater.setTargetDensity(0.7);
+        inflater.actionPerformed();
+        new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+        IAtomList leafList = box.getLeafList();
+        for (int i=0; i<leafList.getAtomCount(); i++) {
+            IVectorMutable r = leafList.getAtom(i).getPosition();
+            for (int j=0; j<3; j++) {
+                r.setX(j, r.getX(j) + 0.2*(sim.getRandom().nextDouble()-0.5));
+            }
+        }
+        IAtomType type = species.getLeafType();
+        P2SoftSphericalTruncated p2 = new P2SoftSphericalTruncated(space, new P2LennardJones(space), rc);
+        potentialMaster.addPotential(p2, new IAtomType[]{type, type});
+
+        integrator = new IntegratorMC(potentialMaster, sim.getRandom(), 1.5);
+        integrator.setBox(box);
+        MCMoveAtom moveAtom = new MCMoveAtom(sim.getRandom(), potentialMaster, space);
+        integrator.getMoveManager().addMCMove(moveAtom);
+        moveVolume = makeMove();
+        moveVolume.setTemperature(1.5);
+        integrator.getMoveManager().addMCMove(moveVolume);
+        integrator.getMoveEventManager().addListener(moveVolume.makeMCMoveListener());
+        NeighborCellManager cellManager = potentialMaster.getNbrCellManager(box);
+        integrator.getMoveEventManager().addListener(cellManager.makeMCMoveListener());
+        cellManager.assignCellAll();
+        integrator.reset();
+        meterPE = new MeterPotentialEnergy(potentialMaster);
+        meterPE.setBox(box);
+    }
+
+    /**
+     * Returns a move that counts the number of times its sums are computed
+     * from scratch.
+     */
+    protected MCMoveVolumeInversePower makeMove() {
+        // u = 4 (r^-12 - r^-6)
+        return new MCMoveVolumeInversePower(sim, potentialMaster, sim.getRandom(), space, 1.0,
+                new double[]{4, -4}, new double[]{12, 6}, 2.5) {
+            protected void computeSums() {
+                nComputeSums++;
+                super.computeSums();
+            }
+        };
+    }
+
+    public void testTrialEnergy() {
+        double u0 = meterPE.getDataAsScalar();
+        BoxInflate inflater = new BoxInflate(box, space);
+        for (int i=0; i<40; i++) {
+            double vOld = box.getBoundary().volume();
+            assertTrue(moveVolume.doTrial());
+            double uNew = u0 + moveVolume.energyChange();
+            // the trial does not touch the box
+            assertEquals(vOld, box.getBoundary().volume(), 0);
+            assertEquals(u0, meterPE.getDataAsScalar(), 1e-9*Math.abs(u0));
+
+            moveVolume.acceptNotify();
+            double uActual = meterPE.getDataAsScalar();
+            assertEquals(uActual, uNew, 1e-9*Math.abs(uActual));
+
+            // go back to the original volume
+            inflater.setScale(Math.pow(vOld/box.getBoundary().volume(), 1.0/3.0));
+            inflater.actionPerformed();
+            moveVolume.reset();
+            assertEquals(u0, meterPE.getDataAsScalar(), 1e-9*Math.abs(u0));
+        }
+    }
+
+    public void testNPT() {
+        for (int i=0; i<20000; i++) {
+            integrator.doStep();
+        }
+        double u = meterPE.getDataAsScalar();
+        assertEquals(u, integrator.getPotentialEnergy(), 1e-8*Math.abs(u));
+        assertTrue(moveVolume.getTracker().acceptanceRatio() > 0);
+    }
+
+    /**
+     * Checks that accepted atom displacements update the sums without
+     * recomputing them, and that the trial energy is still right afterwards.
+     */
+    public void testAtomMovesDoNotRecompute() {
+        final int[] nAccepted = new int[2];
+        integrator.getMoveEventManager().addListener(new IListener() {
+            public void actionPerformed(IEvent evt) {
+                if (evt instanceof MCMoveTrialCompletedEvent && ((MCMoveTrialCompletedEvent)evt).isAccepted()) {
+                    nAccepted[((MCMoveTrialCompletedEvent)evt).getMCMove() == moveVolume ? 1 : 0]++;
+                }
+            }
+        });
+        nComputeSums = 0;
+        for (int i=0; i<5000; i++) {
+            integrator.doStep();
+        }
+        assertTrue(nAccepted[0] > 1000);
+        // once at the start, then once after each accepted volume change
+        assertTrue(nComputeSums <= nAccepted[1]+1);
+
+        double u0 = meterPE.getDataAsScalar();
+        int n = nComputeSums;
+        assertTrue(moveVolume.doTrial());
+        double uNew = u0 + moveVolume.energyChange();
+        moveVolume.acceptNotify();
+        assertTrue(nComputeSums <= n+1);
+        double uActual = meterPE.getDataAsScalar();
+        assertEquals(uActual, uNew, 1e-9*Math.abs(uActual));
+    }
+
+    /**
+     * Checks that a move without the listener finds atoms that moved and
+     * updates the sums for them without recomputing.
+     */
+    public void testUntracked() {
+        MCMoveVolumeInversePower untracked = makeMove();
+        untracked.setTemperature(1.5);
+        untracked.setBox(box);
+        nComputeSums = 0;
+        untracked.doTrial();
+        untracked.rejectNotify();
+        assertEquals(1, nComputeSums);
+
+        IAtomList leafList = box.getLeafList();
+        BoxInflate inflater = new BoxInflate(box, space);
+        for (int i=0; i<20; i++) {
+            IVectorMutable r = leafList.getAtom(sim.getRandom().nextInt(leafList.getAtomCount())).getPosition();
+            for (int j=0; j<3; j++) {
+                r.setX(j, r.getX(j) + 0.3*(sim.getRandom().nextDouble()-0.5));
+            }
+            potentialMaster.getNbrCellManager(box).assignCellAll();
+            double u0 = meterPE.getDataAsScalar();
+            int n = nComputeSums;
+            assertTrue(untracked.doTrial());
+            assertEquals(n, nComputeSums);
+            double uNew = u0 + untracked.energyChange();
+            double vOld = box.getBoundary().volume();
+            untracked.acceptNotify();
+            double uActual = meterPE.getDataAsScalar();
+            assertEquals(uActual, uNew, 1e-9*Math.abs(uActual));
+
+            inflater.setScale(Math.pow(vOld/box.getBoundary().volume(), 1.0/3.0));
+            inflater.actionPerformed();
+            untracked.reset();
+            untracked.doTrial();
+            untracked.rejectNotify();
+        }
+    }
+
+    protected ISpace space;
+    protected Simulation sim;
+    protected IBox box;
+    protected PotentialMasterCell potentialMaster;
+    protected IntegratorMC integrator;
+    protected MCMoveVolumeInversePower moveVolume;
+    protected MeterPotentialEnergy meterPE;
+    protected int nComputeSums;
+}
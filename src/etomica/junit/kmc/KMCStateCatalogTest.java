@@ -0,0 +1,109 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.junit.kmc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+import etomica.action.BoxInflate;
+import etomica.api.IAtomList;
+import etomica.api.IBox;
+import etomica.api.ISpecies;
+import etomica.api.IVectorMutable;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.kmc.KMCStateCatalog;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.simulation.Simulation;
+import etomica.space.ISpace;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+
+/**
+ * Checks that KMCStateCatalog finds a stored state after atoms have been
+ * relabeled, rejects a distorted configuration, and survives a checkpoint
+ * round trip with its processes.
+ */
+public class KMCStateCatalogTest extends TestCase {
+
+    public void setUp() {
+        space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        species = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species);
+        box = new Box(space);
+        sim.addBox(box);
+        box.setNMolecules(species, 32);
+        BoxInflate inflater = new BoxInflate(box, space);
+        inflater.setTargetDensity(1.0);
+        inflater.actionPerformed();
+        new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+        // remove the symmetry so that only the identity permutation matches
+        IAtomList leafList = box.getLeafList();
+        for (int i=0; i<leafList.getAtomCount(); i++) {
+            IVectorMutable r = leafList.getAtom(i).getPosition();
+            r.setX(0, r.getX(0) + 0.05*Math.sin(i));
+            r.setX(1, r.getX(1) + 0.05*Math.cos(3*i));
+        }
+        catalog = new KMCStateCatalog(space, new ISpecies[]{species}, 1.5);
+    }
+
+    public void testPermutation() {
+        assertNull(catalog.findState(box));
+        KMCStateCatalog.State state = catalog.addState(box, -5.0, 2.0);
+        assertSame(state, catalog.findState(box));
+
+        // swap two atoms; same state, different labels
+        IAtomList leafList = box.getLeafList();
+        IVectorMutable tmp = space.makeVector();
+        tmp.E(leafList.getAtom(3).getPosition());
+        leafList.getAtom(3).getPosition().E(leafList.getAtom(17).getPosition());
+        leafList.getAtom(17).getPosition().E(tmp);
+        assertSame(state, catalog.findState(box));
+        int[] permutation = catalog.getPermutation();
+        assertEquals(17, permutation[3]);
+        assertEquals(3, permutation[17]);
+
+        // move one atom well away from its site
+        leafList.getAtom(5).getPosition().PE(0.6);
+        assertNull(catalog.findState(box));
+    }
+
+    public void testCheckpoint() throws IOException {
+        KMCStateCatalog.State state = catalog.addState(box, -5.0, 2.0);
+        double[] minimum = catalog.getStoredPositions(box);
+        box.getLeafList().getAtom(0).getPosition().PE(0.3);
+        double[] saddle = catalog.getStoredPositions(box);
+        KMCStateCatalog.Process process = new KMCStateCatalog.Process(saddle, saddle, saddle, -4.0, 1.0);
+        process.setDestination(minimum, -5.0, 2.0);
+        state.addProcess(process);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        catalog.writeCheckpoint(new DataOutputStream(bytes));
+        KMCStateCatalog catalog2 = new KMCStateCatalog(space, new ISpecies[]{species}, 1.5);
+        catalog2.readCheckpoint(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(1, catalog2.getStateCount());
+        catalog2.setStoredPositions(box, minimum);
+        KMCStateCatalog.State state2 = catalog2.findState(box);
+        assertNotNull(state2);
+        assertEquals(-5.0, state2.energy, 0);
+        assertEquals(1, state2.getProcessCount());
+        assertEquals(-4.0, state2.getProcess(0).saddleEnergy, 0);
+        assertEquals(-5.0, state2.getProcess(0).destinationEnergy, 0);
+
+        catalog2.setStoredPositions(box, saddle);
+        assertNotNull(catalog2.findProcess(state2, box));
+    }
+
+    protected ISpace space;
+    protected SpeciesSpheresMono species;
+    protected IBox box;
+    protected KMCStateCatalog catalog;
+}
@@ -0,0 +1,205 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.junit.kmc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import etomica.action.WriteConfiguration;
+import etomica.api.IBox;
+import etomica.api.IMoleculeList;
+import etomica.api.ISpecies;
+import etomica.api.IVectorMutable;
+import etomica.data.meter.MeterPotentialEnergy;
+import etomica.dimer.IntegratorDimerMin;
+import etomica.exception.ConfigurationOverlapException;
+import etomica.kmc.IntegratorKMC;
+import etomica.kmc.KMCStateCatalog;
+import etomica.kmc.ParallelDimerSearch;
+import etomica.kmc.SimKMCLJadatom;
+
+/**
+ * Checks that ParallelDimerSearch finds saddles and minima for the LJ
+ * adatom without changing the KMC box, reproducibly from its seeds; that
+ * IntegratorKMC adds those processes to its catalog; and that
+ * IntegratorDimerMin starts from the positions given to setStartPositions
+ * in place of its files, each time they are given.
+ */
+public class ParallelDimerSearchTest extends TestCase {
+
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("kmc").toFile();
+        sim = new SimKMCLJadatom();
+        center = sim.getSpace().makeVector();
+        center.setX(0, 3.5);
+        sim.setMovableAtoms(2.0, center);
+    }
+
+    public void tearDown() {
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    /**
+     * Returns a search with two workers, writing their files in the
+     * temporary directory.
+     */
+    protected ParallelDimerSearch makeSearch() {
+        ParallelDimerSearch search = new ParallelDimerSearch(SimKMCLJadatom.makeWorkerFactory(2.0, center), 2, new int[]{3, 7});
+        for (int i=0; i<search.getWorkerCount(); i++) {
+            search.getWorker(i).setFileName(new File(dir, "kmc_w"+i).getPath());
+        }
+        return search;
+    }
+
+    /**
+     * Returns the positions of the movable atoms.
+     */
+    protected double[] getPositions(IBox box) {
+        IMoleculeList molecules = box.getMoleculeList(sim.movable);
+        double[] positions = new double[molecules.getMoleculeCount()*3];
+        for (int i=0; i<molecules.getMoleculeCount(); i++) {
+            IVectorMutable r = molecules.getMolecule(i).getChildList().getAtom(0).getPosition();
+            for (int k=0; k<3; k++) {
+                positions[i*3+k] = r.getX(k);
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Returns the positions of the movable atoms, shifted by dx.
+     */
+    protected double[] shift(double[] positions, double dx) {
+        double[] shifted = positions.clone();
+        for (int i=0; i<shifted.length; i++) {
+            shifted[i] += dx;
+        }
+        return shifted;
+    }
+
+    protected void assertEquals(double[] expected, double[] actual, double tol) {
+        assertEquals(expected.length, actual.length);
+        for (int i=0; i<expected.length; i++) {
+            assertEquals(expected[i], actual[i], tol);
+        }
+    }
+
+    public void testSearch() {
+        double[] leafPositions = new double[sim.box.getLeafList().getAtomCount()*3];
+        for (int i=0; i<leafPositions.length/3; i++) {
+            for (int k=0; k<3; k++) {
+                leafPositions[i*3+k] = sim.box.getLeafList().getAtom(i).getPosition().getX(k);
+            }
+        }
+        double[] minimum = getPositions(sim.box);
+
+        ParallelDimerSearch.Result[] results = makeSearch().search(sim.box, 2);
+        assertEquals(2, results.length);
+        for (int i=0; i<leafPositions.length/3; i++) {
+            for (int k=0; k<3; k++) {
+                assertEquals(leafPositions[i*3+k], sim.box.getLeafList().getAtom(i).getPosition().getX(k), 0);
+            }
+        }
+        for (int i=0; i<results.length; i++) {
+            assertEquals(minimum.length, results[i].saddle.length);
+            assertEquals(minimum.length, results[i].destination.length);
+            // the saddle is above the minimum it leads to
+            assertTrue(results[i].saddleEnergy > results[i].destinationEnergy);
+        }
+
+        // new workers with the same seeds find the same saddles
+        ParallelDimerSearch.Result[] results2 = makeSearch().search(sim.box, 2);
+        for (int i=0; i<results.length; i++) {
+            assertTrue(Arrays.equals(results[i].saddle, results2[i].saddle));
+            assertTrue(Arrays.equals(results[i].destination, results2[i].destination));
+            assertEquals(results[i].saddleEnergy, results2[i].saddleEnergy, 0);
+        }
+    }
+
+    public void testKMCStep() {
+        sim.integratorKMC();
+        IntegratorKMC integratorKMC = sim.integratorKMC;
+        integratorKMC.createIntegrators();
+        integratorKMC.setXYZFileName(new File(dir, "kmc.xyz").getPath());
+        MeterPotentialEnergy meterPE = new MeterPotentialEnergy(sim.potentialMaster);
+        meterPE.setBox(sim.box);
+        integratorKMC.setInitialStateConditions(meterPE.getDataAsScalar(), 1);
+        integratorKMC.setSearchLimit(2);
+        integratorKMC.setParallelSearch(makeSearch());
+        integratorKMC.reset();
+        integratorKMC.doStep();
+
+        KMCStateCatalog catalog = integratorKMC.getCatalog();
+        assertEquals(1, catalog.getStateCount());
+        KMCStateCatalog.State state = catalog.getState(0);
+        assertTrue(state.getProcessCount() > 0 && state.getProcessCount() <= 2);
+        // the box was moved to the minimum beyond one of the saddles
+        double[] stored = catalog.getStoredPositions(sim.box);
+        boolean found = false;
+        for (int i=0; i<state.getProcessCount(); i++) {
+            double[] destination = state.getProcess(i).destination;
+            assertNotNull(destination);
+            found = found || Arrays.equals(stored, destination);
+        }
+        assertTrue(found);
+    }
+
+    protected void writeConfiguration(double[] positions, String confName) {
+        double[] old = getPositions(sim.box);
+        setPositions(positions);
+        WriteConfiguration writer = new WriteConfiguration(sim.getSpace());
+        writer.setBox(sim.box);
+        writer.setFileName(confName+".pos");
+        writer.actionPerformed();
+        setPositions(old);
+    }
+
+    protected void setPositions(double[] positions) {
+        IMoleculeList molecules = sim.box.getMoleculeList(sim.movable);
+        for (int i=0; i<molecules.getMoleculeCount(); i++) {
+            IVectorMutable r = molecules.getMolecule(i).getChildList().getAtom(0).getPosition();
+            for (int k=0; k<3; k++) {
+                r.setX(k, positions[i*3+k]);
+            }
+        }
+    }
+
+    public void testStartPositions() throws ConfigurationOverlapException {
+        IntegratorDimerMin integrator = new IntegratorDimerMin(sim, sim.potentialMaster,
+                new ISpecies[]{sim.movable}, false, sim.getSpace());
+        integrator.setBox(sim.box);
+        String file = new File(dir, "min").getPath();
+        integrator.setFileName(file);
+        double[] minimum = getPositions(sim.box);
+        double[] fileSaddle = shift(minimum, 0.05);
+        writeConfiguration(fileSaddle, file+"_saddle");
+        writeConfiguration(shift(minimum, 0.06), file+"_A_saddle");
+
+        double[] saddle = shift(minimum, -0.05);
+        integrator.setStartPositions(saddle, shift(minimum, -0.06), shift(minimum, -0.04));
+        integrator.reset();
+        assertEquals(saddle, getPositions(sim.box), 1e-10);
+
+        // the start positions are only used once
+        integrator.reset();
+        assertEquals(fileSaddle, getPositions(sim.box), 1e-10);
+
+        // and override the files again when given again
+        saddle = shift(minimum, -0.03);
+        integrator.setStartPositions(saddle, shift(minimum, -0.04), shift(minimum, -0.02));
+        integrator.reset();
+        assertEquals(saddle, getPositions(sim.box), 1e-10);
+    }
+
+    protected File dir;
+    protected SimKMCLJadatom sim;
+    protected IVectorMutable center;
+}
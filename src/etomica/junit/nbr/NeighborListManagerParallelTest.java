@@ -0,0 +1,105 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.junit.nbr;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+import etomica.action.BoxInflate;
+import etomica.api.IAtomList;
+import etomica.api.IAtomType;
+import etomica.api.IBox;
+import etomica.api.IVectorMutable;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.nbr.list.NeighborListManager;
+import etomica.nbr.list.PotentialMasterList;
+import etomica.potential.P2LennardJones;
+import etomica.potential.P2SoftSphericalTruncated;
+import etomica.simulation.Simulation;
+import etomica.space.ISpace;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+
+/**
+ * Checks that neighbor lists built using a pool match those built on a
+ * single thread.
+ */
+public class NeighborListManagerParallelTest extends TestCase {
+
+    public void setUp() {
+        ISpace space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        PotentialMasterList potentialMaster = new PotentialMasterList(sim, 3.5, space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species);
+        box = new Box(space);
+        sim.addBox(box);
+        box.setNMolecules(species, 500);
+        BoxInflate inflater = new BoxInflate(box, space);
+        inflater.setTargetDensity(0.8);
+        inflater.actionPerformed();
+        new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+        IAtomList leafList = box.getLeafList();
+        for (int i=0; i<leafList.getAtomCount(); i++) {
+            IVectorMutable r = leafList.getAtom(i).getPosition();
+            for (int j=0; j<3; j++) {
+                r.setX(j, r.getX(j) + 0.2*Math.sin(5*i+j));
+            }
+        }
+        P2SoftSphericalTruncated p2 = new P2SoftSphericalTruncated(space, new P2LennardJones(space), 3.0);
+        IAtomType leafType = species.getLeafType();
+        potentialMaster.addPotential(p2, new IAtomType[]{leafType, leafType});
+        neighborManager = potentialMaster.getNeighborManager(box);
+    }
+
+    public void testParallelSetup() {
+        neighborManager.reset();
+        assertEquals(1, neighborManager.getNumSetups());
+        int[][] up = getNbrs(true);
+        int[][] down = getNbrs(false);
+
+        neighborManager.setPool(new ForkJoinPool(4));
+        // more chunks than threads, to exercise the merge
+        neighborManager.setNumChunks(7);
+        neighborManager.reset();
+        assertEquals(2, neighborManager.getNumSetups());
+        assertTrue(neighborManager.getLastSetupTime() > 0);
+        assertTrue(neighborManager.getTotalSetupTime() >= neighborManager.getLastSetupTime());
+
+        int[][] parallelUp = getNbrs(true);
+        int[][] parallelDown = getNbrs(false);
+        int nTotal = 0;
+        for (int i=0; i<up.length; i++) {
+            assertTrue(Arrays.equals(up[i], parallelUp[i]));
+            assertTrue(Arrays.equals(down[i], parallelDown[i]));
+            nTotal += up[i].length;
+        }
+        assertTrue(nTotal > 0);
+    }
+
+    /**
+     * Returns the sorted leaf indices of the up or down neighbors of each atom.
+     */
+    protected int[][] getNbrs(boolean up) {
+        IAtomList leafList = box.getLeafList();
+        int[][] nbrs = new int[leafList.getAtomCount()][];
+        for (int i=0; i<nbrs.length; i++) {
+            IAtomList list = up ? neighborManager.getUpList(leafList.getAtom(i))[0]
+                                : neighborManager.getDownList(leafList.getAtom(i))[0];
+            nbrs[i] = new int[list.getAtomCount()];
+            for (int j=0; j<nbrs[i].length; j++) {
+                nbrs[i][j] = list.getAtom(j).getLeafIndex();
+            }
+            Arrays.sort(nbrs[i]);
+        }
+        return nbrs;
+    }
+
+    protected IBox box;
+    protected NeighborListManager neighborManager;
+}
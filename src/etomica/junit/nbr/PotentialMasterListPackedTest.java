@@ -0,0 +1,126 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.junit.nbr;
+
+import junit.framework.TestCase;
+import etomica.action.BoxInflate;
+import etomica.api.IAtomList;
+import etomica.api.IAtomType;
+import etomica.api.IBox;
+import etomica.api.IVectorMutable;
+import etomica.atom.AtomLeafAgentManager;
+import etomica.atom.iterator.IteratorDirective;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.integrator.IntegratorVelocityVerlet;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.nbr.list.PotentialMasterListPacked;
+import etomica.potential.P2LennardJones;
+import etomica.potential.P2SoftSphericalTruncated;
+import etomica.potential.PotentialCalculationEnergySum;
+import etomica.potential.PotentialCalculationForcePressureSum;
+import etomica.potential.PotentialCalculationVirialSum;
+import etomica.simulation.Simulation;
+import etomica.space.ISpace;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+
+/**
+ * Checks that the packed neighbor list calculation in
+ * PotentialMasterListPacked matches the regular PotentialMasterList path.
+ */
+public class PotentialMasterListPackedTest extends TestCase {
+
+    public void setUp() {
+        space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        potentialMaster = makePotentialMaster(sim);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species);
+        box = new Box(space);
+        sim.addBox(box);
+        box.setNMolecules(species, 500);
+        BoxInflate inflater = new BoxInflate(box, space);
+        inflater.setTargetDensity(0.8);
+        inflater.actionPerformed();
+        new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+        // displace the atoms so that the forces don't cancel
+        IAtomList leafList = box.getLeafList();
+        for (int i=0; i<leafList.getAtomCount(); i++) {
+            IVectorMutable r = leafList.getAtom(i).getPosition();
+            for (int j=0; j<3; j++) {
+                r.setX(j, r.getX(j) + 0.05*Math.sin(7*i+3*j));
+            }
+        }
+        P2SoftSphericalTruncated p2 = new P2SoftSphericalTruncated(space, new P2LennardJones(space), 3.0);
+        IAtomType leafType = species.getLeafType();
+        potentialMaster.addPotential(p2, new IAtomType[]{leafType, leafType});
+        integrator = new IntegratorVelocityVerlet(sim, potentialMaster, space);
+        integrator.setBox(box);
+        potentialMaster.getNeighborManager(box).reset();
+    }
+
+    protected PotentialMasterListPacked makePotentialMaster(Simulation sim) {
+        return new PotentialMasterListPacked(sim, 3.5, space);
+    }
+
+    public void testEnergy() {
+        PotentialCalculationEnergySum energySum = new PotentialCalculationEnergySum();
+        potentialMaster.setUsePacked(false);
+        potentialMaster.calculate(box, new IteratorDirective(), energySum);
+        double u = energySum.getSum();
+        energySum.zeroSum();
+        potentialMaster.setUsePacked(true);
+        potentialMaster.calculate(box, new IteratorDirective(), energySum);
+        assertTrue(u != 0);
+        assertEquals(u, energySum.getSum(), 1e-9*Math.abs(u));
+    }
+
+    public void testVirial() {
+        PotentialCalculationVirialSum virialSum = new PotentialCalculationVirialSum();
+        potentialMaster.setUsePacked(false);
+        potentialMaster.calculate(box, new IteratorDirective(), virialSum);
+        double w = virialSum.getSum();
+        virialSum.zeroSum();
+        potentialMaster.setUsePacked(true);
+        potentialMaster.calculate(box, new IteratorDirective(), virialSum);
+        assertEquals(w, virialSum.getSum(), 1e-9*Math.abs(w));
+    }
+
+    public void testForces() {
+        PotentialCalculationForcePressureSum forceSum = new PotentialCalculationForcePressureSum(space);
+        AtomLeafAgentManager<IntegratorVelocityVerlet.MyAgent> agentManager = integrator.getAgentManager();
+        forceSum.setAgentManager(agentManager);
+        IAtomList leafList = box.getLeafList();
+        int n = leafList.getAtomCount();
+
+        potentialMaster.setUsePacked(false);
+        forceSum.reset();
+        potentialMaster.calculate(box, new IteratorDirective(), forceSum);
+        double[][] f = new double[n][3];
+        for (int i=0; i<n; i++) {
+            agentManager.getAgent(leafList.getAtom(i)).force().assignTo(f[i]);
+        }
+        double p00 = forceSum.getPressureTensor().component(0, 0);
+        double p01 = forceSum.getPressureTensor().component(0, 1);
+
+        potentialMaster.setUsePacked(true);
+        forceSum.reset();
+        potentialMaster.calculate(box, new IteratorDirective(), forceSum);
+        for (int i=0; i<n; i++) {
+            IVectorMutable fi = agentManager.getAgent(leafList.getAtom(i)).force();
+            for (int j=0; j<3; j++) {
+                assertEquals(f[i][j], fi.getX(j), 1e-9);
+            }
+        }
+        assertEquals(p00, forceSum.getPressureTensor().component(0, 0), 1e-9*Math.abs(p00));
+        assertEquals(p01, forceSum.getPressureTensor().component(0, 1), 1e-9);
+    }
+
+    protected ISpace space;
+    protected IBox box;
+    protected PotentialMasterListPacked potentialMaster;
+    protected IntegratorVelocityVerlet integrator;
+}
@@ -0,0 +1,25 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.junit.nbr;
+
+import java.util.concurrent.ForkJoinPool;
+
+import etomica.nbr.list.PotentialMasterListPacked;
+import etomica.simulation.Simulation;
+import etomica.threaded.PotentialMasterListParallel;
+
+/**
+ * Runs the PotentialMasterListPacked tests with the work split among
+ * several threads by PotentialMasterListParallel.
+ */
+public class PotentialMasterListParallelTest extends PotentialMasterListPackedTest {
+
+    protected PotentialMasterListPacked makePotentialMaster(Simulation sim) {
+        PotentialMasterListParallel pm = new PotentialMasterListParallel(sim, 3.5, space, new ForkJoinPool(4));
+        // more chunks than threads, to exercise the partitioning
+        pm.setNumChunks(7);
+        return pm;
+    }
+}
@@ -0,0 +1,88 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.junit.nbr;
+
+import junit.framework.TestCase;
+import etomica.api.IAtom;
+import etomica.api.IAtomList;
+import etomica.api.IAtomType;
+import etomica.api.IBox;
+import etomica.api.IVectorMutable;
+import etomica.atom.iterator.IteratorDirective;
+import etomica.box.Box;
+import etomica.nbr.site.PotentialMasterSite;
+import etomica.potential.PotentialCalculationEnergySum;
+import etomica.simulation.Simulation;
+import etomica.space.ISpace;
+import etomica.space2d.Space2D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.spin.P2Spin;
+import etomica.util.RandomMersenneTwister;
+
+/**
+ * Checks that PotentialMasterSite counts each pair once when summing over a
+ * box holding more than one species.
+ */
+public class PotentialMasterSiteTest extends TestCase {
+
+    public void setUp() {
+        space = Space2D.getInstance();
+        sim = new Simulation(space);
+        sim.setRandom(new RandomMersenneTwister(5));
+        potentialMaster = new PotentialMasterSite(sim, 6, space);
+        SpeciesSpheresMono speciesA = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(speciesA);
+        SpeciesSpheresMono speciesB = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(speciesB);
+        box = new Box(space);
+        sim.addBox(box);
+        box.setNMolecules(speciesA, 18);
+        box.setNMolecules(speciesB, 18);
+        // the position of each atom is its spin
+        IAtomList leafList = box.getLeafList();
+        for (int i=0; i<leafList.getAtomCount(); i++) {
+            IVectorMutable r = leafList.getAtom(i).getPosition();
+            double theta = 2*Math.PI*sim.getRandom().nextDouble();
+            r.setX(0, Math.cos(theta));
+            r.setX(1, Math.sin(theta));
+        }
+
+        IAtomType typeA = speciesA.getLeafType();
+        IAtomType typeB = speciesB.getLeafType();
+        potentialMaster.addPotential(new P2Spin(space, 1.0), new IAtomType[]{typeA, typeA});
+        potentialMaster.addPotential(new P2Spin(space, 0.5), new IAtomType[]{typeB, typeB});
+        potentialMaster.addPotential(new P2Spin(space, -0.7), new IAtomType[]{typeA, typeB});
+    }
+
+    /**
+     * Compares the energy of the whole box with the sum of the energies of
+     * each atom with its up neighbors.
+     */
+    public void testMultipleSpecies() {
+        PotentialCalculationEnergySum energySum = new PotentialCalculationEnergySum();
+        IteratorDirective id = new IteratorDirective();
+        id.includeLrc = false;
+        potentialMaster.calculate(box, id, energySum);
+        double uTotal = energySum.getSum();
+
+        double uSum = 0;
+        IAtomList leafList = box.getLeafList();
+        for (int i=0; i<leafList.getAtomCount(); i++) {
+            IAtom atom = leafList.getAtom(i);
+            id.setTargetAtom(atom);
+            id.setDirection(IteratorDirective.Direction.UP);
+            energySum.zeroSum();
+            potentialMaster.calculate(box, id, energySum);
+            uSum += energySum.getSum();
+        }
+        assertTrue(uTotal != 0);
+        assertEquals(uSum, uTotal, 1e-10*Math.abs(uTotal));
+    }
+
+    protected ISpace space;
+    protected Simulation sim;
+    protected IBox box;
+    protected PotentialMasterSite potentialMaster;
+}
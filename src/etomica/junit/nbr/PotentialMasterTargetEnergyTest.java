@@ -0,0 +1,201 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.junit.nbr;
+
+import junit.framework.TestCase;
+import etomica.action.BoxInflate;
+import etomica.api.IAtom;
+import etomica.api.IAtomList;
+import etomica.api.IAtomType;
+import etomica.api.IBox;
+import etomica.api.IMolecule;
+import etomica.api.IMoleculeList;
+import etomica.api.ISpecies;
+import etomica.api.IVectorMutable;
+import etomica.atom.iterator.ApiBuilder;
+import etomica.atom.iterator.IteratorDirective;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.data.meter.MeterPotentialEnergy;
+import etomica.integrator.IntegratorMC;
+import etomica.integrator.mcmove.MCMoveAtom;
+import etomica.integrator.mcmove.MCMoveMolecule;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.nbr.cell.NeighborCellManager;
+import etomica.nbr.cell.PotentialMasterCell;
+import etomica.nbr.list.PotentialMasterList;
+import etomica.potential.P2Harmonic;
+import etomica.potential.P2LennardJones;
+import etomica.potential.P2SoftSphericalTruncated;
+import etomica.potential.P2SquareWell;
+import etomica.potential.PotentialCalculationEnergySum;
+import etomica.potential.PotentialGroup;
+import etomica.potential.PotentialMaster;
+import etomica.potential.PotentialMasterTargetEnergy;
+import etomica.simulation.Simulation;
+import etomica.space.ISpace;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheres;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.RandomMersenneTwister;
+
+/**
+ * Checks that the single-target energies from PotentialMasterList and
+ * PotentialMasterCell match the energies summed by calculate with an
+ * IteratorDirective, and that MC moves using them keep the integrator's
+ * energy consistent with the configuration.
+ */
+public class PotentialMasterTargetEnergyTest extends TestCase {
+
+    protected void setUp(PotentialMaster pm) {
+        potentialMaster = pm;
+        SpeciesSpheresMono speciesA = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(speciesA);
+        SpeciesSpheres speciesB = new SpeciesSpheres(sim, space, 2);
+        sim.addSpecies(speciesB);
+        box = new Box(space);
+        sim.addBox(box);
+        box.setNMolecules(speciesA, 600);
+        box.setNMolecules(speciesB, 150);
+        BoxInflate inflater = new BoxInflate(box, space);
+        inflater.setTargetDensity(0.45);
+        inflater.actionPerformed();
+        new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+        IAtomList leafList = box.getLeafList();
+        for (int i=0; i<leafList.getAtomCount(); i++) {
+            IVectorMutable r = leafList.getAtom(i).getPosition();
+            for (int j=0; j<3; j++) {
+                r.setX(j, r.getX(j) + 0.1*(sim.getRandom().nextDouble()-0.5));
+            }
+        }
+
+        IAtomType typeA = speciesA.getLeafType();
+        IAtomType typeB = speciesB.getAtomType(0);
+        P2SoftSphericalTruncated p2AA;
+        if (filterPairs) {
+            // like P2Cohesion, filter pairs in energy without changing u
+            p2AA = new P2SoftSphericalTruncated(space, new P2LennardJones(space), 2.5) {
+                public double energy(IAtomList atoms) {
+                    if (atoms.getAtom(0).getLeafIndex() % 2 == 1 && atoms.getAtom(1).getLeafIndex() % 2 == 1) {
+                        return 0;
+                    }
+                    return super.energy(atoms);
+                }
+            };
+        }
+        else {
+            p2AA = new P2SoftSphericalTruncated(space, new P2LennardJones(space), 2.5);
+        }
+        pm.addPotential(p2AA, new IAtomType[]{typeA, typeA});
+        pm.addPotential(new P2SoftSphericalTruncated(space, new P2LennardJones(space, 0.5, 1.0), 2.5), new IAtomType[]{typeB, typeB});
+        // not a Potential2SoftSpherical
+        pm.addPotential(new P2SquareWell(space, 0.3, 2.0, 0.5, true), new IAtomType[]{typeA, typeB});
+        PotentialGroup pIntra = pm.makePotentialGroup(1);
+        pIntra.addPotential(new P2Harmonic(space, 10, 0.55), ApiBuilder.makeAdjacentPairIterator());
+        pm.addPotential(pIntra, new ISpecies[]{speciesB});
+
+        integrator = new IntegratorMC(pm, sim.getRandom(), 1.0);
+        MCMoveAtom moveAtom = new MCMoveAtom(sim.getRandom(), pm, space);
+        moveAtom.setStepSize(0.1);
+        moveAtom.setStepSizeMax(0.1);
+        integrator.getMoveManager().addMCMove(moveAtom);
+        MCMoveMolecule moveMolecule = new MCMoveMolecule(pm, sim.getRandom(), space, 0.1, 0.1);
+        integrator.getMoveManager().addMCMove(moveMolecule);
+        integrator.setBox(box);
+    }
+
+    protected void setUpList() {
+        space = Space3D.getInstance();
+        sim = new Simulation(space);
+        sim.setRandom(new RandomMersenneTwister(5));
+        PotentialMasterList pm = new PotentialMasterList(sim, 3.5, space);
+        setUp(pm);
+        integrator.getEventManager().addListener(pm.getNeighborManager(box));
+        integrator.reset();
+    }
+
+    protected void setUpCell() {
+        space = Space3D.getInstance();
+        sim = new Simulation(space);
+        sim.setRandom(new RandomMersenneTwister(5));
+        PotentialMasterCell pm = new PotentialMasterCell(sim, 3.0, space);
+        pm.setCellRange(2);
+        setUp(pm);
+        NeighborCellManager cellManager = pm.getNbrCellManager(box);
+        integrator.getMoveEventManager().addListener(cellManager.makeMCMoveListener());
+        cellManager.assignCellAll();
+        integrator.reset();
+    }
+
+    protected void checkTargets() {
+        PotentialMasterTargetEnergy targetEnergy = (PotentialMasterTargetEnergy)potentialMaster;
+        IteratorDirective id = new IteratorDirective();
+        id.includeLrc = false;
+        PotentialCalculationEnergySum energySum = new PotentialCalculationEnergySum();
+        IAtomList leafList = box.getLeafList();
+        for (int i=0; i<leafList.getAtomCount(); i++) {
+            IAtom atom = leafList.getAtom(i);
+            id.setTargetAtom(atom);
+            id.setDirection(null);
+            energySum.zeroSum();
+            potentialMaster.calculate(box, id, energySum);
+            double u = energySum.getSum();
+            assertTrue(u != 0);
+            assertEquals(u, targetEnergy.computeEnergy(box, atom), 1e-10*(1+Math.abs(u)));
+        }
+        IMoleculeList moleculeList = box.getMoleculeList();
+        for (int i=0; i<moleculeList.getMoleculeCount(); i++) {
+            IMolecule molecule = moleculeList.getMolecule(i);
+            id.setTargetMolecule(molecule);
+            id.setDirection(null);
+            energySum.zeroSum();
+            potentialMaster.calculate(box, id, energySum);
+            double u = energySum.getSum();
+            assertEquals(u, targetEnergy.computeEnergy(box, molecule), 1e-10*(1+Math.abs(u)));
+        }
+    }
+
+    protected void checkMC() {
+        for (int i=0; i<5000; i++) {
+            integrator.doStep();
+        }
+        MeterPotentialEnergy meterPE = new MeterPotentialEnergy(potentialMaster);
+        meterPE.setBox(box);
+        double u = meterPE.getDataAsScalar();
+        assertEquals(u, integrator.getPotentialEnergy(), 1e-8*Math.abs(u));
+        checkTargets();
+    }
+
+    public void testList() {
+        setUpList();
+        checkTargets();
+        checkMC();
+    }
+
+    public void testCell() {
+        setUpCell();
+        checkTargets();
+        checkMC();
+    }
+
+    /**
+     * Checks that a potential that overrides energy is used through energy
+     * and not u.
+     */
+    public void testOverriddenEnergy() {
+        filterPairs = true;
+        setUpList();
+        checkTargets();
+        setUpCell();
+        checkTargets();
+    }
+
+    protected boolean filterPairs;
+    protected ISpace space;
+    protected Simulation sim;
+    protected IBox box;
+    protected PotentialMaster potentialMaster;
+    protected IntegratorMC integrator;
+}
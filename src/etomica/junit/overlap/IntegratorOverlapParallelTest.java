@@ -0,0 +1,109 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.junit.overlap;
+
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+import etomica.action.BoxInflate;
+import etomica.api.IAtomList;
+import etomica.api.IAtomType;
+import etomica.api.IBox;
+import etomica.api.IIntegrator;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.integrator.IntegratorMC;
+import etomica.integrator.mcmove.MCMoveAtom;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.overlap.IntegratorOverlap;
+import etomica.overlap.IntegratorOverlap.ReferenceFracSource;
+import etomica.potential.P2LennardJones;
+import etomica.potential.P2SoftSphere;
+import etomica.potential.P2SoftSphericalTruncated;
+import etomica.potential.PotentialMaster;
+import etomica.simulation.Simulation;
+import etomica.space.ISpace;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.RandomMersenneTwister;
+
+/**
+ * Checks that IntegratorOverlap runs the reference and target systems for
+ * the same number of steps, with the same results, whether they run one
+ * after another or concurrently on a ForkJoinPool.
+ */
+public class IntegratorOverlapParallelTest extends TestCase {
+
+    protected IntegratorOverlap makeIntegrator() {
+        ISpace space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species);
+        IAtomType leafType = species.getLeafType();
+        IIntegrator[] integrators = new IIntegrator[2];
+        for (int i=0; i<2; i++) {
+            IBox box = new Box(space);
+            sim.addBox(box);
+            box.setNMolecules(species, 108);
+            BoxInflate inflater = new BoxInflate(box, space);
+            inflater.setTargetDensity(0.8);
+            inflater.actionPerformed();
+            new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+
+            PotentialMaster potentialMaster = new PotentialMaster();
+            if (i == 0) {
+                potentialMaster.addPotential(new P2SoftSphericalTruncated(space, new P2SoftSphere(space), 2.5), new IAtomType[]{leafType, leafType});
+            }
+            else {
+                potentialMaster.addPotential(new P2SoftSphericalTruncated(space, new P2LennardJones(space), 2.5), new IAtomType[]{leafType, leafType});
+            }
+            RandomMersenneTwister random = new RandomMersenneTwister(new int[]{3, i});
+            IntegratorMC integrator = new IntegratorMC(potentialMaster, random, 1.0);
+            MCMoveAtom moveAtom = new MCMoveAtom(random, potentialMaster, space);
+            moveAtom.setStepSize(0.1);
+            integrator.getMoveManager().addMCMove(moveAtom);
+            integrator.setBox(box);
+            integrators[i] = integrator;
+        }
+        IntegratorOverlap integratorOverlap = new IntegratorOverlap(integrators);
+        integratorOverlap.setNumSubSteps(200);
+        // pretend the ideal reference fraction is 30%
+        integratorOverlap.setReferenceFracSource(new ReferenceFracSource() {
+            public double getIdealRefFraction(double oldFrac) {
+                return 0.3;
+            }
+        });
+        integratorOverlap.reset();
+        return integratorOverlap;
+    }
+
+    public void testParallel() {
+        IntegratorOverlap serial = makeIntegrator();
+        IntegratorOverlap parallel = makeIntegrator();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        parallel.setPool(pool);
+        for (int i=0; i<20; i++) {
+            serial.doStep();
+            parallel.doStep();
+        }
+        pool.shutdown();
+
+        assertEquals(serial.getRefStepFraction(), parallel.getRefStepFraction(), 0);
+        assertEquals(0.3, serial.getIdealRefStepFraction(), 1e-10);
+        IIntegrator[] serialIntegrators = serial.getIntegrators();
+        IIntegrator[] parallelIntegrators = parallel.getIntegrators();
+        for (int i=0; i<2; i++) {
+            IntegratorMC integrator1 = (IntegratorMC)serialIntegrators[i];
+            IntegratorMC integrator2 = (IntegratorMC)parallelIntegrators[i];
+            assertEquals(integrator1.getStepCount(), integrator2.getStepCount());
+            assertEquals(integrator1.getPotentialEnergy(), integrator2.getPotentialEnergy(), 1e-10);
+            IAtomList leafList1 = integrator1.getBox().getLeafList();
+            IAtomList leafList2 = integrator2.getBox().getLeafList();
+            for (int j=0; j<leafList1.getAtomCount(); j++) {
+                assertTrue(leafList1.getAtom(j).getPosition().equals(leafList2.getAtom(j).getPosition()));
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.junit.potential;
+
+import junit.framework.TestCase;
+import etomica.api.IAtom;
+import etomica.api.IAtomList;
+import etomica.api.IBox;
+import etomica.api.IVector;
+import etomica.api.IVectorMutable;
+import etomica.atom.AtomLeafAgentManager;
+import etomica.box.Box;
+import etomica.potential.EwaldSummation;
+import etomica.potential.EwaldSummation.MyCharge;
+import etomica.potential.EwaldSummationSPME;
+import etomica.simulation.Simulation;
+import etomica.space.ISpace;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.RandomMersenneTwister;
+
+/**
+ * Compares energies and gradients from EwaldSummationSPME with those from
+ * EwaldSummation for a box of point ions.
+ */
+public class EwaldSummationSPMETest extends TestCase {
+
+    public void setUp() {
+        space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species);
+        box = new Box(space);
+        sim.addBox(box);
+        box.getBoundary().setBoxSize(space.makeVector(new double[]{11, 11, 11}));
+        box.setNMolecules(species, 128);
+        RandomMersenneTwister random = new RandomMersenneTwister(5);
+        IAtomList leafList = box.getLeafList();
+        for (int i=0; i<leafList.getAtomCount(); i++) {
+            IVectorMutable r = leafList.getAtom(i).getPosition();
+            // a simple cubic lattice (4x4x8) with random displacements
+            r.setX(0, 11*((i%4)/4.0 - 0.5) + 0.5*random.nextDouble());
+            r.setX(1, 11*(((i/4)%4)/4.0 - 0.5) + 0.5*random.nextDouble());
+            r.setX(2, 11*((i/16)/8.0 - 0.5) + 0.5*random.nextDouble());
+        }
+        agentManager = new AtomLeafAgentManager<MyCharge>(new AtomLeafAgentManager.AgentSource<MyCharge>() {
+            public MyCharge makeAgent(IAtom a) {
+                return new MyCharge(a.getLeafIndex()%2 == 0 ? 1 : -1);
+            }
+            public void releaseAgent(MyCharge agent, IAtom atom) {}
+        }, box, MyCharge.class);
+        double rCut = 5.0;
+        double alpha = EwaldSummationSPME.alphaForTolerance(rCut, 1e-8);
+        // EwaldSummation takes alpha from rCut and kCut: alpha = sqrt(kCut/(2 rCut))
+        double kCut = 2*alpha*alpha*rCut;
+        ewald = new EwaldSummation(box, agentManager, space, kCut, rCut);
+        spme = new EwaldSummationSPME(box, agentManager, space, rCut, 1e-8);
+    }
+
+    public void testEnergy() {
+        double uEwald = ewald.energy(null);
+        double uSPME = spme.energy(null);
+        assertEquals(uEwald, uSPME, 1e-5*Math.abs(uEwald));
+        assertEquals(ewald.uReal(), spme.uReal(), 1e-8*Math.abs(uEwald));
+        assertEquals(ewald.uSelf(), spme.uSelf(), 1e-8*Math.abs(uEwald));
+    }
+
+    public void testGradient() {
+        int nAtoms = box.getLeafList().getAtomCount();
+        IVector[] gEwald = ewald.gradient(null);
+        double[][] g = new double[nAtoms][3];
+        for (int i=0; i<nAtoms; i++) {
+            gEwald[i].assignTo(g[i]);
+        }
+        IVector[] gSPME = spme.gradient(null);
+        for (int i=0; i<nAtoms; i++) {
+            for (int j=0; j<3; j++) {
+                assertEquals(g[i][j], gSPME[i].getX(j), 1e-4);
+            }
+        }
+    }
+
+    public void testVirial() {
+        // the Coulomb energy is homogeneous of degree -1, so W = -U
+        double u = spme.energy(null);
+        double w = spme.virial(null);
+        assertEquals(-u, w, 1e-4*Math.abs(u));
+    }
+
+    protected ISpace space;
+    protected IBox box;
+    protected AtomLeafAgentManager<MyCharge> agentManager;
+    protected EwaldSummation ewald;
+    protected EwaldSummationSPME spme;
+}
@@ -0,0 +1,76 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.junit.potential;
+
+import junit.framework.TestCase;
+import etomica.potential.P2LennardJones;
+import etomica.potential.P2SoftSphericalTabulated;
+import etomica.potential.P2SoftSphericalTabulated.Interpolation;
+import etomica.space.ISpace;
+import etomica.space3d.Space3D;
+import etomica.util.RandomMersenneTwister;
+
+/**
+ * Compares P2SoftSphericalTabulated with the Lennard-Jones potential it
+ * wraps.
+ */
+public class P2SoftSphericalTabulatedTest extends TestCase {
+
+    public void setUp() {
+        space = Space3D.getInstance();
+        p2 = new P2LennardJones(space);
+        random = new RandomMersenneTwister(7);
+    }
+
+    protected void check(P2SoftSphericalTabulated tabulated, double rMin, double rMax,
+            double duTol, double d2uTol) {
+        for (int i=0; i<10000; i++) {
+            double r = rMin + (rMax - rMin)*random.nextDouble();
+            double r2 = r*r;
+            assertEquals(p2.u(r2), tabulated.u(r2), tabulated.getTolerance());
+            // relative to the size of the derivative; they're large near rMin
+            assertEquals(p2.du(r2), tabulated.du(r2), duTol*(1 + Math.abs(p2.du(r2))));
+            assertEquals(p2.d2u(r2), tabulated.d2u(r2), d2uTol*(1 + Math.abs(p2.d2u(r2))));
+        }
+    }
+
+    public void testQuintic() {
+        P2SoftSphericalTabulated tabulated = new P2SoftSphericalTabulated(space, p2, 0.9, 3.0, 1e-8);
+        assertTrue(tabulated.getMaxError() < 1e-8);
+        check(tabulated, 0.9, 3.0, 1e-6, 1e-5);
+
+        // outside the table, the wrapped potential is used
+        assertEquals(p2.u(0.64), tabulated.u(0.64), 0);
+        assertEquals(p2.du(0.64), tabulated.du(0.64), 0);
+        assertEquals(p2.u(16), tabulated.u(16), 0);
+        assertEquals(p2.d2u(16), tabulated.d2u(16), 0);
+        // the ends of the table
+        assertEquals(p2.u(0.81), tabulated.u(0.81), 1e-12);
+        assertEquals(p2.u(9*(1-1e-16)), tabulated.u(9*(1-1e-16)), 1e-8);
+    }
+
+    public void testCubic() {
+        P2SoftSphericalTabulated tabulated = new P2SoftSphericalTabulated(space, p2, 0.9, 3.0, 1e-6, Interpolation.CUBIC);
+        assertTrue(tabulated.getMaxError() < 1e-6);
+        check(tabulated, 0.9, 3.0, 1e-3, 1e-1);
+    }
+
+    public void testTolerance() {
+        P2SoftSphericalTabulated coarse = new P2SoftSphericalTabulated(space, p2, 0.9, 3.0, 1e-4);
+        P2SoftSphericalTabulated fine = new P2SoftSphericalTabulated(space, p2, 0.9, 3.0, 1e-10);
+        assertTrue(fine.getNumIntervals() > coarse.getNumIntervals());
+        try {
+            new P2SoftSphericalTabulated(space, p2, 3.0, 0.9, 1e-4);
+            fail("accepted rMax < rMin");
+        }
+        catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    protected ISpace space;
+    protected P2LennardJones p2;
+    protected RandomMersenneTwister random;
+}
@@ -0,0 +1,83 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.junit.util;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import etomica.util.EventCalendarQueue;
+import etomica.util.EventHeap;
+import etomica.util.EventQueue;
+import etomica.util.TreeLinker;
+import etomica.util.TreeList;
+
+/**
+ * Exercises the EventQueue implementations with random additions, removals
+ * and key shifts, checking the first element against a direct search.
+ */
+public class EventQueueTest extends TestCase {
+
+    protected void checkQueue(EventQueue queue) {
+        Random random = new Random(11);
+        int n = 2000;
+        TreeLinker[] linkers = new TreeLinker[n];
+        boolean[] inQueue = new boolean[n];
+        for (int i=0; i<n; i++) {
+            linkers[i] = new TreeLinker(Integer.valueOf(i));
+        }
+        for (int step=0; step<100000; step++) {
+            int i = random.nextInt(n);
+            if (inQueue[i]) {
+                queue.remove(linkers[i]);
+                inQueue[i] = false;
+            }
+            else {
+                // mostly later than now, like collision times; some never
+                linkers[i].sortKey = random.nextInt(20) == 0 ? Double.POSITIVE_INFINITY : random.nextDouble();
+                queue.add(linkers[i]);
+                inQueue[i] = true;
+            }
+            if (step % 1000 == 0) {
+                // everything moves forward in time
+                double dt = 0.01*random.nextDouble();
+                for (int j=0; j<n; j++) {
+                    if (inQueue[j]) {
+                        linkers[j].sortKey -= dt;
+                    }
+                }
+                queue.keysDecremented(dt);
+                queue.check();
+            }
+            TreeLinker first = null;
+            for (int j=0; j<n; j++) {
+                if (inQueue[j] && (first == null || linkers[j].sortKey < first.sortKey)) {
+                    first = linkers[j];
+                }
+            }
+            Object firstObj = queue.firstElement();
+            if (first == null) {
+                assertNull(firstObj);
+            }
+            else {
+                assertEquals(first.sortKey, linkers[((Integer)firstObj).intValue()].sortKey);
+            }
+        }
+        queue.reset();
+        assertNull(queue.firstElement());
+        queue.check();
+    }
+
+    public void testTreeList() {
+        checkQueue(new TreeList());
+    }
+
+    public void testHeap() {
+        checkQueue(new EventHeap());
+    }
+
+    public void testCalendar() {
+        checkQueue(new EventCalendarQueue());
+    }
+}
@@ -0,0 +1,115 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.junit.virial;
+
+import junit.framework.TestCase;
+import etomica.api.IAtomList;
+import etomica.api.IRandom;
+import etomica.potential.P2LennardJones;
+import etomica.simulation.Simulation;
+import etomica.space.ISpace;
+import etomica.space.IVectorRandom;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.RandomMersenneTwister;
+import etomica.virial.BoxCluster;
+import etomica.virial.ClusterAbstract;
+import etomica.virial.ClusterBonds;
+import etomica.virial.ClusterSum;
+import etomica.virial.ClusterSumMultibody;
+import etomica.virial.ClusterWeightAbs;
+import etomica.virial.ClusterWheatleySoft;
+import etomica.virial.MCMoveClusterAtom;
+import etomica.virial.MayerFunction;
+import etomica.virial.MayerFunctionNonAdditive;
+import etomica.virial.MayerGeneralSpherical;
+
+/**
+ * Checks that clusters updating only the bonds of the moved point give the
+ * same values as clusters recomputing everything, for a sequence of accepted
+ * and rejected single-atom moves.
+ */
+public class ClusterIncrementalTest extends TestCase {
+
+    public void testSingleAtomMoves() {
+        int n = 5;
+        ISpace space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species);
+        MayerFunction f = new MayerGeneralSpherical(new P2LennardJones(space));
+
+        ClusterWheatleySoft wheatley = new ClusterWheatleySoft(n, f, 0);
+        ClusterWheatleySoft wheatleyFull = new ClusterWheatleySoft(n, f, 0);
+        wheatleyFull.setDoIncremental(false);
+        int[][][] ring = new int[][][]{{{0,1},{1,2},{2,3},{3,4},{0,4}}};
+        ClusterSum sum = new ClusterSum(new ClusterBonds[]{new ClusterBonds(n, ring)}, new double[]{1}, new MayerFunction[]{f});
+        ClusterSum sumFull = new ClusterSum(new ClusterBonds[]{new ClusterBonds(n, ring)}, new double[]{1}, new MayerFunction[]{f});
+        sumFull.setDoIncremental(false);
+        ClusterAbstract[] clusters = new ClusterAbstract[]{wheatley, wheatleyFull, sum, sumFull};
+        for (int i=0; i<clusters.length; i++) {
+            clusters[i].setTemperature(1.0);
+        }
+
+        BoxCluster box = new BoxCluster(new ClusterWeightAbs(wheatley), space);
+        sim.addBox(box);
+        box.setNMolecules(species, n);
+        IRandom random = new RandomMersenneTwister(7);
+        IAtomList leafList = box.getLeafList();
+        IVectorRandom r = (IVectorRandom)space.makeVector();
+        for (int i=0; i<n; i++) {
+            r.setRandomCube(random);
+            leafList.getAtom(i).getPosition().E(r);
+        }
+        box.trialNotify();
+        box.acceptNotify();
+
+        MCMoveClusterAtom move = new MCMoveClusterAtom(random, space);
+        move.setBox(box);
+        move.setStepSize(0.5);
+        for (int i=0; i<2000; i++) {
+            // evaluate the full clusters before the move as well, so that
+            // they see the same configurations
+            checkValues(box, clusters);
+            move.doTrial();
+            assertTrue(box.getCPairSet().getMovedPoint() >= 0);
+            checkValues(box, clusters);
+            if (random.nextInt(2) == 0) {
+                move.acceptNotify();
+            }
+            else {
+                move.rejectNotify();
+            }
+        }
+    }
+
+    /**
+     * Checks that copies keep the incremental setting.
+     */
+    public void testCopy() {
+        int n = 5;
+        ISpace space = Space3D.getInstance();
+        MayerFunction f = new MayerGeneralSpherical(new P2LennardJones(space));
+        int[][][] ring = new int[][][]{{{0,1},{1,2},{2,3},{3,4},{0,4}}};
+        ClusterSum sum = new ClusterSum(new ClusterBonds[]{new ClusterBonds(n, ring)}, new double[]{1}, new MayerFunction[]{f});
+        ClusterSum multibody = new ClusterSumMultibody(new ClusterBonds[]{new ClusterBonds(n, ring)}, new double[]{1},
+                new MayerFunction[]{f}, new MayerFunctionNonAdditive[0]);
+        ClusterSum[] clusters = new ClusterSum[]{sum, multibody};
+        for (int i=0; i<clusters.length; i++) {
+            clusters[i].setTemperature(1.0);
+            clusters[i].setDoIncremental(false);
+            ClusterSum copy = (ClusterSum)clusters[i].makeCopy();
+            assertSame(clusters[i].getClass(), copy.getClass());
+            assertFalse(copy.isDoIncremental());
+        }
+    }
+
+    protected void checkValues(BoxCluster box, ClusterAbstract[] clusters) {
+        double w = clusters[0].value(box);
+        assertEquals(clusters[1].value(box), w, 1e-12*Math.abs(w));
+        double s = clusters[2].value(box);
+        assertEquals(clusters[3].value(box), s, 1e-12*Math.abs(s));
+    }
+}
@@ -0,0 +1,87 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.junit.virial;
+
+import junit.framework.TestCase;
+import etomica.api.IAtomList;
+import etomica.api.IRandom;
+import etomica.simulation.Simulation;
+import etomica.space.ISpace;
+import etomica.space.IVectorRandom;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.RandomMersenneTwister;
+import etomica.virial.BoxCluster;
+import etomica.virial.ClusterWeightAbs;
+import etomica.virial.ClusterWheatleyHS;
+import etomica.virial.ClusterWheatleyHSIncremental;
+import etomica.virial.MayerHardSphere;
+
+/**
+ * Checks that ClusterWheatleyHSIncremental gives the same values as
+ * ClusterWheatleyHS for a sequence of single-atom and multi-atom moves, some
+ * accepted and some rejected.
+ */
+public class ClusterWheatleyHSIncrementalTest extends TestCase {
+
+    public void testValues() {
+        int n = 7;
+        ISpace space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species);
+        ClusterWheatleyHS cluster = new ClusterWheatleyHS(n, new MayerHardSphere(1.0));
+        ClusterWheatleyHSIncremental incCluster = new ClusterWheatleyHSIncremental(n, new MayerHardSphere(1.0));
+        cluster.setTemperature(1.0);
+        incCluster.setTemperature(1.0);
+        BoxCluster box = new BoxCluster(new ClusterWeightAbs(cluster), space);
+        sim.addBox(box);
+        box.setNMolecules(species, n);
+        IRandom random = new RandomMersenneTwister(5);
+        IAtomList leafList = box.getLeafList();
+        IVectorRandom step = (IVectorRandom)space.makeVector();
+        for (int i=0; i<n; i++) {
+            step.setRandomCube(random);
+            step.TE(0.5);
+            leafList.getAtom(i).getPosition().E(step);
+        }
+        box.trialNotify();
+        box.acceptNotify();
+        assertEquals(cluster.value(box), incCluster.value(box), 0);
+
+        int nonZero = 0;
+        for (int i=0; i<5000; i++) {
+            // mostly single-atom moves, with an occasional 2-atom move
+            int nMove = random.nextInt(10) == 0 ? 2 : 1;
+            int[] moved = new int[nMove];
+            for (int j=0; j<nMove; j++) {
+                moved[j] = random.nextInt(n);
+                step.setRandomCube(random);
+                leafList.getAtom(moved[j]).getPosition().PE(step);
+            }
+            box.trialNotify();
+            double value = cluster.value(box);
+            assertEquals(value, incCluster.value(box), 0);
+            if (value != 0) nonZero++;
+            if (value != 0 && random.nextInt(3) > 0) {
+                box.acceptNotify();
+            }
+            else {
+                for (int j=0; j<nMove; j++) {
+                    step.setRandomCube(random);
+                    step.TE(0.5);
+                    leafList.getAtom(moved[j]).getPosition().E(step);
+                }
+                box.rejectNotify();
+                box.trialNotify();
+                box.acceptNotify();
+                assertEquals(cluster.value(box), incCluster.value(box), 0);
+            }
+        }
+        assertTrue(nonZero > 100);
+        assertTrue(incCluster.getPartialFQCount() > 0);
+        assertTrue(incCluster.getPartialFCCount() > 0);
+    }
+}
@@ -0,0 +1,70 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.junit.virial;
+
+import junit.framework.TestCase;
+import etomica.api.IBox;
+import etomica.api.IMoleculeList;
+import etomica.api.IPotential;
+import etomica.chem.elements.ElementSimple;
+import etomica.space.ISpace;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.virial.ClusterAbstract;
+import etomica.virial.ClusterSinglyConnected;
+import etomica.virial.ClusterWeightAbs;
+import etomica.virial.ClusterWheatleyHS;
+import etomica.virial.MCMoveClusterAtomHSTree;
+import etomica.virial.MayerFunction;
+import etomica.virial.MayerHardSphere;
+import etomica.virial.ParallelMayerSampling;
+import etomica.virial.cluster.Standard;
+import etomica.virial.simulations.SimulationVirial;
+
+/**
+ * Computes B3 for hard spheres with several replicas and checks the result
+ * against the exact value.
+ */
+public class ParallelMayerSamplingTest extends TestCase {
+
+    public void testB3() {
+        final ISpace space = Space3D.getInstance();
+        final int nPoints = 3;
+        ParallelMayerSampling.ReplicaFactory factory = new ParallelMayerSampling.ReplicaFactory() {
+            public SimulationVirial makeReplica(int iReplica, int[] seeds) {
+                MayerFunction fRefPos = new MayerFunction() {
+                    public void setBox(IBox box) {}
+                    public IPotential getPotential() {return null;}
+                    public double f(IMoleculeList pair, double r2, double beta) {
+                        return r2 < 1 ? 1 : 0;
+                    }
+                };
+                ClusterAbstract refCluster = new ClusterSinglyConnected(nPoints, fRefPos);
+                ClusterAbstract targetCluster = new ClusterWheatleyHS(nPoints, new MayerHardSphere(1.0));
+                refCluster.setTemperature(1.0);
+                targetCluster.setTemperature(1.0);
+                SimulationVirial sim = new SimulationVirial(space, new SpeciesSpheresMono(space, new ElementSimple("A")),
+                        1.0, ClusterWeightAbs.makeWeightCluster(refCluster), refCluster,
+                        new ClusterAbstract[]{targetCluster}, false, seeds);
+                sim.integrator.getMoveManager().removeMCMove(sim.mcMoveTranslate);
+                sim.integrator.getMoveManager().addMCMove(new MCMoveClusterAtomHSTree(sim.getRandom(), space, 1.0));
+                return sim;
+            }
+        };
+        ParallelMayerSampling runner = new ParallelMayerSampling(factory, 4, new int[]{1, 2, 3});
+        runner.setAccumulatorBlockSize(100);
+        runner.run(20000);
+        assertEquals(4*20000, runner.getAccumulator().getSampleCount());
+        assertEquals(4*200, runner.getAccumulator().getBlockCount());
+
+        double vhs = 4.0/3.0*Math.PI;
+        // integral of the reference (3 trees)
+        double refIntegral = 3*vhs*vhs;
+        double b3 = runner.getRatio(1)*refIntegral;
+        double err = runner.getRatioError(1)*refIntegral;
+        assertTrue(err > 0);
+        assertTrue("B3 "+b3+" +/- "+err, Math.abs(b3 - Standard.BHS(nPoints, 1.0)) < 5*err);
+    }
+}
@@ -33,7 +33,7 @@ public class IntegratorKMC extends IntegratorBox{
     IRandom random;
     ISimulation sim;
     ISpecies [] species;
-    IVectorMutable [] minPosition, currentSaddle, previousSaddle;
+    IVectorMutable [] minPosition;
     double[] saddleVib;
     double massSec;
     double[] saddleEnergies;
@@ -49,7 +49,11 @@ public class IntegratorKMC extends IntegratorBox{
     int searchlimit;
     SimulationGraphic graphic;
     XYZWriter xyzfile;
+    String xyzFileName;
     BoxImposePbc imposePbc;
+    KMCStateCatalog catalog;
+    KMCStateCatalog.State currentState;
+    ParallelDimerSearch parallelSearch;
     
     public IntegratorKMC(ISimulation _sim, IPotentialMaster _potentialMaster, double _temperature, IRandom _random, ISpecies [] _species, ISpace _space){
         super(_potentialMaster, _temperature);
@@ -62,6 +66,7 @@ public class IntegratorKMC extends IntegratorBox{
         
         searchlimit = 5;
         tau = 0;
+        xyzFileName = "kmc-lj-3.xyz";
         
                 
         // TODO Auto-generated constructor stub
@@ -70,54 +75,58 @@ public class IntegratorKMC extends IntegratorBox{
     @Override
     protected void doStepInternal(){
         
-        //Dimer Searches from minimum
-        goodSearch = 0;
-        while(search){
-            loadConfiguration(stepCounter+"");
-            randomizePositions();
-            try {
-                System.out.println("Initializing dimer.");
-                integratorDimer.reset();
-            } catch (ConfigurationOverlapException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
-            integratorDimer.setFileName("s_"+goodSearch);
-            System.out.println("Searching...");
-            for(int j=0;j<500;j++){
-                imposePbc.actionPerformed();
-                integratorDimer.doStep();
-                if(integratorDimer.saddleFound){
-                    if(checkUniqueSaddle()){
-                        System.out.println("Good search "+goodSearch+", adding saddle data.");
-                        saddleEnergies[goodSearch] = integratorDimer.saddleEnergy;
-                        saddleVib[goodSearch] = integratorDimer.vib.getProductOfFrequencies();
-                    }
-                    goodSearch++;
-                    break;
-                }
-                
+        // Look up the current minimum.  Dimer searches are only done for a
+        // state that hasn't been visited before.
+        currentState = catalog.findState(box);
+        if(currentState == null){
+            currentState = catalog.addState(box, minEnergy, minVib);
+            System.out.println("New state "+currentState.index+".");
+            if(parallelSearch != null){
+                searchSaddlesParallel();
+            }else{
+                searchSaddles();
             }
-            if(goodSearch>searchlimit-1){search = false;}
+        }else{
+            System.out.println("Revisiting state "+currentState.index+", reusing its "+currentState.getProcessCount()+" processes.");
+        }
+        
+        int nProcesses = currentState.getProcessCount();
+        saddleEnergies = new double[nProcesses];
+        saddleVib = new double[nProcesses];
+        rates = new double[nProcesses];
+        for(int i=0; i<nProcesses; i++){
+            saddleEnergies[i] = currentState.getProcess(i).saddleEnergy;
+            saddleVib[i] = currentState.getProcess(i).saddleVib;
         }
-        search = true;
-                
         calcRates();
         int rateNum = chooseRate();
         System.out.println("Rate "+rateNum+" is chosen.");
         System.out.println("Tau is "+tau);
+        KMCStateCatalog.Process process = currentState.getProcess(rateNum);
+        stepCounter++;
+
+        if(process.destination != null){
+            // we've followed this process before; go straight to its minimum
+            catalog.setStoredPositions(box, process.destination);
+            setInitialStateConditions(process.destinationEnergy, process.destinationVib);
+            System.out.println("Known minimum reused.");
+            xyzfile.actionPerformed();
+            return;
+        }
+
         //Minimum Search with random transition
-        integratorMin1.setFileName("s_"+rateNum);
+        double[] saddle = catalog.fromStored(process.saddle);
+        double[] sideA = catalog.fromStored(process.sideA);
+        double[] sideB = catalog.fromStored(process.sideB);
+        integratorMin1.setFileName("kmc_process");
+        integratorMin1.setStartPositions(saddle, sideA, sideB);
         try {
             integratorMin1.reset();
         } catch (ConfigurationOverlapException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
         }
-        writeConfiguration(stepCounter+"_saddle");
         xyzfile.actionPerformed();
-        
-        stepCounter++;
 
         for(int j=0;j<1000;j++){
             System.out.println("Minimum search step...");
@@ -129,11 +138,11 @@ public class IntegratorKMC extends IntegratorBox{
         if(checkMin()){
             minEnergy = integratorMin1.e0;
             minVib = integratorMin1.vib.getProductOfFrequencies();
-            writeConfiguration(stepCounter+"");
             setInitialStateConditions(minEnergy, minVib);
             System.out.println("Good minimum found.");
         }else{
-            integratorMin2.setFileName("s_"+rateNum);
+            integratorMin2.setFileName("kmc_process");
+            integratorMin2.setStartPositions(saddle, sideA, sideB);
             try {
                 integratorMin2.reset();
             } catch (ConfigurationOverlapException e) {
@@ -148,14 +157,79 @@ public class IntegratorKMC extends IntegratorBox{
             }
             minEnergy = integratorMin2.e0;
             minVib = integratorMin2.vib.getProductOfFrequencies();
-            writeConfiguration(stepCounter+"");
             setInitialStateConditions(minEnergy, minVib);
             System.out.println("Good minimum found on second attempt.");
         }
+        process.setDestination(catalog.getStoredPositions(box), minEnergy, minVib);
         xyzfile.actionPerformed();
         
     }
     
+    /**
+     * Runs dimer searches from the current minimum until searchlimit
+     * saddles have been found, adding each new saddle to the current state
+     * as a process.  The minimum is restored from memory before each search.
+     */
+    protected void searchSaddles(){
+        double[] minimum = catalog.getStoredPositions(box);
+        goodSearch = 0;
+        while(goodSearch<searchlimit){
+            catalog.setStoredPositions(box, minimum);
+            randomizePositions();
+            try {
+                System.out.println("Initializing dimer.");
+                integratorDimer.reset();
+            } catch (ConfigurationOverlapException e) {
+                // TODO Auto-generated catch block
+                e.printStackTrace();
+            }
+            integratorDimer.setFileName("s_"+goodSearch);
+            System.out.println("Searching...");
+            for(int j=0;j<500;j++){
+                imposePbc.actionPerformed();
+                integratorDimer.doStep();
+                if(integratorDimer.saddleFound){
+                    if(catalog.findProcess(currentState, box) == null){
+                        System.out.println("Good search "+goodSearch+", adding saddle data.");
+                        currentState.addProcess(new KMCStateCatalog.Process(catalog.getStoredPositions(box),
+                                catalog.getStoredPositions(integratorDimer.box1), catalog.getStoredPositions(integratorDimer.box2),
+                                integratorDimer.saddleEnergy, integratorDimer.vib.getProductOfFrequencies()));
+                    }else{
+                        System.out.println("Duplicate saddle found.");
+                    }
+                    goodSearch++;
+                    break;
+                }
+                
+            }
+        }
+        catalog.setStoredPositions(box, minimum);
+    }
+    
+    /**
+     * Runs searchlimit dimer searches concurrently with the
+     * ParallelDimerSearch, adding each new saddle (and the minimum found
+     * beyond it) to the current state as a process.
+     */
+    protected void searchSaddlesParallel(){
+        ParallelDimerSearch.Result[] results = parallelSearch.search(box, searchlimit);
+        for(int i=0; i<results.length; i++){
+            ParallelDimerSearch.Result result = results[i];
+            if(catalog.findProcess(currentState, box.getBoundary(), result.saddle) != null){
+                System.out.println("Duplicate saddle found.");
+                continue;
+            }
+            System.out.println("Good search "+i+", adding saddle data.");
+            KMCStateCatalog.Process process = new KMCStateCatalog.Process(catalog.toStored(result.saddle),
+                    catalog.toStored(result.sideA), catalog.toStored(result.sideB),
+                    result.saddleEnergy, result.saddleVib);
+            if(result.destination != null){
+                process.setDestination(catalog.toStored(result.destination), result.destinationEnergy, result.destinationVib);
+            }
+            currentState.addProcess(process);
+        }
+    }
+    
     public void setup(){
         search = true;
         saddleVib = new double[searchlimit];
@@ -165,11 +239,8 @@ public class IntegratorKMC extends IntegratorBox{
         beta = 1.0/(temperature*1.3806503E-023);
         stepCounter = 0;     
         imposePbc = new BoxImposePbc(box, space);
-        currentSaddle = new IVectorMutable[box.getMoleculeList().getMoleculeCount()];
-        previousSaddle = new IVectorMutable[box.getMoleculeList().getMoleculeCount()];
-        for(int i=0; i<currentSaddle.length; i++){
-            currentSaddle[i] = space.makeVector();
-            previousSaddle[i] = space.makeVector();
+        if(catalog == null){
+            catalog = new KMCStateCatalog(space, species, 3.5);
         }
         
         try {
@@ -195,6 +266,45 @@ public class IntegratorKMC extends IntegratorBox{
         }  
     }
     
+    /**
+     * Sets the catalog of states and processes.  A catalog restored from a
+     * checkpoint lets a new run reuse the processes found by earlier runs.
+     * If none is set, setup makes one with a fingerprint range of 3.5.
+     */
+    public void setCatalog(KMCStateCatalog newCatalog){
+        catalog = newCatalog;
+    }
+    
+    public KMCStateCatalog getCatalog(){
+        return catalog;
+    }
+    
+    /**
+     * Sets the ParallelDimerSearch used to find the saddles of new states.
+     * The searches then run concurrently on the search's workers (each with
+     * its own copy of the box), and the minima beyond the saddles are found
+     * as part of the search.  If null (the default), the searches are done
+     * one after another with this integrator's own dimer integrators.
+     */
+    public void setParallelSearch(ParallelDimerSearch newParallelSearch){
+        parallelSearch = newParallelSearch;
+    }
+    
+    public ParallelDimerSearch getParallelSearch(){
+        return parallelSearch;
+    }
+    
+    /**
+     * Sets the file that the configuration is appended to at each step.
+     * Default is "kmc-lj-3.xyz".
+     */
+    public void setXYZFileName(String fileName){
+        xyzFileName = fileName;
+        if(xyzfile != null){
+            xyzfile.setFileName(fileName);
+        }
+    }
+    
     public void setSearchLimit(int limit){
         searchlimit = limit;
     }
@@ -218,12 +328,13 @@ public class IntegratorKMC extends IntegratorBox{
         
     public void calcRates(){
         //convert energies to Joules and use hTST
+        // saddleEnergies and minEnergy are left in simulation units
         double rateSum = 0;
-        minEnergy = Joule.UNIT.fromSim(minEnergy);
+        double minEnergyJ = Joule.UNIT.fromSim(minEnergy);
         for(int i=0; i<rates.length; i++){
             if(saddleEnergies[i]==0){continue;}
-            saddleEnergies[i] = Joule.UNIT.fromSim(saddleEnergies[i]);
-            rates[i] = (minVib / saddleVib[i] / massSec)* Math.exp( -(saddleEnergies[i] - minEnergy)*beta);
+            double saddleEnergyJ = Joule.UNIT.fromSim(saddleEnergies[i]);
+            rates[i] = (minVib / saddleVib[i] / massSec)* Math.exp( -(saddleEnergyJ - minEnergyJ)*beta);
             rateSum += rates[i];
         }
         //compute residence time
@@ -256,27 +367,6 @@ public class IntegratorKMC extends IntegratorBox{
         return rt;
     }
     
-    private boolean checkUniqueSaddle(){    
-        for(int p=0; p<box.getMoleculeList().getMoleculeCount(); p++){
-            currentSaddle[p].E(box.getMoleculeList().getMolecule(p).getChildList().getAtom(0).getPosition());
-        }
-        for(int i=0; i<goodSearch; i++){
-            double positionDiff = 0;
-            loadConfiguration("s_"+i+"_saddle");
-            for(int j=0; j<box.getMoleculeList().getMoleculeCount(); j++){
-                previousSaddle[j].E(box.getMoleculeList().getMolecule(j).getChildList().getAtom(0).getPosition());
-                previousSaddle[j].ME(currentSaddle[j]);
-                positionDiff += previousSaddle[j].squared();
-            }
-            if(positionDiff < 0.5){
-                System.out.println("Duplicate saddle found.");
-                return false;
-            }
-        }
-        System.out.println("Unique saddle found.");
-        return true;  
-    }
-    
     private double truncate(double numA, int digits){
         digits = (int)Math.pow(10,digits);
         numA = (long)(digits*numA);
@@ -319,7 +409,7 @@ public class IntegratorKMC extends IntegratorBox{
                 
         xyzfile = new XYZWriter(box);
         xyzfile.setIsAppend(true);
-        xyzfile.setFileName("kmc-lj-3.xyz");
+        xyzfile.setFileName(xyzFileName);
     }
     
 
@@ -0,0 +1,515 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.kmc;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import etomica.api.IAtomList;
+import etomica.api.IBoundary;
+import etomica.api.IBox;
+import etomica.api.IMoleculeList;
+import etomica.api.ISpecies;
+import etomica.api.IVector;
+import etomica.api.IVectorMutable;
+import etomica.space.ISpace;
+import etomica.util.Checkpointable;
+
+/**
+ * In-memory catalog of the minima (states) visited by a kinetic Monte Carlo
+ * simulation and the saddles (processes) found from each of them, so that
+ * a state that is visited again reuses its processes instead of repeating
+ * the saddle searches.
+ * <p>
+ * Only the atoms of the movable species (the first atom of each molecule)
+ * are stored; all other atoms are assumed not to move.  Each state is keyed
+ * by a fingerprint that does not depend on the order of the atoms: for each
+ * movable atom, a smooth coordination number
+ * sum_j (1-(r_ij/rc)^2)^2 over all atoms j within rc, sorted within each
+ * species.  States whose fingerprints agree within the fingerprint tolerance
+ * are candidates; a candidate matches if each movable atom can be paired
+ * with a stored atom of the same species within the position tolerance.
+ * The pairing is kept as a permutation (see getPermutation) and used to map
+ * stored saddle and minimum positions onto the atoms of the box.
+ * <p>
+ * The catalog can be saved with the rest of a simulation through
+ * SimulationCheckpoint.
+ */
+public class KMCStateCatalog implements Checkpointable {
+
+    /**
+     * @param species the movable species
+     * @param fingerprintRange the range rc used for the fingerprint
+     */
+    public KMCStateCatalog(ISpace space, ISpecies[] species, double fingerprintRange) {
+        this.space = space;
+        this.species = species;
+        this.fingerprintRange = fingerprintRange;
+        fingerprintTolerance = 1e-3;
+        positionTolerance = 0.2;
+        states = new ArrayList<State>();
+        stateMap = new TreeMap<Double,ArrayList<State>>();
+        dr = space.makeVector();
+        permutation = new int[0];
+    }
+
+    /**
+     * Sets the largest difference in any element of the fingerprint for
+     * which two states can match.  Default is 0.001.
+     */
+    public void setFingerprintTolerance(double newTolerance) {
+        fingerprintTolerance = newTolerance;
+    }
+
+    public double getFingerprintTolerance() {
+        return fingerprintTolerance;
+    }
+
+    /**
+     * Sets the largest distance between an atom and its stored counterpart
+     * for which two states (or two saddles) match.  Default is 0.2.
+     */
+    public void setPositionTolerance(double newTolerance) {
+        positionTolerance = newTolerance;
+    }
+
+    public double getPositionTolerance() {
+        return positionTolerance;
+    }
+
+    public int getStateCount() {
+        return states.size();
+    }
+
+    public State getState(int i) {
+        return states.get(i);
+    }
+
+    /**
+     * Returns the permutation found by the last call to findState or
+     * addState.  Element i is the index of the stored atom that corresponds
+     * to movable atom i of the box.
+     */
+    public int[] getPermutation() {
+        return permutation;
+    }
+
+    /**
+     * Returns the stored state matching the configuration of the box, or
+     * null if there is none.  If a state is found, getPermutation returns
+     * the mapping from the box's movable atoms to the state's atoms.
+     */
+    public State findState(IBox box) {
+        double[] fingerprint = makeFingerprint(box);
+        double[] positions = getPositions(box);
+        double key = key(fingerprint);
+        double range = fingerprintTolerance*fingerprint.length;
+        for (Map.Entry<Double,ArrayList<State>> entry : stateMap.subMap(key-range, true, key+range, true).entrySet()) {
+            ArrayList<State> candidates = entry.getValue();
+            for (int i=0; i<candidates.size(); i++) {
+                State state = candidates.get(i);
+                if (!fingerprintsMatch(fingerprint, state.fingerprint)) continue;
+                if (matchPositions(box, positions, state.positions)) {
+                    return state;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds the configuration of the box as a new state with the given
+     * energy and product of vibrational frequencies, and returns it.  The
+     * permutation is set to the identity.
+     */
+    public State addState(IBox box, double energy, double vib) {
+        State state = new State(states.size(), makeFingerprint(box), getPositions(box), energy, vib);
+        addState(state);
+        permutation = new int[0];
+        checkPermutation(state.positions.length/space.D());
+        return state;
+    }
+
+    /**
+     * Resets the permutation to the identity if it isn't for n atoms (no
+     * state has been looked up yet).
+     */
+    protected void checkPermutation(int n) {
+        if (permutation.length == n) return;
+        permutation = new int[n];
+        for (int i=0; i<n; i++) {
+            permutation[i] = i;
+        }
+    }
+
+    protected void addState(State state) {
+        states.add(state);
+        Double key = key(state.fingerprint);
+        ArrayList<State> list = stateMap.get(key);
+        if (list == null) {
+            list = new ArrayList<State>(1);
+            stateMap.put(key, list);
+        }
+        list.add(state);
+    }
+
+    /**
+     * Returns the process of the given state whose saddle matches the
+     * configuration of the box (using the current permutation), or null if
+     * the saddle is new.
+     */
+    public Process findProcess(State state, IBox box) {
+        return findProcess(state, box.getBoundary(), getPositions(box));
+    }
+
+    /**
+     * Returns the process of the given state whose saddle matches the given
+     * positions (in the order returned by getPositions), or null if the
+     * saddle is new.
+     */
+    public Process findProcess(State state, IBoundary boundary, double[] positions) {
+        double tol2 = positionTolerance*positionTolerance;
+        int D = space.D();
+        checkPermutation(positions.length/D);
+        for (int p=0; p<state.processes.size(); p++) {
+            double[] saddle = state.processes.get(p).saddle;
+            boolean match = true;
+            for (int i=0; i<permutation.length && match; i++) {
+                for (int k=0; k<D; k++) {
+                    dr.setX(k, positions[i*D+k] - saddle[permutation[i]*D+k]);
+                }
+                boundary.nearestImage(dr);
+                match = dr.squared() < tol2;
+            }
+            if (match) return state.processes.get(p);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the positions of the movable atoms of the box (in the order of
+     * the current permutation's stored atoms) so they can be kept in a
+     * Process.
+     */
+    public double[] getStoredPositions(IBox box) {
+        return toStored(getPositions(box));
+    }
+
+    /**
+     * Returns the given positions (in the order returned by getPositions)
+     * rearranged into the order of the current permutation's stored atoms.
+     */
+    public double[] toStored(double[] positions) {
+        double[] stored = new double[positions.length];
+        int D = space.D();
+        checkPermutation(positions.length/D);
+        for (int i=0; i<permutation.length; i++) {
+            System.arraycopy(positions, i*D, stored, permutation[i]*D, D);
+        }
+        return stored;
+    }
+
+    /**
+     * Returns the given stored positions rearranged into the order of the
+     * box's movable atoms (the order returned by getPositions), using the
+     * current permutation.
+     */
+    public double[] fromStored(double[] stored) {
+        double[] positions = new double[stored.length];
+        int D = space.D();
+        checkPermutation(stored.length/D);
+        for (int i=0; i<permutation.length; i++) {
+            System.arraycopy(stored, permutation[i]*D, positions, i*D, D);
+        }
+        return positions;
+    }
+
+    /**
+     * Sets the positions of the box's movable atoms from the given stored
+     * positions, using the current permutation.
+     */
+    public void setStoredPositions(IBox box, double[] stored) {
+        int D = space.D();
+        checkPermutation(stored.length/D);
+        int n = 0;
+        for (int s=0; s<species.length; s++) {
+            IMoleculeList molecules = box.getMoleculeList(species[s]);
+            for (int i=0; i<molecules.getMoleculeCount(); i++) {
+                IVectorMutable r = molecules.getMolecule(i).getChildList().getAtom(0).getPosition();
+                int j = permutation[n++];
+                for (int k=0; k<D; k++) {
+                    r.setX(k, stored[j*D+k]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the positions of the first atom of each molecule of the
+     * movable species, one species after another.
+     */
+    public double[] getPositions(IBox box) {
+        int D = space.D();
+        int n = 0;
+        for (int s=0; s<species.length; s++) {
+            n += box.getNMolecules(species[s]);
+        }
+        double[] positions = new double[n*D];
+        n = 0;
+        for (int s=0; s<species.length; s++) {
+            IMoleculeList molecules = box.getMoleculeList(species[s]);
+            for (int i=0; i<molecules.getMoleculeCount(); i++) {
+                IVector r = molecules.getMolecule(i).getChildList().getAtom(0).getPosition();
+                for (int k=0; k<D; k++) {
+                    positions[n*D+k] = r.getX(k);
+                }
+                n++;
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Returns the fingerprint of the box's configuration: the smooth
+     * coordination number of each movable atom, sorted within each species.
+     */
+    public double[] makeFingerprint(IBox box) {
+        IBoundary boundary = box.getBoundary();
+        IAtomList leafList = box.getLeafList();
+        double rc2 = fingerprintRange*fingerprintRange;
+        int n = 0;
+        for (int s=0; s<species.length; s++) {
+            n += box.getNMolecules(species[s]);
+        }
+        double[] fingerprint = new double[n];
+        n = 0;
+        for (int s=0; s<species.length; s++) {
+            IMoleculeList molecules = box.getMoleculeList(species[s]);
+            int start = n;
+            for (int i=0; i<molecules.getMoleculeCount(); i++) {
+                IVector ri = molecules.getMolecule(i).getChildList().getAtom(0).getPosition();
+                double sum = 0;
+                for (int j=0; j<leafList.getAtomCount(); j++) {
+                    dr.Ev1Mv2(leafList.getAtom(j).getPosition(), ri);
+                    boundary.nearestImage(dr);
+                    double r2 = dr.squared();
+                    if (r2 >= rc2 || r2 == 0) continue;
+                    double x = 1 - r2/rc2;
+                    sum += x*x;
+                }
+                fingerprint[n++] = sum;
+            }
+            Arrays.sort(fingerprint, start, n);
+        }
+        return fingerprint;
+    }
+
+    protected static double key(double[] fingerprint) {
+        double sum = 0;
+        for (int i=0; i<fingerprint.length; i++) {
+            sum += fingerprint[i];
+        }
+        return sum;
+    }
+
+    protected boolean fingerprintsMatch(double[] f1, double[] f2) {
+        if (f1.length != f2.length) return false;
+        for (int i=0; i<f1.length; i++) {
+            if (Math.abs(f1[i]-f2[i]) > fingerprintTolerance) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Pairs each atom in positions with an unused atom of the same species
+     * in stored within the position tolerance.  If every atom is paired, the
+     * pairing is kept as the permutation and true is returned.
+     */
+    protected boolean matchPositions(IBox box, double[] positions, double[] stored) {
+        if (positions.length != stored.length) return false;
+        IBoundary boundary = box.getBoundary();
+        int D = space.D();
+        int n = positions.length/D;
+        int[] newPermutation = new int[n];
+        boolean[] used = new boolean[n];
+        double tol2 = positionTolerance*positionTolerance;
+        // atoms of each species form a contiguous block.  the movable
+        // species can't change their number of molecules, so the blocks are
+        // the same for the stored state
+        int start = 0;
+        for (int s=0; s<species.length; s++) {
+            int end = start + box.getNMolecules(species[s]);
+            for (int i=start; i<end; i++) {
+                int match = -1;
+                // most often, nothing has been permuted
+                if (!used[i] && distance2(boundary, positions, i, stored, i) < tol2) {
+                    match = i;
+                }
+                for (int j=start; j<end && match == -1; j++) {
+                    if (used[j]) continue;
+                    if (distance2(boundary, positions, i, stored, j) < tol2) {
+                        match = j;
+                    }
+                }
+                if (match == -1) return false;
+                used[match] = true;
+                newPermutation[i] = match;
+            }
+            start = end;
+        }
+        permutation = newPermutation;
+        return true;
+    }
+
+    protected double distance2(IBoundary boundary, double[] p1, int i, double[] p2, int j) {
+        int D = space.D();
+        for (int k=0; k<D; k++) {
+            dr.setX(k, p1[i*D+k] - p2[j*D+k]);
+        }
+        boundary.nearestImage(dr);
+        return dr.squared();
+    }
+
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        out.writeInt(states.size());
+        for (int i=0; i<states.size(); i++) {
+            State state = states.get(i);
+            out.writeDouble(state.energy);
+            out.writeDouble(state.vib);
+            writeArray(out, state.fingerprint);
+            writeArray(out, state.positions);
+            out.writeInt(state.processes.size());
+            for (int p=0; p<state.processes.size(); p++) {
+                Process process = state.processes.get(p);
+                out.writeDouble(process.saddleEnergy);
+                out.writeDouble(process.saddleVib);
+                writeArray(out, process.saddle);
+                writeArray(out, process.sideA);
+                writeArray(out, process.sideB);
+                out.writeBoolean(process.destination != null);
+                if (process.destination != null) {
+                    out.writeDouble(process.destinationEnergy);
+                    out.writeDouble(process.destinationVib);
+                    writeArray(out, process.destination);
+                }
+            }
+        }
+    }
+
+    public void readCheckpoint(DataInput in) throws IOException {
+        states.clear();
+        stateMap.clear();
+        int nStates = in.readInt();
+        for (int i=0; i<nStates; i++) {
+            double energy = in.readDouble();
+            double vib = in.readDouble();
+            double[] fingerprint = readArray(in);
+            State state = new State(i, fingerprint, readArray(in), energy, vib);
+            int nProcesses = in.readInt();
+            for (int p=0; p<nProcesses; p++) {
+                double saddleEnergy = in.readDouble();
+                double saddleVib = in.readDouble();
+                Process process = new Process(readArray(in), readArray(in), readArray(in), saddleEnergy, saddleVib);
+                if (in.readBoolean()) {
+                    double destinationEnergy = in.readDouble();
+                    double destinationVib = in.readDouble();
+                    process.setDestination(readArray(in), destinationEnergy, destinationVib);
+                }
+                state.processes.add(process);
+            }
+            addState(state);
+        }
+    }
+
+    protected static void writeArray(DataOutput out, double[] a) throws IOException {
+        out.writeInt(a.length);
+        for (int i=0; i<a.length; i++) {
+            out.writeDouble(a[i]);
+        }
+    }
+
+    protected static double[] readArray(DataInput in) throws IOException {
+        double[] a = new double[in.readInt()];
+        for (int i=0; i<a.length; i++) {
+            a[i] = in.readDouble();
+        }
+        return a;
+    }
+
+    protected final ISpace space;
+    protected final ISpecies[] species;
+    protected final double fingerprintRange;
+    protected double fingerprintTolerance, positionTolerance;
+    protected final ArrayList<State> states;
+    protected final TreeMap<Double,ArrayList<State>> stateMap;
+    protected final IVectorMutable dr;
+    protected int[] permutation;
+
+    /**
+     * A minimum, with the processes (saddles) found from it.  Positions are
+     * those of the movable atoms, in the order they had when the state was
+     * added.
+     */
+    public static class State {
+        public State(int index, double[] fingerprint, double[] positions, double energy, double vib) {
+            this.index = index;
+            this.fingerprint = fingerprint;
+            this.positions = positions;
+            this.energy = energy;
+            this.vib = vib;
+            processes = new ArrayList<Process>();
+        }
+
+        public int getProcessCount() {
+            return processes.size();
+        }
+
+        public Process getProcess(int i) {
+            return processes.get(i);
+        }
+
+        public void addProcess(Process process) {
+            processes.add(process);
+        }
+
+        public final int index;
+        public final double[] fingerprint, positions;
+        public final double energy, vib;
+        protected final ArrayList<Process> processes;
+    }
+
+    /**
+     * A saddle found from a state: the saddle configuration and the two
+     * dimer images on either side of it, with the saddle's energy and
+     * product of vibrational frequencies.  Once the process has been
+     * followed to its other minimum, that minimum is kept as well.
+     * Positions are in the order of the state's atoms.
+     */
+    public static class Process {
+        public Process(double[] saddle, double[] sideA, double[] sideB, double saddleEnergy, double saddleVib) {
+            this.saddle = saddle;
+            this.sideA = sideA;
+            this.sideB = sideB;
+            this.saddleEnergy = saddleEnergy;
+            this.saddleVib = saddleVib;
+        }
+
+        public void setDestination(double[] newDestination, double energy, double vib) {
+            destination = newDestination;
+            destinationEnergy = energy;
+            destinationVib = vib;
+        }
+
+        public final double[] saddle, sideA, sideB;
+        public final double saddleEnergy, saddleVib;
+        public double[] destination;
+        public double destinationEnergy, destinationVib;
+    }
+}
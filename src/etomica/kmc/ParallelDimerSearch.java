@@ -0,0 +1,412 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.kmc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import etomica.action.BoxImposePbc;
+import etomica.api.IAtomList;
+import etomica.api.IBoundary;
+import etomica.api.IBox;
+import etomica.api.IMoleculeList;
+import etomica.api.IPotentialMaster;
+import etomica.api.IRandom;
+import etomica.api.ISimulation;
+import etomica.api.ISpecies;
+import etomica.api.IVector;
+import etomica.api.IVectorMutable;
+import etomica.dimer.IntegratorDimerMin;
+import etomica.dimer.IntegratorDimerRT;
+import etomica.exception.ConfigurationOverlapException;
+import etomica.space.ISpace;
+import etomica.util.RandomNumberGeneratorUnix;
+
+/**
+ * Runs the dimer saddle searches for a kinetic Monte Carlo step on several
+ * threads at once.  Each thread has its own SearchWorker: a complete copy of
+ * the simulation (box, species, potentials and random number generator)
+ * made by a WorkerFactory, so the searches share nothing while running and
+ * the number of saddles found per unit time scales with the number of
+ * threads.  This replaces coordinating separate worker processes
+ * (SimKMCworker) through files.
+ *
+ * For each search, a worker copies the configuration of the KMC box,
+ * randomizes the movable atoms, runs IntegratorDimerRT to a saddle and then
+ * runs IntegratorDimerMin from the saddle to find the minimum on the other
+ * side.  The saddles, with their energies and vibrational frequencies, and
+ * the minima are returned as Results, which IntegratorKMC adds to its
+ * catalog and uses to compute its rates.
+ *
+ * The searches are passed to the minimizations in memory.  The dimer
+ * integrators still write their saddles and minima to files; worker i uses
+ * files starting with "kmc_w"+i.
+ */
+public class ParallelDimerSearch {
+
+    /**
+     * Makes the workers.  Each call must construct a new simulation with its
+     * own box, species and potentials, with the same molecules as the KMC
+     * box.
+     */
+    public interface WorkerFactory {
+        /**
+         * Returns a new worker.  The worker's simulation should use the given
+         * seeds for its random number generator.
+         */
+        public SearchWorker makeWorker(int iWorker, int[] seeds);
+    }
+
+    /**
+     * Constructs nWorkers workers using the factory.  Worker i is given the
+     * seeds with i appended, so the workers have independent random number
+     * streams that are reproducible from the given seeds.
+     */
+    public ParallelDimerSearch(WorkerFactory factory, int nWorkers, int[] seeds) {
+        if (nWorkers < 1) {
+            throw new IllegalArgumentException("need at least one worker");
+        }
+        this.seeds = seeds.clone();
+        workers = new SearchWorker[nWorkers];
+        for (int i=0; i<nWorkers; i++) {
+            int[] workerSeeds = new int[seeds.length+1];
+            System.arraycopy(seeds, 0, workerSeeds, 0, seeds.length);
+            workerSeeds[seeds.length] = i;
+            workers[i] = factory.makeWorker(i, workerSeeds);
+            workers[i].setFileName("kmc_w"+i);
+        }
+    }
+
+    /**
+     * Constructs nWorkers workers using the factory, with seeds taken from
+     * the system.
+     */
+    public ParallelDimerSearch(WorkerFactory factory, int nWorkers) {
+        this(factory, nWorkers, RandomNumberGeneratorUnix.getRandSeedArray());
+    }
+
+    /**
+     * Returns the seeds used to make the seeds for the workers.
+     */
+    public int[] getSeeds() {
+        return seeds;
+    }
+
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    public SearchWorker getWorker(int i) {
+        return workers[i];
+    }
+
+    /**
+     * Sets the executor used to run the workers.  If null (the default), a
+     * fixed thread pool with one thread for each worker (up to the number of
+     * processors) is made for each search and shut down afterwards.
+     */
+    public void setExecutor(ExecutorService newExecutor) {
+        executor = newExecutor;
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Finds nSearches saddles starting from the configuration of the given
+     * box, which is not changed.  The searches are divided among the
+     * workers; each worker repeats a search that fails to find a saddle.
+     * The results are returned in order of worker, so that they are
+     * reproducible from the seeds.  Duplicate saddles are not removed.
+     */
+    public Result[] search(IBox box, int nSearches) {
+        IAtomList leafList = box.getLeafList();
+        int D = box.getBoundary().getBoxSize().getD();
+        final double[] start = new double[leafList.getAtomCount()*D];
+        for (int i=0; i<leafList.getAtomCount(); i++) {
+            IVector r = leafList.getAtom(i).getPosition();
+            for (int k=0; k<D; k++) {
+                start[i*D+k] = r.getX(k);
+            }
+        }
+        for (int i=0; i<workers.length; i++) {
+            workers[i].setBoxSize(box.getBoundary().getBoxSize());
+        }
+
+        ExecutorService myExecutor = executor;
+        if (myExecutor == null) {
+            int nThreads = Math.min(workers.length, Runtime.getRuntime().availableProcessors());
+            myExecutor = Executors.newFixedThreadPool(nThreads);
+        }
+        List<Result> results = new ArrayList<Result>(nSearches);
+        try {
+            List<Future<Result[]>> futures = new ArrayList<Future<Result[]>>(workers.length);
+            for (int i=0; i<workers.length; i++) {
+                final SearchWorker worker = workers[i];
+                final int nWorkerSearches = nSearches/workers.length + (i < nSearches%workers.length ? 1 : 0);
+                if (nWorkerSearches == 0) break;
+                futures.add(myExecutor.submit(new Callable<Result[]>() {
+                    public Result[] call() {
+                        Result[] workerResults = new Result[nWorkerSearches];
+                        for (int j=0; j<nWorkerSearches; j++) {
+                            workerResults[j] = worker.search(start);
+                        }
+                        return workerResults;
+                    }
+                }));
+            }
+            for (int i=0; i<futures.size(); i++) {
+                try {
+                    Result[] workerResults = futures.get(i).get();
+                    for (int j=0; j<workerResults.length; j++) {
+                        results.add(workerResults[j]);
+                    }
+                }
+                catch (ExecutionException e) {
+                    throw new RuntimeException("worker "+i+" failed", e.getCause());
+                }
+                catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        finally {
+            if (myExecutor != executor) {
+                myExecutor.shutdown();
+            }
+        }
+        return results.toArray(new Result[results.size()]);
+    }
+
+    protected final SearchWorker[] workers;
+    protected final int[] seeds;
+    protected ExecutorService executor;
+
+    /**
+     * The simulation and integrators used by one thread.  All of the
+     * objects passed to the constructor must belong to this worker alone.
+     */
+    public static class SearchWorker {
+
+        /**
+         * @param sim the worker's simulation; its random number generator is
+         *        used to randomize the starting configurations and dimers
+         * @param potentialMaster the worker's potential master
+         * @param box the worker's box, with the same molecules (in the same
+         *        order) as the KMC box
+         * @param movableSpecies the worker's movable species
+         */
+        public SearchWorker(ISimulation sim, IPotentialMaster potentialMaster, IBox box,
+                ISpecies[] movableSpecies, ISpace space) {
+            this.box = box;
+            this.movableSpecies = movableSpecies;
+            this.space = space;
+            random = sim.getRandom();
+            imposePbc = new BoxImposePbc(box, space);
+            integratorDimer = new IntegratorDimerRT(sim, potentialMaster, movableSpecies, space);
+            integratorDimer.setBox(box);
+            integratorDimer.setRotNum(0);
+            integratorDimer.setOrtho(false, false);
+            integratorMin1 = new IntegratorDimerMin(sim, potentialMaster, movableSpecies, true, space);
+            integratorMin1.setBox(box);
+            integratorMin2 = new IntegratorDimerMin(sim, potentialMaster, movableSpecies, false, space);
+            integratorMin2.setBox(box);
+            workVector = space.makeVector();
+            fileName = "kmc_w";
+        }
+
+        /**
+         * Sets the prefix of the files written by the dimer integrators.
+         */
+        public void setFileName(String newFileName) {
+            fileName = newFileName;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public IBox getBox() {
+            return box;
+        }
+
+        protected void setBoxSize(IVector boxSize) {
+            if (!box.getBoundary().getBoxSize().equals(boxSize)) {
+                box.getBoundary().setBoxSize(boxSize);
+            }
+        }
+
+        /**
+         * Copies the given leaf atom positions into the box, randomizes the
+         * movable atoms and searches until a saddle is found, then searches
+         * for the minimum on the far side of the saddle.
+         */
+        public Result search(double[] start) {
+            IAtomList leafList = box.getLeafList();
+            int D = space.D();
+            if (start.length != leafList.getAtomCount()*D) {
+                throw new IllegalArgumentException("worker box has "+leafList.getAtomCount()+" atoms, but the KMC box has "+(start.length/D));
+            }
+            double[] minimum = null;
+            while (true) {
+                for (int i=0; i<leafList.getAtomCount(); i++) {
+                    IVectorMutable r = leafList.getAtom(i).getPosition();
+                    for (int k=0; k<D; k++) {
+                        r.setX(k, start[i*D+k]);
+                    }
+                }
+                if (minimum == null) {
+                    minimum = getPositions(box);
+                }
+                randomizePositions();
+                integratorDimer.setFileName(fileName);
+                try {
+                    integratorDimer.reset();
+                }
+                catch (ConfigurationOverlapException e) {
+                    e.printStackTrace();
+                }
+                for (int j=0; j<500; j++) {
+                    imposePbc.actionPerformed();
+                    integratorDimer.doStep();
+                    if (integratorDimer.saddleFound) {
+                        break;
+                    }
+                }
+                if (integratorDimer.saddleFound) break;
+            }
+
+            Result result = new Result(getPositions(box), getPositions(integratorDimer.box1),
+                    getPositions(integratorDimer.box2), integratorDimer.saddleEnergy,
+                    integratorDimer.vib.getProductOfFrequencies());
+
+            // follow the saddle downhill
+            IntegratorDimerMin integratorMin = integratorMin1;
+            minimize(integratorMin, result);
+            if (!isNewMinimum(minimum)) {
+                // integratorMin1 went back to where we started; try the other side
+                integratorMin = integratorMin2;
+                minimize(integratorMin, result);
+            }
+            result.destination = getPositions(box);
+            result.destinationEnergy = integratorMin.e0;
+            result.destinationVib = integratorMin.vib.getProductOfFrequencies();
+            return result;
+        }
+
+        protected void minimize(IntegratorDimerMin integratorMin, Result result) {
+            integratorMin.setFileName(fileName);
+            integratorMin.setStartPositions(result.saddle, result.sideA, result.sideB);
+            try {
+                integratorMin.reset();
+            }
+            catch (ConfigurationOverlapException e) {
+                e.printStackTrace();
+            }
+            for (int j=0; j<1000; j++) {
+                integratorMin.doStep();
+                if (integratorMin.minFound) {
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Returns true if the movable atoms of the box have moved away from
+         * the given positions, using the same criterion as
+         * IntegratorKMC.checkMin.
+         */
+        protected boolean isNewMinimum(double[] minimum) {
+            double[] positions = getPositions(box);
+            IBoundary boundary = box.getBoundary();
+            int D = space.D();
+            double positionDiff = 0;
+            for (int i=0; i<positions.length/D; i++) {
+                for (int k=0; k<D; k++) {
+                    workVector.setX(k, positions[i*D+k] - minimum[i*D+k]);
+                }
+                boundary.nearestImage(workVector);
+                positionDiff += workVector.squared();
+            }
+            return positionDiff > 0.5;
+        }
+
+        protected void randomizePositions() {
+            for (int s=0; s<movableSpecies.length; s++) {
+                IMoleculeList molecules = box.getMoleculeList(movableSpecies[s]);
+                for (int i=0; i<molecules.getMoleculeCount(); i++) {
+                    IVectorMutable r = molecules.getMolecule(i).getChildList().getAtom(0).getPosition();
+                    for (int k=0; k<space.D(); k++) {
+                        double offset = random.nextGaussian()/10.0;
+                        if (Math.abs(offset) > 0.1) offset = 0.1;
+                        workVector.setX(k, offset);
+                    }
+                    r.PE(workVector);
+                }
+            }
+        }
+
+        /**
+         * Returns the positions of the first atom of each molecule of the
+         * movable species, in the order used by KMCStateCatalog.getPositions.
+         */
+        protected double[] getPositions(IBox fromBox) {
+            int D = space.D();
+            int n = 0;
+            for (int s=0; s<movableSpecies.length; s++) {
+                n += fromBox.getNMolecules(movableSpecies[s]);
+            }
+            double[] positions = new double[n*D];
+            n = 0;
+            for (int s=0; s<movableSpecies.length; s++) {
+                IMoleculeList molecules = fromBox.getMoleculeList(movableSpecies[s]);
+                for (int i=0; i<molecules.getMoleculeCount(); i++) {
+                    IVector r = molecules.getMolecule(i).getChildList().getAtom(0).getPosition();
+                    for (int k=0; k<D; k++) {
+                        positions[n*D+k] = r.getX(k);
+                    }
+                    n++;
+                }
+            }
+            return positions;
+        }
+
+        protected final IBox box;
+        protected final ISpecies[] movableSpecies;
+        protected final ISpace space;
+        protected final IRandom random;
+        protected final BoxImposePbc imposePbc;
+        protected final IntegratorDimerRT integratorDimer;
+        protected final IntegratorDimerMin integratorMin1, integratorMin2;
+        protected final IVectorMutable workVector;
+        protected String fileName;
+    }
+
+    /**
+     * A saddle found by a worker and the minimum it leads to.  Positions are
+     * those of the movable atoms, in the order used by
+     * KMCStateCatalog.getPositions.
+     */
+    public static class Result {
+        public Result(double[] saddle, double[] sideA, double[] sideB, double saddleEnergy, double saddleVib) {
+            this.saddle = saddle;
+            this.sideA = sideA;
+            this.sideB = sideB;
+            this.saddleEnergy = saddleEnergy;
+            this.saddleVib = saddleVib;
+        }
+
+        public final double[] saddle, sideA, sideB;
+        public final double saddleEnergy, saddleVib;
+        public double[] destination;
+        public double destinationEnergy, destinationVib;
+    }
+}
@@ -31,6 +31,7 @@ import etomica.simulation.Simulation;
 import etomica.space.BoundaryRectangularSlit;
 import etomica.space3d.Space3D;
 import etomica.species.SpeciesSpheresMono;
+import etomica.util.RandomMersenneTwister;
 
 /**
  * Simulation using Henkelman's Dimer method to find a saddle point for
@@ -169,6 +170,32 @@ public class SimKMCLJadatom extends Simulation{
         getController().addAction(activityIntegrateKMC);
     }
     
+    /**
+     * Returns a factory that makes dimer search workers, each with its own
+     * copy of this simulation.  distance and center must be the values
+     * passed to setMovableAtoms.
+     */
+    public static ParallelDimerSearch.WorkerFactory makeWorkerFactory(final double distance, final IVectorMutable center){
+        return new ParallelDimerSearch.WorkerFactory() {
+            public ParallelDimerSearch.SearchWorker makeWorker(int iWorker, int[] seeds) {
+                SimKMCLJadatom workerSim = new SimKMCLJadatom();
+                workerSim.setRandom(new RandomMersenneTwister(seeds));
+                workerSim.setMovableAtoms(distance, center);
+                return new ParallelDimerSearch.SearchWorker(workerSim, workerSim.potentialMaster, workerSim.box,
+                        new ISpecies[]{workerSim.movable}, workerSim.getSpace());
+            }
+        };
+    }
+    
+    /**
+     * Makes the KMC integrator's dimer searches run concurrently on nWorkers
+     * copies of this simulation.  distance and center must be the values
+     * passed to setMovableAtoms.  Must be run after integratorKMC.
+     */
+    public void enableParallelSearch(double distance, IVectorMutable center, int nWorkers){
+        integratorKMC.setParallelSearch(new ParallelDimerSearch(makeWorkerFactory(distance, center), nWorkers));
+    }
+    
     public void integratorKMCCluster(double temp, int steps, int totalSearch){
         integratorKMCCluster = new IntegratorKMCCluster(this, potentialMaster, temp, totalSearch, this.getRandom(), new ISpecies[]{movable}, this.getSpace());
         integratorKMCCluster.setBox(box);
@@ -206,7 +233,11 @@ public void enableDimerSearch(String fileName, long maxSteps){
         sim.integratorKMC();
         sim.integratorKMC.createIntegrators();
         sim.integratorKMC.setInitialStateConditions(-539.543484823175, 3.1145942027562522E72);
-        sim.integratorKMC.setSearchLimit(1);
+        int searchLimit = 5;
+        sim.integratorKMC.setSearchLimit(searchLimit);
+        // each worker does at least one search
+        int nWorkers = Math.min(searchLimit, Runtime.getRuntime().availableProcessors());
+        sim.enableParallelSearch(2.0, vect, nWorkers);
         
         SimulationGraphic simGraphic = new SimulationGraphic(sim, SimulationGraphic.TABBED_PANE, APP_NAME,1, sim.getSpace(), sim.getController());
         simGraphic.getController().getReinitButton().setPostAction(simGraphic.getPaintAction(sim.box));
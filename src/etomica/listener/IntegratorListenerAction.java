@@ -4,11 +4,16 @@
 
 package etomica.listener;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import etomica.action.IAction;
 import etomica.api.IIntegratorEvent;
 import etomica.api.IIntegratorListener;
+import etomica.util.Checkpointable;
 
-public class IntegratorListenerAction implements IIntegratorListener {
+public class IntegratorListenerAction implements IIntegratorListener, Checkpointable {
 
     private IAction action;
     private int interval;
@@ -55,5 +60,16 @@ public class IntegratorListenerAction implements IIntegratorListener {
     public IAction getAction() {
         return action;
     }
+
+    /**
+     * Writes the number of steps since the action was last performed.
+     */
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        out.writeInt(intervalCount);
+    }
+
+    public void readCheckpoint(DataInput in) throws IOException {
+        intervalCount = in.readInt();
+    }
     
 }
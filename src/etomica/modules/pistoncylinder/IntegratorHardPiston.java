@@ -101,7 +101,7 @@ public class IntegratorHardPiston extends IntegratorHard {
                         System.out.println("setting down time "+collisionTime+" for atom "+atom1+" with null");
                     }
                     if (aia.collisionPotential != null) {
-                        aia.eventLinker.remove();
+                        eventList.remove(aia.eventLinker);
                     }
                     aia.setCollision(collisionTime, null, pistonPotential);
                     eventList.add(aia.eventLinker);
@@ -112,6 +112,17 @@ public class IntegratorHardPiston extends IntegratorHard {
         processReverseList();
     }
     
+    /**
+     * Lazy time cannot be used here because the piston is advanced across
+     * each step along with the atoms.
+     */
+    public void setLazyTime(boolean newLazyTime) {
+        if (newLazyTime) {
+            throw new IllegalArgumentException("lazy time cannot be used with the piston");
+        }
+        super.setLazyTime(newLazyTime);
+    }
+
     public void advanceAcrossTimeStep(double tStep) {
         super.advanceAcrossTimeStep(tStep);
         pistonPotential.advanceAcrossTimeStep(tStep);
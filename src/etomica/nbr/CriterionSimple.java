@@ -33,6 +33,11 @@ public class CriterionSimple implements NeighborCriterion, AgentSource<IVectorMu
 		super();
         this.space = _space;
         dr = space.makeVector();
+        drLocal = new ThreadLocal<IVectorMutable>() {
+            protected IVectorMutable initialValue() {
+                return space.makeVector();
+            }
+        };
 		this.interactionRange = interactionRange;
         neighborRadius2 = neighborRadius * neighborRadius;
         setSafetyFactor(0.4);
@@ -111,7 +116,14 @@ public class CriterionSimple implements NeighborCriterion, AgentSource<IVectorMu
 		return r2 > r2MaxSafe;
 	}
 
+	/**
+	 * Returns true if the atoms in the given pair are within the neighbor
+	 * radius.  This method may be called concurrently from multiple threads
+	 * (as is done by NeighborListManager when it has a pool for rebuilding
+	 * the lists).
+	 */
 	public boolean accept(IAtomList pair) {
+        IVectorMutable dr = drLocal.get();
         dr.Ev1Mv2(pair.getAtom(1).getPosition(),pair.getAtom(0).getPosition());
         boundary.nearestImage(dr);
         if (Debug.ON && neighborRadius2 < interactionRange*interactionRange) {
@@ -143,6 +155,7 @@ public class CriterionSimple implements NeighborCriterion, AgentSource<IVectorMu
     protected final ISpace space;
     protected double interactionRange, displacementLimit2, neighborRadius2;
 	protected final IVectorMutable dr;
+	protected final ThreadLocal<IVectorMutable> drLocal;
     protected IBoundary boundary;
 	protected double safetyFactor;
 	protected double r2, r2MaxSafe;
@@ -235,6 +235,26 @@ public class NeighborCellManager implements BoxCellManager, IBoundaryListener, A
         agentManager.setAgent(atom, atomCell);
     }
     
+    /**
+     * Moves the given atom from its current cell to the given cell.
+     */
+    public void reassignCell(IAtom atom, Cell newCell) {
+        Cell oldCell = agentManager.getAgent(atom);
+        if (oldCell != null) {
+            oldCell.removeAtom(atom);
+        }
+        newCell.addAtom(atom);
+        agentManager.setAgent(atom, newCell);
+    }
+
+    /**
+     * Stops tracking the atoms in the box.  The manager should not be used
+     * after this is called.
+     */
+    public void dispose() {
+        agentManager.dispose();
+    }
+
     public IListener makeMCMoveListener() {
         return new MyMCMoveListener(box,this);
     }
@@ -0,0 +1,143 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.nbr.cell;
+
+import etomica.api.IAtomKinetic;
+import etomica.api.IAtomList;
+import etomica.api.IBox;
+import etomica.api.IVector;
+import etomica.api.IVectorMutable;
+import etomica.lattice.CellLattice;
+import etomica.potential.Potential1;
+import etomica.potential.PotentialHard;
+import etomica.space.ISpace;
+import etomica.space.Tensor;
+
+/**
+ * Pseudo-potential whose "collisions" are an atom crossing into a
+ * neighboring cell.  Used as the null potential of IntegratorHard with a
+ * PotentialMasterCell, it moves the atom into its new cell at the moment it
+ * crosses so that collision times only ever need to be computed with the
+ * atoms in neighboring cells; no neighbor lists (and no safety margin) are
+ * needed.  An atom that leaves the box is wrapped back into it.
+ * <p>
+ * The cells must be assigned (NeighborCellManager.assignCellAll) before the
+ * integrator is reset.  Because moving atoms between cells changes the
+ * up/down ordering of neighbors, the integrator must also be told to do a
+ * full neighbor search (IntegratorHard.setFullNeighborSearch).
+ */
+public class P1CellCrossing extends Potential1 implements PotentialHard {
+
+    public P1CellCrossing(ISpace space, PotentialMasterCell potentialMaster) {
+        super(space);
+        this.potentialMaster = potentialMaster;
+        cellIndex = new int[space.D()];
+    }
+
+    public void setBox(IBox box) {
+        super.setBox(box);
+        cellManager = potentialMaster.getNbrCellManager(box);
+    }
+
+    /**
+     * Returns zero.
+     */
+    public double energy(IAtomList a) {
+        return 0.0;
+    }
+
+    /**
+     * Returns zero.
+     */
+    public double energyChange() {
+        return 0.0;
+    }
+
+    public double collisionTime(IAtomList a, double falseTime) {
+        IAtomKinetic atom = (IAtomKinetic)a.getAtom(0);
+        CellLattice lattice = cellManager.getLattice();
+        lattice.latticeIndex(cellManager.getCell(atom).getLatticeArrayIndex(), cellIndex);
+        double tmin = Double.POSITIVE_INFINITY;
+        for (int i=0; i<cellIndex.length; i++) {
+            double t = exitTime(atom, i, falseTime, lattice);
+            if (t < tmin) {
+                tmin = t;
+            }
+        }
+        return tmin + falseTime;
+    }
+
+    /**
+     * Returns the time (after falseTime) at which the atom will leave its
+     * cell (whose index is in cellIndex) in direction i.
+     */
+    protected double exitTime(IAtomKinetic atom, int i, double falseTime, CellLattice lattice) {
+        double v = atom.getVelocity().getX(i);
+        if (v == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double boxLength = lattice.getDimensions().getX(i);
+        double cellLength = lattice.getCellSize()[i];
+        double dx = atom.getPosition().getX(i) + falseTime*v - ((cellIndex[i]+0.5)*cellLength - 0.5*boxLength);
+        dx -= boxLength*Math.rint(dx/boxLength);
+        double t = ((v > 0 ? 0.5 : -0.5)*cellLength - dx)/v;
+        return t < 0 ? 0 : t;
+    }
+
+    /**
+     * Moves the atom into the cell it is entering.
+     */
+    public void bump(IAtomList a, double falseTime) {
+        IAtomKinetic atom = (IAtomKinetic)a.getAtom(0);
+        CellLattice lattice = cellManager.getLattice();
+        lattice.latticeIndex(cellManager.getCell(atom).getLatticeArrayIndex(), cellIndex);
+        double tmin = Double.POSITIVE_INFINITY;
+        int iMin = 0;
+        for (int i=0; i<cellIndex.length; i++) {
+            double t = exitTime(atom, i, falseTime, lattice);
+            if (t < tmin) {
+                tmin = t;
+                iMin = i;
+            }
+        }
+        int[] size = lattice.getSize();
+        IVector dimensions = lattice.getDimensions();
+        IVectorMutable position = atom.getPosition();
+        if (atom.getVelocity().getX(iMin) > 0) {
+            cellIndex[iMin]++;
+            if (cellIndex[iMin] == size[iMin]) {
+                cellIndex[iMin] = 0;
+                position.setX(iMin, position.getX(iMin) - dimensions.getX(iMin));
+            }
+        }
+        else {
+            cellIndex[iMin]--;
+            if (cellIndex[iMin] == -1) {
+                cellIndex[iMin] = size[iMin]-1;
+                position.setX(iMin, position.getX(iMin) + dimensions.getX(iMin));
+            }
+        }
+        cellManager.reassignCell(atom, (Cell)lattice.site(cellIndex));
+    }
+
+    /**
+     * Returns zero.
+     */
+    public double lastCollisionVirial() {
+        return 0;
+    }
+
+    /**
+     * Returns null.
+     */
+    public Tensor lastCollisionVirialTensor() {
+        return null;
+    }
+
+    private static final long serialVersionUID = 1L;
+    protected final PotentialMasterCell potentialMaster;
+    protected NeighborCellManager cellManager;
+    protected final int[] cellIndex;
+}
@@ -4,12 +4,29 @@
 
 package etomica.nbr.cell;
 
+import etomica.api.IAtom;
+import etomica.api.IAtomList;
+import etomica.api.IBoundary;
 import etomica.api.IBox;
+import etomica.api.IMolecule;
+import etomica.api.IPotential;
+import etomica.api.IPotentialAtomic;
 import etomica.api.ISimulation;
+import etomica.api.IVector;
+import etomica.api.IVectorMutable;
+import etomica.atom.AtomPair;
 import etomica.atom.IAtomPositionDefinition;
 import etomica.box.BoxAgentManager;
 import etomica.box.BoxCellManager;
+import etomica.lattice.CellLattice;
+import etomica.nbr.NeighborCriterion;
+import etomica.nbr.PotentialGroupNbr;
 import etomica.nbr.site.PotentialMasterSite;
+import etomica.potential.Potential2SoftSpherical;
+import etomica.potential.PotentialArray;
+import etomica.potential.PotentialCalculationEnergySum;
+import etomica.potential.PotentialMasterTargetEnergy;
+import etomica.potential.PotentialMasterTestParticle;
 import etomica.space.ISpace;
 
 /**
@@ -18,7 +35,7 @@ import etomica.space.ISpace;
  * 
  * @author Andrew Schultz
  */
-public class PotentialMasterCell extends PotentialMasterSite {
+public class PotentialMasterCell extends PotentialMasterSite implements PotentialMasterTargetEnergy, PotentialMasterTestParticle {
 
     /**
      * Creates PotentialMasterCell with default (1.0) range.  Range
@@ -52,6 +69,14 @@ public class PotentialMasterCell extends PotentialMasterSite {
     public PotentialMasterCell(ISimulation sim, double range, BoxAgentSourceCellManager boxAgentSource,
             BoxAgentManager<NeighborCellManager> agentManager, ISpace _space) {
         super(sim, boxAgentSource, agentManager, new Api1ACell(_space.D(),range,agentManager));
+        space = _space;
+        dr = _space.makeVector();
+        targetEnergySum = new PotentialCalculationEnergySum();
+        atomPair = new AtomPair();
+        cellIterator = new CellLattice.NeighborIterator(_space.D(), range);
+        cellIterator.setDirection(null);
+        latticeIndex = new int[_space.D()];
+        periodicity = new boolean[_space.D()];
         setRange(range);
     }
     
@@ -72,6 +97,7 @@ public class PotentialMasterCell extends PotentialMasterSite {
     
     public void setRange(double d) {
         ((Api1ACell)neighborIterator).getNbrCellIterator().setNeighborDistance(d);
+        cellIterator.setNeighborDistance(d);
         ((BoxAgentSourceCellManager)boxAgentSource).setRange(d);
         range = d;
 
@@ -106,5 +132,165 @@ public class PotentialMasterCell extends PotentialMasterSite {
         }
     }
 
+    /**
+     * Returns the energy of the given atom with its neighbors, as calculate
+     * would sum it with the atom as the target (excluding the long-range
+     * correction).  The atom's cell and its neighbor cells are walked
+     * directly, computing each separation once for all pair potentials, and
+     * pair energies of Potential2SoftSpherical are computed from u(r2)
+     * unless the potential overrides energy.
+     */
+    public double computeEnergy(IBox box, IAtom targetAtom) {
+        if (!enabled) return 0;
+        IMolecule parentMolecule = targetAtom.getParentGroup();
+        IPotential[] potentials = getIntraPotentials(parentMolecule.getType()).getPotentials();
+        double sum = 0;
+        if (potentials.length > 0) {
+            targetEnergySum.zeroSum();
+            for (int i=0; i<potentials.length; i++) {
+                potentials[i].setBox(box);
+                ((PotentialGroupNbr)potentials[i]).calculateRangeIndependent(parentMolecule, null, targetAtom, targetEnergySum);
+            }
+            sum = targetEnergySum.getSum();
+        }
+        return sum + computeEnergy(box, targetAtom, getCellManager(box));
+    }
+
+    /**
+     * Returns the energy of the given molecule with its neighbors, as
+     * calculate would sum it with the molecule as the target (excluding the
+     * long-range correction).
+     */
+    public double computeEnergy(IBox box, IMolecule targetMolecule) {
+        if (!enabled) return 0;
+        NeighborCellManager cellManager = getCellManager(box);
+        double sum = 0;
+        IAtomList childList = targetMolecule.getChildList();
+        for (int i=0; i<childList.getAtomCount(); i++) {
+            sum += computeEnergy(box, childList.getAtom(i), cellManager);
+        }
+        IPotential[] potentials = getIntraPotentials(targetMolecule.getType()).getPotentials();
+        if (potentials.length > 0) {
+            targetEnergySum.zeroSum();
+            for (int i=0; i<potentials.length; i++) {
+                potentials[i].setBox(box);
+                ((PotentialGroupNbr)potentials[i]).calculateRangeIndependent(targetMolecule, null, null, targetEnergySum);
+            }
+            sum += targetEnergySum.getSum();
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the cell manager for the given box, with the cell iterator
+     * used by computeEnergy set up for its lattice.
+     */
+    protected NeighborCellManager getCellManager(IBox box) {
+        NeighborCellManager cellManager = (NeighborCellManager)boxAgentManager.getAgent(box);
+        CellLattice lattice = cellManager.getLattice();
+        if (cellIterator.getLattice() != lattice) {
+            cellIterator.setLattice(lattice);
+        }
+        IBoundary boundary = box.getBoundary();
+        for (int i=0; i<periodicity.length; i++) {
+            periodicity[i] = boundary.getPeriodicity(i);
+        }
+        cellIterator.setPeriodicity(periodicity);
+        return cellManager;
+    }
+
+    /**
+     * Returns the energy of the given atom from its ranged potentials with
+     * the atoms in its own cell and its neighbor cells.
+     */
+    protected double computeEnergy(IBox box, IAtom atom, NeighborCellManager cellManager) {
+        PotentialArray potentialArray = getRangedPotentials(atom.getType());
+        IPotential[] potentials = potentialArray.getPotentials();
+        NeighborCriterion[] criteria = potentialArray.getCriteria();
+        double sum = 0;
+        boolean hasPair = false;
+        for (int i=0; i<potentials.length; i++) {
+            potentials[i].setBox(box);
+            switch (potentials[i].nBody()) {
+            case 1:
+                atomSetSinglet.atom = atom;
+                sum += ((IPotentialAtomic)potentials[i]).energy(atomSetSinglet);
+                break;
+            case 2:
+                criteria[i].setBox(box);
+                hasPair = true;
+                break;
+            }
+        }
+        if (!hasPair) return sum;
+
+        IBoundary boundary = box.getBoundary();
+        Cell cell = cellManager.getCell(atom);
+        sum += computeEnergy(atom, cell.occupants(), potentials, criteria, boundary);
+        cellManager.getLattice().latticeIndex(cell.getLatticeArrayIndex(), latticeIndex);
+        cellIterator.setSite(latticeIndex);
+        cellIterator.reset();
+        while (cellIterator.hasNext()) {
+            sum += computeEnergy(atom, ((Cell)cellIterator.next()).occupants(), potentials, criteria, boundary);
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the pair energy of the given atom with each of the atoms in
+     * the list (other than itself).
+     */
+    protected double computeEnergy(IAtom atom, IAtomList list, IPotential[] potentials,
+            NeighborCriterion[] criteria, IBoundary boundary) {
+        IVector ri = atom.getPosition();
+        atomPair.atom0 = atom;
+        double sum = 0;
+        for (int j=0; j<list.getAtomCount(); j++) {
+            IAtom otherAtom = list.getAtom(j);
+            if (otherAtom == atom) continue;
+            atomPair.atom1 = otherAtom;
+            dr.Ev1Mv2(otherAtom.getPosition(), ri);
+            boundary.nearestImage(dr);
+            double r2 = dr.squared();
+            for (int i=0; i<potentials.length; i++) {
+                if (potentials[i].nBody() != 2 || !criteria[i].accept(atomPair)) continue;
+                if (potentials[i] instanceof Potential2SoftSpherical && ((Potential2SoftSpherical)potentials[i]).isEnergyFromU()) {
+                    sum += ((Potential2SoftSpherical)potentials[i]).u(r2);
+                }
+                else {
+                    sum += ((IPotentialAtomic)potentials[i]).energy(atomPair);
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the energy of the given test molecule (which must not be in
+     * the box) with the molecules in the box, plus its intramolecular
+     * energy.  The cells around each test atom are walked without adding
+     * the test molecule to the box.
+     */
+    public double computeTestEnergy(IBox box, IMolecule testMolecule) {
+        if (testParticleBox != box) {
+            testParticleEnergy = makeTestParticleEnergy(box);
+            testParticleBox = box;
+        }
+        return testParticleEnergy.intraEnergy(testMolecule) + testParticleEnergy.energy(testMolecule);
+    }
+
+    public TestParticleEnergy makeTestParticleEnergy(IBox box) {
+        return new TestParticleEnergyCell(this, (NeighborCellManager)boxAgentManager.getAgent(box), box, space);
+    }
+
     private double range;
+    protected final ISpace space;
+    protected final IVectorMutable dr;
+    protected final PotentialCalculationEnergySum targetEnergySum;
+    protected final AtomPair atomPair;
+    protected final CellLattice.NeighborIterator cellIterator;
+    protected final int[] latticeIndex;
+    protected final boolean[] periodicity;
+    protected IBox testParticleBox;
+    protected TestParticleEnergy testParticleEnergy;
 }
@@ -0,0 +1,189 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.nbr.cell;
+
+import etomica.api.IAtom;
+import etomica.api.IAtomList;
+import etomica.api.IBoundary;
+import etomica.api.IBox;
+import etomica.api.IMolecule;
+import etomica.api.IPotential;
+import etomica.api.IPotentialAtomic;
+import etomica.api.IVector;
+import etomica.api.IVectorMutable;
+import etomica.atom.AtomPair;
+import etomica.atom.AtomSetSinglet;
+import etomica.lattice.CellLattice;
+import etomica.nbr.NeighborCriterion;
+import etomica.nbr.PotentialGroupNbr;
+import etomica.nbr.PotentialMasterNbr;
+import etomica.potential.Potential2SoftSpherical;
+import etomica.potential.PotentialArray;
+import etomica.potential.PotentialCalculationEnergySum;
+import etomica.potential.PotentialMasterTestParticle;
+import etomica.space.ISpace;
+
+/**
+ * Computes the energy of a test molecule that is not in the box by walking
+ * the cells of a NeighborCellManager around each of the test molecule's
+ * atoms.  The cell of each test atom is found from its position; the test
+ * atom is not added to the cell.  Neighbor cells are those within the cell
+ * manager's potential range, and pairs are filtered by the potential
+ * master's neighbor criteria.  Pair energies of Potential2SoftSpherical are
+ * computed from u(r2) unless the potential overrides energy.
+ * <p>
+ * Each instance has its own work space, so that separate instances can be
+ * used concurrently.  Potentials acting on more than two atoms are not
+ * handled.
+ *
+ * @see PotentialMasterTestParticle
+ */
+public class TestParticleEnergyCell implements PotentialMasterTestParticle.TestParticleEnergy {
+
+    public TestParticleEnergyCell(PotentialMasterNbr potentialMaster, NeighborCellManager cellManager,
+            IBox box, ISpace space) {
+        this.potentialMaster = potentialMaster;
+        this.cellManager = cellManager;
+        this.box = box;
+        dr = space.makeVector();
+        v = space.makeVector();
+        atomPair = new AtomPair();
+        atomSetSinglet = new AtomSetSinglet();
+        intraEnergySum = new PotentialCalculationEnergySum();
+        neighborDistance = cellManager.getPotentialRange();
+        cellIterator = new CellLattice.NeighborIterator(space.D(), neighborDistance);
+        cellIterator.setDirection(null);
+        latticeIndex = new int[space.D()];
+        periodicity = new boolean[space.D()];
+    }
+
+    public double energy(IMolecule testMolecule) {
+        if (!potentialMaster.isEnabled()) return 0;
+        checkLattice();
+        double sum = 0;
+        IAtomList childList = testMolecule.getChildList();
+        for (int i=0; i<childList.getAtomCount(); i++) {
+            sum += energy(childList.getAtom(i));
+        }
+        return sum;
+    }
+
+    public double intraEnergy(IMolecule testMolecule) {
+        if (!potentialMaster.isEnabled()) return 0;
+        IPotential[] potentials = potentialMaster.getIntraPotentials(testMolecule.getType()).getPotentials();
+        if (potentials.length == 0) return 0;
+        intraEnergySum.zeroSum();
+        for (int i=0; i<potentials.length; i++) {
+            potentials[i].setBox(box);
+            ((PotentialGroupNbr)potentials[i]).calculateRangeIndependent(testMolecule, null, null, intraEnergySum);
+        }
+        return intraEnergySum.getSum();
+    }
+
+    /**
+     * Brings the cell iterator up to date with the cell manager's lattice,
+     * potential range and the box's periodicity.
+     */
+    protected void checkLattice() {
+        CellLattice lattice = cellManager.getLattice();
+        if (cellIterator.getLattice() != lattice) {
+            cellIterator.setLattice(lattice);
+        }
+        if (neighborDistance != cellManager.getPotentialRange()) {
+            neighborDistance = cellManager.getPotentialRange();
+            cellIterator.setNeighborDistance(neighborDistance);
+        }
+        IBoundary boundary = box.getBoundary();
+        for (int i=0; i<periodicity.length; i++) {
+            periodicity[i] = boundary.getPeriodicity(i);
+        }
+        cellIterator.setPeriodicity(periodicity);
+    }
+
+    /**
+     * Returns the energy of the given test atom from its ranged potentials
+     * with the atoms in the cell containing its position and the
+     * neighboring cells.
+     */
+    protected double energy(IAtom atom) {
+        PotentialArray potentialArray = potentialMaster.getRangedPotentials(atom.getType());
+        IPotential[] potentials = potentialArray.getPotentials();
+        NeighborCriterion[] criteria = potentialArray.getCriteria();
+        double sum = 0;
+        boolean hasPair = false;
+        for (int i=0; i<potentials.length; i++) {
+            potentials[i].setBox(box);
+            switch (potentials[i].nBody()) {
+            case 1:
+                atomSetSinglet.atom = atom;
+                sum += ((IPotentialAtomic)potentials[i]).energy(atomSetSinglet);
+                break;
+            case 2:
+                criteria[i].setBox(box);
+                hasPair = true;
+                break;
+            default:
+                throw new RuntimeException("Can't compute test energy with "+potentials[i].nBody()+"-body potential "+potentials[i]);
+            }
+        }
+        if (!hasPair) return sum;
+
+        IBoundary boundary = box.getBoundary();
+        // nearestImage of the position is its central image (and, unlike
+        // centralImage, uses no shared work vector)
+        v.E(atom.getPosition());
+        boundary.nearestImage(v);
+        CellLattice lattice = cellManager.getLattice();
+        Cell cell = (Cell)lattice.site(v);
+        sum += energy(atom, cell.occupants(), potentials, criteria, boundary);
+        lattice.latticeIndex(cell.getLatticeArrayIndex(), latticeIndex);
+        cellIterator.setSite(latticeIndex);
+        cellIterator.reset();
+        while (cellIterator.hasNext()) {
+            sum += energy(atom, ((Cell)cellIterator.next()).occupants(), potentials, criteria, boundary);
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the pair energy of the given test atom with each of the atoms
+     * in the list.
+     */
+    protected double energy(IAtom atom, IAtomList list, IPotential[] potentials,
+            NeighborCriterion[] criteria, IBoundary boundary) {
+        IVector ri = atom.getPosition();
+        atomPair.atom0 = atom;
+        double sum = 0;
+        for (int j=0; j<list.getAtomCount(); j++) {
+            IAtom otherAtom = list.getAtom(j);
+            atomPair.atom1 = otherAtom;
+            dr.Ev1Mv2(otherAtom.getPosition(), ri);
+            boundary.nearestImage(dr);
+            double r2 = dr.squared();
+            for (int i=0; i<potentials.length; i++) {
+                if (potentials[i].nBody() != 2 || !criteria[i].accept(atomPair)) continue;
+                if (potentials[i] instanceof Potential2SoftSpherical && ((Potential2SoftSpherical)potentials[i]).isEnergyFromU()) {
+                    sum += ((Potential2SoftSpherical)potentials[i]).u(r2);
+                }
+                else {
+                    sum += ((IPotentialAtomic)potentials[i]).energy(atomPair);
+                }
+            }
+        }
+        return sum;
+    }
+
+    protected final PotentialMasterNbr potentialMaster;
+    protected final NeighborCellManager cellManager;
+    protected final IBox box;
+    protected final IVectorMutable dr, v;
+    protected final AtomPair atomPair;
+    protected final AtomSetSinglet atomSetSinglet;
+    protected final PotentialCalculationEnergySum intraEnergySum;
+    protected final CellLattice.NeighborIterator cellIterator;
+    protected final int[] latticeIndex;
+    protected final boolean[] periodicity;
+    protected double neighborDistance;
+}
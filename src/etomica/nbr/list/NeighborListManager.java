@@ -4,7 +4,12 @@
 
 package etomica.nbr.list;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import etomica.action.BoxImposePbc;
 import etomica.api.IAtom;
@@ -14,16 +19,20 @@ import etomica.api.IBox;
 import etomica.api.IIntegratorEvent;
 import etomica.api.IIntegratorListener;
 import etomica.api.IPotential;
+import etomica.api.IVectorMutable;
 import etomica.atom.AtomArrayList;
 import etomica.atom.AtomLeafAgentManager;
 import etomica.atom.AtomLeafAgentManager.AgentSource;
 import etomica.atom.AtomSetSinglet;
+import etomica.atom.iterator.IteratorDirective;
 import etomica.nbr.NeighborCriterion;
 import etomica.nbr.cell.Api1ACell;
 import etomica.nbr.cell.ApiAACell;
+import etomica.nbr.cell.Cell;
 import etomica.nbr.cell.NeighborCellManager;
 import etomica.potential.PotentialArray;
 import etomica.space.ISpace;
+import etomica.util.Checkpointable;
 import etomica.util.Debug;
 
 /**
@@ -38,7 +47,7 @@ import etomica.util.Debug;
  * the calculate method of PotentialMasterNbr, passing a
  * PotentialCalculationCellAssign instance as the PotentialCalculation.
  */
-public class NeighborListManager implements IIntegratorListener, AgentSource<AtomNeighborLists> {
+public class NeighborListManager implements IIntegratorListener, AgentSource<AtomNeighborLists>, Checkpointable {
 
     /**
      * Configures instance for use by the given PotentialMaster.
@@ -47,6 +56,7 @@ public class NeighborListManager implements IIntegratorListener, AgentSource<Ato
             IBox box, ISpace space) {
         setUpdateInterval(1);
         this.box = box;
+        this.space = space;
         iieCount = updateInterval;
         pbcEnforcer = new BoxImposePbc(space);
         pbcEnforcer.setBox(box);
@@ -60,6 +70,11 @@ public class NeighborListManager implements IIntegratorListener, AgentSource<Ato
         doApplyPBC = true;
         atomSetSinglet = new AtomSetSinglet();
         eventManager = new NeighborListEventManager();
+        setupChunks = new SetupChunk[0];
+        cellOrder = new int[0];
+        chunkOf = new int[0];
+        chunkStart = new int[1];
+        setupPositions = new double[0];
     }
 
     public void setDoApplyPBC(boolean newDoApplyPBC) {
@@ -70,6 +85,20 @@ public class NeighborListManager implements IIntegratorListener, AgentSource<Ato
         return doApplyPBC;
     }
 
+    /**
+     * Sets whether the positions the lists are built from are recorded, so
+     * that the lists can be written to a checkpoint.  This must be turned on
+     * before the lists are built (SimulationCheckpoint.add does this).
+     * Default is false, which avoids copying the positions at every update.
+     */
+    public void setCheckpointing(boolean newCheckpointing) {
+        checkpointing = newCheckpointing;
+    }
+
+    public boolean isCheckpointing() {
+        return checkpointing;
+    }
+
     public void updateLists() {
         IAtomList leafList = box.getLeafList();
         int nLeaf = leafList.getAtomCount();
@@ -84,6 +113,11 @@ public class NeighborListManager implements IIntegratorListener, AgentSource<Ato
 
 
     public void integratorInitialized(IIntegratorEvent e) {
+        if (skipReset) {
+            // the lists were just restored from a checkpoint
+            skipReset = false;
+            return;
+        }
         reset();
     }
 
@@ -119,6 +153,7 @@ public class NeighborListManager implements IIntegratorListener, AgentSource<Ato
         if (doApplyPBC) {
             pbcEnforcer.actionPerformed();
         }
+        saveSetupPositions();
         neighborSetup();
         iieCount = updateInterval;
     }
@@ -183,6 +218,7 @@ public class NeighborListManager implements IIntegratorListener, AgentSource<Ato
             if (doApplyPBC) {
                 pbcEnforcer.actionPerformed();
             }
+            saveSetupPositions();
             neighborSetup();
             numUpdates++;
             eventManager.neighborsUpdated();
@@ -213,6 +249,163 @@ public class NeighborListManager implements IIntegratorListener, AgentSource<Ato
         return numUpdates;
     }
 
+    /**
+     * Sets the pool used to find neighbors when the lists are rebuilt.  If
+     * null (the default), the lists are built on the calling thread.  The
+     * neighbor criteria must be safe to call from multiple threads if a pool
+     * is used.
+     */
+    public void setPool(ForkJoinPool newPool) {
+        pool = newPool;
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Sets the number of chunks the atoms are divided into when the lists
+     * are rebuilt using a pool.  If 0 (the default), the pool's parallelism
+     * is used.
+     */
+    public void setNumChunks(int newNumChunks) {
+        if (newNumChunks < 0) {
+            throw new IllegalArgumentException("number of chunks must not be negative");
+        }
+        numChunks = newNumChunks;
+    }
+
+    public int getNumChunks() {
+        return numChunks;
+    }
+
+    /**
+     * Returns the number of times neighborSetup has been called (including
+     * calls from reset).
+     */
+    public int getNumSetups() {
+        return numSetups;
+    }
+
+    /**
+     * Returns the wall-clock time (in nanoseconds) taken by the most recent
+     * call to neighborSetup.
+     */
+    public long getLastSetupTime() {
+        return lastSetupTime;
+    }
+
+    /**
+     * Returns the total wall-clock time (in nanoseconds) spent in
+     * neighborSetup.
+     */
+    public long getTotalSetupTime() {
+        return totalSetupTime;
+    }
+
+    /**
+     * Zeros the neighborSetup counter and timers.
+     */
+    public void resetSetupTimers() {
+        numSetups = 0;
+        lastSetupTime = 0;
+        totalSetupTime = 0;
+    }
+
+    /**
+     * Records the atom positions the lists are about to be built from, so
+     * that a checkpoint can rebuild the same lists.  Does nothing unless
+     * checkpointing is on.
+     */
+    protected void saveSetupPositions() {
+        haveSetupPositions = checkpointing;
+        if (!checkpointing) return;
+        IAtomList leafList = box.getLeafList();
+        int nLeaf = leafList.getAtomCount();
+        int dim = space.D();
+        if (setupPositions.length != nLeaf*dim) {
+            setupPositions = new double[nLeaf*dim];
+        }
+        for (int i=0; i<nLeaf; i++) {
+            IVectorMutable p = leafList.getAtom(i).getPosition();
+            for (int j=0; j<dim; j++) {
+                setupPositions[i*dim+j] = p.getX(j);
+            }
+        }
+    }
+
+    /**
+     * Writes the update countdown and the positions from which the lists
+     * were last built.  The lists themselves are not written; they are
+     * rebuilt from those positions when the checkpoint is read, which gives
+     * the same lists (in the same order) and the same displacements for the
+     * neighbor criteria.
+     */
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        if (!haveSetupPositions) {
+            throw new IllegalStateException("positions were not recorded when the lists were built; call setCheckpointing(true) before the integrator is reset");
+        }
+        out.writeInt(iieCount);
+        out.writeInt(numUpdates);
+        out.writeInt(setupPositions.length);
+        for (int i=0; i<setupPositions.length; i++) {
+            out.writeDouble(setupPositions[i]);
+        }
+    }
+
+    /**
+     * Rebuilds the lists written by writeCheckpoint.  The box must already
+     * have been restored.  The next integratorInitialized event (from the
+     * integrator's own restore) will not reset the lists.
+     */
+    public void readCheckpoint(DataInput in) throws IOException {
+        int newIieCount = in.readInt();
+        int newNumUpdates = in.readInt();
+        IAtomList leafList = box.getLeafList();
+        int nLeaf = leafList.getAtomCount();
+        int dim = space.D();
+        int n = in.readInt();
+        if (n != nLeaf*dim) {
+            throw new RuntimeException("checkpoint has "+(n/dim)+" atoms, but the box has "+nLeaf);
+        }
+        double[] restored = new double[n];
+        for (int i=0; i<n; i++) {
+            restored[i] = in.readDouble();
+        }
+
+        // build the lists with the atoms where they were when the lists
+        // were built, then put them back
+        double[] current = new double[n];
+        for (int i=0; i<nLeaf; i++) {
+            IVectorMutable p = leafList.getAtom(i).getPosition();
+            for (int j=0; j<dim; j++) {
+                current[i*dim+j] = p.getX(j);
+                p.setX(j, restored[i*dim+j]);
+            }
+        }
+        cellNbrIterator.setLattice(potentialMaster.getNbrCellManager(box).getLattice());
+        NeighborCriterion[] criteriaArray = potentialMaster.getNeighborCriteria();
+        if (oldCriteria != criteriaArray) {
+            updateLists();
+            oldCriteria = criteriaArray;
+        }
+        for (int j = 0; j < criteriaArray.length; j++) {
+            criteriaArray[j].setBox(box);
+        }
+        setupPositions = restored;
+        haveSetupPositions = true;
+        neighborSetup();
+        for (int i=0; i<nLeaf; i++) {
+            IVectorMutable p = leafList.getAtom(i).getPosition();
+            for (int j=0; j<dim; j++) {
+                p.setX(j, current[i*dim+j]);
+            }
+        }
+        iieCount = newIieCount;
+        numUpdates = newNumUpdates;
+        skipReset = true;
+    }
+
     public NeighborCriterion[] getCriterion(IAtomType atomType) {
         return potentialMaster.getRangedPotentials(atomType).getCriteria();
     }
@@ -240,6 +433,7 @@ public class NeighborListManager implements IIntegratorListener, AgentSource<Ato
      * @param box box in which neighbor setup is performed.
      */
     protected void neighborSetup() {
+        long t0 = System.nanoTime();
 
         IAtomList leafList = box.getLeafList();
         int nLeaf = leafList.getAtomCount();
@@ -269,28 +463,142 @@ public class NeighborListManager implements IIntegratorListener, AgentSource<Ato
         cellManager.setDoApplyPBC(!doApplyPBC);
         cellManager.assignCellAll();
 
-        cellNbrIterator.reset();
-        //TODO change looping scheme so getPotentials isn't called for every pair
-        //consider doing this by introducing ApiNested interface, with hasNextInner and hasNextOuter methods
-        for (IAtomList pair = cellNbrIterator.nextPair(); pair != null;
-             pair = cellNbrIterator.nextPair()) {
-            IAtom atom0 = pair.getAtom(0);
-            IAtom atom1 = pair.getAtom(1);
+        int nChunks = 0;
+        if (pool != null) {
+            nChunks = numChunks > 0 ? numChunks : pool.getParallelism();
+        }
+        if (nChunks > 1 && nLeaf >= 2*nChunks) {
+            neighborSetupParallel(cellManager, nChunks);
+        }
+        else {
+            cellNbrIterator.reset();
+            //TODO change looping scheme so getPotentials isn't called for every pair
+            //consider doing this by introducing ApiNested interface, with hasNextInner and hasNextOuter methods
+            for (IAtomList pair = cellNbrIterator.nextPair(); pair != null;
+                 pair = cellNbrIterator.nextPair()) {
+                IAtom atom0 = pair.getAtom(0);
+                IAtom atom1 = pair.getAtom(1);
+                PotentialArray potentialArray = potentialMaster.getRangedPotentials(atom0.getType());
+                IPotential[] potentials = potentialArray.getPotentials();
+                NeighborCriterion[] criteria = potentialArray.getCriteria();
+                for (int i = 0; i < potentials.length; i++) {
+                    if (potentials[i].nBody() < 2) {
+                        continue;
+                    }
+                    if (criteria[i].accept(pair)) {
+                        agentManager2Body.getAgent(atom0).addUpNbr(atom1,i);
+                        agentManager2Body.getAgent(atom1).addDownNbr(atom0,
+                                potentialMaster.getRangedPotentials(atom1.getType()).getPotentialIndex(potentials[i]));
+                    }
+                }
+            }
+        }
+        initialized = true;
+
+        lastSetupTime = System.nanoTime() - t0;
+        totalSetupTime += lastSetupTime;
+        numSetups++;
+    }
+
+    /**
+     * Finds neighbors using the pool.  The atoms are ordered by cell and the
+     * ordered list is divided into nChunks pieces.  Each chunk finds the
+     * uplist neighbors of its own atoms (the same pairs ApiAACell would
+     * return), so it can fill in their uplists directly.  Downlist entries
+     * are buffered by the chunk owning the downlist atom and then added by
+     * that chunk in a second pass, so no list is ever modified by two
+     * threads.
+     */
+    protected void neighborSetupParallel(NeighborCellManager cellManager, int nChunks) {
+        IAtomList leafList = box.getLeafList();
+        int nLeaf = leafList.getAtomCount();
+        if (cellOrder.length != nLeaf) {
+            cellOrder = new int[nLeaf];
+            chunkOf = new int[nLeaf];
+        }
+        Object[] cells = cellManager.getLattice().sites();
+        int n = 0;
+        for (int i=0; i<cells.length; i++) {
+            AtomArrayList occupants = ((Cell)cells[i]).occupants();
+            int nOccupants = occupants.getAtomCount();
+            for (int j=0; j<nOccupants; j++) {
+                cellOrder[n++] = occupants.getAtom(j).getLeafIndex();
+            }
+        }
+        if (chunkStart.length != nChunks+1) {
+            chunkStart = new int[nChunks+1];
+        }
+        for (int c=0; c<=nChunks; c++) {
+            chunkStart[c] = (int)(((long)n*c)/nChunks);
+        }
+        for (int c=0; c<nChunks; c++) {
+            for (int i=chunkStart[c]; i<chunkStart[c+1]; i++) {
+                chunkOf[cellOrder[i]] = c;
+            }
+        }
+        if (setupChunks.length != nChunks) {
+            setupChunks = new SetupChunk[nChunks];
+            for (int c=0; c<nChunks; c++) {
+                setupChunks[c] = new SetupChunk(nChunks);
+            }
+        }
+        for (int c=0; c<nChunks; c++) {
+            setupChunks[c].setBox(box);
+        }
+
+        pool.invoke(new SetupTask(0, nChunks, false));
+        pool.invoke(new SetupTask(0, nChunks, true));
+    }
+
+    /**
+     * Finds the uplist neighbors of the atoms in the given chunk.  Uplist
+     * neighbors are added directly; downlist entries are stored in the
+     * chunk's buffer for the chunk that owns the downlist atom.
+     */
+    protected void findChunkNeighbors(int c) {
+        SetupChunk chunk = setupChunks[c];
+        chunk.clear();
+        IAtomList leafList = box.getLeafList();
+        Api1ACell iterator = chunk.iterator;
+        for (int ii=chunkStart[c]; ii<chunkStart[c+1]; ii++) {
+            IAtom atom0 = leafList.getAtom(cellOrder[ii]);
             PotentialArray potentialArray = potentialMaster.getRangedPotentials(atom0.getType());
             IPotential[] potentials = potentialArray.getPotentials();
             NeighborCriterion[] criteria = potentialArray.getCriteria();
-            for (int i = 0; i < potentials.length; i++) {
-                if (potentials[i].nBody() < 2) {
-                    continue;
-                }
-                if (criteria[i].accept(pair)) {
-                    agentManager2Body.getAgent(atom0).addUpNbr(atom1,i);
-                    agentManager2Body.getAgent(atom1).addDownNbr(atom0,
-                            potentialMaster.getRangedPotentials(atom1.getType()).getPotentialIndex(potentials[i]));
+            AtomNeighborLists lists0 = agentManager2Body.getAgent(atom0);
+            iterator.setTarget(atom0);
+            iterator.reset();
+            for (IAtomList pair = iterator.next(); pair != null; pair = iterator.next()) {
+                IAtom atom1 = pair.getAtom(1);
+                for (int i = 0; i < potentials.length; i++) {
+                    if (potentials[i].nBody() < 2) {
+                        continue;
+                    }
+                    if (criteria[i].accept(pair)) {
+                        lists0.addUpNbr(atom1, i);
+                        int leaf1 = atom1.getLeafIndex();
+                        chunk.downBuffers[chunkOf[leaf1]].add(leaf1, atom0.getLeafIndex(),
+                                potentialMaster.getRangedPotentials(atom1.getType()).getPotentialIndex(potentials[i]));
+                    }
                 }
             }
         }
-        initialized = true;
+    }
+
+    /**
+     * Adds the downlist entries found by all chunks for the atoms owned by
+     * the given chunk.  Chunks are visited in order so that the result does
+     * not depend on thread scheduling.
+     */
+    protected void mergeChunkNeighbors(int c) {
+        IAtomList leafList = box.getLeafList();
+        for (int s=0; s<setupChunks.length; s++) {
+            DownBuffer buffer = setupChunks[s].downBuffers[c];
+            int[] data = buffer.data;
+            for (int k=0; k<buffer.size; k+=3) {
+                agentManager2Body.getAgent(leafList.getAtom(data[k])).addDownNbr(leafList.getAtom(data[k+1]), data[k+2]);
+            }
+        }
     }
 
     /**
@@ -340,6 +648,9 @@ public class NeighborListManager implements IIntegratorListener, AgentSource<Ato
     public void setRange(double d) {
         cell1ANbrIterator.getNbrCellIterator().setNeighborDistance(d);
         cellNbrIterator.getNbrCellIterator().setNeighborDistance(d);
+        for (int c=0; c<setupChunks.length; c++) {
+            setupChunks[c].iterator.getNbrCellIterator().setNeighborDistance(d);
+        }
     }
     
     public double getRange() {
@@ -402,10 +713,20 @@ public class NeighborListManager implements IIntegratorListener, AgentSource<Ato
     protected final AtomLeafAgentManager<AtomPotentialList> agentManager1Body;
     private NeighborListEventManager eventManager;
     protected IBox box;
+    protected final ISpace space;
     private NeighborCriterion[] oldCriteria;
     protected boolean initialized;
     protected boolean doApplyPBC;
     protected int numUpdates;
+    protected ForkJoinPool pool;
+    protected int numChunks;
+    protected int numSetups;
+    protected long lastSetupTime, totalSetupTime;
+    protected SetupChunk[] setupChunks;
+    protected int[] cellOrder, chunkOf, chunkStart;
+    protected double[] setupPositions;
+    protected boolean checkpointing, haveSetupPositions;
+    protected boolean skipReset;
 
     public AtomNeighborLists makeAgent(IAtom atom) {
         if (initialized) {
@@ -458,6 +779,84 @@ public class NeighborListManager implements IIntegratorListener, AgentSource<Ato
         nbrLists.clearNbrs();
     }
 
+    /**
+     * Iterator and downlist buffers used by one chunk of a parallel
+     * neighborSetup.
+     */
+    protected class SetupChunk {
+        public SetupChunk(int nChunks) {
+            iterator = new Api1ACell(space.D(), getRange(), potentialMaster.getCellAgentManager());
+            iterator.setDirection(IteratorDirective.Direction.UP);
+            downBuffers = new DownBuffer[nChunks];
+            for (int i=0; i<nChunks; i++) {
+                downBuffers[i] = new DownBuffer();
+            }
+        }
+
+        public void setBox(IBox box) {
+            iterator.setBox(box);
+        }
+
+        public void clear() {
+            for (int i=0; i<downBuffers.length; i++) {
+                downBuffers[i].size = 0;
+            }
+        }
+
+        public final Api1ACell iterator;
+        public final DownBuffer[] downBuffers;
+    }
+
+    /**
+     * Growable list of (downlist atom, uplist atom, potential index) leaf
+     * index triples.
+     */
+    protected static class DownBuffer {
+        public void add(int leaf1, int leaf0, int potentialIndex) {
+            if (size + 3 > data.length) {
+                int[] newData = new int[2*data.length + 3];
+                System.arraycopy(data, 0, newData, 0, size);
+                data = newData;
+            }
+            data[size++] = leaf1;
+            data[size++] = leaf0;
+            data[size++] = potentialIndex;
+        }
+
+        public int[] data = new int[0];
+        public int size;
+    }
+
+    /**
+     * Task that runs findChunkNeighbors (or mergeChunkNeighbors) for a range
+     * of chunks, splitting the range until each task has one chunk.
+     */
+    protected class SetupTask extends RecursiveAction {
+        public SetupTask(int firstChunk, int lastChunk, boolean merge) {
+            this.firstChunk = firstChunk;
+            this.lastChunk = lastChunk;
+            this.merge = merge;
+        }
+
+        protected void compute() {
+            if (lastChunk - firstChunk == 1) {
+                if (merge) {
+                    mergeChunkNeighbors(firstChunk);
+                }
+                else {
+                    findChunkNeighbors(firstChunk);
+                }
+                return;
+            }
+            int mid = (firstChunk + lastChunk)/2;
+            invokeAll(new SetupTask(firstChunk, mid, merge), new SetupTask(mid, lastChunk, merge));
+        }
+
+        private static final long serialVersionUID = 1L;
+        protected final int firstChunk, lastChunk;
+        protected final boolean merge;
+    }
+
     public static class AtomPotential1ListSource implements AtomLeafAgentManager.AgentSource<AtomPotentialList> {
         protected final PotentialMasterList potentialMaster;
 
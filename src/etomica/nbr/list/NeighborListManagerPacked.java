@@ -0,0 +1,216 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.nbr.list;
+
+import etomica.api.IAtom;
+import etomica.api.IAtomList;
+import etomica.api.IBox;
+import etomica.api.IPotential;
+import etomica.api.IVector;
+import etomica.potential.Potential2SoftSpherical;
+import etomica.space.ISpace;
+
+/**
+ * NeighborListManager that, in addition to the per-atom AtomNeighborLists,
+ * keeps a packed copy of the uplist neighbors in compressed-sparse-row form
+ * indexed by leaf index.  Neighbors of the atom with leaf index i are found
+ * in nbrIndex[nbrStart[i]] through nbrIndex[nbrStart[i+1]-1], and the
+ * potential acting between each pair is packedPotentials[nbrPotential[k]].
+ *
+ * Atom positions can also be gathered into a contiguous array so that
+ * PotentialMasterListPacked can loop over pairs without touching IAtom or
+ * IVector objects.
+ *
+ * The packed lists are only built when every ranged potential is a
+ * Potential2SoftSpherical.  Otherwise isPackable returns false and the
+ * neighbors are only available from the regular up and down lists.
+ */
+public class NeighborListManagerPacked extends NeighborListManager {
+
+    public NeighborListManagerPacked(PotentialMasterList potentialMasterList, double range,
+            IBox box, ISpace space) {
+        super(potentialMasterList, range, box, space);
+        dim = space.D();
+        nbrStart = new int[1];
+        nbrIndex = new int[0];
+        nbrPotential = new int[0];
+        positions = new double[0];
+        packedPotentials = new Potential2SoftSpherical[0];
+        packedDirty = true;
+    }
+
+    public void updateLists() {
+        super.updateLists();
+        packedDirty = true;
+    }
+
+    protected void neighborSetup() {
+        super.neighborSetup();
+        pack();
+    }
+
+    public void addAtomNotify(IAtom atom) {
+        super.addAtomNotify(atom);
+        packedDirty = true;
+    }
+
+    public void releaseAgent(AtomNeighborLists agent, IAtom atom) {
+        super.releaseAgent(agent, atom);
+        packedDirty = true;
+    }
+
+    /**
+     * Rebuilds the packed arrays from the uplists held by the
+     * AtomNeighborLists.  This is called after each neighbor list update and
+     * (lazily) after atoms have been added or removed.
+     */
+    protected void pack() {
+        packedDirty = false;
+        IAtomList leafList = box.getLeafList();
+        int nLeaf = leafList.getAtomCount();
+        if (nbrStart.length < nLeaf+1) {
+            nbrStart = new int[nLeaf+1];
+        }
+        packable = true;
+        packedPotentials = new Potential2SoftSpherical[0];
+        int nTotal = 0;
+        for (int i=0; i<nLeaf; i++) {
+            IAtom atom = leafList.getAtom(i);
+            IPotential[] potentials = potentialMaster.getRangedPotentials(atom.getType()).getPotentials();
+            IAtomList[] upList = getUpList(atom);
+            for (int p=0; p<potentials.length; p++) {
+                if (!(potentials[p] instanceof Potential2SoftSpherical) || potentials[p].nBody() != 2) {
+                    packable = false;
+                    // the box was examined; don't repeat that until it changes
+                    numPacked = nLeaf;
+                    return;
+                }
+                nTotal += upList[p].getAtomCount();
+            }
+        }
+        if (nbrIndex.length < nTotal) {
+            // leave some room so that small fluctuations don't reallocate
+            nbrIndex = new int[nTotal + nTotal/10 + 1];
+            nbrPotential = new int[nbrIndex.length];
+        }
+        int k = 0;
+        for (int i=0; i<nLeaf; i++) {
+            IAtom atom = leafList.getAtom(i);
+            nbrStart[i] = k;
+            IPotential[] potentials = potentialMaster.getRangedPotentials(atom.getType()).getPotentials();
+            IAtomList[] upList = getUpList(atom);
+            for (int p=0; p<potentials.length; p++) {
+                int pIndex = packedPotentialIndex((Potential2SoftSpherical)potentials[p]);
+                IAtomList list = upList[p];
+                int nNbrs = list.getAtomCount();
+                for (int j=0; j<nNbrs; j++) {
+                    nbrIndex[k] = list.getAtom(j).getLeafIndex();
+                    nbrPotential[k] = pIndex;
+                    k++;
+                }
+            }
+        }
+        nbrStart[nLeaf] = k;
+        numPacked = nLeaf;
+    }
+
+    /**
+     * Returns the index of the given potential within packedPotentials,
+     * adding it if needed.
+     */
+    protected int packedPotentialIndex(Potential2SoftSpherical potential) {
+        for (int i=0; i<packedPotentials.length; i++) {
+            if (packedPotentials[i] == potential) {
+                return i;
+            }
+        }
+        Potential2SoftSpherical[] newPotentials = new Potential2SoftSpherical[packedPotentials.length+1];
+        System.arraycopy(packedPotentials, 0, newPotentials, 0, packedPotentials.length);
+        newPotentials[packedPotentials.length] = potential;
+        packedPotentials = newPotentials;
+        return packedPotentials.length-1;
+    }
+
+    /**
+     * Brings the packed lists up to date if atoms have been added or removed
+     * since they were last built.
+     */
+    protected void ensurePacked() {
+        if (packedDirty || numPacked != box.getLeafList().getAtomCount()) {
+            pack();
+        }
+    }
+
+    /**
+     * Returns true if the packed lists can be used for this box (all ranged
+     * potentials are Potential2SoftSpherical).
+     */
+    public boolean isPackable() {
+        ensurePacked();
+        return packable;
+    }
+
+    /**
+     * Returns the array of offsets into getNbrIndex; the uplist neighbors of
+     * leaf atom i run from nbrStart[i] to nbrStart[i+1]-1.
+     */
+    public int[] getNbrStart() {
+        ensurePacked();
+        return nbrStart;
+    }
+
+    /**
+     * Returns the leaf indices of the packed uplist neighbors.
+     */
+    public int[] getNbrIndex() {
+        ensurePacked();
+        return nbrIndex;
+    }
+
+    /**
+     * Returns the index (within getPackedPotentials) of the potential acting
+     * on each packed neighbor pair.
+     */
+    public int[] getNbrPotential() {
+        ensurePacked();
+        return nbrPotential;
+    }
+
+    /**
+     * Returns the potentials referenced by getNbrPotential.
+     */
+    public Potential2SoftSpherical[] getPackedPotentials() {
+        ensurePacked();
+        return packedPotentials;
+    }
+
+    /**
+     * Copies the position of each leaf atom into a contiguous array
+     * (x0, y0, z0, x1, y1, z1, ...) and returns it.  The returned array is
+     * reused for subsequent calls.
+     */
+    public double[] gatherPositions() {
+        IAtomList leafList = box.getLeafList();
+        int nLeaf = leafList.getAtomCount();
+        if (positions.length < nLeaf*dim) {
+            positions = new double[nLeaf*dim];
+        }
+        for (int i=0, k=0; i<nLeaf; i++) {
+            IVector r = leafList.getAtom(i).getPosition();
+            for (int d=0; d<dim; d++) {
+                positions[k++] = r.getX(d);
+            }
+        }
+        return positions;
+    }
+
+    private static final long serialVersionUID = 1L;
+    protected final int dim;
+    protected int[] nbrStart, nbrIndex, nbrPotential;
+    protected Potential2SoftSpherical[] packedPotentials;
+    protected double[] positions;
+    protected boolean packable, packedDirty;
+    protected int numPacked;
+}
@@ -7,6 +7,7 @@ package etomica.nbr.list;
 import etomica.api.IAtom;
 import etomica.api.IAtomList;
 import etomica.api.IAtomType;
+import etomica.api.IBoundary;
 import etomica.api.IBox;
 import etomica.api.IMolecule;
 import etomica.api.IMoleculeList;
@@ -14,6 +15,8 @@ import etomica.api.IPotential;
 import etomica.api.IPotentialAtomic;
 import etomica.api.ISimulation;
 import etomica.api.ISpecies;
+import etomica.api.IVector;
+import etomica.api.IVectorMutable;
 import etomica.atom.AtomArrayList;
 import etomica.atom.AtomPair;
 import etomica.atom.AtomSetSinglet;
@@ -33,9 +36,14 @@ import etomica.nbr.NeighborCriterion;
 import etomica.nbr.PotentialGroupNbr;
 import etomica.nbr.PotentialMasterNbr;
 import etomica.nbr.cell.NeighborCellManager;
+import etomica.nbr.cell.TestParticleEnergyCell;
+import etomica.potential.Potential2SoftSpherical;
 import etomica.potential.PotentialArray;
 import etomica.potential.PotentialCalculation;
+import etomica.potential.PotentialCalculationEnergySum;
 import etomica.potential.PotentialGroup;
+import etomica.potential.PotentialMasterTargetEnergy;
+import etomica.potential.PotentialMasterTestParticle;
 import etomica.space.ISpace;
 import etomica.util.Arrays;
 import etomica.util.Debug;
@@ -44,7 +52,7 @@ import etomica.util.Debug;
  * PotentialMaster used to implement neighbor listing.  Instance of this
  * class is given as an argument to the Simulation constructor.
  */
-public class PotentialMasterList extends PotentialMasterNbr {
+public class PotentialMasterList extends PotentialMasterNbr implements PotentialMasterTargetEnergy, PotentialMasterTestParticle {
 
     /**
      * Default constructor uses range of 1.0.
@@ -91,6 +99,8 @@ public class PotentialMasterList extends PotentialMasterNbr {
         singletIterator = new AtomIteratorSinglet();
         atomSetSinglet = new AtomSetSinglet();
         atomPair = new AtomPair();
+        dr = _space.makeVector();
+        targetEnergySum = new PotentialCalculationEnergySum();
         cellRange = 2;
         allCriteria = new NeighborCriterion[0];
 
@@ -606,6 +616,143 @@ public class PotentialMasterList extends PotentialMasterNbr {
         atomArrayList.clear();
     }
 
+    /**
+     * Returns the energy of the given atom with its neighbors, as calculate
+     * would sum it with the atom as the target (excluding the long-range
+     * correction).  The neighbor lists are walked directly and pair energies
+     * of Potential2SoftSpherical are computed from u(r2), unless the
+     * potential overrides energy.
+     */
+    public double computeEnergy(IBox box, IAtom targetAtom) {
+        if (!enabled) return 0;
+        NeighborListManager neighborManager = neighborListAgentManager.getAgent(box);
+        IMolecule parentMolecule = targetAtom.getParentGroup();
+        IPotential[] potentials = getIntraPotentials(parentMolecule.getType()).getPotentials();
+        double sum = 0;
+        if (potentials.length > 0) {
+            targetEnergySum.zeroSum();
+            for (int i=0; i<potentials.length; i++) {
+                potentials[i].setBox(box);
+                ((PotentialGroupNbr)potentials[i]).calculateRangeIndependent(parentMolecule, null, targetAtom, targetEnergySum);
+            }
+            sum = targetEnergySum.getSum();
+        }
+        return sum + computeEnergy(box, targetAtom, neighborManager);
+    }
+
+    /**
+     * Returns the energy of the given molecule with its neighbors, as
+     * calculate would sum it with the molecule as the target (excluding the
+     * long-range correction).
+     */
+    public double computeEnergy(IBox box, IMolecule targetMolecule) {
+        if (!enabled) return 0;
+        NeighborListManager neighborManager = neighborListAgentManager.getAgent(box);
+        IPotential[] potentials = getIntraPotentials(targetMolecule.getType()).getPotentials();
+        double sum = 0;
+        if (potentials.length > 0) {
+            targetEnergySum.zeroSum();
+            for (int i=0; i<potentials.length; i++) {
+                potentials[i].setBox(box);
+                ((PotentialGroupNbr)potentials[i]).calculateRangeIndependent(targetMolecule, null, null, targetEnergySum);
+            }
+            sum = targetEnergySum.getSum();
+        }
+        IAtomList childList = targetMolecule.getChildList();
+        for (int i=0; i<childList.getAtomCount(); i++) {
+            sum += computeEnergy(box, childList.getAtom(i), neighborManager);
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the energy of the given atom from its ranged potentials, using
+     * both its up and down neighbor lists.
+     */
+    protected double computeEnergy(IBox box, IAtom atom, NeighborListManager neighborManager) {
+        IPotential[] potentials = getRangedPotentials(atom.getType()).getPotentials();
+        IBoundary boundary = box.getBoundary();
+        IVector ri = atom.getPosition();
+        double sum = 0;
+        for (int i=0; i<potentials.length; i++) {
+            IPotentialAtomic potential = (IPotentialAtomic)potentials[i];
+            potential.setBox(box);
+            switch (potential.nBody()) {
+            case 1:
+                if (neighborManager.getPotential1BodyList(atom).getInteractingList()[i]) {
+                    atomSetSinglet.atom = atom;
+                    sum += potential.energy(atomSetSinglet);
+                }
+                break;
+            case 2:
+                IAtomList upList = neighborManager.getUpList(atom)[i];
+                IAtomList downList = neighborManager.getDownList(atom)[i];
+                if (potential instanceof Potential2SoftSpherical && ((Potential2SoftSpherical)potential).isEnergyFromU()) {
+                    Potential2SoftSpherical p2 = (Potential2SoftSpherical)potential;
+                    for (int j=0; j<upList.getAtomCount(); j++) {
+                        dr.Ev1Mv2(upList.getAtom(j).getPosition(), ri);
+                        boundary.nearestImage(dr);
+                        sum += p2.u(dr.squared());
+                    }
+                    for (int j=0; j<downList.getAtomCount(); j++) {
+                        dr.Ev1Mv2(ri, downList.getAtom(j).getPosition());
+                        boundary.nearestImage(dr);
+                        sum += p2.u(dr.squared());
+                    }
+                }
+                else {
+                    atomPair.atom0 = atom;
+                    for (int j=0; j<upList.getAtomCount(); j++) {
+                        atomPair.atom1 = upList.getAtom(j);
+                        sum += potential.energy(atomPair);
+                    }
+                    atomPair.atom1 = atom;
+                    for (int j=0; j<downList.getAtomCount(); j++) {
+                        atomPair.atom0 = downList.getAtom(j);
+                        sum += potential.energy(atomPair);
+                    }
+                }
+                break;
+            case Integer.MAX_VALUE:
+                if (atomArrayList == null) {
+                    atomArrayList = new AtomArrayList();
+                }
+                targetEnergySum.zeroSum();
+                doNBodyStuff(atom, targetEnergySum, i, potential, neighborManager);
+                IAtomList list = neighborManager.getUpList(atom)[i];
+                for (int j=0; j<list.getAtomCount(); j++) {
+                    doNBodyStuff(list.getAtom(j), targetEnergySum, i, potential, neighborManager);
+                }
+                list = neighborManager.getDownList(atom)[i];
+                for (int j=0; j<list.getAtomCount(); j++) {
+                    doNBodyStuff(list.getAtom(j), targetEnergySum, i, potential, neighborManager);
+                }
+                sum += targetEnergySum.getSum();
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the energy of the given test molecule (which must not be in
+     * the box) with the molecules in the box, plus its intramolecular
+     * energy.  The test molecule has no neighbor lists, so the cells used to
+     * construct the lists are walked instead.  Atoms are in the cells they
+     * were assigned at the last neighbor update, which is within the
+     * neighbor range so long as the lists are up to date.
+     */
+    public double computeTestEnergy(IBox box, IMolecule testMolecule) {
+        if (testParticleBox != box) {
+            testParticleEnergy = makeTestParticleEnergy(box);
+            testParticleBox = box;
+        }
+        return testParticleEnergy.intraEnergy(testMolecule) + testParticleEnergy.energy(testMolecule);
+    }
+
+    public TestParticleEnergy makeTestParticleEnergy(IBox box) {
+        return new TestParticleEnergyCell(this, getNbrCellManager(box), box, space);
+    }
+
     public NeighborListManager getNeighborManager(IBox box) {
         // we didn't have the simulation when we made the agent manager.
         // setting the simulation after the first time is a quick return
@@ -636,12 +783,16 @@ public class PotentialMasterList extends PotentialMasterNbr {
     private final AtomIteratorSinglet singletIterator;
     protected final AtomSetSinglet atomSetSinglet;
     protected final AtomPair atomPair;
+    protected final IVectorMutable dr;
+    protected final PotentialCalculationEnergySum targetEnergySum;
     protected final NeighborListAgentSource neighborListAgentSource;
     protected final BoxAgentManager<NeighborListManager> neighborListAgentManager;
     private int cellRange;
     protected double range;
     private double maxPotentialRange = 0;
     private double safetyFactor = 0.4;
+    protected IBox testParticleBox;
+    protected TestParticleEnergy testParticleEnergy;
     protected NeighborCriterion[] allCriteria;
     
     // things needed for N-body potentials
@@ -0,0 +1,315 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.nbr.list;
+
+import etomica.api.IAtomList;
+import etomica.api.IBoundary;
+import etomica.api.IBox;
+import etomica.api.ISimulation;
+import etomica.api.IVector;
+import etomica.api.IVectorMutable;
+import etomica.atom.AtomLeafAgentManager;
+import etomica.atom.IAtomPositionDefinition;
+import etomica.atom.iterator.IteratorDirective;
+import etomica.box.BoxAgentManager;
+import etomica.integrator.IntegratorBox;
+import etomica.nbr.cell.NeighborCellManager;
+import etomica.potential.Potential2SoftSpherical;
+import etomica.potential.PotentialCalculation;
+import etomica.potential.PotentialCalculationEnergySum;
+import etomica.potential.PotentialCalculationForcePressureSum;
+import etomica.potential.PotentialCalculationForceSum;
+import etomica.potential.PotentialCalculationVirialSum;
+import etomica.space.BoundaryRectangularPeriodic;
+import etomica.space.ISpace;
+import etomica.space.Tensor;
+
+/**
+ * PotentialMasterList that can evaluate whole-box energy, virial and force
+ * sums directly from the packed neighbor lists held by
+ * NeighborListManagerPacked.  Positions are gathered into a contiguous array
+ * and each pair is handed to the Potential2SoftSpherical u and du methods
+ * without constructing AtomPairs or calling PotentialCalculation.doCalculation.
+ *
+ * The packed path is taken only when
+ * <ul>
+ * <li>the IteratorDirective has no target,
+ * <li>every potential is a ranged Potential2SoftSpherical (no intramolecular
+ *     potentials, 1-body or N-body potentials),
+ * <li>the PotentialCalculation is a PotentialCalculationEnergySum,
+ *     PotentialCalculationVirialSum, PotentialCalculationForceSum or
+ *     PotentialCalculationForcePressureSum (not a subclass).
+ * </ul>
+ * Otherwise the calculation is handed off to PotentialMasterList.  The packed
+ * path relies on the u and du methods of the potential; subclasses of
+ * Potential2SoftSpherical that override energy or gradient with something
+ * other than u and du should not be used with this class.
+ */
+public class PotentialMasterListPacked extends PotentialMasterList {
+
+    public PotentialMasterListPacked(ISimulation sim, ISpace _space) {
+        this(sim, 1.0, _space);
+    }
+
+    public PotentialMasterListPacked(ISimulation sim, double range, ISpace _space) {
+        this(sim, range, (IAtomPositionDefinition)null, _space);
+    }
+
+    public PotentialMasterListPacked(ISimulation sim, double range, IAtomPositionDefinition positionDefinition, ISpace _space) {
+        this(sim, range, new BoxAgentSourceCellManagerList(sim, positionDefinition, _space), _space);
+    }
+
+    public PotentialMasterListPacked(ISimulation sim, double range, BoxAgentSourceCellManagerList boxAgentSource, ISpace _space) {
+        super(sim, range, boxAgentSource, new BoxAgentManager<NeighborCellManager>(boxAgentSource, NeighborCellManager.class),
+                new NeighborListAgentSourcePacked(range, _space), _space);
+        dr = _space.makeVector();
+        usePacked = true;
+    }
+
+    /**
+     * Turns the packed calculation on or off.  When off, all calculations
+     * are performed by PotentialMasterList.  This can be used to compare the
+     * two paths.
+     */
+    public void setUsePacked(boolean newUsePacked) {
+        usePacked = newUsePacked;
+    }
+
+    /**
+     * Returns true if the packed calculation is used when possible.
+     */
+    public boolean isUsePacked() {
+        return usePacked;
+    }
+
+    public NeighborListManagerPacked getNeighborManager(IBox box) {
+        return (NeighborListManagerPacked)super.getNeighborManager(box);
+    }
+
+    public void calculate(IBox box, IteratorDirective id, PotentialCalculation pc) {
+        if (!enabled) return;
+        if (!usePacked || id.getTargetAtom() != null || id.getTargetMolecule() != null) {
+            super.calculate(box, id, pc);
+            return;
+        }
+        Class<?> pcClass = pc.getClass();
+        boolean doEnergy = pcClass == PotentialCalculationEnergySum.class;
+        boolean doVirial = pcClass == PotentialCalculationVirialSum.class;
+        boolean doForce = pcClass == PotentialCalculationForceSum.class || pcClass == PotentialCalculationForcePressureSum.class;
+        if (!doEnergy && !doVirial && !doForce) {
+            super.calculate(box, id, pc);
+            return;
+        }
+        NeighborListManagerPacked neighborManager = getNeighborManager(box);
+        if (!neighborManager.isPackable()) {
+            super.calculate(box, id, pc);
+            return;
+        }
+        Potential2SoftSpherical[] potentials = neighborManager.getPackedPotentials();
+        for (int i=0; i<allPotentials.length; i++) {
+            boolean found = false;
+            for (int j=0; j<potentials.length; j++) {
+                if (allPotentials[i] == potentials[j]) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                // an intramolecular (or other) potential is present, but has
+                // no neighbors listed.  let PotentialMasterList handle it.
+                super.calculate(box, id, pc);
+                return;
+            }
+        }
+        for (int i=0; i<potentials.length; i++) {
+            potentials[i].setBox(box);
+        }
+
+        if (pairSums == null || pairSums.forces.length != box.getLeafList().getAtomCount()*dr.getD()) {
+            pairSums = new PairSums(space, box.getLeafList().getAtomCount());
+        }
+        Tensor pressureTensor = null;
+        if (pc instanceof PotentialCalculationForcePressureSum) {
+            pressureTensor = ((PotentialCalculationForcePressureSum)pc).getPressureTensor();
+        }
+        pairSums.reset(doEnergy, doForce, pressureTensor != null);
+        computePairSums(box, neighborManager, pairSums);
+
+        if (doEnergy) {
+            ((PotentialCalculationEnergySum)pc).addToSum(pairSums.u);
+        }
+        else if (doVirial) {
+            ((PotentialCalculationVirialSum)pc).addToSum(pairSums.w);
+        }
+        else {
+            AtomLeafAgentManager<? extends IntegratorBox.Forcible> agentManager = ((PotentialCalculationForceSum)pc).getAgentManager();
+            IAtomList leafList = box.getLeafList();
+            int nLeaf = leafList.getAtomCount();
+            int D = dr.getD();
+            double[] forces = pairSums.forces;
+            for (int i=0; i<nLeaf; i++) {
+                IVectorMutable f = agentManager.getAgent(leafList.getAtom(i)).force();
+                int iOffset = i*D;
+                for (int d=0; d<D; d++) {
+                    f.setX(d, f.getX(d) + forces[iOffset+d]);
+                }
+            }
+            if (pressureTensor != null) {
+                for (int d=0; d<D; d++) {
+                    for (int e=0; e<D; e++) {
+                        pressureTensor.PE(d, e, pairSums.pressure[d*D+e]);
+                    }
+                }
+            }
+        }
+
+        if(lrcMaster != null) {
+            lrcMaster.calculate(box, id, pc);
+        }
+    }
+
+    /**
+     * Computes the sums for all packed neighbor pairs in the box.  Subclasses
+     * may override this to divide the work.
+     */
+    protected void computePairSums(IBox box, NeighborListManagerPacked neighborManager, PairSums sums) {
+        double[] r = neighborManager.gatherPositions();
+        computePairs(box, neighborManager, r, null, 0, box.getLeafList().getAtomCount(), sums);
+    }
+
+    /**
+     * Adds the contributions of the packed uplist pairs of a set of atoms to
+     * the given sums.  If atoms is null, the atoms with leaf indices from
+     * start to end-1 are handled; otherwise the atoms with leaf indices
+     * atoms[start] through atoms[end-1].  The energy is summed only if
+     * requested by the sums; the virial is summed whenever du is needed
+     * (for the virial or the forces).  The method does not modify any shared state, so it can be
+     * called concurrently with separate PairSums.
+     */
+    protected void computePairs(IBox box, NeighborListManagerPacked neighborManager, double[] r,
+            int[] atoms, int start, int end, PairSums sums) {
+        int[] nbrStart = neighborManager.getNbrStart();
+        int[] nbrIndex = neighborManager.getNbrIndex();
+        int[] nbrPotential = neighborManager.getNbrPotential();
+        Potential2SoftSpherical[] potentials = neighborManager.getPackedPotentials();
+        IBoundary boundary = box.getBoundary();
+        boolean periodic = boundary.getClass() == BoundaryRectangularPeriodic.class;
+        IVector boxSize = boundary.getBoxSize();
+        IVectorMutable drTmp = sums.dr;
+        double[] rij = sums.rij;
+        int D = rij.length;
+        boolean doEnergy = sums.doEnergy;
+        double[] forces = sums.doForces ? sums.forces : null;
+        double[] pressure = sums.doPressure ? sums.pressure : null;
+        double u = 0, w = 0;
+        for (int ii=start; ii<end; ii++) {
+            int i = atoms == null ? ii : atoms[ii];
+            int iOffset = i*D;
+            int kEnd = nbrStart[i+1];
+            for (int k=nbrStart[i]; k<kEnd; k++) {
+                int jOffset = nbrIndex[k]*D;
+                double r2 = 0;
+                if (periodic) {
+                    for (int d=0; d<D; d++) {
+                        double x = r[jOffset+d] - r[iOffset+d];
+                        double L = boxSize.getX(d);
+                        x -= L*Math.rint(x/L);
+                        rij[d] = x;
+                        r2 += x*x;
+                    }
+                }
+                else {
+                    for (int d=0; d<D; d++) {
+                        drTmp.setX(d, r[jOffset+d] - r[iOffset+d]);
+                    }
+                    boundary.nearestImage(drTmp);
+                    for (int d=0; d<D; d++) {
+                        rij[d] = drTmp.getX(d);
+                    }
+                    r2 = drTmp.squared();
+                }
+                Potential2SoftSpherical p = potentials[nbrPotential[k]];
+                if (doEnergy) {
+                    u += p.u(r2);
+                    continue;
+                }
+                double du = p.du(r2);
+                w += du;
+                if (forces == null || r2 < 1.e-10) {
+                    // Potential2SoftSpherical.gradient returns 0 for overlapping atoms
+                    continue;
+                }
+                double fr = du/r2;
+                for (int d=0; d<D; d++) {
+                    double f = fr*rij[d];
+                    forces[iOffset+d] += f;
+                    forces[jOffset+d] -= f;
+                }
+                if (pressure != null) {
+                    for (int d=0; d<D; d++) {
+                        for (int e=0; e<D; e++) {
+                            pressure[d*D+e] -= fr*rij[d]*rij[e];
+                        }
+                    }
+                }
+            }
+        }
+        sums.u += u;
+        sums.w += w;
+    }
+
+    private static final long serialVersionUID = 1L;
+    protected final IVectorMutable dr;
+    protected PairSums pairSums;
+    protected boolean usePacked;
+
+    /**
+     * Holds the energy, virial, force and pressure tensor sums accumulated
+     * by computePairs, along with scratch space used for each pair.
+     */
+    protected static class PairSums {
+        public PairSums(ISpace space, int nAtoms) {
+            int D = space.D();
+            dr = space.makeVector();
+            rij = new double[D];
+            forces = new double[nAtoms*D];
+            pressure = new double[D*D];
+        }
+
+        /**
+         * Zeros all sums and sets what should be computed.  If doEnergy is
+         * true, only the energy is computed; otherwise the virial is
+         * computed, along with the forces and pressure tensor if requested.
+         */
+        public void reset(boolean newDoEnergy, boolean newDoForces, boolean newDoPressure) {
+            doEnergy = newDoEnergy;
+            doForces = newDoForces;
+            doPressure = newDoPressure;
+            u = w = 0;
+            if (doForces) {
+                java.util.Arrays.fill(forces, 0);
+            }
+            java.util.Arrays.fill(pressure, 0);
+        }
+
+        public double u, w;
+        public final double[] forces, pressure, rij;
+        public final IVectorMutable dr;
+        public boolean doEnergy, doForces, doPressure;
+    }
+
+    /**
+     * Agent source that makes NeighborListManagerPacked instances.
+     */
+    public static class NeighborListAgentSourcePacked extends NeighborListAgentSource {
+        public NeighborListAgentSourcePacked(double range, ISpace space) {
+            super(range, space);
+        }
+
+        public NeighborListManager makeAgent(IBox box) {
+            return new NeighborListManagerPacked(potentialMaster, range, box, space);
+        }
+    }
+}
@@ -10,6 +10,16 @@ import etomica.integrator.IntegratorManagerMC;
 /**
  * This integrator class manages (2) sub-integrators for an overlap
  * sampling simulation. 
+ * <p>
+ * If given a ForkJoinPool (setPool), the reference and target systems run
+ * their sub-steps concurrently.  Each system still takes the number of steps
+ * it would have taken otherwise, and the step fraction is still adjusted
+ * (between steps, once both systems have finished) from the wall-clock time
+ * each system needed.  The systems must not share a PotentialMaster, IRandom
+ * or anything else that one might modify while the other uses it; the data
+ * collected for each system (and read by the ReferenceFracSource) should
+ * only be fed by that system's integrator.  Aggressive adjustment runs only
+ * one system at a time and so does not use the pool.
  */
 public class IntegratorOverlap extends IntegratorManagerMC {
 
@@ -22,6 +32,7 @@ public class IntegratorOverlap extends IntegratorManagerMC {
         stepFrac = new double[nIntegrators];
         totNumSubSteps = new long[nIntegrators];
         totTime = new long[nIntegrators];
+        subSteps = new long[nIntegrators];
         setAdjustStepFraction(true);
         setAdjustInterval(1);
         //there are no global moves
@@ -133,12 +144,32 @@ public class IntegratorOverlap extends IntegratorManagerMC {
                     // if we're internally adjusting the step fractions, require at least 1%
                     iSubSteps = numSubSteps/100 + (int)(numSubSteps*(1-0.01*nIntegrators) * stepFrac[i]);
                 }
-                totTime[i] -= System.currentTimeMillis();
-                for (int j=0; j<iSubSteps; j++) {
-                    integrators[i].doStep();
+                subSteps[i] = iSubSteps;
+            }
+            if (pool != null && nIntegrators > 1) {
+                // each system runs its sub-steps on its own thread
+                if (stepTask == null) {
+                    stepTask = new StepAllTask(integrators, nIntegrators);
+                }
+                for (int i=0; i<nIntegrators; i++) {
+                    stepTask.getTask(i).numSteps = subSteps[i];
+                }
+                stepTask.reinitialize();
+                pool.invoke(stepTask);
+                for (int i=0; i<nIntegrators; i++) {
+                    totTime[i] += stepTask.getTask(i).time;
+                    totNumSubSteps[i] += subSteps[i];
+                }
+            }
+            else {
+                for (int i=0; i<nIntegrators; i++) {
+                    totTime[i] -= System.currentTimeMillis();
+                    for (int j=0; j<subSteps[i]; j++) {
+                        integrators[i].doStep();
+                    }
+                    totTime[i] += System.currentTimeMillis();
+                    totNumSubSteps[i] += subSteps[i];
                 }
-                totTime[i] += System.currentTimeMillis();
-                totNumSubSteps[i] += iSubSteps;
             }
         }
         else {
@@ -201,6 +232,7 @@ public class IntegratorOverlap extends IntegratorManagerMC {
     protected boolean doAdjustStepFrac, doAggressiveAdjustStepFrac;
     protected long adjustInterval, adjustCountdown;
     protected long[] totTime;
+    protected final long[] subSteps;
     protected boolean doAdjustStepsOnTime;
     
     public interface ReferenceFracSource {
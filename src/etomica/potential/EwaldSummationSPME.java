@@ -0,0 +1,753 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.potential;
+
+import org.apache.commons.math3.special.Erf;
+
+import etomica.api.IAtom;
+import etomica.api.IAtomList;
+import etomica.api.IBox;
+import etomica.api.IMolecule;
+import etomica.api.IMoleculeList;
+import etomica.api.IVector;
+import etomica.api.IVectorMutable;
+import etomica.atom.AtomLeafAgentManager;
+import etomica.potential.EwaldSummation.MyCharge;
+import etomica.space.ISpace;
+import etomica.space.Tensor;
+import etomica.util.FastFourierTransform3D;
+
+/**
+ * Smooth particle-mesh Ewald summation (Essmann et al., J. Chem. Phys. 103,
+ * 8577 (1995)) for a rectangular periodic box.  Charges are spread onto a
+ * grid with cardinal B-splines and the reciprocal-space sum is done with a
+ * 3D FFT, so that the cost scales as N log N instead of the N*nK of
+ * EwaldSummation.
+ *
+ * The real-space sum is done with a cell list (rCut must be no more than
+ * half the box length), or can be handed off to a PotentialMaster with
+ * neighbor lists by calling makeP2Real and adding the returned potential.
+ * As with EwaldSummation, intramolecular pairs are excluded from the
+ * real-space sum and their reciprocal-space contribution is removed by the
+ * bond correction.
+ *
+ * The splitting parameter and grid size can be given explicitly, or
+ * determined from a tolerance so that the real- and reciprocal-space
+ * truncation errors are each roughly that tolerance (relative to the
+ * pair interaction q*q/r).
+ */
+public class EwaldSummationSPME implements PotentialSoft {
+
+    /**
+     * Constructs SPME with the splitting parameter and grid determined from
+     * the given tolerance and real-space cutoff, using 6th-order B-splines.
+     */
+    public EwaldSummationSPME(IBox box, AtomLeafAgentManager<MyCharge> atomAgentManager, ISpace _space, double rCut, double tolerance) {
+        this(box, atomAgentManager, _space, rCut, alphaForTolerance(rCut, tolerance),
+                gridSizeForTolerance(box, alphaForTolerance(rCut, tolerance), tolerance), 6);
+    }
+
+    /**
+     * @param rCut real-space cutoff
+     * @param alpha splitting parameter (same convention as EwaldSummation)
+     * @param gridSize number of grid points in each dimension; each must be a power of 2
+     * @param splineOrder order of the B-splines used for charge spreading (at least 3)
+     */
+    public EwaldSummationSPME(IBox box, AtomLeafAgentManager<MyCharge> atomAgentManager, ISpace _space,
+            double rCut, double alpha, int[] gridSize, int splineOrder) {
+        if (_space.D() != 3) {
+            throw new IllegalArgumentException("SPME only works in 3D");
+        }
+        if (splineOrder < 3) {
+            throw new IllegalArgumentException("spline order must be at least 3");
+        }
+        for (int i=0; i<3; i++) {
+            if (gridSize[i] < splineOrder) {
+                throw new IllegalArgumentException("grid size must be at least as large as the spline order");
+            }
+        }
+        this.box = box;
+        this.atomAgentManager = atomAgentManager;
+        space = _space;
+        this.alpha = alpha;
+        alpha2 = alpha*alpha;
+        this.splineOrder = splineOrder;
+        nGrid = gridSize.clone();
+        fft = new FastFourierTransform3D(nGrid);
+        int nPoints = fft.getNumPoints();
+        qReal = new double[nPoints];
+        qImaginary = new double[nPoints];
+        bc = new double[nPoints];
+        virialFactor = new double[nPoints];
+        theta = new double[splineOrder];
+        dTheta = new double[splineOrder];
+        bModuli = new double[3][];
+        for (int i=0; i<3; i++) {
+            bModuli[i] = computeBModuli(nGrid[i]);
+        }
+        boxSize = new double[3];
+        lastBoxSize = new double[3];
+        charges = new double[0];
+        positions = new double[0];
+        splines = new double[0];
+        dSplines = new double[0];
+        gridBase = new int[0];
+        gradient = new IVectorMutable[0];
+        rAB = space.makeVector();
+        moleculeList = box.getMoleculeList();
+        cellHead = new int[0];
+        cellNext = new int[0];
+        setRCut(rCut);
+    }
+
+    /**
+     * Returns the splitting parameter for which erfc(alpha*rCut) equals the
+     * given tolerance.
+     */
+    public static double alphaForTolerance(double rCut, double tolerance) {
+        double lo = 0, hi = 1.0/rCut;
+        while (Erf.erfc(hi*rCut) > tolerance) {
+            hi *= 2;
+        }
+        for (int i=0; i<100; i++) {
+            double mid = 0.5*(lo+hi);
+            if (Erf.erfc(mid*rCut) > tolerance) {
+                lo = mid;
+            }
+            else {
+                hi = mid;
+            }
+        }
+        return hi;
+    }
+
+    /**
+     * Returns a grid size (powers of 2) large enough to resolve the
+     * reciprocal-space terms down to the given tolerance for the box.
+     */
+    public static int[] gridSizeForTolerance(IBox box, double alpha, double tolerance) {
+        // exp(-kCut^2/(4 alpha^2)) = tolerance
+        double kCut = 2*alpha*Math.sqrt(-Math.log(tolerance));
+        int[] n = new int[3];
+        for (int i=0; i<3; i++) {
+            double mMax = kCut*box.getBoundary().getBoxSize().getX(i)/(2*Math.PI);
+            n[i] = 8;
+            while (n[i] < 2*mMax+1) {
+                n[i] *= 2;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Sets the real-space cutoff.  This does not alter alpha or the grid.
+     */
+    public void setRCut(double newRCut) {
+        rCut = newRCut;
+        rCutSquared = rCut*rCut;
+    }
+
+    /**
+     * Returns the real-space cutoff.
+     */
+    public double getRCut() {
+        return rCut;
+    }
+
+    public double getAlpha() {
+        return alpha;
+    }
+
+    public int[] getGridSize() {
+        return nGrid;
+    }
+
+    public int getSplineOrder() {
+        return splineOrder;
+    }
+
+    public double getRange() {
+        return Double.POSITIVE_INFINITY;
+    }
+
+    public int nBody() {
+        return 0;
+    }
+
+    public void setBox(IBox box) {
+    }
+
+    public double energy(IAtomList atoms) {
+        double real = doRealSum ? uReal() : 0;
+        return real + uFourier() + uSelf() - uBondCorr();
+    }
+
+    /**
+     * Returns the virial (sum of r.dU/dr under uniform scaling of the atoms
+     * and the box) of all contributions.
+     */
+    public double virial(IAtomList atoms) {
+        double w = 0;
+        if (doRealSum) {
+            computeReal(null);
+            w += virialReal;
+        }
+        computeFourier(false);
+        w += virialFourier;
+        computeBondCorr(null);
+        w += virialBondCorr;
+        return w;
+    }
+
+    public IVector[] gradient(IAtomList atoms) {
+        int nAtoms = box.getLeafList().getAtomCount();
+        if (gradient.length < nAtoms) {
+            gradient = new IVectorMutable[nAtoms];
+            for (int i=0; i<nAtoms; i++) {
+                gradient[i] = space.makeVector();
+            }
+        }
+        else {
+            for (int i=0; i<nAtoms; i++) {
+                gradient[i].E(0);
+            }
+        }
+        if (doRealSum) {
+            computeReal(gradient);
+        }
+        computeFourier(true);
+        for (int i=0; i<nAtoms; i++) {
+            if (charges[i] == 0) continue;
+            gradient[i].PE(fourierGradient(i));
+        }
+        computeBondCorr(gradient);
+        return gradient;
+    }
+
+    public IVector[] gradient(IAtomList atoms, Tensor pressureTensor) {
+        return gradient(atoms);
+    }
+
+    // *********************************************************************************************//
+    // *************************************  Real-space *******************************************//
+    // *********************************************************************************************//
+
+    public double uReal() {
+        return computeReal(null);
+    }
+
+    /**
+     * Computes the real-space energy (returned) and virial (virialReal) and
+     * adds the real-space gradient to grad if it is not null.  Pairs are
+     * found with a cell list having cells at least rCut wide.
+     */
+    protected double computeReal(IVectorMutable[] grad) {
+        gatherAtoms();
+        IAtomList leafList = box.getLeafList();
+        int nAtoms = leafList.getAtomCount();
+        for (int i=0; i<3; i++) {
+            if (rCut > 0.5*boxSize[i]) {
+                throw new IllegalStateException("rCut must be no more than half the box length");
+            }
+        }
+        int[] nCells = new int[3];
+        int totalCells = 1;
+        boolean useCells = true;
+        for (int i=0; i<3; i++) {
+            nCells[i] = (int)(boxSize[i]/rCut);
+            if (nCells[i] < 3) {
+                useCells = false;
+            }
+            totalCells *= nCells[i];
+        }
+        if (!useCells) {
+            nCells[0] = nCells[1] = nCells[2] = 1;
+            totalCells = 1;
+        }
+        if (cellHead.length < totalCells) {
+            cellHead = new int[totalCells];
+        }
+        if (cellNext.length < nAtoms) {
+            cellNext = new int[nAtoms];
+        }
+        java.util.Arrays.fill(cellHead, 0, totalCells, -1);
+        for (int i=nAtoms-1; i>-1; i--) {
+            if (charges[i] == 0) continue;
+            int c = cellIndex(i, nCells);
+            cellNext[i] = cellHead[c];
+            cellHead[c] = i;
+        }
+
+        double u = 0;
+        double w = 0;
+        double twoAlphaSqrtPI = 2*alpha/sqrtPI;
+        int nNbrCells = useCells ? 27 : 1;
+        for (int i=0; i<nAtoms; i++) {
+            double qi = charges[i];
+            if (qi == 0) continue;
+            IMolecule moleculeI = leafList.getAtom(i).getParentGroup();
+            int ci = cellIndex(i, nCells);
+            int cx = ci/(nCells[1]*nCells[2]);
+            int cy = (ci/nCells[2])%nCells[1];
+            int cz = ci%nCells[2];
+            for (int nc=0; nc<nNbrCells; nc++) {
+                int c = ci;
+                if (useCells) {
+                    int jx = (cx + nc/9 - 1 + nCells[0]) % nCells[0];
+                    int jy = (cy + (nc/3)%3 - 1 + nCells[1]) % nCells[1];
+                    int jz = (cz + nc%3 - 1 + nCells[2]) % nCells[2];
+                    c = (jx*nCells[1] + jy)*nCells[2] + jz;
+                }
+                for (int j=cellHead[c]; j>-1; j=cellNext[j]) {
+                    if (j <= i) continue;
+                    if (leafList.getAtom(j).getParentGroup() == moleculeI) continue;
+                    double r2 = 0;
+                    for (int k=0; k<3; k++) {
+                        double x = positions[3*i+k] - positions[3*j+k];
+                        x -= boxSize[k]*Math.rint(x/boxSize[k]);
+                        drTmp[k] = x;
+                        r2 += x*x;
+                    }
+                    if (r2 > rCutSquared) continue;
+                    double r = Math.sqrt(r2);
+                    double qq = qi*charges[j];
+                    double erfc = Erf.erfc(alpha*r);
+                    u += qq*erfc/r;
+                    // r du/dr
+                    double rdudr = -qq*(erfc/r + twoAlphaSqrtPI*Math.exp(-alpha2*r2));
+                    w += rdudr;
+                    if (grad != null) {
+                        double coeff = rdudr/r2;
+                        for (int k=0; k<3; k++) {
+                            grad[i].setX(k, grad[i].getX(k) + coeff*drTmp[k]);
+                            grad[j].setX(k, grad[j].getX(k) - coeff*drTmp[k]);
+                        }
+                    }
+                }
+            }
+        }
+        virialReal = w;
+        return u;
+    }
+
+    protected int cellIndex(int i, int[] nCells) {
+        int c = 0;
+        for (int k=0; k<3; k++) {
+            double frac = positions[3*i+k]/boxSize[k];
+            frac -= Math.floor(frac);
+            int ck = (int)(frac*nCells[k]);
+            if (ck == nCells[k]) ck = 0;
+            c = c*nCells[k] + ck;
+        }
+        return c;
+    }
+
+    // *********************************************************************************************//
+    // *************************************  Fourier-space ****************************************//
+    // *********************************************************************************************//
+
+    public double uFourier() {
+        return computeFourier(false);
+    }
+
+    /**
+     * Spreads the charges onto the grid and computes the reciprocal-space
+     * energy (returned) and virial (virialFourier).  If doPotential is true,
+     * the convolution of the charge grid with the reciprocal-space pair
+     * potential is left in qReal, so that fourierGradient can be called.
+     */
+    protected double computeFourier(boolean doPotential) {
+        gatherAtoms();
+        updateBC();
+        spreadCharges();
+        fft.invert(qReal, qImaginary);
+        int nPoints = qReal.length;
+        double u = 0, w = 0;
+        for (int m=0; m<nPoints; m++) {
+            double um = 0.5*bc[m]*(qReal[m]*qReal[m] + qImaginary[m]*qImaginary[m]);
+            u += um;
+            w += um*virialFactor[m];
+            qReal[m] *= bc[m];
+            qImaginary[m] *= bc[m];
+        }
+        if (doPotential) {
+            fft.transform(qReal, qImaginary);
+            for (int m=0; m<nPoints; m++) {
+                // transform scaled by 1/nPoints
+                qReal[m] *= nPoints;
+            }
+        }
+        virialFourier = w;
+        return u;
+    }
+
+    /**
+     * Returns the reciprocal-space gradient on atom i.  computeFourier(true)
+     * must have been called first.
+     */
+    protected IVector fourierGradient(int i) {
+        int n = splineOrder;
+        int off0 = (3*i)*n, off1 = (3*i+1)*n, off2 = (3*i+2)*n;
+        int b0 = gridBase[3*i], b1 = gridBase[3*i+1], b2 = gridBase[3*i+2];
+        double g0 = 0, g1 = 0, g2 = 0;
+        for (int j0=0; j0<n; j0++) {
+            int k0 = b0 - j0;
+            if (k0 < 0) k0 += nGrid[0];
+            for (int j1=0; j1<n; j1++) {
+                int k1 = b1 - j1;
+                if (k1 < 0) k1 += nGrid[1];
+                int idx01 = (k0*nGrid[1] + k1)*nGrid[2];
+                double t01 = splines[off0+j0]*splines[off1+j1];
+                double dt0t1 = dSplines[off0+j0]*splines[off1+j1];
+                double t0dt1 = splines[off0+j0]*dSplines[off1+j1];
+                for (int j2=0; j2<n; j2++) {
+                    int k2 = b2 - j2;
+                    if (k2 < 0) k2 += nGrid[2];
+                    double phi = qReal[idx01 + k2];
+                    g0 += dt0t1*splines[off2+j2]*phi;
+                    g1 += t0dt1*splines[off2+j2]*phi;
+                    g2 += t01*dSplines[off2+j2]*phi;
+                }
+            }
+        }
+        double q = charges[i];
+        rAB.setX(0, q*g0*nGrid[0]/boxSize[0]);
+        rAB.setX(1, q*g1*nGrid[1]/boxSize[1]);
+        rAB.setX(2, q*g2*nGrid[2]/boxSize[2]);
+        return rAB;
+    }
+
+    /**
+     * Computes the B-spline weights for each atom and spreads the charges
+     * onto the (real part of the) grid.
+     */
+    protected void spreadCharges() {
+        int nAtoms = charges.length;
+        int n = splineOrder;
+        if (gridBase.length < 3*nAtoms) {
+            gridBase = new int[3*nAtoms];
+            splines = new double[3*nAtoms*n];
+            dSplines = new double[3*nAtoms*n];
+        }
+        java.util.Arrays.fill(qReal, 0);
+        java.util.Arrays.fill(qImaginary, 0);
+        for (int i=0; i<nAtoms; i++) {
+            double q = charges[i];
+            if (q == 0) continue;
+            for (int k=0; k<3; k++) {
+                double frac = positions[3*i+k]/boxSize[k];
+                frac -= Math.floor(frac);
+                double u = frac*nGrid[k];
+                int base = (int)u;
+                if (base == nGrid[k]) base = 0;
+                fillSpline(u - base);
+                gridBase[3*i+k] = base;
+                System.arraycopy(theta, 0, splines, (3*i+k)*n, n);
+                System.arraycopy(dTheta, 0, dSplines, (3*i+k)*n, n);
+            }
+            int off0 = (3*i)*n, off1 = (3*i+1)*n, off2 = (3*i+2)*n;
+            int b0 = gridBase[3*i], b1 = gridBase[3*i+1], b2 = gridBase[3*i+2];
+            for (int j0=0; j0<n; j0++) {
+                int k0 = b0 - j0;
+                if (k0 < 0) k0 += nGrid[0];
+                for (int j1=0; j1<n; j1++) {
+                    int k1 = b1 - j1;
+                    if (k1 < 0) k1 += nGrid[1];
+                    int idx01 = (k0*nGrid[1] + k1)*nGrid[2];
+                    double qt01 = q*splines[off0+j0]*splines[off1+j1];
+                    for (int j2=0; j2<n; j2++) {
+                        int k2 = b2 - j2;
+                        if (k2 < 0) k2 += nGrid[2];
+                        qReal[idx01 + k2] += qt01*splines[off2+j2];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills theta[j] with M_n(w+j) and dTheta[j] with its derivative, for
+     * j=0..n-1, where M_n is the cardinal B-spline of order n.
+     */
+    protected void fillSpline(double w) {
+        int n = splineOrder;
+        java.util.Arrays.fill(theta, 0);
+        theta[0] = w;
+        theta[1] = 1-w;
+        for (int k=3; k<=n; k++) {
+            if (k == n) {
+                // M_n'(x) = M_{n-1}(x) - M_{n-1}(x-1)
+                dTheta[0] = theta[0];
+                for (int j=1; j<n; j++) {
+                    dTheta[j] = theta[j] - theta[j-1];
+                }
+            }
+            double div = 1.0/(k-1);
+            for (int j=k-1; j>0; j--) {
+                theta[j] = div*((w+j)*theta[j] + (k-w-j)*theta[j-1]);
+            }
+            theta[0] = div*w*theta[0];
+        }
+    }
+
+    /**
+     * Returns |b(m)|^2 for m=0..K-1 (Essmann eq. 4.4).
+     */
+    protected double[] computeBModuli(int K) {
+        fillSpline(0);
+        double[] b = new double[K];
+        for (int m=0; m<K; m++) {
+            double sumRe = 0, sumIm = 0;
+            for (int k=0; k<splineOrder-1; k++) {
+                double arg = 2*Math.PI*m*k/K;
+                sumRe += theta[k+1]*Math.cos(arg);
+                sumIm += theta[k+1]*Math.sin(arg);
+            }
+            double denom = sumRe*sumRe + sumIm*sumIm;
+            b[m] = denom < 1e-10 ? 0 : 1.0/denom;
+        }
+        // for odd orders, the denominator vanishes at m=K/2; interpolate
+        for (int m=0; m<K; m++) {
+            if (b[m] == 0) {
+                b[m] = 0.5*(b[(m+K-1)%K] + b[(m+1)%K]);
+            }
+        }
+        return b;
+    }
+
+    /**
+     * Recomputes B(m)*C(m) for each grid point if the box size has changed.
+     */
+    protected void updateBC() {
+        boolean changed = false;
+        for (int i=0; i<3; i++) {
+            if (boxSize[i] != lastBoxSize[i]) {
+                changed = true;
+                lastBoxSize[i] = boxSize[i];
+            }
+        }
+        if (!changed) return;
+        double volume = boxSize[0]*boxSize[1]*boxSize[2];
+        double pi2OverAlpha2 = Math.PI*Math.PI/alpha2;
+        for (int m0=0; m0<nGrid[0]; m0++) {
+            int mp0 = m0 <= nGrid[0]/2 ? m0 : m0 - nGrid[0];
+            double mx = mp0/boxSize[0];
+            for (int m1=0; m1<nGrid[1]; m1++) {
+                int mp1 = m1 <= nGrid[1]/2 ? m1 : m1 - nGrid[1];
+                double my = mp1/boxSize[1];
+                for (int m2=0; m2<nGrid[2]; m2++) {
+                    int mp2 = m2 <= nGrid[2]/2 ? m2 : m2 - nGrid[2];
+                    double mz = mp2/boxSize[2];
+                    int idx = (m0*nGrid[1] + m1)*nGrid[2] + m2;
+                    double m2Sq = mx*mx + my*my + mz*mz;
+                    if (m2Sq == 0) {
+                        bc[idx] = 0;
+                        virialFactor[idx] = 0;
+                        continue;
+                    }
+                    double c = Math.exp(-pi2OverAlpha2*m2Sq)/(Math.PI*volume*m2Sq);
+                    bc[idx] = bModuli[0][m0]*bModuli[1][m1]*bModuli[2][m2]*c;
+                    // d/dlambda of exp(-pi^2 m^2/(lambda^2 alpha^2))/(lambda V m^2) at lambda=1
+                    virialFactor[idx] = 2*pi2OverAlpha2*m2Sq - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies positions and charges of the leaf atoms into arrays.
+     */
+    protected void gatherAtoms() {
+        IAtomList leafList = box.getLeafList();
+        int nAtoms = leafList.getAtomCount();
+        if (charges.length != nAtoms) {
+            charges = new double[nAtoms];
+            positions = new double[3*nAtoms];
+        }
+        for (int i=0; i<nAtoms; i++) {
+            IAtom atom = leafList.getAtom(i);
+            charges[i] = atomAgentManager.getAgent(atom).charge;
+            IVector r = atom.getPosition();
+            positions[3*i] = r.getX(0);
+            positions[3*i+1] = r.getX(1);
+            positions[3*i+2] = r.getX(2);
+        }
+        IVector dim = box.getBoundary().getBoxSize();
+        for (int i=0; i<3; i++) {
+            boxSize[i] = dim.getX(i);
+        }
+    }
+
+    // *********************************************************************************************//
+    // ********************** self-correction Part************************************************* //
+    // *********************************************************************************************//
+
+    public double uSelf() {
+        double uSelf = 0.0;
+        IAtomList atoms = box.getLeafList();
+        int nAtoms = atoms.getAtomCount();
+        for (int i=0; i<nAtoms; i++) {
+            double charge = atomAgentManager.getAgent(atoms.getAtom(i)).charge;
+            uSelf += charge*charge;
+        }
+        return -uSelf*alpha/sqrtPI;
+    }
+
+    public double uBondCorr() {
+        return computeBondCorr(null);
+    }
+
+    /**
+     * Computes the reciprocal-space energy of intramolecular pairs (returned)
+     * and its virial (virialBondCorr).  The gradient of the correction (which
+     * is subtracted from the energy) is added to grad if it is not null.
+     */
+    protected double computeBondCorr(IVectorMutable[] grad) {
+        double uCorr = 0.0;
+        double w = 0;
+        double twoAlphaSqrtPI = 2*alpha/sqrtPI;
+        int numMolecules = moleculeList.getMoleculeCount();
+        for (int i=0; i<numMolecules; i++) {
+            IMolecule molecule = moleculeList.getMolecule(i);
+            IAtomList childList = molecule.getChildList();
+            int numSites = childList.getAtomCount();
+            for (int siteA=0; siteA<numSites; siteA++) {
+                IAtom atomA = childList.getAtom(siteA);
+                double chargeA = atomAgentManager.getAgent(atomA).charge;
+                if (chargeA==0) continue;
+                for (int siteB=siteA+1; siteB<numSites; siteB++) {
+                    IAtom atomB = childList.getAtom(siteB);
+                    double chargeB = atomAgentManager.getAgent(atomB).charge;
+                    if (chargeB==0) continue;
+                    rAB.Ev1Mv2(atomA.getPosition(), atomB.getPosition());
+                    box.getBoundary().nearestImage(rAB);
+                    double r2 = rAB.squared();
+                    double r = Math.sqrt(r2);
+                    double qq = chargeA*chargeB;
+                    double erf = Erf.erf(alpha*r);
+                    uCorr += qq*erf/r;
+                    // r d/dr of the subtracted term, -qq erf(alpha r)/r
+                    double rdudr = -qq*(twoAlphaSqrtPI*Math.exp(-alpha2*r2) - erf/r);
+                    w += rdudr;
+                    if (grad != null) {
+                        double coeff = rdudr/r2;
+                        grad[atomA.getLeafIndex()].PEa1Tv1(coeff, rAB);
+                        grad[atomB.getLeafIndex()].PEa1Tv1(-coeff, rAB);
+                    }
+                }
+            }
+        }
+        virialBondCorr = w;
+        return uCorr;
+    }
+
+    /**
+     * Returns a pair potential for the real-space part, suitable for use with
+     * a PotentialMaster that uses neighbor lists.  After this method is
+     * called, this class no longer computes the real-space part itself.
+     */
+    public P2SPMEReal makeP2Real() {
+        doRealSum = false;
+        return new P2SPMEReal();
+    }
+
+    protected final ISpace space;
+    protected final IBox box;
+    protected final AtomLeafAgentManager<MyCharge> atomAgentManager;
+    protected final IMoleculeList moleculeList;
+    protected final double alpha, alpha2;
+    protected final int splineOrder;
+    protected final int[] nGrid;
+    protected final FastFourierTransform3D fft;
+    protected final double[] qReal, qImaginary, bc, virialFactor;
+    protected final double[][] bModuli;
+    protected final double[] theta, dTheta;
+    protected final double[] boxSize, lastBoxSize;
+    protected final double[] drTmp = new double[3];
+    protected final IVectorMutable rAB;
+    protected final double sqrtPI = Math.sqrt(Math.PI);
+    protected double[] charges, positions, splines, dSplines;
+    protected int[] gridBase;
+    protected int[] cellHead, cellNext;
+    protected IVectorMutable[] gradient;
+    protected double rCut, rCutSquared;
+    protected double virialReal, virialFourier, virialBondCorr;
+    protected boolean doRealSum = true;
+
+    /**
+     * Real-space part of the SPME energy for a single pair.  The
+     * PotentialMaster is responsible for excluding intramolecular pairs.
+     */
+    public class P2SPMEReal implements PotentialSoft {
+
+        protected final IVectorMutable[] gradient2;
+        protected final IVectorMutable dr;
+
+        public P2SPMEReal() {
+            gradient2 = new IVectorMutable[2];
+            gradient2[0] = space.makeVector();
+            gradient2[1] = space.makeVector();
+            dr = space.makeVector();
+        }
+
+        public double energy(IAtomList atoms) {
+            IAtom atomA = atoms.getAtom(0);
+            IAtom atomB = atoms.getAtom(1);
+            dr.Ev1Mv2(atomA.getPosition(), atomB.getPosition());
+            box.getBoundary().nearestImage(dr);
+            double r2 = dr.squared();
+            if (r2 > rCutSquared) return 0;
+            double r = Math.sqrt(r2);
+            double qq = atomAgentManager.getAgent(atomA).charge * atomAgentManager.getAgent(atomB).charge;
+            return qq * Erf.erfc(alpha * r) / r;
+        }
+
+        public double getRange() {
+            return rCut;
+        }
+
+        public void setBox(IBox box) {}
+
+        public int nBody() {
+            return 2;
+        }
+
+        public double virial(IAtomList atoms) {
+            IAtom atomA = atoms.getAtom(0);
+            IAtom atomB = atoms.getAtom(1);
+            dr.Ev1Mv2(atomA.getPosition(), atomB.getPosition());
+            box.getBoundary().nearestImage(dr);
+            double r2 = dr.squared();
+            if (r2 > rCutSquared) return 0;
+            double r = Math.sqrt(r2);
+            double qq = atomAgentManager.getAgent(atomA).charge * atomAgentManager.getAgent(atomB).charge;
+            return -qq*(Erf.erfc(alpha*r)/r + 2*alpha/sqrtPI*Math.exp(-alpha2*r2));
+        }
+
+        public IVector[] gradient(IAtomList atoms) {
+            IAtom atomA = atoms.getAtom(0);
+            IAtom atomB = atoms.getAtom(1);
+            dr.Ev1Mv2(atomA.getPosition(), atomB.getPosition()); //dr == rA - rB
+            box.getBoundary().nearestImage(dr);
+            double r2 = dr.squared();
+            if (r2 > rCutSquared) {
+                gradient2[0].E(0);
+                gradient2[1].E(0);
+                return gradient2;
+            }
+            double r = Math.sqrt(r2);
+            double qq = atomAgentManager.getAgent(atomA).charge * atomAgentManager.getAgent(atomB).charge;
+            double B = Erf.erfc(alpha*r) + 2.0*alpha*r/sqrtPI * Math.exp(-alpha2*r2);
+            double realCoeff = - qq * B / (r*r2); // gradU = -F
+            gradient2[0].Ea1Tv1(realCoeff, dr);
+            gradient2[1].Ea1Tv1(-realCoeff, dr);
+            return gradient2;
+        }
+
+        public IVector[] gradient(IAtomList atoms, Tensor pressureTensor) {
+            return gradient(atoms);
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.potential;
+
+import etomica.api.IBox;
+import etomica.space.ISpace;
+import etomica.space3d.Space3D;
+import etomica.util.EnumeratedType;
+
+/**
+ * Wraps a soft-spherical potential that is expensive to evaluate and
+ * replaces it with interpolation from a table.  The table covers separations
+ * from rMin to rMax and is uniform in r^2, so no square root is needed.
+ * Outside that range, the wrapped potential is used directly.
+ * <p>
+ * With QUINTIC interpolation (the default), u, du and d2u of the wrapped
+ * potential are used at each grid point and the interpolant (a quintic
+ * Hermite polynomial) matches all three, so the energy and its first two
+ * derivatives are continuous.  With CUBIC interpolation, only u is used
+ * (for potentials that don't implement du and d2u) and the interpolant is a
+ * clamped cubic spline; du and d2u are then the derivatives of the spline.
+ * <p>
+ * The grid is refined (doubling the number of points) until the error in
+ * the energy, checked between the grid points against the wrapped potential,
+ * is less than the given tolerance.
+ */
+public class P2SoftSphericalTabulated extends Potential2SoftSpherical {
+
+    public P2SoftSphericalTabulated(ISpace space, Potential2SoftSpherical potential,
+            double rMin, double rMax, double tolerance) {
+        this(space, potential, rMin, rMax, tolerance, Interpolation.QUINTIC);
+    }
+
+    public P2SoftSphericalTabulated(ISpace space, Potential2SoftSpherical potential,
+            double rMin, double rMax, double tolerance, Interpolation interpolation) {
+        super(space);
+        if (rMin <= 0 || rMax <= rMin) {
+            throw new IllegalArgumentException("need 0 < rMin < rMax");
+        }
+        if (!(tolerance > 0)) {
+            throw new IllegalArgumentException("tolerance must be positive");
+        }
+        this.potential = potential;
+        this.interpolation = interpolation;
+        x0 = rMin*rMin;
+        xMax = rMax*rMax;
+        this.tolerance = tolerance;
+        int n = MIN_INTERVALS;
+        while (true) {
+            makeTable(n);
+            maxError = findMaxError();
+            if (maxError < tolerance) break;
+            if (n >= MAX_INTERVALS) {
+                throw new RuntimeException("could not reach tolerance "+tolerance+" with "+n
+                        +" intervals (error was "+maxError+")");
+            }
+            n *= 2;
+        }
+    }
+
+    /**
+     * Returns the wrapped potential.
+     */
+    public Potential2SoftSpherical getWrappedPotential() {
+        return potential;
+    }
+
+    /**
+     * Returns the number of intervals in the table.
+     */
+    public int getNumIntervals() {
+        return nIntervals;
+    }
+
+    /**
+     * Returns the largest error in the energy found while checking the table.
+     */
+    public double getMaxError() {
+        return maxError;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    public Interpolation getInterpolation() {
+        return interpolation;
+    }
+
+    public void setBox(IBox box) {
+        potential.setBox(box);
+        super.setBox(box);
+    }
+
+    public double u(double r2) {
+        if (r2 < x0 || r2 >= xMax) {
+            return potential.u(r2);
+        }
+        double s = (r2 - x0)*invH;
+        int i = (int)s;
+        // roundoff can put r2 just below xMax in the next interval
+        if (i == nIntervals) i--;
+        double t = s - i;
+        int k = 6*i;
+        return c[k] + t*(c[k+1] + t*(c[k+2] + t*(c[k+3] + t*(c[k+4] + t*c[k+5]))));
+    }
+
+    public double du(double r2) {
+        if (r2 < x0 || r2 >= xMax) {
+            return potential.du(r2);
+        }
+        double s = (r2 - x0)*invH;
+        int i = (int)s;
+        // roundoff can put r2 just below xMax in the next interval
+        if (i == nIntervals) i--;
+        double t = s - i;
+        int k = 6*i;
+        double dudt = c[k+1] + t*(2*c[k+2] + t*(3*c[k+3] + t*(4*c[k+4] + t*5*c[k+5])));
+        // r du/dr = 2 r^2 du/dr^2
+        return 2*r2*dudt*invH;
+    }
+
+    public double d2u(double r2) {
+        if (r2 < x0 || r2 >= xMax) {
+            return potential.d2u(r2);
+        }
+        double s = (r2 - x0)*invH;
+        int i = (int)s;
+        // roundoff can put r2 just below xMax in the next interval
+        if (i == nIntervals) i--;
+        double t = s - i;
+        int k = 6*i;
+        double dudt = c[k+1] + t*(2*c[k+2] + t*(3*c[k+3] + t*(4*c[k+4] + t*5*c[k+5])));
+        double d2udt2 = 2*c[k+2] + t*(6*c[k+3] + t*(12*c[k+4] + t*20*c[k+5]));
+        // r^2 d2u/dr2 = 2 r^2 du/dr^2 + 4 r^4 d2u/d(r^2)^2
+        return 2*r2*dudt*invH + 4*r2*r2*d2udt2*invH*invH;
+    }
+
+    public double uInt(double rC) {
+        return potential.uInt(rC);
+    }
+
+    public double getRange() {
+        return potential.getRange();
+    }
+
+    /**
+     * Fills in the coefficients of the polynomial (in t, from 0 to 1 across
+     * each interval) for each of the n intervals.
+     */
+    protected void makeTable(int n) {
+        nIntervals = n;
+        double h = (xMax - x0)/n;
+        invH = 1.0/h;
+        c = new double[6*n];
+        double[] y = new double[n+1];
+        for (int i=0; i<=n; i++) {
+            y[i] = potential.u(x0 + i*h);
+        }
+
+        if (interpolation == Interpolation.QUINTIC) {
+            // derivatives with respect to r^2, from du and d2u
+            double[] y1 = new double[n+1];
+            double[] y2 = new double[n+1];
+            for (int i=0; i<=n; i++) {
+                double x = x0 + i*h;
+                double du = potential.du(x);
+                y1[i] = du/(2*x);
+                y2[i] = (potential.d2u(x) - du)/(4*x*x);
+            }
+            for (int i=0; i<n; i++) {
+                int k = 6*i;
+                double a0 = y[i];
+                double a1 = h*y1[i];
+                double a2 = 0.5*h*h*y2[i];
+                double d0 = y[i+1] - a0 - a1 - a2;
+                double d1 = h*y1[i+1] - a1 - 2*a2;
+                double d2 = h*h*y2[i+1] - 2*a2;
+                c[k] = a0;
+                c[k+1] = a1;
+                c[k+2] = a2;
+                c[k+3] = 10*d0 - 4*d1 + 0.5*d2;
+                c[k+4] = -15*d0 + 7*d1 - d2;
+                c[k+5] = 6*d0 - 3*d1 + 0.5*d2;
+            }
+            return;
+        }
+
+        // clamped cubic spline, with the end slopes from one-sided (4th
+        // order) differences.  m holds the second derivatives times h^2.
+        double slope0 = (-25*y[0] + 48*y[1] - 36*y[2] + 16*y[3] - 3*y[4])/12;
+        double slopeN = (25*y[n] - 48*y[n-1] + 36*y[n-2] - 16*y[n-3] + 3*y[n-4])/12;
+        double[] diag = new double[n+1];
+        double[] rhs = new double[n+1];
+        diag[0] = 2;
+        rhs[0] = 6*((y[1] - y[0]) - slope0);
+        for (int i=1; i<n; i++) {
+            diag[i] = 4;
+            rhs[i] = 6*(y[i+1] - 2*y[i] + y[i-1]);
+        }
+        diag[n] = 2;
+        rhs[n] = 6*(slopeN - (y[n] - y[n-1]));
+        // the off-diagonal elements are all 1
+        for (int i=1; i<=n; i++) {
+            double f = 1/diag[i-1];
+            diag[i] -= f;
+            rhs[i] -= f*rhs[i-1];
+        }
+        double[] m = new double[n+1];
+        m[n] = rhs[n]/diag[n];
+        for (int i=n-1; i>=0; i--) {
+            m[i] = (rhs[i] - m[i+1])/diag[i];
+        }
+        for (int i=0; i<n; i++) {
+            int k = 6*i;
+            c[k] = y[i];
+            c[k+1] = (y[i+1] - y[i]) - (2*m[i] + m[i+1])/6;
+            c[k+2] = 0.5*m[i];
+            c[k+3] = (m[i+1] - m[i])/6;
+        }
+    }
+
+    /**
+     * Returns the largest difference between the table and the wrapped
+     * potential, checked at several points within each interval.
+     */
+    protected double findMaxError() {
+        double h = 1/invH;
+        double max = 0;
+        for (int i=0; i<nIntervals; i++) {
+            for (int j=1; j<4; j++) {
+                double x = x0 + (i + 0.25*j)*h;
+                double err = Math.abs(u(x) - potential.u(x));
+                if (!(err <= max)) {
+                    // also catches NaN
+                    max = err;
+                }
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Interpolation schemes for the table.
+     */
+    public static class Interpolation extends EnumeratedType {
+        protected Interpolation(String label) {
+            super(label);
+        }
+        private static final long serialVersionUID = 1L;
+        /** quintic Hermite polynomials, using u, du and d2u */
+        public static final Interpolation QUINTIC = new Interpolation("Quintic");
+        /** cubic spline, using u only */
+        public static final Interpolation CUBIC = new Interpolation("Cubic");
+    }
+
+    /**
+     * Times the analytic and tabulated versions of a few potentials.
+     */
+    public static void main(String[] args) {
+        ISpace space = Space3D.getInstance();
+        Potential2SoftSpherical[] potentials = new Potential2SoftSpherical[]{
+                new P2ArgonAziz1993(space), new P2HePCKLJS(space), new P2LennardJones(space)};
+        Interpolation[] interpolations = new Interpolation[]{Interpolation.CUBIC, Interpolation.QUINTIC, Interpolation.QUINTIC};
+        double[][] ranges = new double[][]{{3.0, 12.0}, {2.0, 12.0}, {0.85, 4.0}};
+        double[] tolerances = new double[]{1e-4, 1e-6, 1e-8};
+        int nCalls = 2000000;
+        for (int p=0; p<potentials.length; p++) {
+            double rMin = ranges[p][0], rMax = ranges[p][1];
+            long t0 = System.nanoTime();
+            P2SoftSphericalTabulated tabulated = new P2SoftSphericalTabulated(space, potentials[p],
+                    rMin, rMax, tolerances[p], interpolations[p]);
+            long tBuild = System.nanoTime() - t0;
+            double x0 = rMin*rMin, dx = (rMax*rMax - x0)/nCalls;
+            double sum = 0;
+            t0 = System.nanoTime();
+            for (int i=0; i<nCalls; i++) {
+                sum += potentials[p].u(x0 + i*dx);
+            }
+            long tAnalytic = System.nanoTime() - t0;
+            t0 = System.nanoTime();
+            for (int i=0; i<nCalls; i++) {
+                sum -= tabulated.u(x0 + i*dx);
+            }
+            long tTable = System.nanoTime() - t0;
+            System.out.println(potentials[p].getClass().getSimpleName()+" "+interpolations[p]+": "
+                    +tabulated.getNumIntervals()+" intervals (built in "+(tBuild/1000000)+" ms), error "
+                    +tabulated.getMaxError()+", analytic "+(tAnalytic/nCalls)+" ns/call, table "
+                    +(tTable/nCalls)+" ns/call, speedup "+((double)tAnalytic/tTable)+" (sum of differences "+sum+")");
+        }
+    }
+
+    private static final long serialVersionUID = 1L;
+    protected static final int MIN_INTERVALS = 64;
+    protected static final int MAX_INTERVALS = 1<<22;
+    protected final Potential2SoftSpherical potential;
+    protected final Interpolation interpolation;
+    protected final double x0, xMax;
+    protected final double tolerance;
+    protected double invH;
+    protected int nIntervals;
+    protected double[] c;
+    protected double maxError;
+}
@@ -120,8 +120,30 @@ public abstract class Potential2SoftSpherical extends Potential2 implements Pote
         boundary = box.getBoundary();
     }
 
+    /**
+     * Returns true if energy(IAtomList) is u of the squared separation, as
+     * defined here, and false if a subclass overrides energy (to filter
+     * pairs, for instance).  Callers that already have the separation may
+     * call u directly only if this returns true.  The class is examined
+     * only on the first call.
+     */
+    public boolean isEnergyFromU() {
+        if (energyFromU == 0) {
+            try {
+                Class<?> declaringClass = getClass().getMethod("energy", IAtomList.class).getDeclaringClass();
+                energyFromU = declaringClass == Potential2SoftSpherical.class ? 1 : -1;
+            }
+            catch (NoSuchMethodException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return energyFromU > 0;
+    }
+
     protected final IVectorMutable[] gradient;
     protected IBoundary boundary;
     protected final IVectorMutable dr;
+    // 1 if energy is u(r2), -1 if it is overridden, 0 if not yet known
+    private int energyFromU;
     
 }//end of Potential2SoftSpherical
@@ -55,6 +55,15 @@ public class PotentialCalculationEnergySum implements PotentialCalculation, Pote
 		sum = 0.0;
 	}
 
+	/**
+	 * Adds the given energy directly to the sum.  This is used by potential
+	 * masters that evaluate pair energies without going through
+	 * doCalculation.
+	 */
+	public void addToSum(double u) {
+	    sum += u;
+	}
+
 	/**
 	 * Returns the current value of the energy sum.
 	 */
@@ -24,6 +24,13 @@ public class PotentialCalculationForceSum implements PotentialCalculation {
         agentIterator = integratorAgentManager.makeIterator();
     }
 
+    /**
+     * Returns the agent manager holding the force vectors.
+     */
+    public AtomLeafAgentManager<? extends IntegratorBox.Forcible> getAgentManager() {
+        return integratorAgentManager;
+    }
+
     /**
      * Re-zeros the force vectors.
      *
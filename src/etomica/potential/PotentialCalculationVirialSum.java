@@ -37,6 +37,15 @@ public class PotentialCalculationVirialSum implements PotentialCalculation {
 
     private static final long serialVersionUID = 1L;
 
+	/**
+	 * Adds the given virial directly to the sum.  This is used by potential
+	 * masters that evaluate pair virials without going through
+	 * doCalculation.
+	 */
+	public void addToSum(double w) {
+	    sum += w;
+	}
+
 	/**
 	 * Returns the current value of the energy sum.
 	 */
@@ -0,0 +1,33 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.potential;
+
+import etomica.api.IAtom;
+import etomica.api.IBox;
+import etomica.api.IMolecule;
+
+/**
+ * Interface for a PotentialMaster that can compute the energy of a single
+ * atom or molecule with its neighbors directly, without an IteratorDirective
+ * or PotentialCalculation.  The result is the same as the energy summed by
+ * calculate with the atom or molecule as the target of the directive
+ * (direction null) and the long-range correction excluded.  Implementations
+ * should not allocate anything per call.
+ */
+public interface PotentialMasterTargetEnergy {
+
+    /**
+     * Returns the energy of the given atom with all of its neighbors in the
+     * given box, including any intramolecular interactions it has with the
+     * other atoms in its molecule.
+     */
+    public double computeEnergy(IBox box, IAtom targetAtom);
+
+    /**
+     * Returns the energy of the given molecule with all of its neighbors in
+     * the given box, including its intramolecular energy.
+     */
+    public double computeEnergy(IBox box, IMolecule targetMolecule);
+}
@@ -0,0 +1,54 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.potential;
+
+import etomica.api.IBox;
+import etomica.api.IMolecule;
+
+/**
+ * Interface for a PotentialMaster that can compute the energy of a test
+ * (phantom) molecule with the molecules of a box, without the test molecule
+ * being added to the box.  The test molecule's atoms are taken at their
+ * current positions; the box, its agent managers, cell and neighbor lists
+ * are not touched and no box events are fired.  The long-range correction
+ * is not included.
+ */
+public interface PotentialMasterTestParticle {
+
+    /**
+     * Returns the energy of the given test molecule with the molecules in
+     * the given box, plus the test molecule's intramolecular energy.  The
+     * test molecule must not be in the box.
+     */
+    public double computeTestEnergy(IBox box, IMolecule testMolecule);
+
+    /**
+     * Returns a new TestParticleEnergy for the given box.  Each
+     * TestParticleEnergy has its own work space, so that separate instances
+     * can be used concurrently from different threads (so long as the box
+     * does not change and the pair potentials' energy methods are
+     * reentrant).
+     */
+    public TestParticleEnergy makeTestParticleEnergy(IBox box);
+
+    /**
+     * Computes energies of test molecules with the molecules of one box.
+     */
+    public interface TestParticleEnergy {
+
+        /**
+         * Returns the energy of the given test molecule with the molecules
+         * in the box (intermolecular and one-body contributions only).
+         */
+        public double energy(IMolecule testMolecule);
+
+        /**
+         * Returns the intramolecular energy of the given test molecule.
+         * This goes through the potential master's shared potential groups
+         * and cannot be called concurrently with other calculations.
+         */
+        public double intraEnergy(IMolecule testMolecule);
+    }
+}
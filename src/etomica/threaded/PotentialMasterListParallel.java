@@ -0,0 +1,247 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.threaded;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import etomica.api.IAtomList;
+import etomica.api.IBox;
+import etomica.api.ISimulation;
+import etomica.atom.AtomArrayList;
+import etomica.nbr.cell.Cell;
+import etomica.nbr.cell.NeighborCellManager;
+import etomica.nbr.list.NeighborListManagerPacked;
+import etomica.nbr.list.PotentialMasterListPacked;
+import etomica.space.ISpace;
+
+/**
+ * PotentialMasterListPacked that divides whole-box energy, virial and force
+ * calculations among the threads of a ForkJoinPool.  Atoms are ordered by
+ * the cell (from the NeighborCellManager) they belong to and the ordered list
+ * is cut into contiguous chunks having roughly equal numbers of neighbor
+ * pairs, so that each chunk covers a compact region of the box.  Each chunk
+ * accumulates forces into its own buffer; the buffers are then summed in
+ * parallel, with each task handling a slice of the atoms.
+ *
+ * Since this works through PotentialMasterListPacked, it handles
+ * PotentialCalculationForceSum (and PotentialCalculationForcePressureSum, as
+ * used by IntegratorVelocityVerlet), PotentialCalculationVirialSum and
+ * PotentialCalculationEnergySum; anything else is done on the calling
+ * thread by PotentialMasterList.  The u and du methods of the potentials
+ * must be safe to call from multiple threads (true of potentials whose u and
+ * du depend only on r2).
+ */
+public class PotentialMasterListParallel extends PotentialMasterListPacked {
+
+    /**
+     * Constructs the potential master using the given pool for the pair
+     * calculations.
+     */
+    public PotentialMasterListParallel(ISimulation sim, double range, ISpace _space, ForkJoinPool pool) {
+        super(sim, range, _space);
+        setPool(pool);
+        chunkSums = new PairSums[0];
+        cellOrder = new int[0];
+        chunkStart = new int[1];
+    }
+
+    /**
+     * Constructs the potential master using a pool with one thread for
+     * each available processor.
+     */
+    public PotentialMasterListParallel(ISimulation sim, double range, ISpace _space) {
+        this(sim, range, _space, new ForkJoinPool());
+    }
+
+    /**
+     * Sets the pool used for the pair calculations.  The work is divided into
+     * as many chunks as the pool has threads, unless setNumChunks has been
+     * called.
+     */
+    public void setPool(ForkJoinPool newPool) {
+        pool = newPool;
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Sets the number of chunks the atoms are divided into.  Each chunk has
+     * its own force buffer.  If 0 (the default), the pool's parallelism is
+     * used.
+     */
+    public void setNumChunks(int newNumChunks) {
+        if (newNumChunks < 0) {
+            throw new IllegalArgumentException("number of chunks must not be negative");
+        }
+        numChunks = newNumChunks;
+    }
+
+    public int getNumChunks() {
+        return numChunks;
+    }
+
+    protected void computePairSums(IBox box, NeighborListManagerPacked neighborManager, PairSums sums) {
+        int nChunks = numChunks > 0 ? numChunks : pool.getParallelism();
+        int nLeaf = box.getLeafList().getAtomCount();
+        if (nChunks < 2 || nLeaf < 2*nChunks) {
+            super.computePairSums(box, neighborManager, sums);
+            return;
+        }
+        double[] r = neighborManager.gatherPositions();
+        partition(box, neighborManager, nChunks);
+        if (chunkSums.length != nChunks || chunkSums[0].forces.length != sums.forces.length) {
+            chunkSums = new PairSums[nChunks];
+            for (int i=0; i<nChunks; i++) {
+                chunkSums[i] = new PairSums(space, nLeaf);
+            }
+        }
+        for (int i=0; i<nChunks; i++) {
+            chunkSums[i].reset(sums.doEnergy, sums.doForces, sums.doPressure);
+        }
+
+        pool.invoke(new PairTask(box, neighborManager, r, 0, nChunks));
+
+        for (int i=0; i<nChunks; i++) {
+            sums.u += chunkSums[i].u;
+            sums.w += chunkSums[i].w;
+            if (sums.doPressure) {
+                for (int j=0; j<sums.pressure.length; j++) {
+                    sums.pressure[j] += chunkSums[i].pressure[j];
+                }
+            }
+        }
+        if (sums.doForces) {
+            int nForces = sums.forces.length;
+            // slices of roughly 4k doubles, at least one per chunk
+            int sliceSize = Math.max(4096, nForces/(4*nChunks)+1);
+            pool.invoke(new ReduceTask(sums.forces, 0, nForces, sliceSize));
+        }
+    }
+
+    /**
+     * Orders the atoms by cell and divides the ordered list into nChunks
+     * pieces with roughly equal numbers of neighbor pairs.
+     */
+    protected void partition(IBox box, NeighborListManagerPacked neighborManager, int nChunks) {
+        IAtomList leafList = box.getLeafList();
+        int nLeaf = leafList.getAtomCount();
+        if (cellOrder.length != nLeaf) {
+            cellOrder = new int[nLeaf];
+        }
+        NeighborCellManager cellManager = getNbrCellManager(box);
+        Object[] cells = cellManager.getLattice().sites();
+        int n = 0;
+        for (int i=0; i<cells.length; i++) {
+            AtomArrayList occupants = ((Cell)cells[i]).occupants();
+            int nOccupants = occupants.getAtomCount();
+            if (n + nOccupants > nLeaf) {
+                n = -1;
+                break;
+            }
+            for (int j=0; j<nOccupants; j++) {
+                cellOrder[n++] = occupants.getAtom(j).getLeafIndex();
+            }
+        }
+        if (n != nLeaf) {
+            // cells haven't been assigned (or are out of date); just use the
+            // leaf order
+            for (int i=0; i<nLeaf; i++) {
+                cellOrder[i] = i;
+            }
+        }
+
+        int[] nbrStart = neighborManager.getNbrStart();
+        long totalPairs = nbrStart[nLeaf];
+        if (chunkStart.length != nChunks+1) {
+            chunkStart = new int[nChunks+1];
+        }
+        chunkStart[0] = 0;
+        int chunk = 1;
+        long pairCount = 0;
+        for (int i=0; i<nLeaf && chunk<nChunks; i++) {
+            int a = cellOrder[i];
+            // count each atom as one pair so that atoms without uplist
+            // neighbors still get spread out
+            pairCount += nbrStart[a+1] - nbrStart[a] + 1;
+            if (pairCount*nChunks >= chunk*(totalPairs+nLeaf)) {
+                chunkStart[chunk++] = i+1;
+            }
+        }
+        while (chunk <= nChunks) {
+            chunkStart[chunk++] = nLeaf;
+        }
+    }
+
+    private static final long serialVersionUID = 1L;
+    protected ForkJoinPool pool;
+    protected int numChunks;
+    protected PairSums[] chunkSums;
+    protected int[] cellOrder, chunkStart;
+
+    /**
+     * Task that computes the pair sums for a range of chunks, splitting the
+     * range until each task has one chunk.
+     */
+    protected class PairTask extends RecursiveAction {
+        public PairTask(IBox box, NeighborListManagerPacked neighborManager, double[] r, int firstChunk, int lastChunk) {
+            this.box = box;
+            this.neighborManager = neighborManager;
+            this.r = r;
+            this.firstChunk = firstChunk;
+            this.lastChunk = lastChunk;
+        }
+
+        protected void compute() {
+            if (lastChunk - firstChunk == 1) {
+                computePairs(box, neighborManager, r, cellOrder, chunkStart[firstChunk], chunkStart[lastChunk], chunkSums[firstChunk]);
+                return;
+            }
+            int mid = (firstChunk + lastChunk)/2;
+            invokeAll(new PairTask(box, neighborManager, r, firstChunk, mid),
+                      new PairTask(box, neighborManager, r, mid, lastChunk));
+        }
+
+        private static final long serialVersionUID = 1L;
+        protected final IBox box;
+        protected final NeighborListManagerPacked neighborManager;
+        protected final double[] r;
+        protected final int firstChunk, lastChunk;
+    }
+
+    /**
+     * Task that sums the chunk force buffers into the total for a slice of
+     * the force array.
+     */
+    protected class ReduceTask extends RecursiveAction {
+        public ReduceTask(double[] forces, int start, int end, int sliceSize) {
+            this.forces = forces;
+            this.start = start;
+            this.end = end;
+            this.sliceSize = sliceSize;
+        }
+
+        protected void compute() {
+            if (end - start <= sliceSize) {
+                for (int c=0; c<chunkSums.length; c++) {
+                    double[] chunkForces = chunkSums[c].forces;
+                    for (int i=start; i<end; i++) {
+                        forces[i] += chunkForces[i];
+                    }
+                }
+                return;
+            }
+            int mid = (start + end)/2;
+            invokeAll(new ReduceTask(forces, start, mid, sliceSize),
+                      new ReduceTask(forces, mid, end, sliceSize));
+        }
+
+        private static final long serialVersionUID = 1L;
+        protected final double[] forces;
+        protected final int start, end, sliceSize;
+    }
+}
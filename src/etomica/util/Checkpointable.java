@@ -0,0 +1,31 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Interface for objects whose state can be saved to and restored from a
+ * checkpoint (see SimulationCheckpoint).  The state is written explicitly
+ * (not serialized), so a checkpoint only holds what is needed to continue
+ * and stays readable as long as the written fields don't change.
+ * readCheckpoint is called on an object constructed and configured as the
+ * one that wrote the checkpoint, and must read exactly what
+ * writeCheckpoint wrote.
+ */
+public interface Checkpointable {
+
+    /**
+     * Writes the state of this object.
+     */
+    public void writeCheckpoint(DataOutput out) throws IOException;
+
+    /**
+     * Restores the state of this object from what writeCheckpoint wrote.
+     */
+    public void readCheckpoint(DataInput in) throws IOException;
+}
@@ -0,0 +1,267 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.util;
+
+import java.util.Arrays;
+
+/**
+ * EventQueue implemented as a calendar queue (R. Brown, Comm. ACM 31, 1220
+ * (1988)).  Time is divided into bins of equal width, and each bin maps onto
+ * one of a ring of buckets, each holding a short sorted list.  When the bin
+ * width matches the spacing of the events, adding, removing and finding the
+ * first element all take O(1) time on average.  The number of buckets follows
+ * the number of events, and the width is re-estimated from the spacing of
+ * the earliest quarter of the events whenever the buckets are resized.
+ * <p>
+ * The linkers in each bucket are doubly linked through previous and
+ * nextRight.  Linkers with infinite sortKeys are kept in a separate unsorted
+ * list.
+ */
+public class EventCalendarQueue implements EventQueue, java.io.Serializable {
+
+    private static final long serialVersionUID = 1L;
+    protected static final int MIN_BUCKETS = 2;
+    protected TreeLinker[] buckets;
+    protected int mask;
+    protected TreeLinker infiniteHead;
+    protected int size;
+    protected double width;
+    // the bin of an event is found from sortKey+offset
+    protected double offset;
+    // no event is in a bin before this one
+    protected long currentBin;
+
+    public EventCalendarQueue() {
+        buckets = new TreeLinker[MIN_BUCKETS];
+        mask = MIN_BUCKETS-1;
+        width = 1;
+    }
+
+    public void add(TreeLinker newNode) {
+        if (Debug.ON && newNode.queueIndex != -1) {
+            throw new RuntimeException("attempting to add a node to the calendar which is already part of a queue");
+        }
+        if (newNode.sortKey == Double.POSITIVE_INFINITY) {
+            newNode.queueIndex = buckets.length;
+            newNode.previous = null;
+            newNode.nextRight = infiniteHead;
+            if (infiniteHead != null) {
+                infiniteHead.previous = newNode;
+            }
+            infiniteHead = newNode;
+            return;
+        }
+        insert(newNode);
+        size++;
+        if (size > 2*buckets.length) {
+            resize(2*buckets.length);
+        }
+    }
+
+    /**
+     * Puts the node into the bucket for its bin, keeping the bucket sorted.
+     */
+    protected void insert(TreeLinker newNode) {
+        long bin = (long)Math.floor((newNode.sortKey + offset)/width);
+        newNode.queueBin = bin;
+        if (bin < currentBin) {
+            currentBin = bin;
+        }
+        int b = (int)(bin & mask);
+        newNode.queueIndex = b;
+        TreeLinker prev = null;
+        TreeLinker next = buckets[b];
+        while (next != null && (next.queueBin < bin || (next.queueBin == bin && next.sortKey <= newNode.sortKey))) {
+            prev = next;
+            next = next.nextRight;
+        }
+        newNode.previous = prev;
+        newNode.nextRight = next;
+        if (prev == null) {
+            buckets[b] = newNode;
+        }
+        else {
+            prev.nextRight = newNode;
+        }
+        if (next != null) {
+            next.previous = newNode;
+        }
+    }
+
+    public void remove(TreeLinker oldNode) {
+        int b = oldNode.queueIndex;
+        if (Debug.ON && b == -1) {
+            throw new RuntimeException("attempting to remove a node which is not in the calendar");
+        }
+        if (oldNode.previous == null) {
+            if (b == buckets.length) {
+                infiniteHead = oldNode.nextRight;
+            }
+            else {
+                buckets[b] = oldNode.nextRight;
+            }
+        }
+        else {
+            oldNode.previous.nextRight = oldNode.nextRight;
+        }
+        if (oldNode.nextRight != null) {
+            oldNode.nextRight.previous = oldNode.previous;
+        }
+        oldNode.previous = oldNode.nextRight = null;
+        oldNode.queueIndex = -1;
+        if (b == buckets.length) {
+            return;
+        }
+        size--;
+        if (size < buckets.length/2 && buckets.length > MIN_BUCKETS) {
+            resize(buckets.length/2);
+        }
+    }
+
+    public Object firstElement() {
+        if (size == 0) {
+            return infiniteHead == null ? null : infiniteHead.obj;
+        }
+        // look through one year of bins for the first event
+        for (int i=0; i<buckets.length; i++) {
+            long bin = currentBin + i;
+            TreeLinker head = buckets[(int)(bin & mask)];
+            if (head != null && head.queueBin <= bin) {
+                currentBin = bin;
+                return head.obj;
+            }
+        }
+        // nothing this year; search the bucket heads directly
+        TreeLinker first = null;
+        for (int i=0; i<buckets.length; i++) {
+            TreeLinker head = buckets[i];
+            if (head != null && (first == null || head.queueBin < first.queueBin
+                    || (head.queueBin == first.queueBin && head.sortKey < first.sortKey))) {
+                first = head;
+            }
+        }
+        currentBin = first.queueBin;
+        return first.obj;
+    }
+
+    public void reset() {
+        for (int i=0; i<buckets.length; i++) {
+            clearList(buckets[i]);
+            buckets[i] = null;
+        }
+        clearList(infiniteHead);
+        infiniteHead = null;
+        size = 0;
+        offset = 0;
+        currentBin = 0;
+    }
+
+    protected void clearList(TreeLinker node) {
+        while (node != null) {
+            TreeLinker next = node.nextRight;
+            node.queueIndex = -1;
+            node.previous = node.nextRight = null;
+            node = next;
+        }
+    }
+
+    public void keysDecremented(double interval) {
+        offset += interval;
+    }
+
+    /**
+     * Returns the number of linkers with finite sortKeys in the calendar.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of buckets.
+     */
+    public int getNumBuckets() {
+        return buckets.length;
+    }
+
+    /**
+     * Returns the width (in sortKey) of each bin.
+     */
+    public double getWidth() {
+        return width;
+    }
+
+    /**
+     * Changes the number of buckets, re-estimates the bin width from the
+     * earliest events and puts all of the (finite) linkers back in.
+     */
+    protected void resize(int newNumBuckets) {
+        TreeLinker[] nodes = new TreeLinker[size];
+        int n = 0;
+        for (int i=0; i<buckets.length; i++) {
+            for (TreeLinker node = buckets[i]; node != null; node = node.nextRight) {
+                nodes[n++] = node;
+            }
+        }
+        double[] keys = new double[n];
+        for (int i=0; i<n; i++) {
+            keys[i] = nodes[i].sortKey;
+        }
+        Arrays.sort(keys);
+        // a small sample (as Brown suggests) can be thrown off by a cluster
+        // of nearly simultaneous events, so use the first quarter
+        int m = n/4 + 1;
+        if (m > 1) {
+            double newWidth = 3*(keys[m-1] - keys[0])/(m-1);
+            if (newWidth > 0) {
+                width = newWidth;
+            }
+        }
+
+        // keep infinite nodes pointing at the infinite list
+        for (TreeLinker node = infiniteHead; node != null; node = node.nextRight) {
+            node.queueIndex = newNumBuckets;
+        }
+        buckets = new TreeLinker[newNumBuckets];
+        mask = newNumBuckets-1;
+        offset = 0;
+        currentBin = Long.MAX_VALUE;
+        for (int i=0; i<n; i++) {
+            insert(nodes[i]);
+        }
+        if (n == 0) {
+            currentBin = 0;
+        }
+    }
+
+    public void check() {
+        int n = 0;
+        for (int i=0; i<buckets.length; i++) {
+            TreeLinker prev = null;
+            for (TreeLinker node = buckets[i]; node != null; node = node.nextRight) {
+                if (node.queueIndex != i || node.previous != prev || (node.queueBin & mask) != i) {
+                    throw new IllegalStateException("node "+node+" is inconsistent with bucket "+i);
+                }
+                if (node.queueBin < currentBin) {
+                    throw new IllegalStateException("node "+node+" is in bin "+node.queueBin+" before the current bin "+currentBin);
+                }
+                if (prev != null && (prev.queueBin > node.queueBin || prev.sortKey > node.sortKey)) {
+                    throw new IllegalStateException("node "+node+" is out of order in bucket "+i);
+                }
+                prev = node;
+                n++;
+            }
+        }
+        if (n != size) {
+            throw new IllegalStateException("found "+n+" nodes, but size is "+size);
+        }
+        TreeLinker prev = null;
+        for (TreeLinker node = infiniteHead; node != null; node = node.nextRight) {
+            if (node.queueIndex != buckets.length || node.previous != prev || node.sortKey != Double.POSITIVE_INFINITY) {
+                throw new IllegalStateException("node "+node+" is inconsistent with the infinite list");
+            }
+            prev = node;
+        }
+    }
+}
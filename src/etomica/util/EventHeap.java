@@ -0,0 +1,140 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.util;
+
+/**
+ * EventQueue implemented as an array-based binary heap.  Each linker holds
+ * its index within the heap so that it can be removed without searching.
+ * Adding and removing are O(log N) in the worst case, and finding the first
+ * element is O(1).
+ */
+public class EventHeap implements EventQueue, java.io.Serializable {
+
+    private static final long serialVersionUID = 1L;
+    protected TreeLinker[] heap;
+    protected int size;
+
+    public EventHeap() {
+        heap = new TreeLinker[16];
+    }
+
+    public void add(TreeLinker newNode) {
+        if (Debug.ON && newNode.queueIndex != -1) {
+            throw new RuntimeException("attempting to add a node to the heap which is already part of a queue");
+        }
+        if (size == heap.length) {
+            TreeLinker[] newHeap = new TreeLinker[2*size];
+            System.arraycopy(heap, 0, newHeap, 0, size);
+            heap = newHeap;
+        }
+        heap[size] = newNode;
+        newNode.queueIndex = size;
+        size++;
+        siftUp(size-1);
+    }
+
+    public void remove(TreeLinker oldNode) {
+        int i = oldNode.queueIndex;
+        if (Debug.ON && (i < 0 || i >= size || heap[i] != oldNode)) {
+            throw new RuntimeException("attempting to remove a node which is not in the heap");
+        }
+        oldNode.queueIndex = -1;
+        size--;
+        TreeLinker last = heap[size];
+        heap[size] = null;
+        if (i < size) {
+            heap[i] = last;
+            last.queueIndex = i;
+            if (!siftUp(i)) {
+                siftDown(i);
+            }
+        }
+    }
+
+    public Object firstElement() {
+        return size == 0 ? null : heap[0].obj;
+    }
+
+    public void reset() {
+        for (int i=0; i<size; i++) {
+            heap[i].queueIndex = -1;
+            heap[i] = null;
+        }
+        size = 0;
+    }
+
+    /**
+     * Does nothing; decrementing every sortKey doesn't change the order.
+     */
+    public void keysDecremented(double interval) {}
+
+    /**
+     * Returns the number of linkers in the heap.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Moves the node at index i up until its parent is not later.  Returns
+     * true if the node moved.
+     */
+    protected boolean siftUp(int i) {
+        TreeLinker node = heap[i];
+        double key = node.sortKey;
+        int i0 = i;
+        while (i > 0) {
+            int parent = (i-1) >> 1;
+            TreeLinker p = heap[parent];
+            if (p.sortKey <= key) break;
+            heap[i] = p;
+            p.queueIndex = i;
+            i = parent;
+        }
+        heap[i] = node;
+        node.queueIndex = i;
+        return i != i0;
+    }
+
+    /**
+     * Moves the node at index i down until neither child is earlier.
+     */
+    protected void siftDown(int i) {
+        TreeLinker node = heap[i];
+        double key = node.sortKey;
+        int half = size >> 1;
+        while (i < half) {
+            int child = 2*i + 1;
+            TreeLinker c = heap[child];
+            int right = child + 1;
+            if (right < size && heap[right].sortKey < c.sortKey) {
+                child = right;
+                c = heap[child];
+            }
+            if (key <= c.sortKey) break;
+            heap[i] = c;
+            c.queueIndex = i;
+            i = child;
+        }
+        heap[i] = node;
+        node.queueIndex = i;
+    }
+
+    public void check() {
+        for (int i=0; i<size; i++) {
+            if (heap[i].queueIndex != i) {
+                throw new IllegalStateException("node "+heap[i]+" has index "+heap[i].queueIndex+" but is at "+i);
+            }
+            if (i > 0 && heap[(i-1)>>1].sortKey > heap[i].sortKey) {
+                throw new IllegalStateException("node "+heap[i]+" is earlier than its parent "+heap[(i-1)>>1]);
+            }
+        }
+        for (int i=size; i<heap.length; i++) {
+            if (heap[i] != null) {
+                throw new IllegalStateException("heap has a node beyond its size");
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.util;
+
+/**
+ * Priority queue of TreeLinkers ordered by their sortKey, used to schedule
+ * events (such as collisions).  A linker must not be added to a queue it is
+ * already in, or removed from a queue it is not in, and its sortKey must not
+ * be changed while it is in the queue, except that the sortKey of every
+ * linker in the queue may be decreased by the same amount, after which
+ * keysDecremented must be called.
+ */
+public interface EventQueue {
+
+    /**
+     * Adds the given linker to the queue.
+     */
+    public void add(TreeLinker newNode);
+
+    /**
+     * Removes the given linker from the queue.
+     */
+    public void remove(TreeLinker oldNode);
+
+    /**
+     * Returns the object associated with the linker having the lowest
+     * sortKey, or null if the queue is empty.
+     */
+    public Object firstElement();
+
+    /**
+     * Removes all linkers from the queue.
+     */
+    public void reset();
+
+    /**
+     * Notifies the queue that the sortKey of every linker in it has been
+     * decreased by interval.
+     */
+    public void keysDecremented(double interval);
+
+    /**
+     * Checks the queue for consistency, throwing an IllegalStateException
+     * if a problem is found.
+     */
+    public void check();
+}
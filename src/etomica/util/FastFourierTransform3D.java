@@ -0,0 +1,108 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.util;
+
+/**
+ * Performs 3D discrete Fourier transforms of data on a rectangular grid by
+ * applying the 1D FastFourierTransform along each axis in turn.  Each grid
+ * dimension must be a power of 2.
+ *
+ * The data are held in flat arrays of real and imaginary parts, with the
+ * element for grid point (i,j,k) at index (i*n[1] + j)*n[2] + k.  As with
+ * FastFourierTransform, the data are transformed in place; transform()
+ * applies exp(-i...) and divides by the total number of grid points while
+ * invert() applies exp(+i...) without scaling.
+ */
+public class FastFourierTransform3D implements java.io.Serializable {
+
+    public FastFourierTransform3D(int[] gridSize) {
+        if (gridSize.length != 3) {
+            throw new IllegalArgumentException("grid must be 3-dimensional");
+        }
+        n = gridSize.clone();
+        for (int i=0; i<3; i++) {
+            if (n[i] < 1 || (n[i] & (n[i]-1)) != 0) {
+                throw new IllegalArgumentException("grid size "+n[i]+" is not a power of 2");
+            }
+        }
+        lineReal = new double[3][];
+        lineImaginary = new double[3][];
+        for (int i=0; i<3; i++) {
+            lineReal[i] = new double[n[i]];
+            lineImaginary[i] = new double[n[i]];
+        }
+        stride = new int[]{n[1]*n[2], n[2], 1};
+        fft = new FastFourierTransform();
+    }
+
+    /**
+     * Returns the number of grid points in each dimension.
+     */
+    public int[] getGridSize() {
+        return n;
+    }
+
+    /**
+     * Returns the total number of grid points.
+     */
+    public int getNumPoints() {
+        return n[0]*n[1]*n[2];
+    }
+
+    /**
+     * Forward transform of the given data.
+     */
+    public void transform(double[] real, double[] imaginary) {
+        doTransform(real, imaginary, true);
+    }
+
+    /**
+     * Reverse transform of the given data.
+     */
+    public void invert(double[] real, double[] imaginary) {
+        doTransform(real, imaginary, false);
+    }
+
+    protected void doTransform(double[] real, double[] imaginary, boolean forward) {
+        int nPoints = getNumPoints();
+        if (real.length < nPoints || imaginary.length < nPoints) {
+            throw new IllegalArgumentException("data arrays are too small for the grid");
+        }
+        for (int axis=0; axis<3; axis++) {
+            int nLine = n[axis];
+            if (nLine == 1) continue;
+            double[] re = lineReal[axis];
+            double[] im = lineImaginary[axis];
+            int s = stride[axis];
+            // the other two axes
+            int a1 = (axis+1)%3, a2 = (axis+2)%3;
+            for (int i1=0; i1<n[a1]; i1++) {
+                for (int i2=0; i2<n[a2]; i2++) {
+                    int start = i1*stride[a1] + i2*stride[a2];
+                    for (int k=0, idx=start; k<nLine; k++, idx+=s) {
+                        re[k] = real[idx];
+                        im[k] = imaginary[idx];
+                    }
+                    fft.setData(re, im);
+                    if (forward) {
+                        fft.transform();
+                    }
+                    else {
+                        fft.invert();
+                    }
+                    for (int k=0, idx=start; k<nLine; k++, idx+=s) {
+                        real[idx] = re[k];
+                        imaginary[idx] = im[k];
+                    }
+                }
+            }
+        }
+    }
+
+    private static final long serialVersionUID = 1L;
+    protected final int[] n, stride;
+    protected final double[][] lineReal, lineImaginary;
+    protected final FastFourierTransform fft;
+}
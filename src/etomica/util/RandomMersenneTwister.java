@@ -4,6 +4,10 @@
 
 package etomica.util;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import etomica.api.IRandom;
 
 /* 
@@ -60,7 +64,7 @@ import etomica.api.IRandom;
  * @author Makoto Matsumoto 
  * @author Andrew Schultz
  */
-public class RandomMersenneTwister implements IRandom {
+public class RandomMersenneTwister implements IRandom, Checkpointable {
 
     /* Period parameters */  
     static final protected int N = 624;
@@ -303,4 +307,26 @@ public class RandomMersenneTwister implements IRandom {
 
         return y / shiftFac;
     }
+
+    /**
+     * Writes the full state of the generator, so that readCheckpoint can
+     * continue the same sequence of numbers.
+     */
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        for (int i=0; i<N; i++) {
+            out.writeInt(mt[i]);
+        }
+        out.writeInt(mti);
+        out.writeBoolean(hasNextGaussian);
+        out.writeDouble(nextGaussian);
+    }
+
+    public void readCheckpoint(DataInput in) throws IOException {
+        for (int i=0; i<N; i++) {
+            mt[i] = in.readInt();
+        }
+        mti = in.readInt();
+        hasNextGaussian = in.readBoolean();
+        nextGaussian = in.readDouble();
+    }
 }
@@ -15,6 +15,10 @@ public class TreeLinker {
     public final Object obj;
     public TreeLinker previous, nextLeft, nextRight;
     public double sortKey;
+    // position of the linker within an EventHeap or EventCalendarQueue
+    // (-1 if it is not in one) and its bin within an EventCalendarQueue
+    public int queueIndex = -1;
+    public long queueBin;
 
     /**
      * Constructor throws exception if given atom is null.  Only
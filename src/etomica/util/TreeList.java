@@ -21,7 +21,7 @@ package etomica.util;
  * an object that is not in the tree.  Do not taunt the tree.  Turning
  * on Debug will attempt to catch problems.
  */
-public class TreeList implements java.io.Serializable {
+public class TreeList implements EventQueue, java.io.Serializable {
 
     private static final long serialVersionUID = 1L;
     private TreeLinker head;
@@ -62,10 +62,15 @@ public class TreeList implements java.io.Serializable {
         newNode.nextRight = newNode.nextLeft = null;
     }
 
-    static public void remove(TreeLinker oldNode) {
+    public void remove(TreeLinker oldNode) {
         oldNode.remove();
     }
 
+    /**
+     * Does nothing; decrementing every sortKey doesn't change the tree.
+     */
+    public void keysDecremented(double interval) {}
+
     /**
      * returns the object from the binary tree associated
      * with the lowest sort-key, or null if the tree is empty
@@ -5,6 +5,7 @@
 package etomica.virial;
 
 import etomica.api.IAtomList;
+import etomica.api.IMolecule;
 import etomica.api.IMoleculeList;
 import etomica.box.Box;
 import etomica.space.BoundaryRectangularNonperiodic;
@@ -78,6 +79,43 @@ public class BoxCluster extends Box {
         cPairTrialSet.reset(cPairID);
     }
 
+    /**
+     * Inform the box that a trial move has been made that moved only the
+     * given molecule (or atoms within it).  Only the coordinate pairs
+     * containing that molecule are updated, and the clusters are told which
+     * point moved so that they can update only the bonds involving it.
+     */
+    public void trialNotify(IMolecule movedMolecule) {
+        if (cPairSet == null || isTrial) {
+            // first time, or something else moved already
+            trialNotify();
+            return;
+        }
+        int movedPoint = getPointIndex(movedMolecule);
+        if (movedPoint < 0) {
+            trialNotify();
+            return;
+        }
+        isTrial = true;
+        cPairID++;
+        cPairTrialSet.reset(cPairID, cPairSet, movedPoint);
+    }
+
+    /**
+     * Returns the index of the cluster point corresponding to the given
+     * molecule, or -1 if the molecule is not in this box.
+     */
+    public int getPointIndex(IMolecule molecule) {
+        IMoleculeList molecules = getMoleculeList();
+        int nMolecules = molecules.getMoleculeCount();
+        for (int i=0; i<nMolecules; i++) {
+            if (molecules.getMolecule(i) == molecule) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Informs the box that the trial was accepted so it will keep the new 
      * coordinate pairs.
@@ -0,0 +1,80 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.virial;
+
+/**
+ * Keeps track of which configuration a cluster's bonds were last computed
+ * for, so that the cluster can determine which points have moved since then.
+ * When a move declares the point it moved (via BoxCluster.trialNotify), the
+ * bonds need to be recomputed only for that point.  If the cluster's bonds
+ * are instead for a rejected trial made from the same configuration (the
+ * usual case after a rejection), the bonds for both moved points are
+ * recomputed.
+ *
+ * The cluster calls getChangedPoints before recomputing, and commit once its
+ * bonds (and anything derived from them) are up to date.  If getChangedPoints
+ * is called again without a commit, everything is recomputed.
+ */
+public class ChangedPointTracker implements java.io.Serializable {
+
+    /**
+     * Returns a bit mask of the points whose bonds need to be recomputed to
+     * go from the last committed configuration to the one in cPairs, or -1
+     * if all bonds need to be recomputed.
+     */
+    public int getChangedPoints(CoordinatePairSet cPairs) {
+        long newID = cPairs.getID();
+        long newBaseID = cPairs.getBaseID();
+        int newMovedPoint = cPairs.getMovedPoint();
+        int mask = -1;
+        if (valid && !pending) {
+            if (newID == id) {
+                mask = 0;
+            }
+            else if (newMovedPoint >= 0 && newMovedPoint < 31) {
+                if (newBaseID == id) {
+                    mask = 1<<newMovedPoint;
+                }
+                else if (newBaseID == baseID && movedPoint >= 0) {
+                    // we have a sibling configuration
+                    mask = (1<<newMovedPoint) | (1<<movedPoint);
+                }
+            }
+        }
+        pending = true;
+        pendingID = newID;
+        pendingBaseID = newBaseID;
+        pendingMovedPoint = newMovedPoint < 31 ? newMovedPoint : -1;
+        return mask;
+    }
+
+    /**
+     * Marks the configuration passed to the last call to getChangedPoints as
+     * the one the cluster's bonds are now computed for.
+     */
+    public void commit() {
+        if (!pending) return;
+        id = pendingID;
+        baseID = pendingBaseID;
+        movedPoint = pendingMovedPoint;
+        pending = false;
+        valid = true;
+    }
+
+    /**
+     * Forgets the configuration, so that the next call to getChangedPoints
+     * returns -1.  This should be called whenever the bonds become invalid
+     * for some other reason (such as a change in temperature).
+     */
+    public void reset() {
+        valid = false;
+        pending = false;
+    }
+
+    private static final long serialVersionUID = 1L;
+    protected long id, baseID, pendingID, pendingBaseID;
+    protected int movedPoint, pendingMovedPoint;
+    protected boolean valid, pending;
+}
@@ -92,6 +92,20 @@ public class ClusterSum implements ClusterAbstract, java.io.Serializable {
         this.doCaching = doCaching;
     }
 
+    /**
+     * Sets whether only the bonds involving the moved point are recomputed
+     * when a move declares which point it moved.  This is only done when
+     * caching is enabled.  The default is true.
+     */
+    public void setDoIncremental(boolean newDoIncremental) {
+        doIncremental = newDoIncremental;
+        tracker.reset();
+    }
+
+    public boolean isDoIncremental() {
+        return doIncremental;
+    }
+
     // equal point count enforced in constructor 
     public int pointCount() {
         return clusters[0].pointCount();
@@ -101,6 +115,7 @@ public class ClusterSum implements ClusterAbstract, java.io.Serializable {
         ClusterSum copy = new ClusterSum(clusters,clusterWeights,f);
         copy.setTemperature(1/beta);
         copy.setCaching(doCaching);
+        copy.setDoIncremental(doIncremental);
         return copy;
     }
 
@@ -162,12 +177,16 @@ public class ClusterSum implements ClusterAbstract, java.io.Serializable {
         CoordinatePairSet cPairs = box.getCPairSet();
         AtomPairSet aPairs = box.getAPairSet();
 
+        // points whose bonds have changed; -1 means all of them
+        int changedPoints = (doCaching && doIncremental && nPoints < 32) ? tracker.getChangedPoints(cPairs) : -1;
+
         for (int k=0; k<f.length; k++) {
             f[k].setBox(box);
         }
-        // recalculate all f values for all pairs
+        // recalculate f values for all pairs involving a changed point
         for(int i=0; i<nPoints-1; i++) {
             for(int j=i+1; j<nPoints; j++) {
+                if (changedPoints != -1 && (((1<<i)|(1<<j)) & changedPoints) == 0) continue;
                 // only update the mayer functions that we'll need for this pair
                 int[] fij = fullBondIndexArray[i][j];
                 for(int k=0; k<fij.length; k++) {
@@ -188,6 +207,7 @@ public class ClusterSum implements ClusterAbstract, java.io.Serializable {
                 }
             }
         }
+        tracker.commit();
     }
     
     public ClusterBonds[] getClusters() {return clusters;}
@@ -203,6 +223,7 @@ public class ClusterSum implements ClusterAbstract, java.io.Serializable {
      */
     public void setTemperature(double temperature) {
         beta = 1/temperature;
+        tracker.reset();
     }
 
     public double[][][] getFValues() {
@@ -220,4 +241,6 @@ public class ClusterSum implements ClusterAbstract, java.io.Serializable {
     protected double value, lastValue;
     protected double beta;
     protected boolean doCaching = true;
+    protected boolean doIncremental = true;
+    protected final ChangedPointTracker tracker = new ChangedPointTracker();
 }
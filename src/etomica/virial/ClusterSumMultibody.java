@@ -99,6 +99,7 @@ public class ClusterSumMultibody extends ClusterSum {
     public ClusterAbstract makeCopy() {
         ClusterSumMultibody copy = new ClusterSumMultibody(clusters,clusterWeights,f,fNonAdditive);
         copy.setTemperature(1/beta);
+        copy.setDoIncremental(doIncremental);
         return copy;
     }
     
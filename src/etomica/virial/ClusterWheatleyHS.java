@@ -247,6 +247,38 @@ public class ClusterWheatleyHS implements ClusterWheatley {
         return value;
     }
 
+    /**
+     * Computes the fC's (sums of connected diagrams) for all sets from the
+     * fQ's.
+     */
+    protected void calcFC() {
+        int nf = 1<<n;
+        for(int i=1; i<nf; i++) {
+            calcFC(i);
+        }
+    }
+
+    /**
+     * Computes fC for the set i.  fC must already be known for all subsets of
+     * i.
+     */
+    protected final void calcFC(int i) {
+        fC[i] = fQ[i];
+        int iLowBit = i & -i;
+        int inc = iLowBit<<1;
+        for(int j=iLowBit; j<i; j+=inc) {
+            int jComp = i & ~j;
+            while ((j|jComp) != i && j<i) {
+                int jHighBits = j^iLowBit;
+                int jlow = jHighBits & -jHighBits;
+                j += jlow;
+                jComp = (i & ~j);
+            }
+            if (j==i) break;
+            fC[i] -= fC[j] * fQ[jComp];//for fQ, flip the bits on j; use only those appearing in i
+        }
+    }
+
     /*
      * Computation of sum of biconnected diagrams.
      */
@@ -260,23 +292,7 @@ public class ClusterWheatleyHS implements ClusterWheatley {
         }
 
         int nf = 1<<n;
-        //Compute the fC's
-        for(int i=1; i<nf; i++) {
-            fC[i] = fQ[i];
-            int iLowBit = i & -i;
-            int inc = iLowBit<<1;
-            for(int j=iLowBit; j<i; j+=inc) {
-                int jComp = i & ~j;
-                while ((j|jComp) != i && j<i) {
-                    int jHighBits = j^iLowBit;
-                    int jlow = jHighBits & -jHighBits;
-                    j += jlow;
-                    jComp = (i & ~j);
-                }
-                if (j==i) break;
-                fC[i] -= fC[j] * fQ[jComp];//for fQ, flip the bits on j; use only those appearing in i
-            }
-        }
+        calcFC();
 
         // find fA1
         for (int i=2; i<nf; i+=2) {
@@ -0,0 +1,186 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.virial;
+
+/**
+ * ClusterWheatleyHS that reuses as much as it can from the previous
+ * configuration.  The bonds are kept as one overlap mask per point.  When
+ * the bonds that changed since fQ (or fC) was last computed all involve a
+ * single point (as happens when MCMoveClusterAtom moves one atom), only the
+ * sets containing that point are recomputed; fQ and fC for the other sets
+ * depend only on their own subsets, so they are unchanged.  This skips half
+ * of the fQ's and the fC's for the cheaper (smaller) half of the sets.
+ *
+ * fQ for a set is 1 if no pair in the set overlaps, and is computed from the
+ * set without its lowest point and the overlap mask of that point, rather
+ * than from three subsets.
+ */
+public class ClusterWheatleyHSIncremental extends ClusterWheatleyHS {
+
+    protected final int[] bondMask, fQMask, fCMask;
+    protected boolean fQValid, fCValid;
+    protected long fullFQCount, partialFQCount, fullFCCount, partialFCCount;
+
+    public ClusterWheatleyHSIncremental(int nPoints, MayerFunction f) {
+        super(nPoints, f);
+        if (nPoints > 30) {
+            throw new IllegalArgumentException("too many points");
+        }
+        bondMask = new int[n];
+        fQMask = new int[n];
+        fCMask = new int[n];
+    }
+
+    public ClusterAbstract makeCopy() {
+        ClusterWheatleyHSIncremental c = new ClusterWheatleyHSIncremental(n, f);
+        c.setTemperature(1/beta);
+        return c;
+    }
+
+    /**
+     * Returns the point that all changed bonds (between the masks in old and
+     * the masks in bondMask) involve, -1 if nothing changed, or -2 if the
+     * changed bonds do not share a point.
+     */
+    protected int changedPoint(int[] old) {
+        int first = -1;
+        for (int i=0; i<n; i++) {
+            if (old[i] != bondMask[i]) {
+                first = i;
+                break;
+            }
+        }
+        if (first == -1) return -1;
+        int diff = old[first] ^ bondMask[first];
+        if (sharedBy(old, first)) return first;
+        if ((diff & (diff-1)) == 0) {
+            // only one bond of first changed; the other point of the bond
+            // might be the one that moved
+            int other = Integer.numberOfTrailingZeros(diff);
+            if (sharedBy(old, other)) return other;
+        }
+        return -2;
+    }
+
+    /**
+     * Returns true if every changed bond involves point m.
+     */
+    protected boolean sharedBy(int[] old, int m) {
+        int notM = ~(1<<m);
+        for (int i=0; i<n; i++) {
+            if (i == m) continue;
+            if (((old[i] ^ bondMask[i]) & notM) != 0) return false;
+        }
+        return true;
+    }
+
+    protected void calcFullFQ(BoxCluster box) {
+        for (int i=0; i<n; i++) {
+            bondMask[i] = 0;
+        }
+        for (int i=0; i<n-1; i++) {
+            for (int j=i+1; j<n; j++) {
+                if (fQ[(1<<i)|(1<<j)] == 0) {
+                    bondMask[i] |= 1<<j;
+                    bondMask[j] |= 1<<i;
+                }
+            }
+        }
+        int m = fQValid ? changedPoint(fQMask) : -2;
+        if (m == -1) {
+            // nothing changed; fQ and eCliqueList are still good
+            return;
+        }
+        int nf = 1<<n;
+        if (m == -2) {
+            fullFQCount++;
+            for (int i=3; i<nf; i++) {
+                int j = i & -i;//lowest bit in i
+                if (i==j) continue; // 1-point set
+                int k = i^j;
+                fQ[i] = (fQ[k] != 0 && (bondMask[Integer.numberOfTrailingZeros(j)] & k) == 0) ? 1 : 0;
+            }
+        }
+        else {
+            partialFQCount++;
+            int mBit = 1<<m;
+            int mOverlap = bondMask[m];
+            for (int k=1; k<nf; k++) {
+                if ((k & mBit) != 0) continue;
+                fQ[k|mBit] = (fQ[k] != 0 && (mOverlap & k) == 0) ? 1 : 0;
+            }
+        }
+        eCliqueCount = 0;
+        for (int i=3; i<nf; i++) {
+            if (fQ[i] != 0 && Integer.bitCount(i) > 2) {
+                eCliqueList[eCliqueCount] = i;
+                eCliqueCount++;
+            }
+        }
+        System.arraycopy(bondMask, 0, fQMask, 0, n);
+        fQValid = true;
+    }
+
+    protected void calcFC() {
+        int m = fCValid ? changedPoint(fCMask) : -2;
+        if (m == -1) return;
+        if (m == -2) {
+            fullFCCount++;
+            super.calcFC();
+        }
+        else {
+            partialFCCount++;
+            int nf = 1<<n;
+            int mBit = 1<<m;
+            // sets are visited in increasing order, so subsets that contain
+            // m are always done before the sets containing them
+            for (int k=0; k<nf; k++) {
+                if ((k & mBit) != 0) continue;
+                calcFC(k|mBit);
+            }
+        }
+        System.arraycopy(bondMask, 0, fCMask, 0, n);
+        fCValid = true;
+    }
+
+    /**
+     * Forces the next configuration to be computed from scratch.
+     */
+    public void reset() {
+        fQValid = false;
+        fCValid = false;
+        cPairID = lastCPairID = -1;
+    }
+
+    /**
+     * Returns the number of times fQ was computed for all sets.
+     */
+    public long getFullFQCount() {
+        return fullFQCount;
+    }
+
+    /**
+     * Returns the number of times fQ was computed only for the sets
+     * containing one point.
+     */
+    public long getPartialFQCount() {
+        return partialFQCount;
+    }
+
+    /**
+     * Returns the number of times fC was computed for all sets.
+     */
+    public long getFullFCCount() {
+        return fullFCCount;
+    }
+
+    /**
+     * Returns the number of times fC was computed only for the sets
+     * containing one point.
+     */
+    public long getPartialFCCount() {
+        return partialFCCount;
+    }
+}
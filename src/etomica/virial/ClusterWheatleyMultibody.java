@@ -81,6 +81,9 @@ public class ClusterWheatleyMultibody extends ClusterWheatleySoft {
         rCut2 = Double.POSITIVE_INFINITY;
         fQmulti = new double[1<<n];
         fQmulti[0] = fQmulti[1] = fQmulti[2] = 1;
+        // calcFullFQ folds the multibody contributions into fQ, so fQ can't
+        // be reused from one configuration to the next
+        setDoIncremental(false);
     }
 
     public void setTolerance(double newTol) {
@@ -40,6 +40,9 @@ public class ClusterWheatleyMultibodyMix extends ClusterWheatleySoftMix {
     public ClusterWheatleyMultibodyMix(int nPoints, int[] nTypes, MayerFunction[][] f, MayerFunctionNonAdditive[][][] fMulti3, double tol, boolean nonAddOnly) {
         super(nPoints, nTypes, f, tol);
         nonAdditiveOnly = nonAddOnly;
+        // calcFullFQ folds the multibody contributions into fQ, so fQ can't
+        // be reused from one configuration to the next
+        setDoIncremental(false);
         mixFMulti3 = fMulti3;
         fMap3 = new MayerFunctionNonAdditive[1<<nPoints];
         int iType = 0, jType = 0, kType = 0;
@@ -28,6 +28,10 @@ public class ClusterWheatleySoft implements ClusterAbstract {
     protected ClusterWheatleySoftBD clusterBD;
     protected boolean debug = false;
     protected boolean doCaching = true;
+    protected boolean doIncremental = true;
+    protected final ChangedPointTracker tracker = new ChangedPointTracker();
+    // sets containing any of these points need to be recomputed
+    protected int changedPoints = -1;
 
     public ClusterWheatleySoft(int nPoints, MayerFunction f, double tol) {
         this.n = nPoints;
@@ -51,10 +55,25 @@ public class ClusterWheatleySoft implements ClusterAbstract {
         }
     }
 
+    /**
+     * Sets whether only the bonds and sets involving the moved point are
+     * recomputed when a move declares which point it moved.  This is only
+     * done when caching is enabled.  The default is true.
+     */
+    public void setDoIncremental(boolean newDoIncremental) {
+        doIncremental = newDoIncremental;
+        tracker.reset();
+    }
+
+    public boolean isDoIncremental() {
+        return doIncremental;
+    }
+
     public ClusterAbstract makeCopy() {
         ClusterWheatleySoft c = new ClusterWheatleySoft(n, f, tol);
         c.setTemperature(1/beta);
         c.setDoCaching(doCaching);
+        c.setDoIncremental(doIncremental);
         return c;
     }
 
@@ -103,6 +122,7 @@ public class ClusterWheatleySoft implements ClusterAbstract {
         int nf = 1<<n;
         // generate all partitions and compute product of e-bonds for all pairs in partition
         for (int i=3; i<nf; i++) {
+            if ((i & changedPoints) == 0) continue; // no bonds in i have changed
             int j = i & -i;//lowest bit in i
             if (i==j) continue; // 1-point set
             int k = i&~j; //strip j bit from i and set result to k
@@ -135,11 +155,13 @@ public class ClusterWheatleySoft implements ClusterAbstract {
             double minMaxR2 = 5*5;
             if (maxR2 < minMaxR2) {
                 value = 1e-200;
+                changedPoints = -1;
                 return;
             }
             double maxMaxR2 = 7*7;
             if (maxR2 > maxMaxR2) {
                 value = 0;
+                changedPoints = -1;
                 return;
             }
         }
@@ -148,6 +170,7 @@ public class ClusterWheatleySoft implements ClusterAbstract {
         int nf = 1<<n;
         //Compute the fC's
         for(int i=1; i<nf; i++) {
+            if ((i & changedPoints) == 0) continue; // fC[i] depends only on subsets of i
             fC[i] = fQ[i];
             int iLowBit = i & -i;
             int inc = iLowBit<<1;
@@ -163,6 +186,9 @@ public class ClusterWheatleySoft implements ClusterAbstract {
                 fC[i] -= fC[j] * fQ[jComp];//for fQ, flip the bits on j; use only those appearing in i
             }
         }
+        // fQ and fC are now up to date for this configuration
+        tracker.commit();
+        changedPoints = -1;
 
         // find fA1
         for (int i=2; i<nf; i+=2) {
@@ -285,10 +311,13 @@ public class ClusterWheatleySoft implements ClusterAbstract {
         CoordinatePairSet cPairs = box.getCPairSet();
         AtomPairSet aPairs = box.getAPairSet();
 
+        changedPoints = (doCaching && doIncremental) ? tracker.getChangedPoints(cPairs) : -1;
+
         f.setBox(box);
-        // recalculate all f values for all pairs
+        // recalculate f values for all pairs involving a changed point
         for(int i=0; i<n-1; i++) {
             for(int j=i+1; j<n; j++) {
+                if ((((1<<i)|(1<<j)) & changedPoints) == 0) continue;
                 double ff = f.f(aPairs.getAPair(i,j),cPairs.getr2(i,j), beta);
                 if (false && Double.isNaN(ff)) {
                     f.f(aPairs.getAPair(i,j),cPairs.getr2(i,j), beta);
@@ -302,6 +331,7 @@ public class ClusterWheatleySoft implements ClusterAbstract {
 
     public void setTemperature(double temperature) {
         beta = 1/temperature;
+        tracker.reset();
         if (clusterBD != null) {
             clusterBD.setTemperature(temperature);
         }
@@ -44,6 +44,7 @@ public class ClusterWheatleySoftMix extends ClusterWheatleySoft {
         ClusterWheatleySoftMix c = new ClusterWheatleySoftMix(n, nTypes, mixF, tol);
         c.setTemperature(1/beta);
         c.setDoCaching(doCaching);
+        c.setDoIncremental(doIncremental);
         return c;
     }
 
@@ -51,10 +52,13 @@ public class ClusterWheatleySoftMix extends ClusterWheatleySoft {
         CoordinatePairSet cPairs = box.getCPairSet();
         AtomPairSet aPairs = box.getAPairSet();
 
+        changedPoints = (doCaching && doIncremental) ? tracker.getChangedPoints(cPairs) : -1;
+
 //        f.setBox(box);
-        // recalculate all f values for all pairs
+        // recalculate f values for all pairs involving a changed point
         for(int i=0; i<n-1; i++) {
             for(int j=i+1; j<n; j++) {
+                if ((((1<<i)|(1<<j)) & changedPoints) == 0) continue;
                 double ff = fMap[i][j].f(aPairs.getAPair(i,j),cPairs.getr2(i,j), beta);
                 if (debug && (Double.isNaN(ff) || Double.isInfinite(ff))) {
                     System.err.println("oops in updateF "+i+" "+j+" "+ff);
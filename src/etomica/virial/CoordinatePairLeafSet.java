@@ -57,6 +57,30 @@ public class CoordinatePairLeafSet implements CoordinatePairSet {
             }
         }
         ID = cPairID;
+        baseID = -1;
+        movedPoint = -1;
+    }
+
+    public void reset(long cPairID, CoordinatePairSet base, int movedPoint) {
+        if (!(base instanceof CoordinatePairLeafSet) || ((CoordinatePairLeafSet)base).numAtoms != numAtoms) {
+            reset(cPairID);
+            return;
+        }
+        System.arraycopy(((CoordinatePairLeafSet)base).r2, 0, r2, 0, r2.length);
+        IVectorMutable pos1 = positions[movedPoint];
+        for(int j=0; j<numAtoms; j++) {
+            if (j == movedPoint) continue;
+            dr.Ev1Mv2(pos1,positions[j]);
+            if (j < movedPoint) {
+                r2[j*numAtoms+movedPoint] = dr.squared();
+            }
+            else {
+                r2[movedPoint*numAtoms+j] = dr.squared();
+            }
+        }
+        ID = cPairID;
+        baseID = base.getID();
+        this.movedPoint = movedPoint;
     }
     
     public void E(CoordinatePairLeafSet c) {
@@ -70,10 +94,20 @@ public class CoordinatePairLeafSet implements CoordinatePairSet {
     public long getID() {
         return ID;
     }
+
+    public int getMovedPoint() {
+        return movedPoint;
+    }
+
+    public long getBaseID() {
+        return baseID;
+    }
     
     protected final double[] r2;
     protected final IVectorMutable[] positions;
     protected final int numAtoms;
     protected final IVectorMutable dr;
     protected long ID;
+    protected long baseID = -1;
+    protected int movedPoint = -1;
 }
\ No newline at end of file
@@ -76,6 +76,30 @@ public class CoordinatePairMoleculeSet implements CoordinatePairSet {
             }
         }
         ID = cPairID;
+        baseID = -1;
+        movedPoint = -1;
+    }
+
+    public void reset(long cPairID, CoordinatePairSet base, int movedPoint) {
+        if (!(base instanceof CoordinatePairMoleculeSet) || ((CoordinatePairMoleculeSet)base).numAtoms != numAtoms) {
+            reset(cPairID);
+            return;
+        }
+        System.arraycopy(((CoordinatePairMoleculeSet)base).r2, 0, r2, 0, r2.length);
+        iPosition.E(positionDefinition.position(atoms[movedPoint]));
+        for(int j=0; j<numAtoms; j++) {
+            if (j == movedPoint) continue;
+            dr.Ev1Mv2(iPosition, positionDefinition.position(atoms[j]));
+            if (j < movedPoint) {
+                r2[j*numAtoms+movedPoint] = dr.squared();
+            }
+            else {
+                r2[movedPoint*numAtoms+j] = dr.squared();
+            }
+        }
+        ID = cPairID;
+        baseID = base.getID();
+        this.movedPoint = movedPoint;
     }
     
     public void E(CoordinatePairLeafSet c) {
@@ -89,6 +113,14 @@ public class CoordinatePairMoleculeSet implements CoordinatePairSet {
     public long getID() {
         return ID;
     }
+
+    public int getMovedPoint() {
+        return movedPoint;
+    }
+
+    public long getBaseID() {
+        return baseID;
+    }
     
     protected final double[] r2;
     protected final IMolecule[] atoms;
@@ -96,5 +128,7 @@ public class CoordinatePairMoleculeSet implements CoordinatePairSet {
     protected final IVectorMutable dr;
     protected final IVectorMutable iPosition;
     protected long ID;
+    protected long baseID = -1;
+    protected int movedPoint = -1;
     protected IAtomPositionDefinition positionDefinition;
 }
\ No newline at end of file
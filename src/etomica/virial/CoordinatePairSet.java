@@ -18,6 +18,26 @@ public interface CoordinatePairSet {
      */
     public void reset(long cPairID);
 
+    /**
+     * Informs the CoordinatePairSet that the configuration has changed from
+     * that of base only by moving the given point, and that it has a new ID.
+     * Only the pairs containing that point are recalculated.
+     */
+    public void reset(long cPairID, CoordinatePairSet base, int movedPoint);
+
     public long getID();
 
+    /**
+     * Returns the index of the only point that differs between this
+     * configuration and the configuration with ID getBaseID(), or -1 if the
+     * configuration was reset without that information.
+     */
+    public int getMovedPoint();
+
+    /**
+     * Returns the ID of the configuration this one was made from by moving
+     * getMovedPoint(), or -1 if the moved point is not known.
+     */
+    public long getBaseID();
+
 }
\ No newline at end of file
@@ -31,7 +31,7 @@ public class MCMoveClusterAtom extends MCMoveAtom {
         translationVector.setRandomCube(random);
         translationVector.TE(stepSize);
         atom.getPosition().PE(translationVector);
-		((BoxCluster)box).trialNotify();
+		((BoxCluster)box).trialNotify(atom.getParentGroup());
         uNew = ((BoxCluster)box).getSampleCluster().value((BoxCluster)box);
 		return true;
 	}
@@ -42,7 +42,7 @@ public class MCMoveClusterRotateMolecule3D extends MCMoveRotateMolecule3D {
             trialCount = relaxInterval;
         }
 
-        ((BoxCluster)box).trialNotify();
+        ((BoxCluster)box).trialNotify(molecule);
         uNew = ((BoxCluster)box).getSampleCluster().value((BoxCluster)box);
         return true;
     }
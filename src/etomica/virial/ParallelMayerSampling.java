@@ -0,0 +1,269 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.virial;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import etomica.data.AccumulatorRatioAverageCovariance;
+import etomica.data.IData;
+import etomica.data.types.DataGroup;
+import etomica.util.RandomNumberGeneratorUnix;
+import etomica.virial.simulations.SimulationVirial;
+
+/**
+ * Runs several independent Mayer-sampling simulations (replicas) at once,
+ * each on its own thread, and combines their statistics.  Each replica is a
+ * complete SimulationVirial with its own box, clusters and random number
+ * generator, made by a ReplicaFactory; the replicas share nothing while
+ * running, so the throughput scales with the number of threads.
+ *
+ * After a run, the AccumulatorRatioAverageCovariance of each replica is
+ * merged into a single accumulator.  Each replica runs a whole number of
+ * blocks, so the merged accumulator holds exactly the blocks collected by
+ * the replicas and its block-averaged errors (including the covariance
+ * contribution to the ratio error) are computed just as they would be for a
+ * single long run.
+ */
+public class ParallelMayerSampling {
+
+    /**
+     * Makes the replica simulations.  Each call must construct a new
+     * simulation with its own clusters, MayerFunctions and moves, since those
+     * hold state for the configuration being sampled.
+     */
+    public interface ReplicaFactory {
+        /**
+         * Returns a new replica.  The replica should use the given seeds for
+         * its random number generator.
+         */
+        public SimulationVirial makeReplica(int iReplica, int[] seeds);
+    }
+
+    /**
+     * Constructs nReplicas replicas using the factory.  Replica i is given
+     * the seeds with i appended, so the replicas have independent random
+     * number streams that are reproducible from the given seeds.
+     */
+    public ParallelMayerSampling(ReplicaFactory factory, int nReplicas, int[] seeds) {
+        if (nReplicas < 1) {
+            throw new IllegalArgumentException("need at least one replica");
+        }
+        this.seeds = seeds.clone();
+        replicas = new SimulationVirial[nReplicas];
+        for (int i=0; i<nReplicas; i++) {
+            int[] replicaSeeds = new int[seeds.length+1];
+            System.arraycopy(seeds, 0, replicaSeeds, 0, seeds.length);
+            replicaSeeds[seeds.length] = i;
+            replicas[i] = factory.makeReplica(i, replicaSeeds);
+        }
+        blockSize = replicas[0].accumulator == null ? 1000 : replicas[0].accumulator.getBlockSize();
+    }
+
+    /**
+     * Constructs nReplicas replicas using the factory, with seeds taken from
+     * the system.
+     */
+    public ParallelMayerSampling(ReplicaFactory factory, int nReplicas) {
+        this(factory, nReplicas, RandomNumberGeneratorUnix.getRandSeedArray());
+    }
+
+    /**
+     * Returns the seeds used to make the seeds for the replicas.
+     */
+    public int[] getSeeds() {
+        return seeds;
+    }
+
+    public int getReplicaCount() {
+        return replicas.length;
+    }
+
+    public SimulationVirial getReplica(int i) {
+        return replicas[i];
+    }
+
+    /**
+     * Sets the executor used to run the replicas.  If null (the default), a
+     * fixed thread pool with one thread for each replica (up to the number
+     * of processors) is made for each run and shut down afterwards.
+     */
+    public void setExecutor(ExecutorService newExecutor) {
+        executor = newExecutor;
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the block size used by the accumulator of each replica.
+     */
+    public void setAccumulatorBlockSize(long newBlockSize) {
+        if (newBlockSize < 1) {
+            throw new IllegalArgumentException("block size must be positive");
+        }
+        blockSize = newBlockSize;
+    }
+
+    public long getAccumulatorBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Equilibrates each replica for the given number of steps (adjusting
+     * step sizes), running the replicas concurrently.  The accumulators are
+     * reset afterwards.
+     */
+    public void equilibrate(final long initSteps) {
+        runAll(new ReplicaTask() {
+            public void run(SimulationVirial replica) {
+                replica.equilibrate(initSteps);
+            }
+        });
+        merged = null;
+    }
+
+    /**
+     * Runs each replica for the given number of steps (rounded up to a whole
+     * number of blocks), running the replicas concurrently, and then merges
+     * their accumulators.  The data collected by earlier calls is kept.
+     */
+    public void run(long stepsPerReplica) {
+        for (int i=0; i<replicas.length; i++) {
+            if (replicas[i].accumulator == null) {
+                throw new IllegalStateException("replica "+i+" does not have an AccumulatorRatioAverageCovariance");
+            }
+            if (replicas[i].accumulator.getBlockSize() != blockSize) {
+                // this resets the accumulator, so only do it if needed
+                replicas[i].setAccumulatorBlockSize(blockSize);
+            }
+        }
+        final long nSteps = ((stepsPerReplica + blockSize - 1)/blockSize)*blockSize;
+        runAll(new ReplicaTask() {
+            public void run(SimulationVirial replica) {
+                replica.ai.setMaxSteps(nSteps);
+                replica.ai.actionPerformed();
+            }
+        });
+        merge();
+    }
+
+    /**
+     * Merges the accumulators of all replicas into a new accumulator.
+     */
+    protected void merge() {
+        merged = new AccumulatorRatioAverageCovariance(blockSize);
+        merged.putDataInfo(replicas[0].meter.getDataInfo());
+        for (int i=0; i<replicas.length; i++) {
+            merged.merge(replicas[i].accumulator);
+        }
+    }
+
+    /**
+     * Returns the accumulator holding the combined data of all replicas from
+     * the most recent call to run, or null if run has not been called since
+     * the replicas were equilibrated.
+     */
+    public AccumulatorRatioAverageCovariance getAccumulator() {
+        return merged;
+    }
+
+    /**
+     * Returns the combined ratio of the ith cluster value to the reference
+     * cluster value.
+     */
+    public double getRatio(int i) {
+        DataGroup data = (DataGroup)merged.getData();
+        return data.getData(AccumulatorRatioAverageCovariance.RATIO.index).getValue(i);
+    }
+
+    /**
+     * Returns the uncertainty in the combined ratio of the ith cluster value
+     * to the reference cluster value.
+     */
+    public double getRatioError(int i) {
+        DataGroup data = (DataGroup)merged.getData();
+        return data.getData(AccumulatorRatioAverageCovariance.RATIO_ERROR.index).getValue(i);
+    }
+
+    /**
+     * Prints the combined averages and ratios, in the same form as
+     * SimulationVirial.printResults.
+     */
+    public void printResults(double refIntegral) {
+        DataGroup allYourBase = (DataGroup)merged.getData();
+        IData averageData = allYourBase.getData(AccumulatorRatioAverageCovariance.AVERAGE.index);
+        IData stdevData = allYourBase.getData(AccumulatorRatioAverageCovariance.STANDARD_DEVIATION.index);
+        IData errorData = allYourBase.getData(AccumulatorRatioAverageCovariance.ERROR.index);
+        IData correlationData = allYourBase.getData(AccumulatorRatioAverageCovariance.BLOCK_CORRELATION.index);
+        IData ratioData = allYourBase.getData(AccumulatorRatioAverageCovariance.RATIO.index);
+        IData ratioErrorData = allYourBase.getData(AccumulatorRatioAverageCovariance.RATIO_ERROR.index);
+
+        System.out.println();
+        System.out.println(replicas.length+" replicas, "+merged.getSampleCount()+" samples total");
+        System.out.print(String.format("reference average: %20.15e stdev: %9.4e error: %9.4e cor: %6.4f\n",
+                averageData.getValue(0), stdevData.getValue(0), errorData.getValue(0), correlationData.getValue(0)));
+        for (int i=1; i<averageData.getLength(); i++) {
+            System.out.print(String.format("target average: %20.15e stdev: %9.4e error: %9.4e cor: %6.4f\n",
+                    averageData.getValue(i), stdevData.getValue(i), errorData.getValue(i), correlationData.getValue(i)));
+            System.out.print(String.format("ratio average: %20.15e  error: %9.4e\n", ratioData.getValue(i), ratioErrorData.getValue(i)));
+            System.out.print(String.format("abs average: %20.15e  error: %9.4e\n", ratioData.getValue(i)*refIntegral, ratioErrorData.getValue(i)*Math.abs(refIntegral)));
+        }
+    }
+
+    /**
+     * Performs the given task on every replica, each on its own thread, and
+     * waits for them to finish.
+     */
+    protected void runAll(final ReplicaTask task) {
+        ExecutorService myExecutor = executor;
+        if (myExecutor == null) {
+            int nThreads = Math.min(replicas.length, Runtime.getRuntime().availableProcessors());
+            myExecutor = Executors.newFixedThreadPool(nThreads);
+        }
+        try {
+            Future<?>[] futures = new Future<?>[replicas.length];
+            for (int i=0; i<replicas.length; i++) {
+                final SimulationVirial replica = replicas[i];
+                futures[i] = myExecutor.submit(new Callable<Object>() {
+                    public Object call() {
+                        task.run(replica);
+                        return null;
+                    }
+                });
+            }
+            for (int i=0; i<futures.length; i++) {
+                try {
+                    futures[i].get();
+                }
+                catch (ExecutionException e) {
+                    throw new RuntimeException("replica "+i+" failed", e.getCause());
+                }
+                catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        finally {
+            if (myExecutor != executor) {
+                myExecutor.shutdown();
+            }
+        }
+    }
+
+    protected interface ReplicaTask {
+        public void run(SimulationVirial replica);
+    }
+
+    protected final SimulationVirial[] replicas;
+    protected final int[] seeds;
+    protected ExecutorService executor;
+    protected long blockSize;
+    protected AccumulatorRatioAverageCovariance merged;
+}
@@ -0,0 +1,107 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.virial.simulations;
+
+import etomica.api.IAtomList;
+import etomica.api.IRandom;
+import etomica.api.IVectorMutable;
+import etomica.simulation.Simulation;
+import etomica.space.ISpace;
+import etomica.space.IVectorRandom;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.ParameterBase;
+import etomica.util.ParseArgs;
+import etomica.util.RandomMersenneTwister;
+import etomica.virial.BoxCluster;
+import etomica.virial.ClusterAbstract;
+import etomica.virial.ClusterWeightAbs;
+import etomica.virial.ClusterWheatleyHS;
+import etomica.virial.ClusterWheatleyHSIncremental;
+import etomica.virial.MayerHardSphere;
+
+/**
+ * Compares the cost per configuration of ClusterWheatleyHS and
+ * ClusterWheatleyHSIncremental for hard spheres.  Configurations are
+ * generated by single-atom moves (as MCMoveClusterAtom makes), sampling the
+ * absolute value of the cluster.  Both clusters see exactly the same
+ * sequence of configurations.
+ */
+public class WheatleyHSBenchmark {
+
+    public static void main(String[] args) {
+        BenchmarkParam params = new BenchmarkParam();
+        if (args.length > 0) {
+            ParseArgs.doParseArgs(params, args);
+        }
+        System.out.println(" n    configs   HS (us)   incremental (us)   speedup");
+        for (int n=params.nMin; n<=params.nMax; n++) {
+            // aim for roughly the same total work for each n
+            long nSteps = Math.max(params.minSteps, (long)(params.work/Math.pow(3, n)));
+            // warm up
+            run(new ClusterWheatleyHS(n, new MayerHardSphere(1.0)), n, nSteps/10, params.seed);
+            run(new ClusterWheatleyHSIncremental(n, new MayerHardSphere(1.0)), n, nSteps/10, params.seed);
+
+            double tHS = run(new ClusterWheatleyHS(n, new MayerHardSphere(1.0)), n, nSteps, params.seed);
+            double tInc = run(new ClusterWheatleyHSIncremental(n, new MayerHardSphere(1.0)), n, nSteps, params.seed);
+            System.out.println(String.format("%2d %10d %9.3f %18.3f %9.2f", n, nSteps, tHS*1e6, tInc*1e6, tHS/tInc));
+        }
+    }
+
+    /**
+     * Samples nSteps configurations with the given cluster and returns the
+     * time per configuration, in seconds.
+     */
+    public static double run(ClusterAbstract cluster, int n, long nSteps, int seed) {
+        ISpace space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species);
+        cluster.setTemperature(1.0);
+        BoxCluster box = new BoxCluster(new ClusterWeightAbs(cluster), space);
+        sim.addBox(box);
+        box.setNMolecules(species, n);
+        IRandom random = new RandomMersenneTwister(seed);
+        IAtomList leafList = box.getLeafList();
+        IVectorRandom step = (IVectorRandom)space.makeVector();
+        // start with every pair overlapping
+        for (int i=0; i<n; i++) {
+            step.setRandomCube(random);
+            step.TE(0.3);
+            leafList.getAtom(i).getPosition().E(step);
+        }
+        box.trialNotify();
+        box.acceptNotify();
+        double oldValue = Math.abs(cluster.value(box));
+
+        long t0 = System.nanoTime();
+        for (long i=0; i<nSteps; i++) {
+            IVectorMutable r = leafList.getAtom(random.nextInt(n)).getPosition();
+            step.setRandomCube(random);
+            step.TE(1.0);
+            r.PE(step);
+            box.trialNotify();
+            double newValue = Math.abs(cluster.value(box));
+            if (newValue > 0 && (newValue >= oldValue || random.nextDouble() < newValue/oldValue)) {
+                box.acceptNotify();
+                oldValue = newValue;
+            }
+            else {
+                r.ME(step);
+                box.rejectNotify();
+            }
+        }
+        return (System.nanoTime() - t0)*1e-9/nSteps;
+    }
+
+    public static class BenchmarkParam extends ParameterBase {
+        public int nMin = 6;
+        public int nMax = 12;
+        // number of steps for n is work/3^n
+        public double work = 2e8;
+        public long minSteps = 1000;
+        public int seed = 1;
+    }
+}